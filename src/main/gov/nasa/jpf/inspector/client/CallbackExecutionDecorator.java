@@ -296,6 +296,38 @@ public final class CallbackExecutionDecorator implements InspectorCallbacks {
   }
 
 
+  @Override
+  public void notifyBreakpointHits (BreakpointStatus bp, int hitCount) {
+    if (DEBUG) {
+      debugOutStream.println(this.getClass().getSimpleName() + ".notifyBreakpointHits(bp=" + bp + ", hitCount=" + hitCount + ")");
+    }
+
+    synchronized (syncObj) {
+      // A record expects each of the merged hits separately
+      for (int i = 0; i < hitCount; i++) {
+        waitUntilCBIsSpecified(CallbackKind.CB_BREAKPOINT_HIT);
+        if (i == 0) {
+          cb.notifyBreakpointHits(bp, hitCount);
+        }
+        unblockCmdThread();
+      }
+    }
+  }
+
+  @Override
+  public void notifyCallbacksDropped (long droppedCount, String overflowPolicy) {
+    if (DEBUG) {
+      debugOutStream.println(this.getClass().getSimpleName() + ".notifyCallbacksDropped(droppedCount=" + droppedCount + ")");
+    }
+
+    synchronized (syncObj) {
+      // Not recorded, so no record waits for it
+      waitUntilCBIsSpecified(CallbackKind.CB_ANY);
+      cb.notifyCallbacksDropped(droppedCount, overflowPolicy);
+    }
+  }
+
+
   @Override
   public void notifyChoiceGeneratorNewChoice (CGTypes cgType, String cgName, int cgId, String[] choices, int nextChoice, int defaultChoice) {
     if (DEBUG) {
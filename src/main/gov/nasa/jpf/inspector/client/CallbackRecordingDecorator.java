@@ -76,6 +76,23 @@ public class CallbackRecordingDecorator implements InspectorCallbacks {
     cb.notifyBreakpointHit(bp);
   }
 
+  @Override
+  public void notifyBreakpointHits (BreakpointStatus bp, int hitCount) {
+    // Recorded as separate hits, because how hits are merged depends on timing
+    for (int i = 0; i < hitCount; i++) {
+      CmdCallback cmdCB = new CmdCallback(CallbackKind.CB_BREAKPOINT_HIT);
+      cmdRecorder.recordCallback(cmdCB);
+    }
+
+    cb.notifyBreakpointHits(bp, hitCount);
+  }
+
+  @Override
+  public void notifyCallbacksDropped (long droppedCount, String overflowPolicy) {
+    // Not recorded, a replay drops callbacks at other moments, if at all
+    cb.notifyCallbacksDropped(droppedCount, overflowPolicy);
+  }
+
   @Override
   public void notifyChoiceGeneratorNewChoice (CGTypes cgType, String cgName, int cgId, String[] choices, int nextChoice, int defaultChoice) {
     CmdCallback cmdCB = new CmdCallback(CallbackKind.CB_CG_NEW_CHOICE);
@@ -145,6 +145,22 @@ public class JPFClientCallbackHandler implements InspectorCallbacks {
 
   @Override
   public void notifyBreakpointHit (BreakpointStatus bp) {
+    printBreakpointHit(bp, "");
+  }
+
+  @Override
+  public void notifyBreakpointHits (BreakpointStatus bp, int hitCount) {
+    printBreakpointHit(bp, " (" + hitCount + " times)");
+  }
+
+  @Override
+  public void notifyCallbacksDropped (long droppedCount, String overflowPolicy) {
+    out.println("INFO: " + droppedCount + " callbacks were dropped, because they were sent faster than processed " +
+                        "(overflow policy " + overflowPolicy + ").");
+    callbackReceived();
+  }
+
+  private void printBreakpointHit (BreakpointStatus bp, String times) {
     assert bp != null;
 
     if (bp instanceof AssertStatus) {
@@ -152,7 +168,7 @@ public class JPFClientCallbackHandler implements InspectorCallbacks {
 
       String message = "Assertion violated:";
       if (bp.getState() == BreakpointState.LOGGING) {
-        message = "Logging assertion violated:";
+        message = "Logging assertion violated" + times + ":";
       }
       out.println("INFO: " + message + " [assert " + as.getNormalizedPosition() + " " + as.getNormalizedCondition() + "]");
 
@@ -160,7 +176,7 @@ public class JPFClientCallbackHandler implements InspectorCallbacks {
       // Standard breakpoint
       String message = "Breakpoint hit:";
       if (bp.getState() == BreakpointState.LOGGING) {
-        message = "Logging breakpoint hit:";
+        message = "Logging breakpoint hit" + times + ":";
       }
       out.println("INFO: " + message + " [" + CmdBreakpointShow.breakpointToString(bp) + "]");
       String details = bp.getDetails();
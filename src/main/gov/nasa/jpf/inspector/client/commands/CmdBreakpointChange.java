@@ -50,6 +50,7 @@ public final class CmdBreakpointChange extends ClientCommand {
       case DISABLED: stateWord = "disable"; break;
       case ENABLED: stateWord = "enable"; break;
       case LOGGING: stateWord = "log"; break;
+      case TRACING: stateWord = "trace"; break;
     }
     return new CmdBreakpointChange(id, newState, "change breakpoint " + id + " state = " + stateWord);
   }
@@ -67,6 +68,9 @@ public final class CmdBreakpointChange extends ClientCommand {
         if (newState == BreakpointState.LOGGING) {
           newStatus = "a logging breakpoint";
         }
+        if (newState == BreakpointState.TRACING) {
+          newStatus = "a tracing breakpoint";
+        }
         if (newState == BreakpointState.DISABLED) {
           newStatus = "disabled";
         }
@@ -28,6 +28,7 @@ import java.util.List;
 
 /**
  * Represents the "show breakpoint" command that prints all existing breakpoints.
+ * For hit conditions with "and" or "or" operators, it also prints how the operators were evaluated so far.
  */
 public class CmdBreakpointShow extends ClientCommand {
 
@@ -36,6 +37,10 @@ public class CmdBreakpointShow extends ClientCommand {
     List<BreakpointStatus> bps = inspector.getBreakpoints();
     for (BreakpointStatus bp : bps) {
       outStream.println(breakpointToString(bp));
+      String evaluationStatistics = bp.getEvaluationStatistics();
+      if (evaluationStatistics != null) {
+        outStream.println("\t" + evaluationStatistics.replace("\n", "\n\t"));
+      }
     }
     if (bps.isEmpty()) {
       outStream.println("No breakpoints.");
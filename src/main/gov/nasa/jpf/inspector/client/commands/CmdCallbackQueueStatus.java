@@ -0,0 +1,48 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.client.commands;
+
+import gov.nasa.jpf.inspector.client.ClientCommand;
+import gov.nasa.jpf.inspector.client.JPFInspectorClient;
+import gov.nasa.jpf.inspector.interfaces.JPFInspectorBackEndInterface;
+import gov.nasa.jpf.inspector.server.callbacks.CallbackQueueStatistics;
+
+import java.io.PrintStream;
+
+/**
+ * Represents the "show callbacks" command that displays how full the queue of callbacks waiting to be sent to the
+ * client is and how many callbacks were dropped because it overflowed.
+ */
+public class CmdCallbackQueueStatus extends ClientCommand {
+
+  @Override
+  public void execute(JPFInspectorClient client, JPFInspectorBackEndInterface inspector, PrintStream outStream) {
+    CallbackQueueStatistics statistics = inspector.getServerCallbacks().getQueueStatistics();
+    outStream.println("Callbacks waiting: " + statistics.getDepth() + " of " + statistics.getCapacity() +
+                              " (at most " + statistics.getMaxDepth() + " so far)");
+    outStream.println("Callbacks sent:    " + statistics.getSent());
+    outStream.println("Callbacks dropped: " + statistics.getDropped());
+    outStream.println("Waits for space:   " + statistics.getBlocked());
+    outStream.println("Overflow policy:   " + statistics.getPolicy().name().toLowerCase());
+  }
+
+  @Override
+  public String getNormalizedCommand() {
+    return "show callbacks";
+  }
+
+}
@@ -51,6 +51,7 @@ public class CmdHelp extends ClientCommand {
                               "field_access = classname:fieldname\n" +
                               "field_read = classname:fieldname\n" +
                               "field_write = classname:fieldname\n" +
+                              "watch = classname:fieldname [@ objectref]\n" +
                               "local_access = name\n" +
                               "local_read = name\n" +
                               "local_write = name\n" +
@@ -137,6 +138,7 @@ public class CmdHelp extends ClientCommand {
     informationalCommands.add(new CommandHelpInfo("thread_pc [id]", "thpc", "Prints current instruction of a thread."));
     informationalCommands.add(new CommandHelpInfo("print [expression]", null, "Evaluates an expression."));
     informationalCommands.add(new CommandHelpInfo("print_attr [expression]", null, "Evaluates an expression, but prefers to print attributes, not values."));
+    informationalCommands.add(new CommandHelpInfo("show callbacks", "sw callbacks", "Prints the depth of the callback queue and how many callbacks were dropped."));
     categories.put("Informational commands", informationalCommands);
 
     ArrayList<CommandHelpInfo> execution = new ArrayList<>();
@@ -152,7 +154,7 @@ public class CmdHelp extends ClientCommand {
 
     ArrayList<CommandHelpInfo> breakpoints = new ArrayList<>();
     breakpoints.add(new CommandHelpInfo("create breakpoint [properties...] [hit condition]", "cr bp", "Creates a new breakpoint."));
-    breakpoints.add(new CommandHelpInfo("change breakpoint [id] state = [state]", "change bp", "Enables or disables a breakpoint."));
+    breakpoints.add(new CommandHelpInfo("change breakpoint [id] state = [state]", "change bp", "Sets the state of a breakpoint (enable, disable, log or trace)."));
     breakpoints.add(new CommandHelpInfo("disable breakpoint [id]", "dis bp", "Disables the breakpoint."));
     breakpoints.add(new CommandHelpInfo("enable breakpoint [id]", "en bp", "Re-enables the breakpoint."));
     breakpoints.add(new CommandHelpInfo("show breakpoint", "sw bp", "Prints all breakpoints."));
@@ -167,6 +169,10 @@ public class CmdHelp extends ClientCommand {
     recording.add(new CommandHelpInfo("record save [filename]", "rec save", "Saves the recording into a file."));
     categories.put("Recording commands", recording);
 
+    ArrayList<CommandHelpInfo> tracing = new ArrayList<>();
+    tracing.add(new CommandHelpInfo("trace print [file] [bp=id] [thread=id] [state=id] [last=count]", null, "Prints hits of breakpoints in the trace state."));
+    categories.put("Tracing commands", tracing);
+
     ArrayList<CommandHelpInfo> stepping = new ArrayList<>();
     stepping.add(new CommandHelpInfo("step_instruction", "sins", "Executes one instruction."));
     stepping.add(new CommandHelpInfo("step_over", "so", "Executes current line."));
@@ -179,7 +185,7 @@ public class CmdHelp extends ClientCommand {
     stepping.add(new CommandHelpInfo("back_step_out", "bsout", "Undoes instructions until we return to caller."));
     stepping.add(new CommandHelpInfo("back_step_in", "bsi", "Undoes this and previous line or until a method call is undone."));
     stepping.add(new CommandHelpInfo("back_step_transition", "bst", "Undoes until a choice point is reached."));
-    stepping.add(new CommandHelpInfo("back_field_access [class]:[field]", "bfa", "Undoes until the field access is reached."));
+    stepping.add(new CommandHelpInfo("back_field_access [class]:[field] [objectRef]", "bfa", "Undoes until the last write to the field (of the given object) is reached."));
     stepping.add(new CommandHelpInfo("back_breakpoint_hit", "bbhit", "Undoes until the last breakpoint hit is reached."));
     categories.put("Stepping-related commands", stepping);
 
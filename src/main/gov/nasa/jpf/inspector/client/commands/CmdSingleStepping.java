@@ -21,6 +21,7 @@ import gov.nasa.jpf.inspector.client.ClientCommand;
 import gov.nasa.jpf.inspector.client.JPFInspectorClient;
 import gov.nasa.jpf.inspector.client.commands.CmdChoiceGeneratorsTracking.CGTypeSpec;
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
+import gov.nasa.jpf.inspector.interfaces.CommandsInterface;
 import gov.nasa.jpf.inspector.interfaces.CommandsInterface.StepType;
 import gov.nasa.jpf.inspector.interfaces.JPFInspectorBackEndInterface;
 import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
@@ -39,6 +40,10 @@ public class CmdSingleStepping extends ClientCommand {
   private final boolean forward;
   private final StepType stepType;
   private String fieldNameExpression = null;
+  /**
+   * Reference of the object whose field we step back to, or {@link CommandsInterface#ANY_OBJECT}.
+   */
+  private int objectRef = CommandsInterface.ANY_OBJECT;
   /**
    * Number of times to execute this command.
    */
@@ -47,8 +52,12 @@ public class CmdSingleStepping extends ClientCommand {
   public static CmdSingleStepping createBackBreakpointHit() {
     return new CmdSingleStepping(false, StepType.BACK_BREAKPOINT_HIT, 1);
   }
-  public static CmdSingleStepping createBackFieldAccess(String fieldNameExpression) {
-    return new CmdSingleStepping(false, StepType.BACK_FIELD_ACCESS, 1, fieldNameExpression);
+  public static CmdSingleStepping createBackFieldAccess(String fieldNameExpression, Integer objectRef) {
+    CmdSingleStepping command = new CmdSingleStepping(false, StepType.BACK_FIELD_ACCESS, 1, fieldNameExpression);
+    if (objectRef != null) {
+      command.objectRef = objectRef;
+    }
+    return command;
   }
 
   public static CmdSingleStepping createCmdSingleSteppingTransition(boolean forward, CGTypeSpec typeOrNull, Integer repeatCnt) {
@@ -105,25 +114,17 @@ public class CmdSingleStepping extends ClientCommand {
         client.recordComment(e.getMessage());
       }
     } else {
-      for (int i = 0; i < stepCount; i++) {
-        try {
-          if (forward) {
-            inspector.forwardStep(stepType);
-          } else {
-            if (fieldNameExpression != null) {
-              inspector.backFieldAccessStep(fieldNameExpression);
-            } else {
-              inspector.backstep(stepType);
-            }
-          }
-        } catch (JPFInspectorException e) {
-          outStream.println(e.getMessage());
-          client.recordComment(e.getMessage());
-        }
-        boolean isFinalStep = (i == (stepCount - 1));
-        if (!isFinalStep) {
-          inspector.waitUntilStopped();
+      try {
+        if (forward) {
+          inspector.forwardStep(stepType, stepCount);
+        } else if (fieldNameExpression != null) {
+          inspector.backFieldAccessStep(fieldNameExpression, objectRef);
+        } else {
+          inspector.backstep(stepType, stepCount);
         }
+      } catch (JPFInspectorException e) {
+        outStream.println(e.getMessage());
+        client.recordComment(e.getMessage());
       }
     }
     if (InspectorConfiguration.getInstance().shouldWaitAfterRun()) {
@@ -154,7 +155,8 @@ public class CmdSingleStepping extends ClientCommand {
       case BACK_BREAKPOINT_HIT:
         return "back_breakpoint_hit";
       case BACK_FIELD_ACCESS:
-        return "back_field_access " + fieldNameExpression;
+        return "back_field_access " + fieldNameExpression +
+               (objectRef != CommandsInterface.ANY_OBJECT ? " " + objectRef : "");
     case ST_INSTRUCTION:
       return optionalDirection + "step_instruction" + optionalCount;
     case ST_LINE:
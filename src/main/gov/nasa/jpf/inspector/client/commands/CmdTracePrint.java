@@ -0,0 +1,137 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.client.commands;
+
+import gov.nasa.jpf.inspector.client.ClientCommand;
+import gov.nasa.jpf.inspector.client.JPFInspectorClient;
+import gov.nasa.jpf.inspector.common.TracepointRecord;
+import gov.nasa.jpf.inspector.interfaces.JPFInspectorBackEndInterface;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Represents the "trace print" command that decodes the trace file written by tracing breakpoints and prints
+ * the hits that match the given filters.
+ *
+ * The arguments are any of "bp=[id]", "thread=[id]", "state=[id]" and "last=[count]", and optionally the name of
+ * the trace file. If no file is given, the file from the configuration is read.
+ */
+public class CmdTracePrint extends ClientCommand {
+
+  private final String arguments;
+
+  public CmdTracePrint(String arguments) {
+    this.arguments = arguments == null ? "" : arguments.trim();
+  }
+
+  @Override
+  public void execute(JPFInspectorClient client, JPFInspectorBackEndInterface inspector, PrintStream outStream) {
+    String fileName = null;
+    Integer bpFilter = null;
+    Integer threadFilter = null;
+    Integer stateFilter = null;
+    int last = Integer.MAX_VALUE;
+
+    String normalizedArguments = arguments.replaceAll("\\s*=\\s*", "=");
+    for (String argument : normalizedArguments.isEmpty() ? new String[0] : normalizedArguments.split("\\s+")) {
+      int equalsSign = argument.indexOf('=');
+      if (equalsSign < 0) {
+        if (fileName != null) {
+          outStream.println("Only one trace file may be given.");
+          return;
+        }
+        fileName = argument;
+        continue;
+      }
+      String key = argument.substring(0, equalsSign);
+      int value;
+      try {
+        value = Integer.parseInt(argument.substring(equalsSign + 1));
+      } catch (NumberFormatException e) {
+        outStream.println("The value of '" + key + "' must be an integer.");
+        return;
+      }
+      switch (key) {
+        case "bp":
+        case "breakpoint":
+          bpFilter = value;
+          break;
+        case "thread":
+          threadFilter = value;
+          break;
+        case "state":
+          stateFilter = value;
+          break;
+        case "last":
+          last = value;
+          break;
+        default:
+          outStream.println("Unknown filter '" + key + "'. Use bp, thread, state or last.");
+          return;
+      }
+    }
+    if (fileName == null) {
+      fileName = InspectorConfiguration.getInstance().getTracepointFile();
+    }
+
+    Map<Integer, String> methodNames = new HashMap<>();
+    ArrayDeque<TracepointRecord> shown = new ArrayDeque<>();
+    long total = 0;
+    long matching = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+      TracepointRecord.readHeader(in);
+      TracepointRecord record;
+      while ((record = TracepointRecord.readNext(in, methodNames)) != null) {
+        total++;
+        if ((bpFilter != null && record.getBPID() != bpFilter) ||
+                (threadFilter != null && record.getThreadId() != threadFilter) ||
+                (stateFilter != null && record.getStateId() != stateFilter)) {
+          continue;
+        }
+        matching++;
+        if (last <= 0) {
+          continue;
+        }
+        if (shown.size() == last) {
+          shown.removeFirst();
+        }
+        shown.addLast(record);
+      }
+    } catch (IOException e) {
+      outStream.println("The trace file '" + fileName + "' could not be read (" + e.getMessage() + ").");
+      return;
+    }
+
+    for (TracepointRecord record : shown) {
+      outStream.println(record.toString(methodNames));
+    }
+    outStream.println("Shown " + shown.size() + " of " + matching + " matching hits (" + total + " hits in the trace file).");
+  }
+
+  @Override
+  public String getNormalizedCommand() {
+    return arguments.isEmpty() ? "trace print" : "trace print " + arguments;
+  }
+}
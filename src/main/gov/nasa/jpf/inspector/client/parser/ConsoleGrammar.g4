@@ -56,6 +56,7 @@ allKeyWordsWithoutCreateBPandHitCount returns [String text]
     | a=TOKEN_ASSERT { $text = $a.text; }
     | a=TOKEN_BREAK { $text = $a.text; }
     | a=TOKEN_BREAKPOINT { $text = $a.text; }
+    | a=TOKEN_CALLBACKS { $text = $a.text; }
     | a=TOKEN_CHOICE_GENERATORS { $text = $a.text; }
     | a=TOKEN_CONTINUE { $text = $a.text; }
     | a=TOKEN_CLEAR { $text = $a.text; }
@@ -82,6 +83,7 @@ allKeyWordsWithoutCreateBPandHitCount returns [String text]
     | a=TOKEN_TERMINATING { $text = $a.text; }
     | a=TOKEN_THREAD { $text = $a.text; }
     | a=TOKEN_THREAD_PC { $text = $a.text; }
+    | a=TOKEN_TRACE { $text = $a.text; }
     | a=TOKEN_X { $text = $a.text; }
     | a=TOKEN_STEP_INSTRUCTION { $text = $a.text; }
     | a=TOKEN_STEP_OVER { $text = $a.text; }
@@ -132,6 +134,7 @@ clientCommands1 returns [ClientCommand value]
     | cmdInformational        WS? { $value = $cmdInformational.value; }
     | cmdChoiceGenerators    WS? { $value = $cmdChoiceGenerators.value; }
     | cmdRecord              WS? { $value = $cmdRecord.value; }
+    | cmdTrace               WS? { $value = $cmdTrace.value; }
     | cmdAssertions          WS? { $value = $cmdAssertions.value; }
     | cmdExecution           WS? { $value = $cmdExecution.value; }
     | cmdCustom              WS? { $value = $cmdCustom.value; }  // Must be the last item because this is a catch-all.
@@ -154,6 +157,7 @@ cmdInformational returns [ClientCommand value]
   | TOKEN_THREAD_PC (WS? intValue)?   { $value = new CmdThreadsPC($intValue.ctx != null ? $intValue.value : null); }
   | TOKEN_HELLO  { $value = new CmdHello(); }
   | TOKEN_HELP   { $value = new CmdHelp(); }
+  | TOKEN_SHOW WS? TOKEN_CALLBACKS { $value = new CmdCallbackQueueStatus(); }
   ;
 
 cmdCustom returns [ClientCommand value]
@@ -195,6 +199,7 @@ cmdBreakpointState returns [BreakpointState bpState]
     : TOKEN_DISABLE         { $bpState = BreakpointState.DISABLED; }
     | TOKEN_LOG             { $bpState = BreakpointState.LOGGING; }
     | TOKEN_ENABLE          { $bpState = BreakpointState.ENABLED; }
+    | TOKEN_TRACE           { $bpState = BreakpointState.TRACING; }
     ;
 
 // We have to solve collision between bpExpression and "hitCountExpression" expression
@@ -230,8 +235,8 @@ cmdSingleSteps returns [CmdSingleStepping value]
     { $value = CmdSingleStepping.createCmdSingleSteppingTransition(false, $c.ctx != null ? $c.cgsType : null, $intValue.ctx != null ? $intValue.value : 1); }
     | TOKEN_BACK_BREAKPOINT_HIT
     { $value = CmdSingleStepping.createBackBreakpointHit(); }
-    | TOKEN_BACK_FIELD_ACCESS (WS? field=allTextNoWS)
-    { $value = CmdSingleStepping.createBackFieldAccess($field.expr); }
+    | TOKEN_BACK_FIELD_ACCESS (WS? field=allTextNoWS) (WS intValue)?
+    { $value = CmdSingleStepping.createBackFieldAccess($field.expr, $intValue.ctx != null ? $intValue.value : null); }
     ;
 
 
@@ -301,6 +306,10 @@ cmdRecord returns [ClientCommand value]
     | TOKEN_RECORD WS TOKEN_EXECUTE WS allText     { $value = new CmdRecordExecute($allText.expr); }
     ;
 
+cmdTrace returns [ClientCommand value]
+    : TOKEN_TRACE WS TOKEN_PRINT (WS allText)?     { $value = new CmdTracePrint($allText.ctx != null ? $allText.expr : ""); }
+    ;
+
 cmdAssertions returns [ClientCommand value]
     : TOKEN_ASSERT     WS a=allTextNoWS  WS b=allText
        { $value = new CmdAssert($a.expr, $b.expr); }
@@ -366,6 +375,7 @@ TOKEN_ASSERT : 'assert' ;
 TOKEN_BOTH : 'both';
 TOKEN_BREAK : 'break' ;
 TOKEN_BREAKPOINT : 'breakpoint' | 'bp' ;
+TOKEN_CALLBACKS : 'callbacks' ;
 TOKEN_CHOICE_GENERATORS : 'choice_generators' | 'cg' ;
 TOKEN_CHANGE : 'change';
 TOKEN_CONTINUE : 'continue' | 'cont' ;
@@ -398,6 +408,7 @@ TOKEN_USED : 'used' ;
 TOKEN_TERMINATING : 'terminating' ;
 TOKEN_THREAD : 'thread' | 'ti'  | 't';
 TOKEN_THREAD_PC : 'thread_pc' | 'thpc' ;
+TOKEN_TRACE : 'trace' ;
 TOKEN_X : 'x' | 'X' ;
 
 // Stepping-related keywords
@@ -119,6 +119,8 @@ public class BreakpointCreationExpression implements BreakpointCreationInformati
       return "enable"; // en
     case LOGGING:
       return "log"; // log
+    case TRACING:
+      return "trace"; // trace
     default:
       throw new RuntimeException("Internal error: Unknown " + bpState.getClass().getName() + " entry: " + bpState);
     }
@@ -0,0 +1,176 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A single hit of a tracing breakpoint, as stored in the trace file. Also describes the format of the trace file,
+ * which is written by the server and read by the "trace print" command.
+ *
+ * The file starts with {@link #FILE_MAGIC}. Then follows a sequence of entries, each starting with an int that
+ * identifies its kind:
+ * <ul>
+ * <li>{@link #KIND_HIT}, followed by the rest of a fixed-size hit record ({@link #HIT_RECORD_INTS} ints in total),</li>
+ * <li>{@link #KIND_METHOD}, followed by the method ID, the length of the method name in bytes and the name (UTF-8).
+ * A method is always defined before the first hit record that references it.</li>
+ * </ul>
+ * All numbers are big-endian.
+ */
+public final class TracepointRecord {
+  /**
+   * The first bytes of every trace file.
+   */
+  public static final long FILE_MAGIC = 0x4A50464954524331L; // "JPFITRC1"
+
+  public static final int KIND_HIT = 1;
+  public static final int KIND_METHOD = 2;
+
+  /**
+   * Number of ints in a hit record, including the kind.
+   */
+  public static final int HIT_RECORD_INTS = 8;
+
+  /**
+   * Used in place of a method ID, instruction index or line number if there was no instruction.
+   */
+  public static final int NONE = -1;
+
+  private final int bpID;
+  private final int threadId;
+  private final int stateId;
+  private final int methodId;
+  private final int instructionIndex;
+  private final int lineNumber;
+  private final int hitCount;
+
+  public TracepointRecord(int bpID, int threadId, int stateId, int methodId, int instructionIndex, int lineNumber,
+                          int hitCount) {
+    this.bpID = bpID;
+    this.threadId = threadId;
+    this.stateId = stateId;
+    this.methodId = methodId;
+    this.instructionIndex = instructionIndex;
+    this.lineNumber = lineNumber;
+    this.hitCount = hitCount;
+  }
+
+  public int getBPID() {
+    return bpID;
+  }
+
+  public int getThreadId() {
+    return threadId;
+  }
+
+  public int getStateId() {
+    return stateId;
+  }
+
+  public int getMethodId() {
+    return methodId;
+  }
+
+  public int getInstructionIndex() {
+    return instructionIndex;
+  }
+
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Gets the path hit count of the breakpoint, including this hit.
+   */
+  public int getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Reads the header of a trace file.
+   *
+   * @throws IOException The stream does not contain a trace file.
+   */
+  public static void readHeader(DataInputStream in) throws IOException {
+    if (in.readLong() != FILE_MAGIC) {
+      throw new IOException("This is not a JPF Inspector trace file.");
+    }
+  }
+
+  /**
+   * Reads entries from a trace file until a hit record is read. Method definitions are stored in a map.
+   *
+   * @param in Stream positioned after the header or after the previous record.
+   * @param methodNames Method names indexed by method ID, updated as methods are defined.
+   * @return The next record, or null at the end of the file. A record that was not completely written yet counts
+   *         as the end of the file.
+   * @throws IOException The file is damaged or cannot be read.
+   */
+  public static TracepointRecord readNext(DataInputStream in, Map<Integer, String> methodNames) throws IOException {
+    try {
+      while (true) {
+        int kind = in.readInt();
+        if (kind == KIND_METHOD) {
+          int methodId = in.readInt();
+          byte[] name = new byte[in.readInt()];
+          in.readFully(name);
+          methodNames.put(methodId, new String(name, StandardCharsets.UTF_8));
+        } else if (kind == KIND_HIT) {
+          return new TracepointRecord(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                                      in.readInt(), in.readInt());
+        } else {
+          throw new IOException("The trace file is damaged (unknown entry kind " + kind + ").");
+        }
+      }
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Formats the record for the user.
+   *
+   * @param methodNames Method names indexed by method ID.
+   */
+  public String toString(Map<Integer, String> methodNames) {
+    StringBuilder sb = new StringBuilder(80);
+    sb.append("bp=").append(bpID);
+    sb.append(" thread=").append(threadId);
+    sb.append(" state=").append(stateId);
+    sb.append(" hits=").append(hitCount);
+    if (methodId != NONE) {
+      String methodName = methodNames.get(methodId);
+      sb.append(' ');
+      sb.append(methodName != null ? methodName : ("method#" + methodId));
+      if (lineNumber != NONE) {
+        sb.append(':').append(lineNumber);
+      }
+      sb.append(" [").append(instructionIndex).append(']');
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return toString(Collections.<Integer, String>emptyMap());
+  }
+}
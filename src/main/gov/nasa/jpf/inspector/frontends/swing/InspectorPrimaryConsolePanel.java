@@ -25,6 +25,7 @@ import gov.nasa.jpf.inspector.client.JPFInspectorClientInterface;
 import gov.nasa.jpf.inspector.common.Constants;
 import gov.nasa.jpf.inspector.frontends.swing.terminal.SwingTerminal;
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorGenericErrorException;
+import gov.nasa.jpf.inspector.interfaces.CommandsInterface.StepType;
 import gov.nasa.jpf.inspector.utils.Debugging;
 import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
 import gov.nasa.jpf.shell.ShellManager;
@@ -128,16 +129,16 @@ public class InspectorPrimaryConsolePanel extends ShellPanel implements VerifyCo
     InspectorToolbarCommand[] commands = {
             new InspectorToolbarCommand("Backstep Out", getQuickCommandIcon("BackStepOut"),
                                         "Undoes everything in this methods and backsteps out to the caller.", "back_step_out",
-                                        getInspectorClient(), consolePrintStream),
+                                        StepType.ST_STEP_OUT, getInspectorClient(), consolePrintStream),
             new InspectorToolbarCommand("Backstep Over",getQuickCommandIcon("BackStepOver"),
                                         "Undoes the previous line of code.", "back_step_over",
-                                        getInspectorClient(), consolePrintStream),
+                                        StepType.ST_LINE, getInspectorClient(), consolePrintStream),
             new InspectorToolbarCommand("Backstep In", getQuickCommandIcon("BackStepIn"),
                                         "Steps back into the previous method call.", "back_step_in",
-                                        getInspectorClient(), consolePrintStream),
+                                        StepType.ST_STEP_IN, getInspectorClient(), consolePrintStream),
             new InspectorToolbarCommand("Backstep Instruction", getQuickCommandIcon("BackStep"),
                                         "Undoes the last bytecode instruction.", "back_step_instruction",
-                                        getInspectorClient(), consolePrintStream),
+                                        StepType.ST_INSTRUCTION, getInspectorClient(), consolePrintStream),
             new InspectorToolbarCommand("Continue", getQuickCommandIcon("Continue"),
                                         "Resumes execution of JPF.", "continue",
                                         getInspectorClient(), consolePrintStream),
@@ -18,6 +18,7 @@ package gov.nasa.jpf.inspector.frontends.swing;
 
 import gov.nasa.jpf.inspector.client.ExecutionContext;
 import gov.nasa.jpf.inspector.client.JPFInspectorClientInterface;
+import gov.nasa.jpf.inspector.interfaces.CommandsInterface.StepType;
 import gov.nasa.jpf.shell.ShellCommand;
 
 import javax.swing.*;
@@ -36,15 +37,29 @@ public class InspectorToolbarCommand extends ShellCommand {
   private final String command;
   private final JPFInspectorClientInterface client;
   private final PrintStream consolePrintStream;
+  /**
+   * The kind of the backward step the command performs, or null if it is not a backward step.
+   */
+  private final StepType backstepType;
 
   public InspectorToolbarCommand(String name, Icon icon, String tooltip, String command,
                                  JPFInspectorClientInterface client, PrintStream consolePrintStream) {
+    this(name, icon, tooltip, command, null, client, consolePrintStream);
+  }
+
+  /**
+   * Creates a command that performs a single backward step. When the step is not possible from the position where JPF
+   * is stopped, the command is not executed.
+   */
+  public InspectorToolbarCommand(String name, Icon icon, String tooltip, String command, StepType backstepType,
+                                 JPFInspectorClientInterface client, PrintStream consolePrintStream) {
     this.name = name;
     this.icon = icon;
     this.tooltip = tooltip;
     this.command = command;
     this.client = client;
     this.consolePrintStream = consolePrintStream;
+    this.backstepType = backstepType;
   }
 
   @Override
@@ -67,6 +82,12 @@ public class InspectorToolbarCommand extends ShellCommand {
   @Override
   public void execute() {
     consolePrintStream.println();
+    if (backstepType != null && client.isPaused() && !client.getServer().isBackstepPossible(backstepType)) {
+      // The server keeps the target it found until JPF resumes, so a possible step does not search for it again
+      consolePrintStream.println("cmd>" + command);
+      consolePrintStream.println("ERR: " + name + " is not possible, there is nothing to step back to.");
+      return;
+    }
     client.executeCommand(command, ExecutionContext.FROM_SWING_TERMINAL);
   }
 }
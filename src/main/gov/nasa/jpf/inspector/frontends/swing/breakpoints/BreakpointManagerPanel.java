@@ -100,6 +100,7 @@ public class BreakpointManagerPanel extends AuxiliaryInspectorPanel {
         case DISABLED: canEnable = true; canLog = true; break;
         case ENABLED: canDisable = true; canLog = true; break;
         case LOGGING: canEnable = true; canDisable = true; break;
+        case TRACING: canEnable = true; canDisable = true; canLog = true; break;
       }
     }
     buttonEnable.setEnabled(canEnable);
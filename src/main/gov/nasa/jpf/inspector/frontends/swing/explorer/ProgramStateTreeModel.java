@@ -62,7 +62,13 @@ public class ProgramStateTreeModel extends DefaultTreeModel {
   public void update() {
     if (server.preventJpfFromResuming()) {
       try {
-        this.explorerRoot.updateFromJpf(this.explorerRoot);
+        // The thread executing commands may read or change the stopped VM at the same time
+        server.getVMLock().lock();
+        try {
+          this.explorerRoot.updateFromJpf(this.explorerRoot);
+        } finally {
+          server.getVMLock().unlock();
+        }
       } finally {
         server.permitJpfToResumeAgain();
       }
@@ -49,7 +49,12 @@ public abstract class ExplorerComplexNode extends ExplorerNode {
     if (children == null) {
       if (model.getServer().preventJpfFromResuming()) {
         try {
-          children = populateChildren();
+          model.getServer().getVMLock().lock();
+          try {
+            children = populateChildren();
+          } finally {
+            model.getServer().getVMLock().unlock();
+          }
         } finally {
           model.getServer().permitJpfToResumeAgain();
         }
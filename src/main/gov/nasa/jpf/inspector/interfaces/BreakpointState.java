@@ -22,7 +22,8 @@ package gov.nasa.jpf.inspector.interfaces;
  */
 public enum BreakpointState {
   /**
-   * The hit counter is updated but nothing is shown to the user.
+   * The hit counter is updated, but nothing is shown to the user. If the jpf-inspector.park_dead_breakpoints option
+   * is set, the breakpoint is not evaluated at all and the hit counter is not updated.
    */
   DISABLED,
   /**
@@ -32,5 +33,10 @@ public enum BreakpointState {
   /**
    * The hit counter is updated and a message is shown to the user.
    */
-  LOGGING
+  LOGGING,
+  /**
+   * The hit counter is updated and a compact record of the hit is written to the trace file.
+   * Nothing is shown to the user. Meant for breakpoints that are hit very often.
+   */
+  TRACING
 }
\ No newline at end of file
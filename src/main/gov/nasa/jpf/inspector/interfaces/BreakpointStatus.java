@@ -45,4 +45,12 @@ public interface BreakpointStatus extends BreakpointCreationInformation {
   String getDetails();
 
   String getNormalizedBreakpointExpression();
+
+  /**
+   * Gets how the "and" and "or" operators of the hit condition were evaluated so far: which operand is evaluated
+   * first, how often each operand holds and how long it takes to evaluate.
+   *
+   * @return Human readable statistics (possibly spanning multiple lines) or null if no such operator was evaluated yet.
+   */
+  String getEvaluationStatistics();
 }
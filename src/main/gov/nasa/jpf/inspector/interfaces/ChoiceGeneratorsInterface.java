@@ -22,6 +22,7 @@ import gov.nasa.jpf.vm.ChoiceGenerator;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interfaces related to choice generators and managing behavior of CG
@@ -157,4 +158,10 @@ public interface ChoiceGeneratorsInterface {
    */
   List<ChoiceGeneratorWrapper> getUsedChoiceGenerators() throws JPFInspectorException;
 
+  /**
+   * Asynchronous variant of {@link #getUsedChoiceGenerators()}. The query is run by the JPF thread while it is stopped,
+   * see {@link ProgramStateInterface}.
+   */
+  CompletableFuture<List<ChoiceGeneratorWrapper>> getUsedChoiceGeneratorsAsync();
+
 }
@@ -26,6 +26,11 @@ import gov.nasa.jpf.inspector.exceptions.JPFInspectorGenericErrorException;
  */
 public interface CommandsInterface {
 
+  /**
+   * Passed to {@link #backFieldAccessStep(String, int)} if the field may belong to any object.
+   */
+  int ANY_OBJECT = -1;
+
   /**
    * Blocks until JPF is stopped. If JPF is not yet started, it returns immediately. If JPF has started but is currently
    * paused, it returns immediately.
@@ -92,32 +97,47 @@ public interface CommandsInterface {
      */
     BACK_BREAKPOINT_HIT,
     /**
-     * Step back until you reach a field access instruction for the given field.
+     * Step back until you reach the last write to the given field.
      */
     BACK_FIELD_ACCESS,
   }
 
 
   /**
-   * Starts a forward step.
+   * Starts a forward step. Repeated steps are executed at once and JPF stops only after the last one.
    *
    * @param type How far should we step forward.
+   * @param count How many times to step. Must be at least 1.
    */
-  void forwardStep(StepType type) throws JPFInspectorException;
+  void forwardStep(StepType type, int count) throws JPFInspectorException;
 
   void backstepTransition(StepType transitionKind, int count) throws JPFInspectorGenericErrorException;
 
   /**
-   * Starts a backwards step.
+   * Starts a backwards step. Repeated steps are resolved into a single target, so that the path is backtracked and
+   * replayed only once.
+   *
    * @param type How far should we backtrack.
+   * @param count How many times to step back. Must be at least 1.
    */
-  void backstep(StepType type) throws JPFInspectorException;
+  void backstep(StepType type, int count) throws JPFInspectorException;
 
 
+  /**
+   * Indicates whether a single backwards step of the given kind has a target from the position where JPF is stopped.
+   * The target is kept until JPF resumes, so a backwards step that follows does not search for it again. Clients use
+   * this to refuse backwards steps that are not possible.
+   *
+   * @param type The kind of the backwards step. Must not be {@link StepType#BACK_FIELD_ACCESS}.
+   * @return False if JPF is not stopped or there is nothing to backtrack to.
+   */
+  boolean isBackstepPossible(StepType type);
+
   /**
    * Starts a back_field_access backwards step.
    * @param fieldNameExpression Field name, see documentation for back_field_access.
+   * @param objectRef Reference of the object whose field was written, or {@link #ANY_OBJECT}.
    */
-  void backFieldAccessStep(String fieldNameExpression) throws JPFInspectorGenericErrorException;
+  void backFieldAccessStep(String fieldNameExpression, int objectRef) throws JPFInspectorGenericErrorException;
 
 }
@@ -58,6 +58,23 @@ public interface InspectorCallbacks {
    */
   void notifyBreakpointHit(BreakpointStatus bp);
 
+  /**
+   * The server calls this instead of {@link #notifyBreakpointHit(BreakpointStatus)} when a logging breakpoint was hit
+   * several times in a row, with no other callback in between.
+   * @param bp Information about the breakpoint after the last of the hits.
+   * @param hitCount Number of the hits, at least 2.
+   */
+  void notifyBreakpointHits(BreakpointStatus bp, int hitCount);
+
+  /**
+   * The server calls this when callbacks were dropped because they were sent faster than the client processed them.
+   * Sent by the thread that delivers callbacks, whenever it finds that more callbacks were dropped. Not recorded, because
+   * when and whether callbacks are dropped depends on timing.
+   * @param droppedCount Number of the callbacks dropped since the last notification.
+   * @param overflowPolicy Name of the policy that dropped them.
+   */
+  void notifyCallbacksDropped(long droppedCount, String overflowPolicy);
+
   /**
    * Notification from the server that ChoiceGenerator is asked for new value. {@link ChoiceGenerator#advance()} is called.
    * 
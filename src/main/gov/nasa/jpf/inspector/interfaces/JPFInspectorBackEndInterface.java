@@ -21,6 +21,8 @@ import gov.nasa.jpf.inspector.client.JPFInspectorClientInterface;
 import gov.nasa.jpf.inspector.server.callbacks.InspectorServerCallbacks;
 import gov.nasa.jpf.vm.VM;
 
+import java.util.concurrent.locks.Lock;
+
 /**
  * Interface provided by JPFInspector back-end ("server") part.
  *
@@ -81,4 +83,12 @@ public interface JPFInspectorBackEndInterface extends
    * @throws IllegalStateException When JPF was not being prevented from resuming.
    */
   void permitJpfToResumeAgain();
+
+  /**
+   * Gets the lock that serializes all reads and writes of the VM while JPF is stopped. Hold it while using the VM
+   * returned by {@link #getVM()}, after JPF was prevented from resuming by {@link #preventJpfFromResuming()}.
+   *
+   * Note: Commands and queries executed by the server acquire it themselves.
+   */
+  Lock getVMLock();
 }
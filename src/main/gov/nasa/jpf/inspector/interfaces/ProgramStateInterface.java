@@ -23,6 +23,7 @@ import gov.nasa.jpf.inspector.common.pse.ProgramStateEntry;
 import gov.nasa.jpf.inspector.common.pse.PSEThread;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This interface is part of the server's contract to the client. It contains methods used by commands that read
@@ -31,6 +32,11 @@ import java.util.Map;
  * Stateless (all important information is always provided by the client).
  * 
  * There will be 3 views - threads+stack, heap, variables.
+ *
+ * The queries have asynchronous variants that do not block the caller. They are run by the JPF thread while it is
+ * stopped, either right away or at the next stop. Concurrent identical queries are run only once. The returned
+ * futures are completed by the JPF thread, so callers such as Swing panels should hand the results over to their
+ * own thread.
  */
 public interface ProgramStateInterface {
 
@@ -42,6 +48,11 @@ public interface ProgramStateInterface {
    */
   Map<Integer, PSEThread> getThreads(Integer threadNum) throws JPFInspectorException;
 
+  /**
+   * Asynchronous variant of {@link #getThreads(Integer)}.
+   */
+  CompletableFuture<Map<Integer, PSEThread>> getThreadsAsync(Integer threadNum);
+
   /**
    * Gets selected/all threads and their PC.
    * 
@@ -50,6 +61,11 @@ public interface ProgramStateInterface {
    */
   Map<Integer, InstructionPosition> getThreadsPC(Integer threadNum) throws JPFInspectorException;
 
+  /**
+   * Asynchronous variant of {@link #getThreadsPC(Integer)}.
+   */
+  CompletableFuture<Map<Integer, InstructionPosition>> getThreadsPCAsync(Integer threadNum);
+
   /**
    * Evaluates given expression and gets final representation (thread/method/variable) value
    * 
@@ -59,6 +75,11 @@ public interface ProgramStateInterface {
    */
   ProgramStateEntry evaluateStateExpression(String expr) throws JPFInspectorException;
 
+  /**
+   * Asynchronous variant of {@link #evaluateStateExpression(String)}.
+   */
+  CompletableFuture<ProgramStateEntry> evaluateStateExpressionAsync(String expr);
+
   /**
    * Changes the value of a variable or a field.
    * 
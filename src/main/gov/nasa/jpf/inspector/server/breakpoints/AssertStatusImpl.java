@@ -37,9 +37,10 @@ public class AssertStatusImpl extends BreakpointStatusImplementation implements
   public AssertStatusImpl(int bpID, String bpName, int bpHitCounter, int bpHitCounterTotal, Integer lowerBound,
                           Integer upperBound, BreakpointState bpState,
                           String bpExpression, String bpExpressionNormalized, String details,
-                          String position, String condition, String normalizedPosition,
+                          String evaluationStatistics, String position, String condition, String normalizedPosition,
                           String normalizedCondition) {
-    super(bpID, bpName, bpHitCounter, bpHitCounterTotal, lowerBound, upperBound, bpState, bpExpression, bpExpressionNormalized, details);
+    super(bpID, bpName, bpHitCounter, bpHitCounterTotal, lowerBound, upperBound, bpState, bpExpression, bpExpressionNormalized, details,
+          evaluationStatistics);
 
     this.position = position;
     this.condition = condition;
@@ -0,0 +1,319 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.breakpoints;
+
+import gov.nasa.jpf.inspector.exceptions.JPFInspectorGenericErrorException;
+import gov.nasa.jpf.inspector.interfaces.CommandsInterface.StepType;
+import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.jpf.InspectorListener;
+import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
+import gov.nasa.jpf.inspector.server.jpf.StopHolder;
+import gov.nasa.jpf.inspector.server.jpf.UndoJournal;
+import gov.nasa.jpf.inspector.server.pathanalysis.BackwardBreakpointCreator;
+import gov.nasa.jpf.inspector.server.pathanalysis.PathStepIndex;
+import gov.nasa.jpf.inspector.server.pathanalysis.PathTraceFile;
+import gov.nasa.jpf.inspector.utils.Debugging;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Finds the targets of backward steps, and if enabled, precomputes them in the background as soon as JPF stops.
+ *
+ * By default, a target is computed when a backward step or {@link #hasTarget(InspectorState, StepType)} first needs it,
+ * and kept until JPF resumes. If precomputation is enabled, when JPF stops, a worker thread finds the targets of all
+ * backward steps that take no argument ("back_step_instruction", "back_step_over", "back_step_in", "back_step_out",
+ * "back_breakpoint_hit" and "back_step_transition" of each kind) for a single step. JPF is prevented from resuming
+ * while the worker runs, see {@link StopHolder#preventJpfFromResuming()}. A backward step then takes its target from
+ * here and starts backtracking immediately, and clients learn which backward steps are possible without analysing the
+ * path.
+ *
+ * The targets are valid until JPF resumes. Each target is used at most once, because its breakpoint is created from it.
+ *
+ * The path is analysed under the VM lock, see {@link StopHolder#getVMLock()}, whether by the worker or by the thread
+ * executing commands, so the analysis never runs concurrently with another one or with a query of the program state.
+ */
+public class BackstepTargetCache {
+
+  /**
+   * The backward steps whose targets are precomputed.
+   */
+  private static final StepType[] PRECOMPUTED_TYPES = {
+          StepType.ST_INSTRUCTION,
+          StepType.ST_LINE,
+          StepType.ST_STEP_IN,
+          StepType.ST_STEP_OUT,
+          StepType.BACK_BREAKPOINT_HIT,
+          StepType.ST_TRANSITION_ALL,
+          StepType.ST_TRANSITION_DATA,
+          StepType.ST_TRANSITION_SCHED
+  };
+
+  /**
+   * Outcome of the search for a target: either the creator of the backward breakpoint, or the reason why there is none.
+   */
+  private static final class Target {
+    private final BackwardBreakpointCreator creator;
+    private final String error;
+
+    private Target(BackwardBreakpointCreator creator, String error) {
+      this.creator = creator;
+      this.error = error;
+    }
+  }
+
+  private final JPFInspector inspector;
+  private final StopHolder stopHolder;
+  private final BreakpointHandler breakpointHandler;
+  private final boolean precompute;
+  /**
+   * Runs the precomputation. Created with the first stop.
+   */
+  private ExecutorService worker = null;
+
+  // Guarded by this.
+  private final Map<StepType, Target> targets = new EnumMap<>(StepType.class);
+  private boolean computing = false;
+
+  public BackstepTargetCache(JPFInspector inspector, StopHolder stopHolder, BreakpointHandler breakpointHandler) {
+    this.inspector = inspector;
+    this.stopHolder = stopHolder;
+    this.breakpointHandler = breakpointHandler;
+    this.precompute = InspectorConfiguration.getInstance().shouldPrecomputeBackstepTargets();
+  }
+
+  /**
+   * Forgets the targets of the previous stop and starts computing the targets from the new position.
+   *
+   * Note: Executed by the JPF thread in {@link StopHolder#stopExecution(InspectorState)}, after the stop is visible to
+   * other threads. Does not block.
+   *
+   * @param inspState The state JPF stopped in.
+   */
+  public void jpfStopped(final InspectorState inspState) {
+    synchronized (this) {
+      targets.clear();
+      computing = false;
+      if (!precompute || !stopHolder.preventJpfFromResuming()) {
+        return;
+      }
+      computing = true;
+      if (worker == null) {
+        worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, BackstepTargetCache.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+    }
+    worker.execute(new Runnable() {
+      @Override
+      public void run() {
+        precomputeTargets(inspState);
+      }
+    });
+  }
+
+  /**
+   * Forgets the targets, because they are no longer valid.
+   *
+   * Note: Executed by the JPF thread when it resumes.
+   */
+  public synchronized void jpfResumed() {
+    targets.clear();
+  }
+
+  /**
+   * Note: Executed by the worker thread, while JPF is prevented from resuming.
+   */
+  private void precomputeTargets(InspectorState inspState) {
+    try {
+      for (StepType type : PRECOMPUTED_TYPES) {
+        Target target;
+        try {
+          target = computeTarget(inspState, type, 1);
+        } catch (RuntimeException | AssertionError e) {
+          // Not cached, the backward step will run into the same problem and report it
+          Debugging.getLogger().warning("Precomputing the target of " + type + " failed: " + e);
+          continue;
+        }
+        synchronized (this) {
+          targets.put(type, target);
+        }
+      }
+    } finally {
+      synchronized (this) {
+        computing = false;
+        notifyAll();
+      }
+      stopHolder.permitJpfToResumeAgain();
+    }
+  }
+
+  /**
+   * Gets the creator of the breakpoint of a backward step from the position where JPF is stopped. The precomputed
+   * creator is used, if available, otherwise the target is searched for now.
+   *
+   * Note: Executed by the thread executing commands, while JPF is stopped.
+   *
+   * @param inspState The state JPF is stopped in.
+   * @param type The kind of the backward step.
+   * @param count How many times to step back. Must be at least 1.
+   * @return Creator with all target information collected, or null if there is no target.
+   * @throws JPFInspectorGenericErrorException If there is no target and the reason is known.
+   */
+  public BackwardBreakpointCreator takeTarget(InspectorState inspState, StepType type, int count)
+          throws JPFInspectorGenericErrorException {
+    assert count >= 1;
+    if (count == 1) {
+      Target target;
+      synchronized (this) {
+        waitUntilComputed();
+        target = targets.remove(type);
+      }
+      if (target != null) {
+        return unwrap(target);
+      }
+    } else {
+      synchronized (this) {
+        // The targets of single steps are of no use, but the step should not start before they are computed
+        waitUntilComputed();
+      }
+    }
+    return unwrap(computeTarget(inspState, type, count));
+  }
+
+  /**
+   * Indicates whether a single backward step of the given kind has a target from the position where JPF is stopped.
+   *
+   * @param inspState The state JPF is stopped in.
+   * @param type The kind of the backward step.
+   */
+  public boolean hasTarget(InspectorState inspState, StepType type) {
+    Target target;
+    synchronized (this) {
+      waitUntilComputed();
+      target = targets.get(type);
+    }
+    if (target == null) {
+      try {
+        target = computeTarget(inspState, type, 1);
+      } catch (RuntimeException | AssertionError e) {
+        return false;
+      }
+      synchronized (this) {
+        targets.put(type, target);
+      }
+    }
+    return target.creator != null;
+  }
+
+  /**
+   * Blocks until the targets from the position where JPF is stopped are computed, so that the state can be changed.
+   *
+   * Note: Must not be called while holding the VM lock, because the worker needs it.
+   */
+  public synchronized void waitUntilPrecomputed() {
+    waitUntilComputed();
+  }
+
+  private void waitUntilComputed() {
+    assert Thread.holdsLock(this);
+    while (computing) {
+      try {
+        wait();
+      } catch (InterruptedException ignored) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static BackwardBreakpointCreator unwrap(Target target) throws JPFInspectorGenericErrorException {
+    if (target.error != null) {
+      throw new JPFInspectorGenericErrorException(target.error);
+    }
+    return target.creator;
+  }
+
+  /**
+   * Searches the path for the target of a backward step. Holds the VM lock while searching.
+   */
+  private Target computeTarget(InspectorState inspState, StepType type, int count) {
+    stopHolder.getVMLock().lock();
+    try {
+      return computeTargetLocked(inspState, type, count);
+    } finally {
+      stopHolder.getVMLock().unlock();
+    }
+  }
+
+  private Target computeTargetLocked(InspectorState inspState, StepType type, int count) {
+    InspectorListener listener = inspector.getInspectorListener();
+    PathStepIndex stepIndex = listener == null ? null : listener.getStepIndex();
+    UndoJournal undoJournal = listener == null ? null : listener.getUndoJournal();
+    int undoneSteps = undoJournal == null ? 0 : undoJournal.getUndoneInstructionCount();
+    if (stepIndex == null && (count > 1 || undoneSteps > 0)) {
+      // Repeated steps are only resolved in the index, so a temporary one is built
+      stepIndex = new PathStepIndex();
+    }
+    try {
+      BackwardBreakpointCreator bbc;
+      switch (type) {
+        case ST_INSTRUCTION:
+          bbc = BackwardBreakpointCreator.getBackwardStepInstruction(inspState, stepIndex, undoneSteps, count);
+          break;
+        case ST_LINE:
+          bbc = BackwardBreakpointCreator.getBackwardStepLine(inspState, stepIndex, undoneSteps, count);
+          break;
+        case ST_STEP_IN:
+          bbc = BackwardBreakpointCreator.getBackwardStepIn(inspState, stepIndex, undoneSteps, count);
+          break;
+        case ST_STEP_OUT:
+          bbc = BackwardBreakpointCreator.getBackwardStepOut(inspState, stepIndex, undoneSteps, count);
+          break;
+        case BACK_BREAKPOINT_HIT:
+          PathTraceFile pathTrace = listener == null ? null : listener.getPathTrace();
+          bbc = pathTrace == null ? null : BackwardBreakpointCreator.getBackBreakpointHit(pathTrace, inspState,
+                                                                                         undoneSteps);
+          if (bbc == null) {
+            // Not recorded, the last hit is known only
+            bbc = BackwardBreakpointCreator.getBackBreakpointHit(breakpointHandler.getLastBreakpointHitLocation(),
+                                                                 inspState);
+          }
+          break;
+        case ST_TRANSITION_ALL:
+        case ST_TRANSITION_DATA:
+        case ST_TRANSITION_SCHED:
+          bbc = BackwardBreakpointCreator.getBackwardStepTransition(inspState, type, count);
+          break;
+        default:
+          throw new RuntimeException("Unsupported " + type.getClass().getSimpleName() + " entry " + type);
+      }
+      return new Target(bbc, null);
+    } catch (JPFInspectorGenericErrorException e) {
+      return new Target(null, e.getMessage());
+    }
+  }
+}
@@ -25,10 +25,14 @@ import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanInterface;
 import gov.nasa.jpf.inspector.server.expression.ExpressionParser;
 import gov.nasa.jpf.inspector.server.expression.ExpressionParserInterface;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointAssert;
 import gov.nasa.jpf.inspector.server.jpf.InspectorListener;
 import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
 import gov.nasa.jpf.inspector.server.jpf.StopHolder;
+import gov.nasa.jpf.inspector.server.pathanalysis.PathTraceFile;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
+import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.Step;
 import gov.nasa.jpf.vm.Transition;
@@ -47,9 +51,44 @@ public class BreakpointHandler implements BreakPointManagerInterface {
    * The key is the breakpoint ID.
    * The value is the actual breakpoint.
    *
-   * This object also acts as the mutex monitor for synchronizing access between the command thread and the JPF thread.
+   * This object also acts as the mutex monitor for modifications of the set of breakpoints. The JPF thread
+   * does not read this map, it uses {@link #snapshot} instead.
    */
   private final Map<Integer, InternalBreakpointHolder> breakpoints;
+  /**
+   * Immutable view of {@link #breakpoints} used by the JPF thread, so that it does not need to acquire any monitor
+   * when it checks breakpoints. A new snapshot is published by {@link #publishSnapshot()} whenever a breakpoint
+   * is added, modified or removed.
+   */
+  private volatile BreakpointSnapshot snapshot;
+  /**
+   * The last snapshot for which the JPF thread assigned hit counter slots. Only accessed from the JPF thread.
+   */
+  private BreakpointSnapshot countedSnapshot;
+  /**
+   * Hit counts of all breakpoints. Only modified by the JPF thread.
+   */
+  private final BreakpointHitCounters hitCounters;
+  /**
+   * Breakpoints that cannot trigger any action on the current path and are thus not evaluated,
+   * see {@link InternalBreakpointHolder#canBeParked()}. Only accessed from the JPF thread.
+   */
+  private final List<InternalBreakpointHolder> parkedBreakpoints = new ArrayList<>();
+  /**
+   * Like {@link BreakpointSnapshot#byListenerMethod}, but without parked breakpoints. Rebuilt by
+   * {@link #getActiveBreakpoints(ListenerMethod)} when {@link #activeBreakpointsOutdated} is set.
+   * Only accessed from the JPF thread.
+   */
+  private InternalBreakpointHolder[][] activeBreakpoints;
+  private boolean activeBreakpointsOutdated = true;
+  /**
+   * Whether breakpoints that cannot trigger should be parked. Their hit counts are then not updated.
+   */
+  private boolean parkDeadBreakpoints = false;
+  /**
+   * Writes hits of tracing breakpoints to the trace file.
+   */
+  private final TracepointSink tracepointSink;
   /**
    * Indicates whether execution should be stopped before the next instruction is executed. This field is set by
    * {@link #checkBreakpoints(InspectorState)} and reset when the execution stops.
@@ -58,8 +97,10 @@ public class BreakpointHandler implements BreakPointManagerInterface {
    */
   private boolean breakExecutionBeforeNextInstruction = false;
   private boolean rememberTheNextBreakpointToBreakExecution = false;
-
-  private final Stack<BreakpointsMemento> bpMementos;
+  /**
+   * ID of the first user breakpoint that hit since the last break. Only accessed from the JPF thread.
+   */
+  private int hitBreakpointId = PathTraceFile.NONE;
 
   /**
    * The Inspector server.
@@ -73,33 +114,39 @@ public class BreakpointHandler implements BreakPointManagerInterface {
    * Used to parse hit condition expressions from clients
    */
   private final ExpressionParserInterface expParser;
-  /**
-   * Memento which holds states of breakpoints at the start of the transition
-   */
-  private BreakpointsMemento transitionStartMemento;
 
   public BreakpointHandler(JPFInspector inspector, InspectorCallbacks serverCallbacks, StopHolder stopHolder) {
     this.breakpoints = new TreeMap<>();
+    this.hitCounters = new BreakpointHitCounters();
+    this.tracepointSink = new TracepointSink(serverCallbacks);
+    this.countedSnapshot = new BreakpointSnapshot(Collections.<InternalBreakpointHolder>emptyList());
+    this.snapshot = countedSnapshot;
 
-    this.bpMementos = new Stack<>();
     this.inspector = inspector;
     this.serverCallbacks = serverCallbacks;
     this.stopHolder = stopHolder;
     this.expParser = new ExpressionParser(inspector);
-    this.transitionStartMemento = null;
   }
 
   /**
    * New JPF is connected to the Inspector
    */
   public void newJPF () {
+    tracepointSink.close();
     // Set initial state for all breakpoints
-    for (InternalBreakpointHolder bp : breakpoints.values()) {
-      bp.setPathCounterFromMemento(null);
-    }
-    bpMementos.clear();
+    hitCounters.resetPathHitCounts();
+    parkDeadBreakpoints = InspectorConfiguration.getInstance().shouldParkDeadBreakpoints();
+    reactivateAllParkedBreakpoints();
     breakExecutionBeforeNextInstruction = false;
     rememberTheNextBreakpointToBreakExecution = false;
+    hitBreakpointId = PathTraceFile.NONE;
+  }
+
+  /**
+   * The connected JPF has finished. Writes the remaining hits of tracing breakpoints and closes the trace file.
+   */
+  public void jpfFinished () {
+    tracepointSink.close();
   }
 
   /**
@@ -175,10 +222,12 @@ public class BreakpointHandler implements BreakPointManagerInterface {
         }
       }
       if (ibp == null) {
-        ibp = new InternalBreakpointHolder(newBP.getBPID(), serverCallbacks, !hidden, firstHit);
+        ibp = new InternalBreakpointHolder(newBP.getBPID(), serverCallbacks, hitCounters, tracepointSink, !hidden,
+                                           firstHit);
       }
       ibp.modifyBPSettings(newBP, newBPExpression);
       breakpoints.put(ibp.getBPID(), ibp);
+      publishSnapshot();
       // Check for error
       if (newBP.getBPExpression() != null) {
         if (!newBP.getBPExpression().trim().isEmpty()) {
@@ -208,12 +257,14 @@ public class BreakpointHandler implements BreakPointManagerInterface {
         iah = (InternalAssertHolder) ibp;
       }
       if (iah == null) {
-        iah = new InternalAssertHolder(newAssert.getBPID(), serverCallbacks, newAssert.getPosition(), newAssert.getCondition());
+        iah = new InternalAssertHolder(newAssert.getBPID(), serverCallbacks, hitCounters, tracepointSink,
+                                       newAssert.getPosition(), newAssert.getCondition());
       }
 
       iah.modifyAssertSettings(newAssert, newBPExpression);
 
       breakpoints.put(iah.getBPID(), iah);
+      publishSnapshot();
 
       // Check for error
       if (newAssert.getBPExpression() != null) {
@@ -244,6 +295,9 @@ public class BreakpointHandler implements BreakPointManagerInterface {
   public boolean deleteBreakpoint(int bpID) {
     synchronized (breakpoints) {
       InternalBreakpointHolder removedBP = breakpoints.remove(bpID);
+      if (removedBP != null) {
+        publishSnapshot();
+      }
       return removedBP != null;
     }
   }
@@ -253,6 +307,7 @@ public class BreakpointHandler implements BreakPointManagerInterface {
     synchronized (breakpoints) {
       if (breakpoints.containsKey(breakpointId)) {
         breakpoints.get(breakpointId).breakpointState = newState;
+        publishSnapshot(); // A parked breakpoint may have to be evaluated again
         return true;
       } else {
         return false;
@@ -262,29 +317,40 @@ public class BreakpointHandler implements BreakPointManagerInterface {
 
   /**
    * Checks whether any breakpoints were hit by the last step and therefore execution should be suspended.
+   * Only breakpoints whose hit condition may trigger during the current listener method are evaluated.
+   * Breakpoints that cannot trigger any action on the current path are parked instead of evaluated.
+   *
    * @param inspState Common state of the Inspector and SuT
    *
-   * Note: Executed by the JPF thread.
+   * Note: Executed by the JPF thread. No monitor is acquired unless a breakpoint hits.
    */
   public void checkBreakpoints (InspectorState inspState) {
     boolean bpHit = false;
     boolean wasAtLeastOneNonInternal = false;
-    synchronized (breakpoints) {
-      for (InternalBreakpointHolder bp : breakpoints.values()) {
-        boolean hit = bp.evaluateBreakpoint(inspState);
-        if (hit && bp.isUserBreakpoint()) {
-          wasAtLeastOneNonInternal = true;
-        }
-        bpHit |= hit;
+    BreakpointSnapshot currentSnapshot = getSnapshotForJPFThread();
+    for (InternalBreakpointHolder bp : getActiveBreakpoints(inspState.getListenerMethod())) {
+      if (parkDeadBreakpoints && bp.canBeParked()) {
+        bp.setParked(true);
+        parkedBreakpoints.add(bp);
+        activeBreakpointsOutdated = true;
+        continue;
       }
-
-      if (bpHit) {
-        removeSingleHitBreakpoints();
+      boolean hit = bp.evaluateBreakpoint(inspState);
+      if (hit && bp.isUserBreakpoint()) {
+        if (!wasAtLeastOneNonInternal && !rememberTheNextBreakpointToBreakExecution) {
+          hitBreakpointId = bp.getBPID();
+        }
+        wasAtLeastOneNonInternal = true;
       }
+      bpHit |= hit;
     }
 
     if (bpHit) {
+      if (currentSnapshot.containsSingleHitBreakpoints) {
+        removeSingleHitBreakpoints();
+      }
       breakExecutionBeforeNextInstruction = true;
+      requireInstructionEvents(); // The break happens before the next instruction
       if (wasAtLeastOneNonInternal) {
         this.rememberTheNextBreakpointToBreakExecution = true;
       }
@@ -303,15 +369,13 @@ public class BreakpointHandler implements BreakPointManagerInterface {
    *  Note: Executed by the JPF thread and only during a backstep.
    */
   public boolean checkBreakpoint (InspectorState inspState, int bpID) {
-    boolean bpHit;
-    synchronized (breakpoints) {
-      InternalBreakpointHolder bp = breakpoints.get(bpID);
-      assert bp != null : "Internal error - unknown Breakpoint ID";
-      bpHit = bp.evaluateBreakpoint(inspState);
+    BreakpointSnapshot currentSnapshot = getSnapshotForJPFThread();
+    InternalBreakpointHolder bp = currentSnapshot.get(bpID);
+    assert bp != null : "Internal error - unknown Breakpoint ID";
+    boolean bpHit = bp.evaluateBreakpoint(inspState);
 
-      if (bpHit) {
-        removeSingleHitBreakpoints();
-      }
+    if (bpHit && currentSnapshot.containsSingleHitBreakpoints) {
+      removeSingleHitBreakpoints();
     }
 
     return bpHit;
@@ -323,13 +387,156 @@ public class BreakpointHandler implements BreakPointManagerInterface {
    */
   private void removeSingleHitBreakpoints () {
     synchronized (breakpoints) {
+      boolean removedAny = false;
       Iterator<Integer> it = breakpoints.keySet().iterator() ;
       while (it.hasNext()) {
         InternalBreakpointHolder bp = breakpoints.get(it.next());
         if (bp.isSingleHitBP()) {
           it.remove();
+          removedAny = true;
+        }
+      }
+      if (removedAny) {
+        publishSnapshot();
+      }
+    }
+  }
+
+  /**
+   * Publishes a new {@link #snapshot} built from the current set of breakpoints.
+   * Must be called whenever a breakpoint is added, removed, or its hit condition changes.
+   * Synchronized by "breakpoints".
+   */
+  private void publishSnapshot () {
+    synchronized (breakpoints) {
+      snapshot = new BreakpointSnapshot(breakpoints.values());
+    }
+    requireInstructionEvents();
+  }
+
+  /**
+   * Makes sure that the JPF thread receives instruction events, even if it is in free run. Breakpoint changes and
+   * scheduled breaks may need them. If they turn out not to be needed, free run resumes at the next transition boundary.
+   */
+  private void requireInstructionEvents () {
+    InspectorListener listener = inspector.getInspectorListener();
+    if (listener != null) {
+      listener.requireInstructionEvents();
+    }
+  }
+
+  /**
+   * Indicates whether any breakpoint needs to be notified about executed instructions or whether a break is scheduled
+   * before the next instruction. If neither is the case, the {@link InspectorListener} may skip instruction events.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  public boolean needsInstructionEvents () {
+    getSnapshotForJPFThread();
+    return breakExecutionBeforeNextInstruction ||
+           getActiveBreakpoints(ListenerMethod.LM_EXECUTE_INSTRUCTION).length > 0 ||
+           getActiveBreakpoints(ListenerMethod.LM_INSTRUCTION_EXECUTED).length > 0;
+  }
+
+  /**
+   * Gets the breakpoints that should be evaluated during the listener method, i.e. those that are not parked.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private InternalBreakpointHolder[] getActiveBreakpoints (ListenerMethod listenerMethod) {
+    if (activeBreakpointsOutdated) {
+      InternalBreakpointHolder[][] all = countedSnapshot.byListenerMethod;
+      InternalBreakpointHolder[][] active = new InternalBreakpointHolder[all.length][];
+      for (int i = 0; i < all.length; i++) {
+        if (parkedBreakpoints.isEmpty()) {
+          active[i] = all[i];
+          continue;
+        }
+        List<InternalBreakpointHolder> notParked = new ArrayList<>(all[i].length);
+        for (InternalBreakpointHolder bp : all[i]) {
+          if (!bp.isParked()) {
+            notParked.add(bp);
+          }
+        }
+        active[i] = notParked.toArray(new InternalBreakpointHolder[notParked.size()]);
+      }
+      activeBreakpoints = active;
+      activeBreakpointsOutdated = false;
+    }
+    return activeBreakpoints[listenerMethod.ordinal()];
+  }
+
+  /**
+   * Returns parked breakpoints that may trigger again to evaluation. Called after a backtrack lowered path hit counts.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private void reactivateParkedBreakpoints () {
+    Iterator<InternalBreakpointHolder> it = parkedBreakpoints.iterator();
+    while (it.hasNext()) {
+      InternalBreakpointHolder bp = it.next();
+      if (!bp.canBeParked()) {
+        bp.setParked(false);
+        it.remove();
+        activeBreakpointsOutdated = true;
+      }
+    }
+  }
+
+  /**
+   * Returns all parked breakpoints to evaluation. They will be parked again when they are next evaluated,
+   * if they still cannot trigger.
+   */
+  private void reactivateAllParkedBreakpoints () {
+    for (InternalBreakpointHolder bp : parkedBreakpoints) {
+      bp.setParked(false);
+    }
+    parkedBreakpoints.clear();
+    activeBreakpointsOutdated = true;
+  }
+
+  /**
+   * Gets the most recently published snapshot. If it changed since the last call, hit counter slots of deleted
+   * breakpoints are released and new breakpoints are assigned a slot. Parked breakpoints are reactivated,
+   * because their settings may have changed.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private BreakpointSnapshot getSnapshotForJPFThread () {
+    BreakpointSnapshot currentSnapshot = snapshot;
+    if (currentSnapshot != countedSnapshot) {
+      Set<InternalBreakpointHolder> stillExisting = Collections.newSetFromMap(new IdentityHashMap<InternalBreakpointHolder, Boolean>());
+      Collections.addAll(stillExisting, currentSnapshot.all);
+      for (InternalBreakpointHolder bp : countedSnapshot.all) {
+        if (!stillExisting.contains(bp)) {
+          hitCounters.releaseSlot(bp.getSlot());
+          bp.setSlot(BreakpointHitCounters.NO_SLOT);
+        }
+      }
+      for (InternalBreakpointHolder bp : currentSnapshot.all) {
+        if (bp.getSlot() == BreakpointHitCounters.NO_SLOT) {
+          bp.setSlot(hitCounters.allocateSlot());
         }
       }
+      countedSnapshot = currentSnapshot;
+      reactivateAllParkedBreakpoints();
+    }
+    return currentSnapshot;
+  }
+
+  /**
+   * Notification from the {@link InspectorListener} that JPF loaded a new class. Hit conditions resolve their
+   * positions, methods and fields in the class so that evaluating them later is cheap.
+   *
+   * @param loadedClass The class that was loaded.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  public void classLoaded (ClassInfo loadedClass) {
+    // Resolves the ignored class flag now, so that breakpoint hits in this class only read it.
+    InspectorConfiguration.getInstance().isClassIgnored(loadedClass);
+    for (InternalBreakpointHolder bp : getSnapshotForJPFThread().all) {
+      bp.classLoaded(loadedClass);
     }
   }
 
@@ -341,9 +548,7 @@ public class BreakpointHandler implements BreakPointManagerInterface {
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".forwardJPFStep");
     }
-    // Save state of all BPs
-    bpMementos.add(transitionStartMemento);
-    transitionStartMemento = new BreakpointsMemento();
+    hitCounters.stateAdvanced();
   }
 
   /**
@@ -356,13 +561,22 @@ public class BreakpointHandler implements BreakPointManagerInterface {
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".backwardJPFStep");
     }
-    // Restore state of Breakpoints (hit counters
-    transitionStartMemento = bpMementos.pop();
-    if (transitionStartMemento != null) {
-      transitionStartMemento.restoreState();
+    // Restore the path hit counts
+    hitCounters.stateBacktracked();
+    if (!parkedBreakpoints.isEmpty()) {
+      reactivateParkedBreakpoints();
     }
   }
 
+  /**
+   * Schedules a break before the next instruction, as if an internal breakpoint hit. Used when the program state was
+   * moved to another instruction directly, without a breakpoint to stop there.
+   */
+  public void scheduleBreakBeforeNextInstruction () {
+    breakExecutionBeforeNextInstruction = true;
+    requireInstructionEvents();
+  }
+
   /**
    * Stops execution if such a thing was scheduled by a breakpoint triggering.
    * This method is called by the JPF thread just as an instruction is about to be executed.
@@ -386,12 +600,22 @@ public class BreakpointHandler implements BreakPointManagerInterface {
         }
         lastBreakpointHitLocation = new BreakpointHitLocation(inspState.getVM().getPathLength() - 1, upcomingInstruction, instructionsToSkip);
         rememberTheNextBreakpointToBreakExecution = false;
+        recordBreakpointHit(inspState.getVM().getPathLength() - 1, currentTransition.getStepCount());
       }
       // Now break.
       stopHolder.stopExecution(inspState); // Execution has to be stopped outside a synchronized block.
     }
   }
 
+  private void recordBreakpointHit (int transitionIndex, int stepIndex) {
+    InspectorListener listener = inspector.getInspectorListener();
+    PathTraceFile pathTrace = listener == null ? null : listener.getPathTrace();
+    if (pathTrace != null && hitBreakpointId != PathTraceFile.NONE) {
+      pathTrace.breakpointHit(transitionIndex, stepIndex, hitBreakpointId);
+    }
+    hitBreakpointId = PathTraceFile.NONE;
+  }
+
   /**
    * Gets the location of the instruction where we last stopped execution because of a breakpoint, or null
    * if such a thing has yet to pass.
@@ -402,48 +626,56 @@ public class BreakpointHandler implements BreakPointManagerInterface {
   }
 
   /**
-   * Marker interface for partial mementos which remember a single breakpoint's path hit count.
-   */
-  public interface BreakpointPartialMemento {
-  }
-
-  /**
-   * Holds traversing related state (hit counts) of all breakpoints
-   * 
+   * Immutable, array-backed view of the breakpoints at one point in time.
    */
-  private class BreakpointsMemento {
-    private final Map<Integer, BreakpointPartialMemento> partialMementos = new HashMap<>();
-
+  private static final class BreakpointSnapshot {
     /**
-     * Initializes a new memento by storing the current path hit count of all breakpoints.
+     * All breakpoints, ordered by ID.
      */
-    public BreakpointsMemento() {
-      synchronized (breakpoints) {
-        for (InternalBreakpointHolder bp : breakpoints.values()) {
-          BreakpointPartialMemento bpm = bp.createPartialMemento();
-          partialMementos.put(bp.getBPID(), bpm);
+    private final InternalBreakpointHolder[] all;
+    /**
+     * For each listener method (indexed by its ordinal), holds the breakpoints whose hit condition may trigger during
+     * that listener method, ordered by breakpoint ID. This way, a JPF event only causes the evaluation of breakpoints
+     * that care about it.
+     */
+    private final InternalBreakpointHolder[][] byListenerMethod;
+    /**
+     * Whether any of the breakpoints is single-hit. If not, there is nothing to remove when a breakpoint hits.
+     */
+    private final boolean containsSingleHitBreakpoints;
+
+    private BreakpointSnapshot (Collection<InternalBreakpointHolder> breakpoints) {
+      all = breakpoints.toArray(new InternalBreakpointHolder[breakpoints.size()]);
+
+      ListenerMethod[] listenerMethods = ListenerMethod.values();
+      byListenerMethod = new InternalBreakpointHolder[listenerMethods.length][];
+      for (ListenerMethod listenerMethod : listenerMethods) {
+        List<InternalBreakpointHolder> relevant = new ArrayList<>();
+        for (InternalBreakpointHolder bp : all) {
+          if (bp.getListenerMethods().contains(listenerMethod)) {
+            relevant.add(bp);
+          }
         }
+        byListenerMethod[listenerMethod.ordinal()] = relevant.toArray(new InternalBreakpointHolder[relevant.size()]);
       }
+
+      boolean singleHit = false;
+      for (InternalBreakpointHolder bp : all) {
+        singleHit |= bp.isSingleHitBP();
+      }
+      containsSingleHitBreakpoints = singleHit;
     }
 
     /**
-     * Restores the path hit count of all breakpoints from this memento.
-     * If this memento does not contain information about an existing breakpoint, the path hit count is reset to zero.
+     * Gets the breakpoint with the specified ID, or null if there is no such breakpoint.
      */
-    public void restoreState () {
-      BreakpointPartialMemento bpResetMemento = InternalBreakpointHolder.createInitialStateMemento();
-      synchronized (breakpoints) {
-
-        for (InternalBreakpointHolder bp : breakpoints.values()) {
-          int bpID = bp.getBPID();
-          BreakpointPartialMemento bpm = partialMementos.get(bpID);
-          if (bpm == null) {
-            // We backtrack before place where memento has been defined -> reset the counts
-            bpm = bpResetMemento;
-          }
-          bp.setPathCounterFromMemento(bpm);
+    private InternalBreakpointHolder get (int bpID) {
+      for (InternalBreakpointHolder bp : all) {
+        if (bp.getBPID() == bpID) {
+          return bp;
         }
       }
+      return null;
     }
   }
 
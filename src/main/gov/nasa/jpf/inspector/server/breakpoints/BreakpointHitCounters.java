@@ -0,0 +1,208 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.breakpoints;
+
+import java.util.Arrays;
+
+/**
+ * Holds the hit counts of all breakpoints. Each breakpoint is assigned a dense slot number which indexes
+ * the counter arrays.
+ *
+ * Path hit counts must be restored when JPF backtracks. Instead of saving all counts at each transition, this class
+ * keeps a journal of the path hit counts that changed: the first change of a counter in a transition appends
+ * the slot and the previous count to the journal. Backtracking undoes the journal entries of the transition
+ * in reverse order. Memory is thus proportional to the number of counters changed along the current path,
+ * rather than to the search depth times the number of breakpoints.
+ *
+ * Only the JPF thread modifies this structure (including slot allocation), so it needs no locking.
+ * Other threads may read the counts to report breakpoint status; such reads may be slightly out of date.
+ */
+final class BreakpointHitCounters {
+
+  /**
+   * Slot number of a breakpoint that was not yet seen by the JPF thread.
+   */
+  static final int NO_SLOT = -1;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Hit counts on the current path (restored on backtrack), indexed by slot.
+   */
+  private volatile int[] pathHitCounts = new int[INITIAL_CAPACITY];
+  /**
+   * Hit counts since the breakpoint was created, indexed by slot.
+   */
+  private volatile int[] totalHitCounts = new int[INITIAL_CAPACITY];
+
+  /**
+   * For each slot, the number of the transition in which the path hit count was last written to the journal.
+   */
+  private int[] journaledInTransition = new int[INITIAL_CAPACITY];
+  /**
+   * Number of the current transition. Changed whenever a transition starts, either forward or after a backtrack,
+   * so that the first change of each counter in the transition is journaled.
+   */
+  private int currentTransition = 1;
+
+  /**
+   * The journal: slots whose path hit count changed and their counts before the change.
+   */
+  private int[] journalSlots = new int[INITIAL_CAPACITY];
+  private int[] journalCounts = new int[INITIAL_CAPACITY];
+  private int journalLength = 0;
+
+  /**
+   * Journal length at the start of the current transition.
+   */
+  private int transitionStart = 0;
+  /**
+   * Journal lengths at the start of the transitions on the current path, used as a stack.
+   */
+  private int[] transitionStarts = new int[INITIAL_CAPACITY];
+  private int transitionDepth = 0;
+
+  /**
+   * Slots released by deleted breakpoints, used as a stack.
+   */
+  private int[] freeSlots = new int[INITIAL_CAPACITY];
+  private int freeSlotsCount = 0;
+  /**
+   * Number of slots ever handed out. Slots above this number were never used.
+   */
+  private int usedSlots = 0;
+
+  /**
+   * Assigns a slot to a new breakpoint. Both its counters start at zero.
+   *
+   * @return The slot number.
+   */
+  int allocateSlot () {
+    int slot;
+    if (freeSlotsCount > 0) {
+      slot = freeSlots[--freeSlotsCount];
+    } else {
+      slot = usedSlots++;
+      if (slot >= pathHitCounts.length) {
+        int newCapacity = pathHitCounts.length * 2;
+        pathHitCounts = Arrays.copyOf(pathHitCounts, newCapacity);
+        totalHitCounts = Arrays.copyOf(totalHitCounts, newCapacity);
+        journaledInTransition = Arrays.copyOf(journaledInTransition, newCapacity);
+      }
+    }
+    pathHitCounts[slot] = 0;
+    totalHitCounts[slot] = 0;
+    journaledInTransition[slot] = 0;
+    return slot;
+  }
+
+  /**
+   * Returns the slot of a deleted breakpoint so that it may be reused. Journal entries of the slot are dropped,
+   * so that backtracking does not restore the count of the deleted breakpoint into the next user of the slot.
+   */
+  void releaseSlot (int slot) {
+    assert slot != NO_SLOT;
+    for (int i = 0; i < journalLength; i++) {
+      if (journalSlots[i] == slot) {
+        journalSlots[i] = NO_SLOT;
+      }
+    }
+    if (freeSlotsCount == freeSlots.length) {
+      freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+    }
+    freeSlots[freeSlotsCount++] = slot;
+  }
+
+  int getPathHitCount (int slot) {
+    int[] counts = pathHitCounts;
+    return (slot == NO_SLOT || slot >= counts.length) ? 0 : counts[slot];
+  }
+
+  int getTotalHitCount (int slot) {
+    int[] counts = totalHitCounts;
+    return (slot == NO_SLOT || slot >= counts.length) ? 0 : counts[slot];
+  }
+
+  /**
+   * Increments both the path and the total hit count of the breakpoint in the slot.
+   */
+  void recordHit (int slot) {
+    int[] counts = pathHitCounts;
+    if (journaledInTransition[slot] != currentTransition) {
+      journaledInTransition[slot] = currentTransition;
+      appendToJournal(slot, counts[slot]);
+    }
+    counts[slot]++;
+    totalHitCounts[slot]++;
+  }
+
+  private void appendToJournal (int slot, int previousCount) {
+    if (journalLength == journalSlots.length) {
+      journalSlots = Arrays.copyOf(journalSlots, journalLength * 2);
+      journalCounts = Arrays.copyOf(journalCounts, journalLength * 2);
+    }
+    journalSlots[journalLength] = slot;
+    journalCounts[journalLength] = previousCount;
+    journalLength++;
+  }
+
+  /**
+   * JPF advanced to a new state and a new transition starts. Changes from now on are undone by the matching
+   * {@link #stateBacktracked()}.
+   */
+  void stateAdvanced () {
+    if (transitionDepth == transitionStarts.length) {
+      transitionStarts = Arrays.copyOf(transitionStarts, transitionDepth * 2);
+    }
+    transitionStarts[transitionDepth++] = transitionStart;
+    transitionStart = journalLength;
+    currentTransition++;
+  }
+
+  /**
+   * JPF backtracked to the previous state. Restores the path hit counts to what they were when JPF advanced
+   * to the state the last time. Takes time proportional to the number of counters changed since then.
+   */
+  void stateBacktracked () {
+    if (transitionDepth == 0) {
+      return;
+    }
+    int restoreTo = transitionStarts[--transitionDepth];
+    int[] counts = pathHitCounts;
+    for (int i = journalLength - 1; i >= restoreTo; i--) {
+      int slot = journalSlots[i];
+      if (slot != NO_SLOT) {
+        counts[slot] = journalCounts[i];
+      }
+    }
+    journalLength = restoreTo;
+    transitionStart = restoreTo;
+    currentTransition++;
+  }
+
+  /**
+   * Sets the path hit count of all breakpoints to zero and clears the journal. Used when a new JPF instance
+   * is connected.
+   */
+  void resetPathHitCounts () {
+    Arrays.fill(pathHitCounts, 0);
+    journalLength = 0;
+    transitionStart = 0;
+    transitionDepth = 0;
+    currentTransition++;
+  }
+}
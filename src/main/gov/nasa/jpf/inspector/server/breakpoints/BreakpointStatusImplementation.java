@@ -43,10 +43,12 @@ public class BreakpointStatusImplementation implements BreakpointStatus {
   private Integer upperBound = null;
 
   private String details = null;
+  private String evaluationStatistics = null;
 
   // Common constructor
   public BreakpointStatusImplementation(int bpID, String bpName, int bpHitCounter, int bpHitCounterTotal, Integer lowerBound, Integer upperBound,
-                                        BreakpointState bpState, String bpExpression, String bpExpressionNormalized, String details) {
+                                        BreakpointState bpState, String bpExpression, String bpExpressionNormalized, String details,
+                                        String evaluationStatistics) {
     this.bpID = bpID;
     this.bpName = bpName;
     this.bpHitCounter = bpHitCounter;
@@ -57,6 +59,7 @@ public class BreakpointStatusImplementation implements BreakpointStatus {
     this.upperBound = upperBound;
     this.lowerBound = lowerBound;
     this.details = details;
+    this.evaluationStatistics = evaluationStatistics;
   }
 
   @Override
@@ -110,4 +113,9 @@ public class BreakpointStatusImplementation implements BreakpointStatus {
     return bpExpressionNormalized;
   }
 
+  @Override
+  public String getEvaluationStatistics () {
+    return evaluationStatistics;
+  }
+
 }
@@ -26,8 +26,10 @@ import gov.nasa.jpf.inspector.server.expression.ExpressionBoolean;
 import gov.nasa.jpf.inspector.server.expression.ExpressionParser;
 import gov.nasa.jpf.inspector.server.expression.ExpressionParserInterface;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointChoiceGenerator;
 import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointInstructionType;
+import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointRepeatedStep;
 import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointSingleStep;
 import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointSingleStep.LocationTypes;
 import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointStepOut;
@@ -35,11 +37,15 @@ import gov.nasa.jpf.inspector.server.jpf.InspectorListener;
 import gov.nasa.jpf.inspector.server.jpf.InspectorListenerModeSilent;
 import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
 import gov.nasa.jpf.inspector.server.jpf.StopHolder;
+import gov.nasa.jpf.inspector.server.jpf.UndoJournal;
 import gov.nasa.jpf.inspector.server.pathanalysis.BackwardBreakpointCreator;
+import gov.nasa.jpf.inspector.server.pathanalysis.FieldWriteIndex;
 import gov.nasa.jpf.inspector.utils.Debugging;
 import gov.nasa.jpf.inspector.utils.expressions.FieldName;
 import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.VM;
 
 /**
  * Handles start and stop commands, stepping, and stopping and resuming of the SuT.
@@ -62,7 +68,7 @@ public class CommandsManager implements CommandsInterface {
    *
    * Note: The Inspector sets this variable. The JPF thread reads this variable.
    */
-  private boolean shouldTerminate;
+  private volatile boolean shouldTerminate;
 
   private final JPFInspector inspector;
   private final StopHolder stopHolder;
@@ -70,11 +76,13 @@ public class CommandsManager implements CommandsInterface {
   private final DefaultForwardTraceManager dftMgr;
   private final BreakpointHandler breakpointHandler;
   private final ExpressionParserInterface expressionParser;
+  private final BackstepTargetCache backstepTargets;
 
   public CommandsManager (JPFInspector inspector, StopHolder stopHolder, BreakpointHandler breakpointHandler,
                           InspectorCallbacks serverCallbacks,
-                          DefaultForwardTraceManager dftMgr) {
+                          DefaultForwardTraceManager dftMgr, BackstepTargetCache backstepTargets) {
     this.inspector = inspector;
+    this.backstepTargets = backstepTargets;
     this.stopHolder = stopHolder;
     this.serverCallbacks = serverCallbacks;
     this.breakpointHandler = breakpointHandler;
@@ -95,6 +103,17 @@ public class CommandsManager implements CommandsInterface {
   @Override
   public void requestTermination() {
     shouldTerminate = true;
+    InspectorListener listener = inspector.getInspectorListener();
+    if (listener != null) {
+      listener.requireInstructionEvents(); // Termination is checked after each instruction
+    }
+  }
+
+  /**
+   * Indicates whether the user requested that the search be terminated.
+   */
+  public boolean isTerminationRequested() {
+    return shouldTerminate;
   }
 
   @Override
@@ -148,33 +167,25 @@ public class CommandsManager implements CommandsInterface {
   public void backstepTransition(StepType transitionKind, int count) throws JPFInspectorGenericErrorException {
     stopHolder.waitUntilStopped();
     InspectorState inspState = stopHolder.getInspectorState();
-    BackwardBreakpointCreator backwardBreakpointCreator = BackwardBreakpointCreator.getBackwardStepTransition(inspState,
-                                                                                                              transitionKind,
-                                                                                                              count);
+    BackwardBreakpointCreator backwardBreakpointCreator = backstepTargets.takeTarget(inspState, transitionKind, count);
     assert backwardBreakpointCreator != null;
     createBackwardsBreakpointAndResumeExecution(inspState, backwardBreakpointCreator);
   }
 
   @Override
-  public void backstep(StepType type) throws JPFInspectorGenericErrorException {
+  public void backstep(StepType type, int count) throws JPFInspectorGenericErrorException {
+    assert count >= 1;
     stopHolder.waitUntilStopped();
 
     // Instantiate the creator and discover the instruction to backtrack to
     InspectorState inspState = stopHolder.getInspectorState();
-    BackwardBreakpointCreator bbc;
-    if (type == StepType.BACK_BREAKPOINT_HIT) {
-      bbc = BackwardBreakpointCreator.getBackBreakpointHit(breakpointHandler.getLastBreakpointHitLocation(), inspState);
-    } else if (type == StepType.ST_INSTRUCTION) {
-      bbc = BackwardBreakpointCreator.getBackwardStepInstruction(inspState);
-    } else if (type == StepType.ST_LINE) {
-      bbc = BackwardBreakpointCreator.getBackwardStepLine(inspState);
-    } else if (type == StepType.ST_STEP_IN) {
-      bbc = BackwardBreakpointCreator.getBackwardStepIn(inspState);
-    } else if (type == StepType.ST_STEP_OUT) {
-      bbc = BackwardBreakpointCreator.getBackwardStepOut(inspState);
-    } else {
-      throw new RuntimeException("Unsupported " + type.getClass().getSimpleName() + " entry " + type);
+    if (type == StepType.ST_INSTRUCTION && count == 1) {
+      backstepTargets.waitUntilPrecomputed(); // Undoing changes the state that the targets are computed from
+      if (tryUndoLastInstruction(inspState)) {
+        return;
+      }
     }
+    BackwardBreakpointCreator bbc = backstepTargets.takeTarget(inspState, type, count);
     if (bbc == null) {
       throw new JPFInspectorGenericErrorException(
               "Backwards step not possible (there is no appropriate step left for this thread to backtrack to).");
@@ -185,6 +196,44 @@ public class CommandsManager implements CommandsInterface {
 
   }
 
+  /**
+   * Undoes the last instruction using the {@link UndoJournal}, if it is enabled and has the instruction, and resumes
+   * execution so that JPF stops again just before the undone instruction. If it cannot, the log says why.
+   *
+   * @param inspState The current Inspector state.
+   * @return False if the instruction cannot be undone this way and the backward step must replay the transition.
+   */
+  private boolean tryUndoLastInstruction(InspectorState inspState) {
+    InspectorListener listener = inspector.getInspectorListener();
+    UndoJournal undoJournal = listener == null ? null : listener.getUndoJournal();
+    if (undoJournal == null) {
+      return false;
+    }
+    if (inspState.getListenerMethod() != ListenerMethod.LM_EXECUTE_INSTRUCTION) {
+      Debugging.getLogger().info("The backward step replays the transition, because JPF is not stopped before " +
+                                         "an instruction.");
+      return false;
+    }
+    Instruction undone;
+    stopHolder.getVMLock().lock();
+    try {
+      ThreadInfo currentThread = inspState.getVM().getCurrentThread();
+      if (!undoJournal.canUndo(currentThread)) {
+        Debugging.getLogger().info("The backward step replays the transition, because the last instruction cannot " +
+                                           "be undone directly: " + undoJournal.whyCannotUndo(currentThread) + ".");
+        return false;
+      }
+      undone = undoJournal.undo(currentThread, listener.getInspectorState());
+    } finally {
+      stopHolder.getVMLock().unlock();
+    }
+    Debugging.getLogger().info("Undid " + undone + " without replaying the transition.");
+
+    breakpointHandler.scheduleBreakBeforeNextInstruction();
+    stopHolder.resumeExecution();
+    return true;
+  }
+
   /**
    * This is a dark-magic method that does, roughly the following:
    *
@@ -213,7 +262,8 @@ public class CommandsManager implements CommandsInterface {
     InspectorListenerModeSilent listenerSilentMode =
             new InspectorListenerModeSilent(inspector, this, breakpointHandler,
                                             bbc.getTransitionsToBacktrack(),
-                                            bpID, dftMgr, stopHolder);
+                                            bpID, dftMgr, stopHolder, listener.getInspectorState(),
+                                            listener.getCheckpoints());
     listener.pushMode(listenerSilentMode);
 
     Search search = inspState.getSearch();
@@ -248,12 +298,31 @@ public class CommandsManager implements CommandsInterface {
 
 
   @Override
-  public void backFieldAccessStep(String fieldNameExpression) throws JPFInspectorGenericErrorException {
+  public boolean isBackstepPossible(StepType type) {
+    InspectorState inspState = stopHolder.getInspectorState();
+    if (inspState == null || !stopHolder.isStopped()) {
+      return false;
+    }
+    return backstepTargets.hasTarget(inspState, type);
+  }
+
+  @Override
+  public void backFieldAccessStep(String fieldNameExpression, int objectRef) throws JPFInspectorGenericErrorException {
     try {
       FieldName fieldName = expressionParser.getFieldName(fieldNameExpression);
 
-      BackwardBreakpointCreator bbc = BackwardBreakpointCreator.getBackwardFieldAccess(fieldName,
-                                                                                       stopHolder.getInspectorState());
+      InspectorListener listener = inspector.getInspectorListener();
+      FieldWriteIndex fieldWrites = listener == null ? null : listener.getFieldWrites();
+      UndoJournal undoJournal = listener == null ? null : listener.getUndoJournal();
+      int undoneSteps = undoJournal == null ? 0 : undoJournal.getUndoneInstructionCount();
+      BackwardBreakpointCreator bbc;
+      stopHolder.getVMLock().lock();
+      try {
+        bbc = BackwardBreakpointCreator.getBackwardFieldAccess(fieldName, objectRef, stopHolder.getInspectorState(),
+                                                               fieldWrites, undoneSteps);
+      } finally {
+        stopHolder.getVMLock().unlock();
+      }
 
       if (bbc == null) {
         throw new JPFInspectorGenericErrorException(
@@ -267,13 +336,37 @@ public class CommandsManager implements CommandsInterface {
   }
 
   @Override
-  public void forwardStep (StepType type) throws JPFInspectorGenericErrorException {
+  public void forwardStep (final StepType type, int count) throws JPFInspectorGenericErrorException {
+    assert count >= 1;
     stopHolder.waitUntilStopped();
 
     BreakpointCreationExpression newBP = new BreakpointCreationExpression();
     newBP.setBounds(null, null, "<=", 1);
     newBP.setState(BreakpointState.ENABLED);
 
+    ExpressionBoolean bpExpression;
+    if (count == 1) {
+      bpExpression = createForwardStepExpression(type, stopHolder.getVM());
+    } else {
+      // A single breakpoint that hits where the last step would stop, so that JPF stops only once
+      bpExpression = new ExpressionBreakpointRepeatedStep(new ExpressionBreakpointRepeatedStep.StepFactory() {
+        @Override
+        public ExpressionBoolean createStep(VM vm) {
+          return createForwardStepExpression(type, vm);
+        }
+      }, stopHolder.getVM(), count);
+    }
+
+    assert (bpExpression != null);
+    breakpointHandler.createInternalBreakpoint(newBP, bpExpression);
+
+    stopHolder.resumeExecution();
+  }
+
+  /**
+   * Creates the hit condition of a single forward step that starts at the current position of the virtual machine.
+   */
+  private ExpressionBoolean createForwardStepExpression (StepType type, VM vm) {
     ExpressionBoolean bpExpression;
     if (type == StepType.ST_TRANSITION_DATA) {
       bpExpression = new ExpressionBreakpointChoiceGenerator(BreakPointModes.BP_MODE_CHOICE_DATA);
@@ -284,20 +377,16 @@ public class CommandsManager implements CommandsInterface {
     } else if (type == StepType.ST_INSTRUCTION) {
       bpExpression = new ExpressionBreakpointInstructionType(InstructionType.ANY);
     } else if (type == StepType.ST_LINE) {
-      bpExpression = new ExpressionBreakpointSingleStep(inspector, stopHolder.getVM(), LocationTypes.LT_POSITION_LEAVED_STEP_OVER);
+      bpExpression = new ExpressionBreakpointSingleStep(inspector, vm, LocationTypes.LT_POSITION_LEAVED_STEP_OVER);
     } else if (type == StepType.ST_STEP_IN) {
-      bpExpression = new ExpressionBreakpointSingleStep(inspector, stopHolder.getVM(), LocationTypes.LT_POSITION_LEAVED_STEP_IN);
+      bpExpression = new ExpressionBreakpointSingleStep(inspector, vm, LocationTypes.LT_POSITION_LEAVED_STEP_IN);
     } else if (type == StepType.ST_STEP_OUT) {
-      ThreadInfo ti = stopHolder.getVM().getCurrentThread();
+      ThreadInfo ti = vm.getCurrentThread();
       bpExpression = ExpressionBreakpointStepOut.getStepOutToCaller(ti);
     } else {
       throw new RuntimeException("Unsupported " + type.getClass().getSimpleName() + " entry " + type);
     }
-
-    assert (bpExpression != null);
-    breakpointHandler.createInternalBreakpoint(newBP, bpExpression);
-
-    stopHolder.resumeExecution();
+    return bpExpression;
   }
 
   /**
@@ -18,6 +18,8 @@ package gov.nasa.jpf.inspector.server.breakpoints;
 
 import gov.nasa.jpf.inspector.interfaces.ChoiceGeneratorsInterface;
 import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
+import gov.nasa.jpf.inspector.server.jpf.StateHashTrace;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
 import gov.nasa.jpf.search.Search;
 import gov.nasa.jpf.vm.ChoiceGenerator;
 import gov.nasa.jpf.vm.Instruction;
@@ -35,6 +37,10 @@ import java.util.Map.Entry;
  * started.
  * 
  * It holds stack with state of CG and stateID. In forward steps it checks whether "correct/expected" are reached, if not user is notified.
+ *
+ * If enabled, it also keeps the hashes of the states on the current path ({@link StateHashTrace}). The state reached by
+ * each replayed transition is compared with the recorded one, and the replay is aborted at the first transition that
+ * ends in a different state.
  * 
  * @author Alf
  * 
@@ -47,7 +53,11 @@ public class DefaultForwardTraceManager {
 
   /**
    * Holds "copy" of state of single GC
-   * 
+   *
+   * The set of choices is compared by a 128-bit fingerprint, computed at most once per memento and only if the two
+   * mementos do not describe the same choice generator instance. Different fingerprints mean different choices; if the
+   * fingerprints match, the choices themselves are compared by equals, because their hash codes may collide.
+   *
    * Note: Probably not works for CG<T> where T does not override default equals method (CG<Invocations>)
    */
   private static class CGStateMemento {
@@ -56,8 +66,25 @@ public class DefaultForwardTraceManager {
     private final int threadID;
 
     private final Object selectedChoice;
-    private final Object[] choices;
-    private final boolean choicesSorted;
+    /**
+     * Processed number of choices of the CG when the memento was created, i.e. the position of the selected choice.
+     */
+    private final int processedChoices;
+    private final int totalChoices;
+    /**
+     * The CG itself. Replays usually advance the same CG instance, whose choice set is the same by construction.
+     */
+    private final ChoiceGenerator<?> cg;
+
+    // Order-independent fingerprint of the set of choices, computed lazily.
+    private boolean fingerprintComputed = false;
+    private long fingerprintHigh;
+    private long fingerprintLow;
+    /**
+     * All possible choices, materialized together with the fingerprint. Sorted if the choices are comparable.
+     */
+    private Object[] choices = null;
+    private boolean choicesSorted = false;
 
     public CGStateMemento (ChoiceGenerator<?> cg) {
       assert cg != null;
@@ -67,69 +94,122 @@ public class DefaultForwardTraceManager {
       threadID = cg.getThreadInfo().getId();
 
       selectedChoice = cg.getNextChoice();
+      processedChoices = cg.getProcessedNumberOfChoices();
+      totalChoices = cg.getTotalNumberOfChoices();
+      this.cg = cg;
 
-      // Obtain all possible Choices
-      int processedChoices = cg.getProcessedNumberOfChoices();
-      cg.reset();
-      choices = new Object[cg.getTotalNumberOfChoices()];
+      if (DEBUG) {
+        computeFingerprint();
+      }
+    }
 
-      for (int i = 0; i < choices.length; i++) {
-        cg.advance();
-        choices[i] = cg.getNextChoice();
+    /**
+     * Enumerates the choices of the CG and combines them into the fingerprint. The CG state is restored afterwards.
+     */
+    private void computeFingerprint () {
+      if (fingerprintComputed) {
+        return;
       }
+      int cgOrigProcessedChoices = cg.getProcessedNumberOfChoices();
+      Object cgOrigSelectedChoice = cg.getNextChoice();
+      choices = new Object[totalChoices];
 
+      long high = 0;
+      long low = 0;
       cg.reset();
-      cg.advance(processedChoices);
+      for (int i = 0; i < totalChoices; i++) {
+        cg.advance();
+        Object choice = cg.getNextChoice();
+        long choiceHash = choice == null ? 0 : ((long) choice.getClass().getName().hashCode() << 32) ^ choice.hashCode();
+        // Sums are independent of the order of choices (to handle randomized CG)
+        high += mix(choiceHash ^ 0x9E3779B97F4A7C15L);
+        low += mix(choiceHash + 0x632BE59BD9B4E019L);
+        choices[i] = choice;
+      }
 
+      cg.reset();
+      cg.advance(cgOrigProcessedChoices);
       // CG state restored properly
-      assert (cg.getNextChoice() != null ? cg.getNextChoice().equals(selectedChoice) : selectedChoice == null);
-      // determinize choice order (to handle randomized CG)g
+      assert (cg.getNextChoice() != null ? cg.getNextChoice().equals(cgOrigSelectedChoice) : cgOrigSelectedChoice == null);
+      // determinize choice order (to handle randomized CG)
       if (Comparable.class.isAssignableFrom(cg.getChoiceType())) {
         choicesSorted = true;
         Arrays.sort(choices);
-      } else {
-        choicesSorted = false;
       }
+
+      fingerprintHigh = high;
+      fingerprintLow = low;
+      fingerprintComputed = true;
     }
 
-    public int getDefaultChoice (ChoiceGenerator<?> cg) {
-      int cgOrigProcessedChoices = cg.getProcessedNumberOfChoices();
-      Object cgOrigSelectedChoice = cg.getNextChoice();
+    /**
+     * Finalizer of the SplitMix64 generator, spreads the bits of the value over the whole long.
+     */
+    private static long mix (long value) {
+      long z = value;
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+    }
 
-      int result = ChoiceGeneratorsInterface.NO_DEFAULT_CHOICE;
-      if (selectedChoice == null) {
-        // Cannot use equals
-        if (cgOrigSelectedChoice == null) {
-          return cg.getProcessedNumberOfChoices();
-        }
+    private boolean hasSameChoices (CGStateMemento other) {
+      if (totalChoices != other.totalChoices) {
+        return false;
+      }
+      if (cg == other.cg) {
+        return true;
+      }
+      computeFingerprint();
+      other.computeFingerprint();
+      if (fingerprintHigh != other.fingerprintHigh || fingerprintLow != other.fingerprintLow) {
+        return false;
+      }
+      if (choicesSorted && other.choicesSorted) {
+        return Arrays.equals(choices, other.choices);
+      }
+      return containsAll(choices, other.choices) && containsAll(other.choices, choices);
+    }
 
-        cg.reset();
-        for (int i = 0; i < cg.getTotalNumberOfChoices(); i++) {
-          cg.advance();
-          Object choice = cg.getNextChoice();
-          if (choice == null) {
-            result = i;
+    /**
+     * Indicates whether each of the choices has a counterpart among the other choices.
+     */
+    private static boolean containsAll (Object[] choices, Object[] otherChoices) {
+      for (Object choice : choices) {
+        boolean found = false;
+        for (Object otherChoice : otherChoices) {
+          if (choice == null ? otherChoice == null : choice.equals(otherChoice)) {
+            found = true;
             break;
           }
         }
-      } else {
-        // Previously, there was a to-do item here that stated this:
-        // "ThreadInfo - pres ThreadCreate - not working - new instances + TI does not have equals"
-        // However, I have no idea what it means.
-        if (selectedChoice.equals(cgOrigSelectedChoice)) {
-          return cg.getProcessedNumberOfChoices();
+        if (!found) {
+          return false;
         }
+      }
+      return true;
+    }
 
-        cg.reset();
-        for (int i = 0; i < cg.getTotalNumberOfChoices(); i++) {
-          cg.advance();
-          Object choice = cg.getNextChoice();
-          if (selectedChoice.equals(choice)) {
-            result = i + 1;
-            break;
-          }
-        }
+    public int getDefaultChoice (ChoiceGenerator<?> cg) {
+      Object cgOrigSelectedChoice = cg.getNextChoice();
+      if (selectedChoice == null ? cgOrigSelectedChoice == null : selectedChoice.equals(cgOrigSelectedChoice)) {
+        return cg.getProcessedNumberOfChoices();
+      }
+      if (cg == this.cg) {
+        // The order of choices of a CG instance does not change
+        return processedChoices;
+      }
 
+      // A different CG instance, look for the selected choice
+      int cgOrigProcessedChoices = cg.getProcessedNumberOfChoices();
+      int result = ChoiceGeneratorsInterface.NO_DEFAULT_CHOICE;
+      cg.reset();
+      for (int i = 0; i < cg.getTotalNumberOfChoices(); i++) {
+        cg.advance();
+        Object choice = cg.getNextChoice();
+        if (selectedChoice == null ? choice == null : selectedChoice.equals(choice)) {
+          result = i + 1;
+          break;
+        }
       }
 
       // Restore CG state
@@ -138,14 +218,13 @@ public class DefaultForwardTraceManager {
       assert (cg.getNextChoice() != null ? cg.getNextChoice().equals(cgOrigSelectedChoice) : cgOrigSelectedChoice == null);
 
       return result;
-
     }
 
     @Override
     public int hashCode () {
       final int prime = 31;
       int result = 1;
-      result = prime * result + Arrays.hashCode(choices);
+      result = prime * result + totalChoices;
       result = prime * result + ((id == null) ? 0 : id.hashCode());
       result = prime * result + ((ins == null) ? 0 : ins.hashCode());
       result = prime * result + ((selectedChoice == null) ? 0 : selectedChoice.hashCode());
@@ -192,61 +271,21 @@ public class DefaultForwardTraceManager {
         return false;
       }
 
-      if (choices == null) {
-        return other.choices == null;
-      } else if (other.choices == null) {
-        return false;
-      }
-
-      if (choices.length != other.choices.length) {
-        return false;
-      }
-
-      if (choicesSorted && other.choicesSorted) {
-        return Arrays.equals(choices, other.choices);
-      } else {
-        // this.choices has counterpart in other.choices
-        for (Object choice : choices) {
-          int j;
-          for (j = 0; j < other.choices.length; j++) {
-            if (choice == null) {
-              if (other.choices[j] == null) {
-                break;
-              }
-            } else if (choice.equals(other.choices[j])) {
-              break;
-            }
-          } // other.choices cycles
-          if (j == other.choices.length) {
-            return false;
-          }
-        }
-
-        // other.choices has counterpart in this.choices
-        for (int i = 0; i < other.choices.length; i++) {
-          int j;
-          for (j = 0; j < choices.length; j++) {
-            if (other.choices[i] == null) {
-              if (choices[j] == null) {
-                break;
-              }
-            } else if (other.choices[i].equals(choices[j])) {
-              break;
-            }
-          } // other.choices cycles
-          if (j == choices.length) {
-            return false;
-          }
-        }
-      }
-      // Passed all tests
-      return true;
+      return hasSameChoices(other);
     }
 
     @Override
     public String toString () {
+      String choicesString;
+      if (choices != null) {
+        choicesString = Arrays.toString(choices);
+      } else if (fingerprintComputed) {
+        choicesString = totalChoices + " choices, fingerprint " + String.format("%016x%016x", fingerprintHigh, fingerprintLow);
+      } else {
+        choicesString = totalChoices + " choices";
+      }
       return "[threadID=" + threadID + ", id=" + id + ", ins=" + ins + (ins != null ? '(' + ins.getFilePos() + ')' : "") + ", selectedChoice=" + selectedChoice
-          + ", choices=" + Arrays.toString(choices) + "]";
+          + ", choices=" + choicesString + "]";
     }
 
   }
@@ -258,11 +297,17 @@ public class DefaultForwardTraceManager {
     private final int stateID; // State where transition terminates
     private final Map<String, CGStateMemento> cgs; // CG which where used to start the transition
     private final Instruction lastInst;
+    private final int depth; // Search depth of the state where transition terminates
+    private final boolean stateHashRecorded;
+    private final long stateHash; // Hash of the state where transition terminates, if recorded
 
-    public TransitionMemento (Transition tr) {
+    public TransitionMemento (Transition tr, int depth) {
       assert tr != null;
 
       stateID = tr.getStateId();
+      this.depth = depth;
+      stateHashRecorded = stateHashes != null && stateHashes.isRecorded(depth);
+      stateHash = stateHashRecorded ? stateHashes.get(depth) : 0;
       lastInst = tr.getLastStep().getInstruction();
 
       cgs = new HashMap<>();
@@ -346,6 +391,9 @@ public class DefaultForwardTraceManager {
       sb.append(this.getClass().getSimpleName())
               .append("[stateID=")
               .append(stateID)
+              .append(", depth=")
+              .append(depth)
+              .append(stateHashRecorded ? ", stateHash=" + StateHashTrace.format(stateHash) : "")
               .append(", lastInst=")
               .append(lastInst)
               .append(lastInst != null ? '(' + lastInst.getFilePos() + ')' : "")
@@ -374,23 +422,65 @@ public class DefaultForwardTraceManager {
   }
 
   private final LinkedList<TransitionMemento> forwardTrace = new LinkedList<>();
+  /**
+   * Hashes of the states on the current path. Null if replay checks are disabled.
+   */
+  private final StateHashTrace stateHashes;
 
   public DefaultForwardTraceManager (JPFInspector inspector) {
     this.inspector = inspector;
+    this.stateHashes = InspectorConfiguration.getInstance().isReplayCheckEnabled() ? new StateHashTrace() : null;
+  }
+
+  /**
+   * @return Gets the hashes of the states on the current path, or null if replay checks are disabled.
+   */
+  public StateHashTrace getStateHashes () {
+    return stateHashes;
   }
 
   /**
    * Pushes a new transition onto the start of the default trace.
    * 
    * @param tr Transition which will be backtracked (by backward single stepping)
+   * @param depth Search depth of the state the transition leads to.
    * 
    *        // Has to be called after forward method (to be transition completely "initialized")
    */
-  public void extendTrace (Transition tr) {
+  public void extendTrace (Transition tr, int depth) {
     if (DEBUG) {
-      inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".extendTrace(tr=" + tr + ");");
+      inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".extendTrace(tr=" + tr + ", depth=" + depth + ");");
     }
-    forwardTrace.push(new TransitionMemento(tr));
+    forwardTrace.push(new TransitionMemento(tr, depth));
+  }
+
+  /**
+   * Compares the state reached by the transition that has just completed with the state that the next transition of
+   * the default trace reached before it was backtracked.
+   *
+   * Note: Executed by the JPF thread, after the hash of the new state was recorded.
+   *
+   * @return Description of the divergence, or null if the states are the same or cannot be compared.
+   */
+  public String findStateDivergence (Search search) {
+    if (forwardTrace.isEmpty()) {
+      return null;
+    }
+    TransitionMemento expected = forwardTrace.peek();
+    int depth = search.getDepth();
+    if (!expected.stateHashRecorded || expected.depth != depth || !stateHashes.isRecorded(depth)) {
+      return null;
+    }
+    long actualHash = stateHashes.get(depth);
+    if (actualHash == expected.stateHash) {
+      return null;
+    }
+    Instruction lastInst = search.getTransition().getLastStep().getInstruction();
+    return "The replayed transition to depth " + depth + " ended at " + lastInst +
+            (lastInst != null ? " (" + lastInst.getFilePos() + ")" : "") + " in a state with hash " +
+            StateHashTrace.format(actualHash) + ", but the original transition ended at " + expected.lastInst +
+            (expected.lastInst != null ? " (" + expected.lastInst.getFilePos() + ")" : "") + " in a state with hash " +
+            StateHashTrace.format(expected.stateHash) + ".";
   }
 
   /**
@@ -424,9 +514,18 @@ public class DefaultForwardTraceManager {
     Transition tr = search.getTransition();
 
     if (forwardTrace.isEmpty() == false) {
+      String divergence = findStateDivergence(search);
+      if (divergence != null) {
+        // Abort the replay here, the following transitions could not reach the recorded states either
+        destroyTrace(false);
+        inspector.getServerCallbacks().genericError("The execution diverged from the path that was backstepped. " +
+                divergence + " The rest of the path will not be replayed.");
+        return;
+      }
+
       TransitionMemento dftTrMem = forwardTrace.poll();
 
-      TransitionMemento trMem = new TransitionMemento(tr);
+      TransitionMemento trMem = new TransitionMemento(tr, search.getDepth());
 
       if (dftTrMem.equals(trMem) == false) {
         destroyTrace(false);
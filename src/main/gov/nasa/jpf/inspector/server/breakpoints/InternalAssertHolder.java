@@ -31,8 +31,9 @@ public class InternalAssertHolder extends InternalBreakpointHolder {
   private final String position;
   private final String condition;
 
-  public InternalAssertHolder(int newID, InspectorCallbacks callbacks, String position, String condition) {
-    super(newID, callbacks, true, false);
+  public InternalAssertHolder(int newID, InspectorCallbacks callbacks, BreakpointHitCounters hitCounters,
+                              TracepointSink tracepointSink, String position, String condition) {
+    super(newID, callbacks, hitCounters, tracepointSink, true, false);
     this.position = position;
     this.condition = condition;
   }
@@ -54,6 +55,7 @@ public class InternalAssertHolder extends InternalBreakpointHolder {
     String bpExpressionNormalized = null;
     String normalizedPosition = null;
     String normalizedCondition = null;
+    String evaluationStatistics = null;
 
     if (bpExpression != null) {
       ExpressionBreakpointAssert expAssert = (ExpressionBreakpointAssert) bpExpression;
@@ -65,11 +67,12 @@ public class InternalAssertHolder extends InternalBreakpointHolder {
       bpExpressionNormalized = expAssert.getNormalizedExpression();
       normalizedPosition = expAssert.getNormalizedPosition();
       normalizedCondition = expAssert.getNormalizedCondition();
+      evaluationStatistics = expAssert.getEvaluationStatistics();
     }
 
-    return new AssertStatusImpl(bpID, bpName, bpHitCounter, bpHitCounterTotal, lowerBound, upperBound, breakpointState,
+    return new AssertStatusImpl(bpID, bpName, getPathHitCount(), getTotalHitCount(), lowerBound, upperBound, breakpointState,
                                 bpExpressionStr,
-                                bpExpressionNormalized, details, position, condition, normalizedPosition, normalizedCondition);
+                                bpExpressionNormalized, details, evaluationStatistics, position, condition, normalizedPosition, normalizedCondition);
   }
 
 }
@@ -22,13 +22,16 @@ import gov.nasa.jpf.inspector.interfaces.BreakpointState;
 import gov.nasa.jpf.inspector.interfaces.BreakpointStatus;
 import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
-import gov.nasa.jpf.inspector.server.breakpoints.BreakpointHandler.BreakpointPartialMemento;
 import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanInterface;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 import gov.nasa.jpf.inspector.utils.Debugging;
 import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
+import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.MethodInfo;
 
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,6 +65,22 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
   }
 
   private final InspectorCallbacks callbacks;
+  /**
+   * Hit counts of this breakpoint are stored in this structure, in the slot {@link #slot}.
+   */
+  private final BreakpointHitCounters hitCounters;
+  /**
+   * Index into {@link #hitCounters}, assigned by the JPF thread when it first sees this breakpoint.
+   */
+  private volatile int slot = BreakpointHitCounters.NO_SLOT;
+  /**
+   * Whether the breakpoint is currently not evaluated at all, see {@link #canBeParked()}. Only accessed by the JPF thread.
+   */
+  private boolean parked = false;
+  /**
+   * Hits are written here if this breakpoint is in the {@link BreakpointState#TRACING} state.
+   */
+  private final TracepointSink tracepointSink;
 
   /**
    * ID of the breakpoint
@@ -76,28 +95,29 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
    */
   private final boolean singleHitBreakpoint;
 
-  protected BreakpointState breakpointState = BreakpointState.ENABLED;
-  protected String bpName = "";
+  // The settings below are modified by the command thread and read by the JPF thread.
+  protected volatile BreakpointState breakpointState = BreakpointState.ENABLED;
+  protected volatile String bpName = "";
 
-  protected int bpHitCounter = 0;
-  protected int bpHitCounterTotal = 0;
+  protected volatile ExpressionBooleanInterface bpExpression = null;
+  protected volatile String bpExpressionStr = null;
 
-  protected ExpressionBooleanInterface bpExpression = null;
-  protected String bpExpressionStr = null;
-
-  protected Integer lowerBound = null;
-  protected Integer upperBound = null;
+  protected volatile Integer lowerBound = null;
+  protected volatile Integer upperBound = null;
 
   /**
    * Creates empty server breakpoint representation
    * 
    * @param newID A new, not yet used, breakpoint ID, or else -1 to generate a new one.
    * @param callbacks Callbacks client class.
+   * @param hitCounters Structure that holds the hit counts of all breakpoints.
+   * @param tracepointSink Where hits are recorded if the breakpoint is in the tracing state.
    * @param userBP This breakpoint is created by the client inspector side (should by reported to user)
    * @param sigleHitBP This breakpoint should be removed if the first breakpoint hits (this or some other BP)
    */
   @SuppressWarnings("AssignmentToMethodParameter")
-  public InternalBreakpointHolder (int newID, InspectorCallbacks callbacks, boolean userBP, boolean sigleHitBP) {
+  public InternalBreakpointHolder (int newID, InspectorCallbacks callbacks, BreakpointHitCounters hitCounters,
+                                   TracepointSink tracepointSink, boolean userBP, boolean sigleHitBP) {
     if (newID == BreakpointCreationInformation.BP_ID_NOT_DEFINED) {
       newID = getNextBpID();
     } else {
@@ -110,6 +130,8 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
 
     this.bpID = newID;
     this.callbacks = callbacks;
+    this.hitCounters = hitCounters;
+    this.tracepointSink = tracepointSink;
     this.userBP = userBP;
     this.singleHitBreakpoint = sigleHitBP;
   }
@@ -142,6 +164,63 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
     return bpID;
   }
 
+  int getSlot () {
+    return slot;
+  }
+
+  /**
+   * Note: Executed by the JPF thread.
+   */
+  void setSlot (int slot) {
+    this.slot = slot;
+  }
+
+  boolean isParked () {
+    return parked;
+  }
+
+  /**
+   * Note: Executed by the JPF thread.
+   */
+  void setParked (boolean parked) {
+    this.parked = parked;
+  }
+
+  /**
+   * Returns true if evaluating this breakpoint cannot lead to any action on the current path, so it does not need to
+   * be evaluated until its settings change or a backtrack lowers its path hit count. This is the case if the breakpoint
+   * is disabled, or if its path hit count already exceeds the upper bound.
+   *
+   * Breakpoints whose hit condition has side effects are never parked, because the hit condition must see all events.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  boolean canBeParked () {
+    ExpressionBooleanInterface bpExpression = this.bpExpression;
+    if (bpExpression == null || bpExpression.hasSideEffects()) {
+      return false;
+    }
+    if (breakpointState == BreakpointState.DISABLED) {
+      return true;
+    }
+    Integer upperBound = this.upperBound;
+    return upperBound != null && hitCounters.getPathHitCount(slot) > upperBound;
+  }
+
+  /**
+   * Gets the number of times this breakpoint was hit on the current path.
+   */
+  protected int getPathHitCount () {
+    return hitCounters.getPathHitCount(slot);
+  }
+
+  /**
+   * Gets the number of times this breakpoint was hit since it was created.
+   */
+  protected int getTotalHitCount () {
+    return hitCounters.getTotalHitCount(slot);
+  }
+
   /**
    * Returns true if the breakpoint was created by the user, i.e. it is NOT an internal breakpoint used for stepping.
    */
@@ -157,21 +236,45 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
     return false;
   }
 
+  /**
+   * Gets the listener methods during which this breakpoint's hit condition may trigger.
+   * The breakpoint is not evaluated at all during other listener methods.
+   */
+  public Set<ListenerMethod> getListenerMethods () {
+    if (bpExpression == null) {
+      return EnumSet.noneOf(ListenerMethod.class);
+    }
+    return bpExpression.getListenerMethods();
+  }
+
+  /**
+   * Lets the hit condition pre-resolve code locations in a newly loaded class.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  public void classLoaded (ClassInfo loadedClass) {
+    if (bpExpression != null) {
+      bpExpression.classLoaded(loadedClass);
+    }
+  }
+
   public BreakpointStatus getBreakpointStatus (InspectorState state) {
 
     String details = null;
     String bpExpressionNormalized = null;
+    String evaluationStatistics = null;
 
     if (bpExpression != null) {
       if (state != null) {
         details = bpExpression.getDetails(state);
       }
       bpExpressionNormalized = bpExpression.getNormalizedExpression();
+      evaluationStatistics = bpExpression.getEvaluationStatistics();
     }
 
-    return new BreakpointStatusImplementation(bpID, bpName, bpHitCounter, bpHitCounterTotal, lowerBound, upperBound,
+    return new BreakpointStatusImplementation(bpID, bpName, getPathHitCount(), getTotalHitCount(), lowerBound, upperBound,
                                               breakpointState, bpExpressionStr,
-                                              bpExpressionNormalized, details);
+                                              bpExpressionNormalized, details, evaluationStatistics);
   }
 
   /**
@@ -180,9 +283,11 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
    * @return True if breakpoint hit and should break the execution (BP is in the enabled state, expected Hit count, etc...)
    */
   public boolean evaluateBreakpoint (InspectorState state) {
+    assert slot != BreakpointHitCounters.NO_SLOT;
     boolean bpHitted = false;
 
     // Hit condition
+    ExpressionBooleanInterface bpExpression = this.bpExpression;
     if (bpExpression != null) {
       try {
         bpHitted = bpExpression.evaluateExpression(state);
@@ -196,33 +301,39 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
       if (log.isLoggable(Level.FINE)) {
         log.fine("Now checking within class: " + topFrameMethodInfo.getClassName());
       }
-      if (this.userBP && InspectorConfiguration.getInstance().isClassIgnored(topFrameMethodInfo.getClassName())) {
+      if (this.userBP && InspectorConfiguration.getInstance().isClassIgnored(topFrameMethodInfo.getClassInfo())) {
         bpHitted = false;
       }
     }
 
 
     if (bpHitted) {
-      bpHitCounter++;
-      bpHitCounterTotal++;
+      hitCounters.recordHit(slot);
     }
 
     boolean bpShouldExecuteAction = bpHitted;
-    if (lowerBound != null && bpHitCounter < lowerBound) {
-      bpShouldExecuteAction = false;
-    }
+    if (bpHitted) {
+      int bpHitCounter = hitCounters.getPathHitCount(slot);
+      Integer lowerBound = this.lowerBound;
+      Integer upperBound = this.upperBound;
+      if (lowerBound != null && bpHitCounter < lowerBound) {
+        bpShouldExecuteAction = false;
+      }
 
-    if (upperBound != null && bpHitCounter > upperBound) {
-      bpShouldExecuteAction = false;
+      if (upperBound != null && bpHitCounter > upperBound) {
+        bpShouldExecuteAction = false;
+      }
     }
 
-
-
+    BreakpointState breakpointState = this.breakpointState;
     if (bpShouldExecuteAction && isUserBreakpoint()) {
       if (breakpointState == BreakpointState.DISABLED) {
         // No action expected
       } else if (breakpointState == BreakpointState.LOGGING) {
         callbacks.notifyBreakpointHit(getBreakpointStatus(state));
+      } else if (breakpointState == BreakpointState.TRACING) {
+        // No status object and no callback, a compact record is enough
+        tracepointSink.recordHit(bpID, state, hitCounters.getPathHitCount(slot));
       } else if (breakpointState == BreakpointState.ENABLED) {
         callbacks.notifyBreakpointHit(getBreakpointStatus(state));
       } else {
@@ -234,51 +345,6 @@ public class InternalBreakpointHolder implements Comparable<InternalBreakpointHo
 
   }
 
-  public BreakpointPartialMemento createPartialMemento () {
-    return new InternalBreakpointHolderPartialMemento(bpHitCounter);
-  }
-
-  /**
-   * Creates a memento which restores a breakpoint's path hit count to zero. This is used if we backtrack to a position
-   * before the definition of a breakpoint.
-   *
-   * @return Memento which resets path hit counts.
-   */
-  public static BreakpointPartialMemento createInitialStateMemento () {
-    return new InternalBreakpointHolderPartialMemento(0);
-  }
-
-  /**
-   * The partial memento remembers a single breakpoint's path hit count.
-   */
-  private static class InternalBreakpointHolderPartialMemento implements BreakpointPartialMemento {
-    private int bpHitCounter = 0;
-
-    public InternalBreakpointHolderPartialMemento(int bpHitCounter) {
-      this.bpHitCounter = bpHitCounter;
-    }
-  }
-
-  /**
-   * Restores this breakpoint's path hit count from a memento.
-   * @param bpm A memento that stores a path hit count.
-   */
-  public void setPathCounterFromMemento(BreakpointPartialMemento bpm) {
-    if (bpm == null) {
-      // Default setting
-      bpHitCounter = 0;
-      return;
-    }
-
-    if (bpm instanceof InternalBreakpointHolderPartialMemento) {
-      InternalBreakpointHolderPartialMemento ibphm = (InternalBreakpointHolderPartialMemento) bpm;
-      bpHitCounter = ibphm.bpHitCounter;
-    } else {
-      throw new RuntimeException("Internal error - Unexpected usage invalid memento type " + bpm.getClass().getName() + " expecting "
-          + InternalBreakpointHolderPartialMemento.class.getSimpleName());
-    }
-  }
-
   @Override
   public int compareTo (InternalBreakpointHolder o) {
     if (o == null) {
@@ -0,0 +1,321 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.breakpoints;
+
+import gov.nasa.jpf.inspector.common.TracepointRecord;
+import gov.nasa.jpf.inspector.interfaces.BreakpointState;
+import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
+import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.ThreadInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes hits of {@link BreakpointState#TRACING} breakpoints into the trace file
+ * (see {@link TracepointRecord} for the format).
+ *
+ * The JPF thread stores each hit as a fixed-size record into a preallocated ring buffer. A background thread drains
+ * the ring buffer into the file. The JPF thread only waits if the ring buffer is full, so that no record is lost.
+ * If the background thread fails, the error is reported once and the records of the rest of the run are dropped.
+ *
+ * The trace file is created when the first tracing breakpoint is hit and closed when JPF terminates. A new JPF run
+ * overwrites the file.
+ */
+final class TracepointSink {
+
+  private final InspectorCallbacks callbacks;
+  /**
+   * The currently open trace file, or null.
+   */
+  private volatile TraceFile traceFile = null;
+  /**
+   * Set if the trace file could not be created. Then no further attempts are made during this JPF run.
+   */
+  private volatile boolean openFailed = false;
+
+  TracepointSink(InspectorCallbacks callbacks) {
+    this.callbacks = callbacks;
+  }
+
+  /**
+   * Appends a record of a breakpoint hit to the trace file.
+   *
+   * @param bpID ID of the breakpoint that was hit.
+   * @param state State of the JPF at the hit.
+   * @param hitCount Path hit count of the breakpoint, including this hit.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  void recordHit(int bpID, InspectorState state, int hitCount) {
+    TraceFile file = traceFile;
+    if (file == null) {
+      file = open();
+      if (file == null) {
+        return;
+      }
+    }
+
+    ThreadInfo thread = state.getVM().getCurrentThread();
+    int threadId = TracepointRecord.NONE;
+    Instruction instruction = null;
+    if (thread != null) {
+      threadId = thread.getId();
+      instruction = state.getLastExecutedInstruction(threadId);
+      if (instruction == null) {
+        instruction = thread.getPC();
+      }
+    }
+    Search search = state.getSearch();
+    int stateId = search != null ? search.getStateId() : TracepointRecord.NONE;
+    file.append(bpID, threadId, stateId, instruction, hitCount);
+  }
+
+  private synchronized TraceFile open() {
+    if (traceFile != null || openFailed) {
+      return traceFile;
+    }
+    String fileName = InspectorConfiguration.getInstance().getTracepointFile();
+    try {
+      TraceFile file = new TraceFile(fileName, InspectorConfiguration.getInstance().getTracepointBufferRecords());
+      file.start();
+      traceFile = file;
+      return file;
+    } catch (IOException e) {
+      openFailed = true;
+      callbacks.genericError("Tracing breakpoints are ignored, because the trace file '" + fileName +
+                                     "' could not be created (" + e.getMessage() + ").");
+      return null;
+    }
+  }
+
+  /**
+   * Writes all remaining records and closes the trace file, if it is open. Blocks until the file is closed.
+   * The next hit of a tracing breakpoint creates the file anew.
+   */
+  synchronized void close() {
+    openFailed = false;
+    TraceFile file = traceFile;
+    if (file == null) {
+      return;
+    }
+    traceFile = null;
+    file.finish();
+  }
+
+  /**
+   * An open trace file along with the ring buffer and the thread that writes it.
+   */
+  private final class TraceFile extends Thread {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = 1000000;
+    private static final long FULL_PARK_NANOS = 50000;
+
+    private final String fileName;
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    /**
+     * Hit records, {@link TracepointRecord#HIT_RECORD_INTS} ints each.
+     */
+    private final int[] ring;
+    private final int capacityMask;
+    /**
+     * Number of records ever appended. Written only by the JPF thread.
+     */
+    private volatile long head = 0;
+    /**
+     * Number of records ever written to the file. Written only by this thread.
+     */
+    private volatile long tail = 0;
+    private volatile boolean finishing = false;
+    /**
+     * Set when this thread stopped writing because of an error. Then records are dropped instead of being appended.
+     */
+    private volatile boolean dead = false;
+
+    /**
+     * Method names that must be written to the file before the records that follow. Filled by the JPF thread.
+     */
+    private final ConcurrentLinkedQueue<MethodInfo> newMethods = new ConcurrentLinkedQueue<>();
+    /**
+     * Whether the method with this global ID was already queued in {@link #newMethods}. Only accessed
+     * by the JPF thread.
+     */
+    private boolean[] knownMethods = new boolean[256];
+
+    TraceFile(String fileName, int capacity) throws IOException {
+      super(TracepointSink.class.getSimpleName());
+      setDaemon(true);
+      int roundedCapacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+      this.fileName = fileName;
+      this.ring = new int[roundedCapacity * TracepointRecord.HIT_RECORD_INTS];
+      this.capacityMask = roundedCapacity - 1;
+      this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                      StandardOpenOption.TRUNCATE_EXISTING);
+      writeBuffer.putLong(TracepointRecord.FILE_MAGIC);
+    }
+
+    /**
+     * Note: Executed by the JPF thread.
+     */
+    void append(int bpID, int threadId, int stateId, Instruction instruction, int hitCount) {
+      if (dead) {
+        return;
+      }
+      long position = head;
+      while (position - tail > capacityMask) {
+        // The ring buffer is full.
+        if (dead) {
+          return;
+        }
+        LockSupport.unpark(this);
+        LockSupport.parkNanos(FULL_PARK_NANOS);
+      }
+
+      int methodId = TracepointRecord.NONE;
+      int instructionIndex = TracepointRecord.NONE;
+      int lineNumber = TracepointRecord.NONE;
+      if (instruction != null) {
+        MethodInfo method = instruction.getMethodInfo();
+        methodId = method.getGlobalId();
+        instructionIndex = instruction.getInstructionIndex();
+        lineNumber = instruction.getLineNumber();
+        if (methodId >= knownMethods.length) {
+          knownMethods = Arrays.copyOf(knownMethods, Math.max(methodId + 1, knownMethods.length * 2));
+        }
+        if (!knownMethods[methodId]) {
+          knownMethods[methodId] = true;
+          newMethods.add(method);
+        }
+      }
+
+      int offset = (int) (position & capacityMask) * TracepointRecord.HIT_RECORD_INTS;
+      ring[offset] = TracepointRecord.KIND_HIT;
+      ring[offset + 1] = bpID;
+      ring[offset + 2] = threadId;
+      ring[offset + 3] = stateId;
+      ring[offset + 4] = methodId;
+      ring[offset + 5] = instructionIndex;
+      ring[offset + 6] = lineNumber;
+      ring[offset + 7] = hitCount;
+      head = position + 1; // Publishes the record
+    }
+
+    /**
+     * Stops accepting records, writes the remaining ones and waits until the file is closed.
+     */
+    void finish() {
+      finishing = true;
+      LockSupport.unpark(this);
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        writeRecords();
+      } catch (IOException e) {
+        dead = true;
+        callbacks.genericError("Writing to the trace file '" + fileName + "' failed (" + e.getMessage() + ").");
+      } catch (Throwable e) {
+        // Without this thread, the JPF thread would wait forever for space in a full ring buffer.
+        dead = true;
+        callbacks.genericError("Writing to the trace file '" + fileName + "' failed (" + e + ").");
+      } finally {
+        try {
+          channel.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+
+    private void writeRecords() throws IOException {
+      while (true) {
+        boolean lastRound = finishing;
+        long available = head;
+        writeNewMethods();
+        long position = tail;
+        if (position == available) {
+          flush();
+          if (lastRound) {
+            break;
+          }
+          LockSupport.parkNanos(IDLE_PARK_NANOS);
+          continue;
+        }
+        while (position < available) {
+          if (writeBuffer.remaining() < TracepointRecord.HIT_RECORD_INTS * 4) {
+            flush();
+          }
+          int offset = (int) (position & capacityMask) * TracepointRecord.HIT_RECORD_INTS;
+          for (int i = 0; i < TracepointRecord.HIT_RECORD_INTS; i++) {
+            writeBuffer.putInt(ring[offset + i]);
+          }
+          position++;
+        }
+        tail = position; // Frees the space in the ring buffer
+      }
+    }
+
+    private void writeNewMethods() throws IOException {
+      MethodInfo method;
+      while ((method = newMethods.poll()) != null) {
+        byte[] name = method.getFullName().getBytes(StandardCharsets.UTF_8);
+        if (writeBuffer.remaining() < name.length + 12) {
+          flush();
+        }
+        writeBuffer.putInt(TracepointRecord.KIND_METHOD);
+        writeBuffer.putInt(method.getGlobalId());
+        writeBuffer.putInt(name.length);
+        if (name.length <= writeBuffer.remaining()) {
+          writeBuffer.put(name);
+        } else {
+          // Longer than the write buffer
+          flush();
+          ByteBuffer nameBuffer = ByteBuffer.wrap(name);
+          while (nameBuffer.hasRemaining()) {
+            channel.write(nameBuffer);
+          }
+        }
+      }
+    }
+
+    private void flush() throws IOException {
+      writeBuffer.flip();
+      while (writeBuffer.hasRemaining()) {
+        channel.write(writeBuffer);
+      }
+      writeBuffer.clear();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.callbacks;
+
+/**
+ * What the {@link CallbacksSender} does when callbacks are sent faster than the client processes them and the queue
+ * of callbacks is full.
+ *
+ * Only callbacks that merely inform the user may be dropped: hits of logging breakpoints and choice generator
+ * notifications that do not ask for a choice. Other callbacks always wait for space in the queue.
+ */
+public enum CallbackOverflowPolicy {
+  /**
+   * The thread sending the callback (usually the JPF thread) waits until there is space in the queue.
+   */
+  BLOCK,
+  /**
+   * The oldest callback in the queue is dropped, if it may be dropped. The client is told how many callbacks were
+   * dropped.
+   */
+  DROP_OLDEST,
+  /**
+   * Once the queue is half full, only every n-th callback that may be dropped is queued, the others are dropped.
+   * The client is told how many callbacks were dropped.
+   */
+  SAMPLE
+}
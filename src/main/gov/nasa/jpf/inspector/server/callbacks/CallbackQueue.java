@@ -0,0 +1,173 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.callbacks;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of callbacks with multiple producers and a single consumer.
+ *
+ * Each slot of the ring has a sequence number that tells whether the slot is free for the producer that claimed its
+ * position or holds a callback ready to be taken. Producers claim positions by incrementing {@link #tail}, callbacks
+ * are taken by incrementing {@link #head}, so neither side ever takes a lock. Besides the consumer, producers may take
+ * the oldest callback to drop it ({@link #pollDroppable()}), so the head is claimed the same way as the tail.
+ */
+final class CallbackQueue {
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<CallbackCommand> slots;
+  /**
+   * Sequence number of each slot. Equals the position if the slot is free for the producer of that position, and the
+   * position plus one once the callback in it is published.
+   */
+  private final AtomicLongArray sequences;
+  /**
+   * Number of positions ever claimed by producers.
+   */
+  private final AtomicLong tail = new AtomicLong();
+  /**
+   * Number of callbacks ever taken.
+   */
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * @param capacity Minimum number of callbacks the queue holds, rounded up to a power of two.
+   */
+  CallbackQueue(int capacity) {
+    this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this.mask = this.capacity - 1;
+    this.slots = new AtomicReferenceArray<>(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Adds a callback to the end of the queue.
+   *
+   * Note: May be called by any thread.
+   *
+   * @return False if the queue is full.
+   */
+  boolean offer(CallbackCommand callback) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          slots.set(index, callback);
+          sequences.set(index, position + 1); // Publishes the callback
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false; // The consumer has not taken the callback from a lap ago yet
+      } else {
+        position = tail.get(); // Another producer claimed the position
+      }
+    }
+  }
+
+  /**
+   * Moves callbacks from the start of the queue into the array, in order. Stops at the first claimed position whose
+   * callback is not published yet.
+   *
+   * Note: Called only by the consumer.
+   *
+   * @return Number of callbacks taken.
+   */
+  int drain(CallbackCommand[] batch) {
+    int count = 0;
+    while (count < batch.length) {
+      long position = head.get();
+      int index = (int) (position & mask);
+      if (sequences.get(index) != position + 1) {
+        break;
+      }
+      if (head.compareAndSet(position, position + 1)) {
+        batch[count++] = take(index, position);
+      } // Otherwise a producer dropped the callback
+    }
+    return count;
+  }
+
+  /**
+   * Takes the oldest callback if it may be dropped, see {@link CallbacksSender#isDroppable(CallbackCommand)}.
+   *
+   * Note: May be called by any thread.
+   *
+   * @return The callback, or null if the queue is empty or its oldest callback must not be dropped.
+   */
+  CallbackCommand pollDroppable() {
+    while (true) {
+      long position = head.get();
+      int index = (int) (position & mask);
+      if (sequences.get(index) != position + 1 || !CallbacksSender.isDroppable(slots.get(index))) {
+        return null;
+      }
+      if (head.compareAndSet(position, position + 1)) {
+        return take(index, position);
+      }
+    }
+  }
+
+  private CallbackCommand take(int index, long position) {
+    CallbackCommand callback = slots.get(index);
+    slots.set(index, null);
+    sequences.set(index, position + capacity); // Frees the slot for the next lap
+    return callback;
+  }
+
+  /**
+   * @return Gets the number of positions ever claimed by producers. Each of them is eventually published.
+   */
+  long getOfferedCount() {
+    return tail.get();
+  }
+
+  /**
+   * @return Gets the number of callbacks ever taken.
+   */
+  long getTakenCount() {
+    return head.get();
+  }
+
+  /**
+   * @return Gets the number of claimed positions whose callbacks were not taken yet.
+   */
+  long size() {
+    long taken = head.get();
+    return Math.max(tail.get() - taken, 0);
+  }
+
+  /**
+   * @return Gets true if no callback is published and not yet taken.
+   */
+  boolean isEmpty() {
+    long position = head.get();
+    return sequences.get((int) (position & mask)) != position + 1;
+  }
+}
@@ -0,0 +1,88 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.callbacks;
+
+/**
+ * Snapshot of the state of the queue of callbacks waiting to be sent to the client, see
+ * {@link InspectorServerCallbacks#getQueueStatistics()}.
+ */
+public final class CallbackQueueStatistics {
+  private final CallbackOverflowPolicy policy;
+  private final int capacity;
+  private final long depth;
+  private final long maxDepth;
+  private final long sent;
+  private final long dropped;
+  private final long blocked;
+
+  CallbackQueueStatistics(CallbackOverflowPolicy policy, int capacity, long depth, long maxDepth, long sent,
+                          long dropped, long blocked) {
+    this.policy = policy;
+    this.capacity = capacity;
+    this.depth = depth;
+    this.maxDepth = maxDepth;
+    this.sent = sent;
+    this.dropped = dropped;
+    this.blocked = blocked;
+  }
+
+  public CallbackOverflowPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * @return Gets the number of callbacks the queue holds.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return Gets the number of callbacks waiting in the queue.
+   */
+  public long getDepth() {
+    return depth;
+  }
+
+  /**
+   * @return Gets the highest number of callbacks that waited in the queue at once.
+   */
+  public long getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * @return Gets the number of callbacks taken from the queue and sent to the client (merged ones count separately).
+   */
+  public long getSent() {
+    return sent;
+  }
+
+  /**
+   * @return Gets the number of callbacks dropped because the queue was full.
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * @return Gets how many times a thread had to wait for space in the queue to send a callback.
+   */
+  public long getBlocked() {
+    return blocked;
+  }
+}
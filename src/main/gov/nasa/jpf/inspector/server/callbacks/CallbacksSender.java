@@ -21,6 +21,7 @@ import gov.nasa.jpf.inspector.interfaces.ChoiceGeneratorsInterface.CGTypes;
 import gov.nasa.jpf.inspector.interfaces.InspectorStatusChange;
 import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
 import gov.nasa.jpf.inspector.server.callbacks.commands.CallbackCommandBreakpointHit;
+import gov.nasa.jpf.inspector.server.callbacks.commands.CallbackCommandCallbacksDropped;
 import gov.nasa.jpf.inspector.server.callbacks.commands.CallbackCommandChoiceGeneratorNewChoice;
 import gov.nasa.jpf.inspector.server.callbacks.commands.CallbackCommandGenericError;
 import gov.nasa.jpf.inspector.server.callbacks.commands.CallbackCommandGenericInfo;
@@ -29,11 +30,12 @@ import gov.nasa.jpf.inspector.server.callbacks.commands.CallbackCommandStateChan
 import gov.nasa.jpf.inspector.server.callbacks.commands.CallbackCommandUsedChoice;
 import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
 import gov.nasa.jpf.inspector.server.jpf.StopHolder;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
 
 import java.io.PrintStream;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Class used to handle clientCallbacks.
@@ -42,17 +44,25 @@ import java.util.List;
  * 
  * This class should handle all clientCallbacks which should occur after JPF is stopped.
  * (Prevent creation of separate threads for each clientCallbacks and related non-determinism in clientCallbacks order due to scheduling)
+ *
+ * Callbacks are put into a bounded lock-free queue ({@link CallbackQueue}), so that the JPF thread does not take any
+ * monitor to send a callback. The callback thread parks while the queue is empty and is unparked by the producers.
+ * It takes the callbacks in batches and sends them in order; adjacent identical hits of a logging breakpoint in a batch
+ * are sent as a single counted notification, see {@link CallbackCommandBreakpointHit#absorb(CallbackCommand)}, unless
+ * disabled (see {@link InspectorConfiguration#shouldMergeLoggingHits()}).
+ *
+ * The capacity of the queue and what happens when it is full are configurable, see {@link CallbackOverflowPolicy}.
+ * The client is told how many callbacks were dropped before the next callback is sent.
  */
 public class CallbacksSender extends Thread {
   private static final boolean DEBUG = false;
+  private static final int BATCH_SIZE = 64;
+  private static final long FULL_PARK_NANOS = 50000;
+
   @SuppressWarnings("FieldCanBeLocal") // IDEA bug
   private final PrintStream out;
 
   private volatile boolean terminating;
-  /**
-   * Flag if true the enabe waits (for notification) until the running "Callbacks thread" first blocks
-   */
-  private volatile boolean notifyEnable;
   private final InspectorCallbacks clientCallbacks;
   /**
    * Cyclic dependency - set immediately after stopHolder is created
@@ -60,19 +70,85 @@ public class CallbacksSender extends Thread {
   private StopHolder stopHolder;
 
   /**
-   * Queue of clientCallbacks scheduled to be sent from the server to the client. This queue also acts as the monitor
-   * mutex for this class and as the condition variable for this class.
-   *
-   * The queue itself is created using {@link Collections#synchronizedList(List)} which seems excessive because we are
-   * doing locking manually anyway, but I guess a second failsafe does not hurt.
+   * Queue of clientCallbacks scheduled to be sent from the server to the client.
+   */
+  private final CallbackQueue callbackQueue;
+  private final CallbackOverflowPolicy overflowPolicy;
+  /**
+   * With {@link CallbackOverflowPolicy#SAMPLE}, every n-th droppable callback is queued while the queue is at least
+   * half full.
+   */
+  private final int sampleRate;
+  private final AtomicLong sampleCounter = new AtomicLong();
+  /**
+   * Whether adjacent identical hits of a logging breakpoint are sent as a single notification.
+   */
+  private final boolean mergeHits;
+  /**
+   * Callbacks taken from the queue and not sent yet. Only accessed by the callback thread.
+   */
+  private final CallbackCommand[] batch = new CallbackCommand[BATCH_SIZE];
+  /**
+   * Set while the callback thread is parked or about to park, so that producers know they have to unpark it.
+   */
+  private volatile boolean parked = false;
+  /**
+   * Opened once the callback thread runs.
    */
-  private final List<CallbackCommand> callbackQueue;
-  private boolean outstandingRemovalsProcessed = true;
+  private final CountDownLatch started = new CountDownLatch(1);
+
+  /**
+   * Number of callbacks that were sent to the client (or dropped because the sender terminates). Written only by the
+   * callback thread.
+   */
+  private volatile long delivered = 0;
+  /**
+   * Monitor and condition variable of the threads in {@link CallbacksSerializer#waitUntilCallbackQueueIsEmpty()}.
+   */
+  private final Object deliveredMonitor = new Object();
+  /**
+   * Number of threads waiting on {@link #deliveredMonitor}. Modified under the monitor.
+   */
+  private volatile int deliveredWaiters = 0;
+
+  /**
+   * Number of callbacks taken from the queue and dropped by producers.
+   */
+  private final AtomicLong droppedFromQueue = new AtomicLong();
+  /**
+   * Number of callbacks dropped by producers without being queued.
+   */
+  private final AtomicLong droppedBeforeQueue = new AtomicLong();
+  /**
+   * Number of dropped callbacks the client was told about. Only accessed by the callback thread.
+   */
+  private long droppedReported = 0;
+  /**
+   * How many times a producer waited for space in the queue.
+   */
+  private final AtomicLong blockedOffers = new AtomicLong();
+  /**
+   * Highest number of callbacks seen in the queue by the callback thread. Written only by the callback thread.
+   */
+  private volatile long maxDepth = 0;
 
   public CallbacksSender (JPFInspector inspector, InspectorCallbacks clientCallbacks) {
+    this(inspector.getDebugPrintStream(), clientCallbacks, InspectorConfiguration.getInstance());
+  }
+
+  private CallbacksSender (PrintStream out, InspectorCallbacks clientCallbacks, InspectorConfiguration configuration) {
+    this(out, clientCallbacks, configuration.getCallbackQueueCapacity(), configuration.getCallbackOverflowPolicy(),
+         configuration.getCallbackSampleRate(), configuration.shouldMergeLoggingHits());
+  }
+
+  /**
+   * Creates the sender with the given queue settings instead of the configured ones.
+   */
+  CallbacksSender (PrintStream out, InspectorCallbacks clientCallbacks, int capacity,
+                   CallbackOverflowPolicy overflowPolicy, int sampleRate, boolean mergeHits) {
     super(CallbacksSender.class.getSimpleName());
     if (DEBUG) {
-      inspector.getDebugPrintStream().println(CallbacksSender.class.getSimpleName() + "." + CallbacksSender.class.getSimpleName() + "(...)");
+      out.println(CallbacksSender.class.getSimpleName() + "." + CallbacksSender.class.getSimpleName() + "(...)");
     }
 
     // Needed for testing and direct API calls. Otherwise, when we are using a shell (graphical or console),
@@ -80,11 +156,13 @@ public class CallbacksSender extends Thread {
     setDaemon(true);
 
     terminating = false;
-    notifyEnable = true;
-    callbackQueue = Collections.synchronizedList(new LinkedList<>());
+    callbackQueue = new CallbackQueue(capacity);
+    this.overflowPolicy = overflowPolicy;
+    this.sampleRate = sampleRate;
+    this.mergeHits = mergeHits;
 
     this.clientCallbacks = clientCallbacks;
-    this.out = inspector.getDebugPrintStream();
+    this.out = out;
   }
 
   /**
@@ -108,30 +186,39 @@ public class CallbacksSender extends Thread {
     assert (stopHolder != null);
     assert (this.stopHolder == null);
 
-    synchronized (callbackQueue) {
-      this.stopHolder = stopHolder;
-      notifyEnable = true;
+    this.stopHolder = stopHolder;
+    startSending();
+  }
 
-      start();
+  /**
+   * Runs this thread, then blocks until the thread actually starts executing. Without a {@link StopHolder}, callbacks
+   * that wait for JPF to stop must not be sent.
+   */
+  void startSending () {
+    start();
 
-      try {
-        callbackQueue.wait();
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
+    try {
+      started.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
-  private void terminate() {
+  /**
+   * Stops the callback thread and waits for it to end. The callbacks that were not sent yet are dropped.
+   */
+  void terminate() {
     if (DEBUG) {
       out.println(this.getClass().getSimpleName() + ".terminate()");
     }
-    synchronized (callbackQueue) {
-      terminating = true;
-      callbackQueue.clear();
-      callbackQueue.notifyAll(); // Wake up the callback thread.
+    terminating = true;
+    LockSupport.unpark(this); // Wake up the callback thread.
+    synchronized (deliveredMonitor) {
+      deliveredMonitor.notifyAll();
+    }
+    if (Thread.currentThread() != this) {
       try {
-        callbackQueue.wait(); // Wait for the callback thread to terminate.
+        join(); // Wait for the callback thread to terminate.
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
       }
@@ -149,63 +236,102 @@ public class CallbacksSender extends Thread {
     if (DEBUG) {
       out.println(this.getClass().getSimpleName() + ".run()");
     }
+    started.countDown(); // Wakes up the {@link #enableSender(StopHolder)} method
     while (!terminating) {
-      synchronized (callbackQueue) {
-        // Wait until termination or CB to process
-        while (!terminating && callbackQueue.isEmpty()) {
-          try {
-            if (DEBUG) {
-              out.println(this.getClass().getSimpleName() + ".run() - waiting for new command");
-            }
-            if (notifyEnable) {
-              callbackQueue.notifyAll(); // Wakes up {@link #enableSender(StopHolder)} method when block in wait();
-              notifyEnable = false;
-            }
-            callbackQueue.wait(); // Wait for a callback to arrive.
-          } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-          }
-        }
+      long depth = callbackQueue.size();
+      if (depth > maxDepth) {
+        maxDepth = depth;
       }
-
-      CallbackCommand topmostCallback = null;
-      synchronized (callbackQueue) {
-        if (!callbackQueue.isEmpty()) {
-          topmostCallback = callbackQueue.remove(0);
-          outstandingRemovalsProcessed = false;
-          if (DEBUG) {
-            out.println(this.getClass().getSimpleName() + ".run() - CB to process topmostCallback=" + topmostCallback);
-          }
+      reportDroppedCallbacks();
+      int count = callbackQueue.drain(batch);
+      if (count == 0) {
+        if (DEBUG) {
+          out.println(this.getClass().getSimpleName() + ".run() - waiting for new command");
         }
-      }
-      if (topmostCallback != null) {
-        if (topmostCallback.waitJPF2stop()) {
-          if (DEBUG) {
-            out.println(this.getClass().getSimpleName() + ".run() - waitUntilStopped");
-          }
-          stopHolder.waitUntilStopped();
+        parked = true;
+        // Checked again after the flag is set, so that a callback published in between is not missed.
+        if (callbackQueue.isEmpty() && !terminating) {
+          LockSupport.park(this);
         }
-
-        synchronized (callbackQueue) {
-          if (DEBUG) {
-            out.println(this.getClass().getSimpleName() + ".run() - sending SB topmostCallback=" + topmostCallback);
-          }
-          topmostCallback.sendCallback(clientCallbacks);
-          outstandingRemovalsProcessed = true;
-          callbackQueue.notifyAll(); // Notify any threads waiting for the callback queue to be empty.
+        parked = false;
+        continue;
+      }
+      sendBatch(count);
+      delivered += count;
+      if (deliveredWaiters > 0) {
+        synchronized (deliveredMonitor) {
+          deliveredMonitor.notifyAll(); // Notify any threads waiting for the callback queue to be empty.
         }
       }
-
     }
 
-    synchronized (callbackQueue) {
-      callbackQueue.notifyAll(); // We are now terminating and we must wake up the terminate method.
-    }
     if (DEBUG) {
       out.println(this.getClass().getSimpleName() + ".run() - end");
     }
   }
 
+  /**
+   * Tells the client how many callbacks were dropped since it was last told. A callback of its own is used instead of
+   * {@link InspectorCallbacks#genericInfo(String)}, so that it is not recorded: the moment it is sent depends on timing.
+   */
+  private void reportDroppedCallbacks () {
+    long dropped = droppedFromQueue.get() + droppedBeforeQueue.get();
+    if (dropped == droppedReported || terminating) {
+      return;
+    }
+    clientCallbacks.notifyCallbacksDropped(dropped - droppedReported, overflowPolicy.toString());
+    droppedReported = dropped;
+  }
+
+  /**
+   * Indicates whether a callback only informs the user and may thus be dropped when the queue overflows. These are
+   * hits of logging breakpoints and notifications of new choices that do not ask for a choice.
+   */
+  static boolean isDroppable (CallbackCommand callback) {
+    if (callback instanceof CallbackCommandBreakpointHit) {
+      return ((CallbackCommandBreakpointHit) callback).isLogging();
+    }
+    if (callback instanceof CallbackCommandChoiceGeneratorNewChoice) {
+      return ((CallbackCommandChoiceGeneratorNewChoice) callback).isPrintOnly();
+    }
+    return false;
+  }
+
+  /**
+   * Sends the callbacks taken from the queue, merging adjacent ones where possible.
+   *
+   * @param count Number of callbacks at the start of {@link #batch}.
+   */
+  private void sendBatch (int count) {
+    int i = 0;
+    while (i < count) {
+      CallbackCommand callback = batch[i];
+      batch[i] = null;
+      i++;
+      if (mergeHits && callback instanceof CallbackCommandBreakpointHit) {
+        CallbackCommandBreakpointHit hit = (CallbackCommandBreakpointHit) callback;
+        while (i < count && hit.absorb(batch[i])) {
+          batch[i] = null;
+          i++;
+        }
+      }
+      if (terminating) {
+        continue; // The remaining callbacks are dropped
+      }
+
+      if (callback.waitJPF2stop()) {
+        if (DEBUG) {
+          out.println(this.getClass().getSimpleName() + ".run() - waitUntilStopped");
+        }
+        stopHolder.waitUntilStopped();
+      }
+      if (DEBUG) {
+        out.println(this.getClass().getSimpleName() + ".run() - sending SB callback=" + callback);
+      }
+      callback.sendCallback(clientCallbacks);
+    }
+  }
+
 
   /**
    * Gets the interface whose methods will cause new clientCallbacks to be sent to the client via this thread.
@@ -232,17 +358,36 @@ public class CallbacksSender extends Thread {
         out.println(this.getClass().getSimpleName() + ".planNewCallback(cmdCB=" + cmdCB + ")");
       }
 
-      assert (stopHolder != null); // too early to register CB
+      assert (started.getCount() == 0); // too early to register CB
 
-      synchronized (callbackQueue) {
-        if (DEBUG) {
-          out.println(this.getClass().getSimpleName() + ".planNewCallback(cmdCB=" + cmdCB + ") - synch");
+      boolean droppable = isDroppable(cmdCB);
+      if (droppable && overflowPolicy == CallbackOverflowPolicy.SAMPLE &&
+          callbackQueue.size() >= callbackQueue.getCapacity() / 2 &&
+          sampleCounter.getAndIncrement() % sampleRate != 0) {
+        droppedBeforeQueue.incrementAndGet();
+        return;
+      }
+      boolean blocked = false;
+      while (!terminating && !callbackQueue.offer(cmdCB)) {
+        // The queue is full
+        if (overflowPolicy == CallbackOverflowPolicy.DROP_OLDEST && callbackQueue.pollDroppable() != null) {
+          droppedFromQueue.incrementAndGet();
+          continue;
+        }
+        if (overflowPolicy == CallbackOverflowPolicy.SAMPLE && droppable) {
+          droppedBeforeQueue.incrementAndGet();
+          return;
         }
-        if (!terminating) {
-          callbackQueue.add(cmdCB);
-          // Wake up the callback thread and, maybe in rare cases, also any threads that wait for the callback queue to be empty.
-          callbackQueue.notifyAll();
+        if (!blocked) {
+          blocked = true;
+          blockedOffers.incrementAndGet();
         }
+        // The callback thread has to catch up
+        LockSupport.unpark(CallbacksSender.this);
+        LockSupport.parkNanos(FULL_PARK_NANOS);
+      }
+      if (parked) {
+        LockSupport.unpark(CallbacksSender.this); // Wake up the callback thread.
       }
       if (DEBUG) {
         out.println(this.getClass().getSimpleName() + ".planNewCallback(cmdCB=" + cmdCB + ") - end");
@@ -272,9 +417,27 @@ public class CallbacksSender extends Thread {
       planNewCallback(cb);
     }
 
+    @Override
+    public void notifyBreakpointHits (BreakpointStatus bp, int hitCount) {
+      CallbackCommandBreakpointHit cb = new CallbackCommandBreakpointHit(bp, hitCount);
+      planNewCallback(cb);
+    }
+
+    @Override
+    public void notifyCallbacksDropped (long droppedCount, String overflowPolicy) {
+      CallbackCommandCallbacksDropped cb = new CallbackCommandCallbacksDropped(droppedCount, overflowPolicy);
+      planNewCallback(cb);
+    }
+
     @Override
     public void notifyChoiceGeneratorNewChoice (CGTypes cgType, String cgName, int cgId, String[] choices, int nextChoice, int defaultChoice) {
-      CallbackCommandChoiceGeneratorNewChoice cb = new CallbackCommandChoiceGeneratorNewChoice(cgType, cgName, cgId, choices, nextChoice, defaultChoice);
+      CallbackCommandChoiceGeneratorNewChoice cb = new CallbackCommandChoiceGeneratorNewChoice(cgType, cgName, cgId, choices, nextChoice, defaultChoice, false);
+      planNewCallback(cb);
+    }
+
+    @Override
+    public void printChoiceGeneratorNewChoice (CGTypes cgType, String cgName, int cgId, String[] choices, int nextChoice, int defaultChoice) {
+      CallbackCommandChoiceGeneratorNewChoice cb = new CallbackCommandChoiceGeneratorNewChoice(cgType, cgName, cgId, choices, nextChoice, defaultChoice, true);
       planNewCallback(cb);
     }
 
@@ -292,17 +455,28 @@ public class CallbacksSender extends Thread {
 
     @Override
     public void waitUntilCallbackQueueIsEmpty() {
-      synchronized (callbackQueue) {
-        while (!callbackQueue.isEmpty() || !outstandingRemovalsProcessed) {
-          try {
-            callbackQueue.wait();
-          } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+      long offered = callbackQueue.getOfferedCount();
+      synchronized (deliveredMonitor) {
+        deliveredWaiters++;
+        try {
+          while (delivered + droppedFromQueue.get() < offered && !terminating) {
+            deliveredMonitor.wait();
           }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          deliveredWaiters--;
         }
       }
     }
 
+    @Override
+    public CallbackQueueStatistics getQueueStatistics() {
+      return new CallbackQueueStatistics(overflowPolicy, callbackQueue.getCapacity(), callbackQueue.size(),
+                                         Math.max(maxDepth, callbackQueue.size()), delivered,
+                                         droppedFromQueue.get() + droppedBeforeQueue.get(), blockedOffers.get());
+    }
+
   }
 
 }
@@ -16,6 +16,7 @@
 //
 package gov.nasa.jpf.inspector.server.callbacks;
 
+import gov.nasa.jpf.inspector.interfaces.ChoiceGeneratorsInterface;
 import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
 
 /**
@@ -31,4 +32,17 @@ public interface InspectorServerCallbacks extends InspectorCallbacks{
    * Blocks until the queue of the callbacks to send becomes empty, then returns.
    */
   void waitUntilCallbackQueueIsEmpty();
+
+  /**
+   * Sends {@link #notifyChoiceGeneratorNewChoice(ChoiceGeneratorsInterface.CGTypes, String, int, String[], int, int)}
+   * when no choice is asked for, so the notification may be dropped if the callback queue overflows.
+   */
+  void printChoiceGeneratorNewChoice(ChoiceGeneratorsInterface.CGTypes cgType,
+                                     String cgName, int cgId, String[] choices, int nextChoice,
+                                     int defaultChoice);
+
+  /**
+   * @return Gets the current state of the queue of the callbacks to send.
+   */
+  CallbackQueueStatistics getQueueStatistics();
 }
@@ -16,24 +16,69 @@
 //
 package gov.nasa.jpf.inspector.server.callbacks.commands;
 
+import gov.nasa.jpf.inspector.interfaces.BreakpointState;
 import gov.nasa.jpf.inspector.interfaces.BreakpointStatus;
 import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
 import gov.nasa.jpf.inspector.server.callbacks.CallbackCommand;
 
+import java.util.Objects;
+
 /**
- * Element of the callback-sender queue that executes the client's notifyBreakpointHit action.
+ * Element of the callback-sender queue that executes the client's notifyBreakpointHit action, or notifyBreakpointHits
+ * if several hits of a logging breakpoint were merged into this one.
  */
 public class CallbackCommandBreakpointHit implements CallbackCommand {
 
-  private final BreakpointStatus bp;
+  private BreakpointStatus bp;
+  private int hitCount;
 
   public CallbackCommandBreakpointHit (BreakpointStatus bp) {
+    this(bp, 1);
+  }
+
+  public CallbackCommandBreakpointHit (BreakpointStatus bp, int hitCount) {
+    assert hitCount >= 1;
     this.bp = bp;
+    this.hitCount = hitCount;
+  }
+
+  /**
+   * Merges the following callback into this one if both are hits of the same logging breakpoint at the same location,
+   * i.e. with the same details. The status of the later hit is kept, so that the client sees the latest hit counts.
+   *
+   * Note: Called only by the callback thread, before this callback is sent.
+   *
+   * @param next The callback that follows this one in the queue.
+   * @return True if the callback was merged and must not be sent.
+   */
+  public boolean absorb (CallbackCommand next) {
+    if (!(next instanceof CallbackCommandBreakpointHit)) {
+      return false;
+    }
+    BreakpointStatus nextBp = ((CallbackCommandBreakpointHit) next).bp;
+    if (bp.getState() != BreakpointState.LOGGING || nextBp.getState() != BreakpointState.LOGGING ||
+        bp.getBPID() != nextBp.getBPID() || !Objects.equals(bp.getDetails(), nextBp.getDetails())) {
+      return false;
+    }
+    bp = nextBp;
+    hitCount += ((CallbackCommandBreakpointHit) next).hitCount;
+    return true;
+  }
+
+  /**
+   * @return Gets true if the breakpoint only logs its hits, so execution does not stop.
+   */
+  public boolean isLogging () {
+    return bp.getState() == BreakpointState.LOGGING;
   }
 
   @Override
   public void sendCallback (InspectorCallbacks clientCallbacks) {
-    clientCallbacks.notifyBreakpointHit(bp);
+    if (hitCount == 1) {
+      clientCallbacks.notifyBreakpointHit(bp);
+    } else {
+      clientCallbacks.notifyBreakpointHits(bp, hitCount);
+    }
   }
 
   @Override
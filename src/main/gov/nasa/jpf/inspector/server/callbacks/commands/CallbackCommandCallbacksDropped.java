@@ -0,0 +1,45 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.callbacks.commands;
+
+import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
+import gov.nasa.jpf.inspector.server.callbacks.CallbackCommand;
+
+/**
+ * Sends the {@link InspectorCallbacks#notifyCallbacksDropped(long, String)} callback.
+ */
+public class CallbackCommandCallbacksDropped implements CallbackCommand {
+
+  private final long droppedCount;
+  private final String overflowPolicy;
+
+  public CallbackCommandCallbacksDropped (long droppedCount, String overflowPolicy) {
+    this.droppedCount = droppedCount;
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  @Override
+  public void sendCallback (InspectorCallbacks clientCallbacks) {
+    clientCallbacks.notifyCallbacksDropped(droppedCount, overflowPolicy);
+  }
+
+  @Override
+  public boolean waitJPF2stop () {
+    return false;
+  }
+
+}
@@ -31,14 +31,24 @@ public class CallbackCommandChoiceGeneratorNewChoice implements CallbackCommand
   private final String[] choices;
   private final int nextChoice;
   private final int defaultChoice;
+  private final boolean printOnly;
 
-  public CallbackCommandChoiceGeneratorNewChoice (CGTypes cgType, String cgName, int cgId, String[] choices, int nextChoice, int defaultChoice) {
+  public CallbackCommandChoiceGeneratorNewChoice (CGTypes cgType, String cgName, int cgId, String[] choices, int nextChoice, int defaultChoice,
+                                                  boolean printOnly) {
     this.cgType = cgType;
     this.cgName = cgName;
     this.cgId = cgId;
     this.choices = choices;
     this.nextChoice = nextChoice;
     this.defaultChoice = defaultChoice;
+    this.printOnly = printOnly;
+  }
+
+  /**
+   * @return Gets true if the notification is not followed by a request for a choice.
+   */
+  public boolean isPrintOnly () {
+    return printOnly;
   }
 
   @Override
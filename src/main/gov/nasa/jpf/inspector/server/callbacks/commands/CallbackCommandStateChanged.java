@@ -38,9 +38,13 @@ public class CallbackCommandStateChanged implements CallbackCommand {
     clientCallbacks.notifyStateChange(state, details);
   }
 
+  /**
+   * JPF_STOPPED is queued by the JPF thread only after it is stopped, so there is no need to wait. Waiting would only
+   * delay the callback to the next stop if a command resumed JPF in the meantime.
+   */
   @Override
   public boolean waitJPF2stop() {
-    return state == InspectorStatusChange.JPF_STOPPED;
+    return false;
   }
 
 }
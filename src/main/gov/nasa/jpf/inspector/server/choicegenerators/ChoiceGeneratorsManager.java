@@ -21,10 +21,10 @@ import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorGenericErrorException;
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorNoVMConnected;
 import gov.nasa.jpf.inspector.interfaces.ChoiceGeneratorsInterface;
-import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
 import gov.nasa.jpf.inspector.interfaces.ThreadEnablingResult;
 import gov.nasa.jpf.inspector.interfaces.ThreadSuppressionStatus;
 import gov.nasa.jpf.inspector.server.breakpoints.DefaultForwardTraceManager;
+import gov.nasa.jpf.inspector.server.callbacks.InspectorServerCallbacks;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
 import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
 import gov.nasa.jpf.inspector.server.jpf.StopHolder;
@@ -38,6 +38,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Manages choice generators and used choices.
@@ -50,7 +52,7 @@ public class ChoiceGeneratorsManager implements ChoiceGeneratorsInterface, Choic
   private final StopHolder stopHolder;
   @SuppressWarnings("FieldCanBeLocal") // IDEA bug
   private final JPFInspector inspector;
-  private final InspectorCallbacks serverCallbacks;
+  private final InspectorServerCallbacks serverCallbacks;
   private final DefaultForwardTraceManager forwardTrace;
   /**
    * Flag which specifies whether the JPF is stopped because we need the user to provide a choice for a choice generator.
@@ -69,7 +71,7 @@ public class ChoiceGeneratorsManager implements ChoiceGeneratorsInterface, Choic
    */
   private final Map<Integer, ThreadSuppressionStatus> suppressionStatusMap;
 
-  public ChoiceGeneratorsManager(JPFInspector inspector, InspectorCallbacks serverCallbacks,
+  public ChoiceGeneratorsManager(JPFInspector inspector, InspectorServerCallbacks serverCallbacks,
                                  StopHolder stopHolder,
                                  DefaultForwardTraceManager forwardTrace) {
     this.inspector = inspector;
@@ -91,9 +93,30 @@ public class ChoiceGeneratorsManager implements ChoiceGeneratorsInterface, Choic
   }
 
   @Override
-  public synchronized List<ChoiceGeneratorWrapper> getUsedChoiceGenerators() throws JPFInspectorException {
+  public List<ChoiceGeneratorWrapper> getUsedChoiceGenerators() throws JPFInspectorException {
     stopHolder.waitUntilStopped();
+    stopHolder.getVMLock().lock();
+    try {
+      return getUsedChoiceGeneratorsWhileStopped();
+    } finally {
+      stopHolder.getVMLock().unlock();
+    }
+  }
+
+  @Override
+  public CompletableFuture<List<ChoiceGeneratorWrapper>> getUsedChoiceGeneratorsAsync() {
+    return stopHolder.queryWhileStopped("used choice_generators", new Callable<List<ChoiceGeneratorWrapper>>() {
+      @Override
+      public List<ChoiceGeneratorWrapper> call() throws JPFInspectorException {
+        return getUsedChoiceGeneratorsWhileStopped();
+      }
+    });
+  }
 
+  /**
+   * Note: The caller holds the VM lock, see {@link StopHolder#getVMLock()}.
+   */
+  private List<ChoiceGeneratorWrapper> getUsedChoiceGeneratorsWhileStopped() throws JPFInspectorException {
     VM vm = stopHolder.getVM();
     JPFInspectorNoVMConnected.checkVM(vm);
 
@@ -251,7 +274,11 @@ public class ChoiceGeneratorsManager implements ChoiceGeneratorsInterface, Choic
     // There was a to-do item here that said:
     // "Gather default choice if exists"
     // However, I have no idea what it means.
-    serverCallbacks.notifyChoiceGeneratorNewChoice(cgType, cg.getId(), hashCode, choices, currentChoice, ChoiceGeneratorsInterface.NO_DEFAULT_CHOICE);
+    if (askChoice) {
+      serverCallbacks.notifyChoiceGeneratorNewChoice(cgType, cg.getId(), hashCode, choices, currentChoice, ChoiceGeneratorsInterface.NO_DEFAULT_CHOICE);
+    } else {
+      serverCallbacks.printChoiceGeneratorNewChoice(cgType, cg.getId(), hashCode, choices, currentChoice, ChoiceGeneratorsInterface.NO_DEFAULT_CHOICE);
+    }
 
     if (askChoice) {
       serverCallbacks.specifyChoiceToUse(totalChoices - 1);
@@ -17,6 +17,12 @@
 
 package gov.nasa.jpf.inspector.server.expression;
 
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
+import gov.nasa.jpf.vm.ClassInfo;
+
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Abstract base class for boolean expressions in the syntax tree. Boolean expressions are used as
  * breakpoint hit conditions.
@@ -33,4 +39,63 @@ public abstract class ExpressionBoolean implements ExpressionBooleanInterface {
     return null;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * In the default implementation, this method returns all listener methods. Hit conditions that only check a specific
+   * kind of event should override this method so that they are not evaluated needlessly.
+   */
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.allOf(ListenerMethod.class);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * In the default implementation, this method does nothing.
+   */
+  @Override
+  public void classLoaded (ClassInfo loadedClass) {
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * In the default implementation, this method returns false.
+   */
+  @Override
+  public boolean hasSideEffects () {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * In the default implementation, this method returns false.
+   */
+  @Override
+  public boolean mayFail () {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * In the default implementation, this method does nothing.
+   */
+  @Override
+  public void setFailureSensitive () {
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * In the default implementation, this method returns null.
+   */
+  @Override
+  public String getEvaluationStatistics () {
+    return null;
+  }
+
 }
@@ -17,6 +17,8 @@
 
 package gov.nasa.jpf.inspector.server.expression;
 
+import gov.nasa.jpf.vm.ClassInfo;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,4 +37,52 @@ public abstract class ExpressionBooleanBinaryOperator extends ExpressionBoolean
     children.add(right);
   }
 
+  /**
+   * Set by the parent expression, see {@link #setFailureSensitive()}.
+   */
+  protected boolean failureSensitive = false;
+
+  @Override
+  public void classLoaded(ClassInfo loadedClass) {
+    for (ExpressionBooleanInterface child : children) {
+      child.classLoaded(loadedClass);
+    }
+  }
+
+  @Override
+  public boolean hasSideEffects() {
+    return children.get(0).hasSideEffects() || children.get(1).hasSideEffects();
+  }
+
+  @Override
+  public boolean mayFail() {
+    return children.get(0).mayFail() || children.get(1).mayFail();
+  }
+
+  @Override
+  public void setFailureSensitive() {
+    failureSensitive = true;
+    for (ExpressionBooleanInterface child : children) {
+      child.setFailureSensitive();
+    }
+  }
+
+  @Override
+  public String getEvaluationStatistics() {
+    return joinStatistics(children.get(0).getEvaluationStatistics(), children.get(1).getEvaluationStatistics());
+  }
+
+  /**
+   * Joins two (possibly null) statistics descriptions into one, separated by a newline.
+   */
+  protected static String joinStatistics(String first, String second) {
+    if (first == null) {
+      return second;
+    }
+    if (second == null) {
+      return first;
+    }
+    return first + '\n' + second;
+  }
+
 }
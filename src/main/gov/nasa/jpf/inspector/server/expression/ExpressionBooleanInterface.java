@@ -18,6 +18,9 @@
 package gov.nasa.jpf.inspector.server.expression;
 
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
+import gov.nasa.jpf.vm.ClassInfo;
+
+import java.util.Set;
 
 /**
  * Represents a node in the expressions syntax tree.
@@ -41,4 +44,55 @@ public interface ExpressionBooleanInterface extends ExpressionNodeInterface {
    */
   String getDetails(InspectorState state);
 
+  /**
+   * Gets the set of listener methods during which this expression may evaluate to true.
+   *
+   * The breakpoint handler only evaluates a hit condition during the listener methods it declares here, so the set
+   * must contain every {@link InspectorState.ListenerMethod} for which {@link #evaluateExpression(InspectorState)}
+   * could possibly return true. Returning a larger set than necessary is always safe, only slower.
+   *
+   * @return The set of relevant listener methods. The caller may not modify it.
+   */
+  Set<InspectorState.ListenerMethod> getListenerMethods();
+
+  /**
+   * Notifies the expression that JPF has just loaded a class.
+   *
+   * Hit conditions that match specific code locations, methods or fields use this to resolve their textual
+   * specification to concrete {@link gov.nasa.jpf.vm.Instruction}, {@link gov.nasa.jpf.vm.MethodInfo} or
+   * {@link gov.nasa.jpf.vm.FieldInfo} objects in advance, so that {@link #evaluateExpression(InspectorState)} only
+   * has to do an identity lookup. Classes loaded before the expression was created are never announced, so
+   * expressions must still be able to resolve such classes lazily.
+   *
+   * Note: Executed by the JPF thread.
+   *
+   * @param loadedClass The class that was loaded.
+   */
+  void classLoaded(ClassInfo loadedClass);
+
+  /**
+   * Returns true if evaluating this expression changes some state (for example, it counts instructions).
+   * Logical operators never change the order of evaluation of such expressions.
+   */
+  boolean hasSideEffects();
+
+  /**
+   * Returns true if {@link #evaluateExpression(InspectorState)} may throw an exception.
+   */
+  boolean mayFail();
+
+  /**
+   * Informs the expression that its parent does not treat a failed evaluation the same way as "false", as is the case
+   * for "not" and "or". Logical operators in such a position only reorder their operands if it cannot hide a failure.
+   */
+  void setFailureSensitive();
+
+  /**
+   * Gets a description of the order in which the logical operators in this expression evaluate their operands,
+   * including how often each operand was true.
+   *
+   * @return The description, possibly on multiple lines, or null if there is nothing to report.
+   */
+  String getEvaluationStatistics();
+
 }
@@ -0,0 +1,229 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.expression;
+
+import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
+
+/**
+ * Base class for the "and" and "or" operators. The operands are evaluated with short-circuiting, and the operator
+ * measures how expensive each operand is and how often it decides the result. From time to time, it chooses
+ * the order of evaluation that is expected to be cheaper.
+ *
+ * The order is only changed when it cannot change the result:
+ * <ul>
+ * <li>neither operand may have side effects (see {@link ExpressionBooleanInterface#hasSideEffects()}),</li>
+ * <li>if the right operand fails when evaluated first, the operands are evaluated again in the original order,</li>
+ * <li>for "and", the left operand may only be postponed (and thus possibly skipped) if it cannot fail, or if
+ * a failure of this operator means the same as "false" (see {@link ExpressionBooleanInterface#setFailureSensitive()}).
+ * For "or", a failure of the left operand is ignored anyway if the right operand holds.</li>
+ * </ul>
+ *
+ * Note: Evaluated by the JPF thread only. Statistics may be read by other threads and may be slightly out of date.
+ */
+public abstract class ExpressionBooleanShortCircuitOperator extends ExpressionBooleanBinaryOperator {
+
+  /**
+   * The evaluation order is reconsidered after each this many evaluations. Must be a power of two.
+   */
+  private static final int REORDER_INTERVAL = 1024;
+  /**
+   * The cost of operands is measured in one of this many evaluations. Must be a power of two.
+   */
+  private static final int SAMPLING_INTERVAL = 16;
+
+  /**
+   * If an operand evaluates to this value, the other operand is not evaluated.
+   * This is false for "and" and true for "or".
+   */
+  private final boolean shortCircuitResult;
+
+  /**
+   * Whether the right operand is currently evaluated first.
+   */
+  private boolean swapped = false;
+
+  private long evaluations = 0;
+  private final long[] operandEvaluations = new long[2];
+  private final long[] operandTrueResults = new long[2];
+  private final long[] operandSampledNanos = new long[2];
+  private final long[] operandSamples = new long[2];
+
+  protected ExpressionBooleanShortCircuitOperator(ExpressionBooleanInterface left, ExpressionBooleanInterface right,
+                                                  boolean shortCircuitResult) {
+    super(left, right);
+    this.shortCircuitResult = shortCircuitResult;
+  }
+
+  @Override
+  public boolean evaluateExpression(InspectorState state) throws JPFInspectorException {
+    assert children.size() == 2;
+
+    evaluations++;
+    boolean sample = (evaluations & (SAMPLING_INTERVAL - 1)) == 0;
+    if ((evaluations & (REORDER_INTERVAL - 1)) == 0) {
+      chooseOrder();
+    }
+
+    if (!swapped) {
+      return evaluateInOriginalOrder(state, sample);
+    }
+
+    boolean rightResult;
+    try {
+      rightResult = evaluateOperand(1, state, sample);
+    } catch (JPFInspectorException e) {
+      // The original order might not have evaluated the right operand at all.
+      return evaluateInOriginalOrder(state, false);
+    }
+    if (rightResult == shortCircuitResult) {
+      return shortCircuitResult;
+    }
+    if (!shortCircuitResult) {
+      return evaluateOperand(0, state, sample);
+    }
+    try {
+      return evaluateOperand(0, state, sample);
+    } catch (JPFInspectorException e) {
+      return false; // Same as in the original order, where the right operand was false.
+    }
+  }
+
+  /**
+   * Evaluates the operands in the order the user wrote them. For "or", a failure of the left operand is ignored
+   * unless the right operand fails as well.
+   */
+  private boolean evaluateInOriginalOrder(InspectorState state, boolean sample) throws JPFInspectorException {
+    boolean leftResult;
+    try {
+      leftResult = evaluateOperand(0, state, sample);
+    } catch (JPFInspectorException e) {
+      if (!shortCircuitResult) {
+        throw e;
+      }
+      try {
+        // Try if right parameter can be fullfilled
+        return evaluateOperand(1, state, sample);
+      } catch (JPFInspectorException eRight) {
+        throw e; // Throw first exception
+      }
+    }
+    if (leftResult == shortCircuitResult) {
+      return shortCircuitResult;
+    }
+    return evaluateOperand(1, state, sample);
+  }
+
+  private boolean evaluateOperand(int index, InspectorState state, boolean sample) throws JPFInspectorException {
+    ExpressionBooleanInterface operand = children.get(index);
+    boolean result;
+    if (sample) {
+      long start = System.nanoTime();
+      result = operand.evaluateExpression(state);
+      operandSampledNanos[index] += System.nanoTime() - start;
+      operandSamples[index]++;
+    } else {
+      result = operand.evaluateExpression(state);
+    }
+    operandEvaluations[index]++;
+    if (result) {
+      operandTrueResults[index]++;
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if the operands may be evaluated in the reverse order without changing the result.
+   */
+  private boolean isReorderingAllowed() {
+    ExpressionBooleanInterface left = children.get(0);
+    ExpressionBooleanInterface right = children.get(1);
+    if (left.hasSideEffects() || right.hasSideEffects()) {
+      return false;
+    }
+    // Postponing the left operand of "and" may skip its failure, which turns a failure into "false".
+    return shortCircuitResult || !left.mayFail() || !failureSensitive;
+  }
+
+  /**
+   * Sets {@link #swapped} according to the measured cost and selectivity of the operands.
+   */
+  private void chooseOrder() {
+    if (operandSamples[0] == 0 || operandSamples[1] == 0 || !isReorderingAllowed()) {
+      return;
+    }
+    double leftCost = operandSampledNanos[0] / (double) operandSamples[0];
+    double rightCost = operandSampledNanos[1] / (double) operandSamples[1];
+    double leftContinues = getContinuationProbability(0);
+    double rightContinues = getContinuationProbability(1);
+
+    double leftFirstCost = leftCost + leftContinues * rightCost;
+    double rightFirstCost = rightCost + rightContinues * leftCost;
+    swapped = rightFirstCost < leftFirstCost;
+  }
+
+  /**
+   * Gets the measured probability that the operand does not decide the result, so that the other operand must
+   * be evaluated as well.
+   */
+  private double getContinuationProbability(int index) {
+    if (operandEvaluations[index] == 0) {
+      return 1;
+    }
+    double trueRatio = operandTrueResults[index] / (double) operandEvaluations[index];
+    return shortCircuitResult ? 1 - trueRatio : trueRatio;
+  }
+
+  @Override
+  public String getEvaluationStatistics() {
+    String own = null;
+    if (evaluations > 0) {
+      StringBuilder sb = new StringBuilder();
+      sb.append(getNormalizedExpression());
+      sb.append(": ");
+      sb.append(swapped ? "right" : "left");
+      sb.append(" operand evaluated first");
+      appendOperandStatistics(sb, "left", 0);
+      appendOperandStatistics(sb, "right", 1);
+      own = sb.toString();
+    }
+    return joinStatistics(own, super.getEvaluationStatistics());
+  }
+
+  private void appendOperandStatistics(StringBuilder sb, String name, int index) {
+    long operandEvaluationCount = operandEvaluations[index];
+    sb.append("; ");
+    sb.append(name);
+    if (operandEvaluationCount == 0) {
+      sb.append(" not evaluated yet");
+      return;
+    }
+    long permille = operandTrueResults[index] * 1000 / operandEvaluationCount;
+    sb.append(" true in ");
+    sb.append(permille / 10);
+    sb.append('.');
+    sb.append(permille % 10);
+    sb.append("% of ");
+    sb.append(operandEvaluationCount);
+    sb.append(" evaluations");
+    if (operandSamples[index] > 0) {
+      sb.append(", ~");
+      sb.append(operandSampledNanos[index] / operandSamples[index]);
+      sb.append(" ns each");
+    }
+  }
+
+}
@@ -129,6 +129,11 @@ public class ExpressionFactory {
     }
   }
 
+  public ExpressionBreakpointWatch getBreakpointWatch (FieldName fn, Integer objectRef) {
+    assert fn != null;
+    return new ExpressionBreakpointWatch(fn, objectRef);
+  }
+
   public ExpressionBreakpointMethodInvoke getBreakpointMethodInvoke (BreakPointModes bpMode, MethodName mn) {
     assert (bpMode == BreakPointModes.BP_MODE_METHOD_INVOKE);
     assert mn != null;
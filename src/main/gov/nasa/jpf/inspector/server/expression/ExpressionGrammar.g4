@@ -97,6 +97,7 @@ allKeyWordsIDFLike
     | TOKEN_SYNC_BLOCK
     | TOKEN_THREAD
     | TOKEN_THREAD_SCHEDULED
+    | TOKEN_WATCH
     | TOKEN_X
     ;
 
@@ -219,6 +220,8 @@ nonCommaText
 cmdBreakpointsCreateParamsAtomTerminateIDF [ExpressionFactory expFactory] returns [ExpressionBoolean bp]
     : WS? fieldAccess              WS? '=' WS? className WS? ':' WS? fieldName[$className.cn] WS?
     { $bp = expFactory.getBreakpointFieldAccess($fieldAccess.bpMode, $fieldName.fn); }
+    | WS? TOKEN_WATCH              WS? '=' WS? className WS? ':' WS? fieldName[$className.cn] WS? ('@' WS? intValue WS?)?
+    { $bp = expFactory.getBreakpointWatch($fieldName.fn, ($intValue.ctx != null ? $intValue.value : null)); }
     | WS? TOKEN_METHOD_INVOKE      WS? '=' WS? className WS? ':' WS? methodName[$className.cn] WS?
     { $bp = expFactory.getBreakpointMethodInvoke(BreakPointModes.BP_MODE_METHOD_INVOKE, $methodName.mn); }
     | WS? TOKEN_OBJECT_CREATED     WS? '=' WS? className WS?
@@ -616,6 +619,7 @@ TOKEN_SYNC_BLOCK                : 'sync_block' | 'sb' ;
 TOKEN_THREAD                    : 'thread' | 'ti' ;
 TOKEN_THREAD_SCHEDULED          : 'thread_scheduled' | 'ts' ;
 TOKEN_TRUE                      : 'true' ;
+TOKEN_WATCH                     : 'watch' ;
 TOKEN_X                         : 'x' | 'X' ;
 
 TOKEN_LOCAL_ACCESS : 'local_access' | 'la';
@@ -24,21 +24,34 @@ import gov.nasa.jpf.vm.ElementInfo;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.VM;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Represents a program state, i.e. a point in the program timeline.
  */
 public class InspectorStateImpl implements InspectorState {
+  private static final int INITIAL_THREAD_CAPACITY = 8;
 
   /**
    * For each thread, this stores the instruction that was last executed. The instructions threads are currently
    * pointing to but have not yet executed are not in this.
    *
-   * The key is thread id.
+   * The index is the thread id. The array grows as threads are created.
    */
-  private final Map<Integer, Instruction> lastExecutedInstructions = new HashMap<>();
+  private Instruction[] lastExecutedInstructions = new Instruction[INITIAL_THREAD_CAPACITY];
+  /**
+   * Whether {@link #lastExecutedInstructions} is also referenced from {@link #lastExecutedHistory}. If it is,
+   * it must be copied before it is modified.
+   */
+  private boolean lastExecutedInstructionsShared = false;
+  /**
+   * For each search depth, the {@link #lastExecutedInstructions} at the time the state at that depth was reached,
+   * or null if unknown. Saving and restoring the array is free, it is only copied once the next instruction
+   * is executed.
+   */
+  private final List<Instruction[]> lastExecutedHistory = new ArrayList<>();
 
   private VM vm;
   /**
@@ -72,11 +85,11 @@ public class InspectorStateImpl implements InspectorState {
 
   @Override
   public Instruction getLastExecutedInstruction(int thread) {
-    if (lastExecutedInstructions.containsKey(thread)) {
-      return lastExecutedInstructions.get(thread);
-    } else {
+    Instruction[] instructions = lastExecutedInstructions;
+    if (thread < 0 || thread >= instructions.length) {
       return null;
     }
+    return instructions[thread];
   }
 
   @Override
@@ -93,9 +106,70 @@ public class InspectorStateImpl implements InspectorState {
   public void instructionExecuted(int threadId, Instruction executedInstruction, VM newJVM) {
     this.vm = newJVM;
     this.listenerMethod = ListenerMethod.LM_INSTRUCTION_EXECUTED;
+    setLastExecutedInstruction(threadId, executedInstruction);
+  }
 
-    lastExecutedInstructions.put(threadId, executedInstruction);
+  /**
+   * Sets the last executed instruction of a thread. Used when the instruction executed after it is undone, and when
+   * a transition executed in free run completes.
+   */
+  public void setLastExecutedInstruction(int threadId, Instruction executedInstruction) {
+    Instruction[] instructions = lastExecutedInstructions;
+    if (lastExecutedInstructionsShared || threadId >= instructions.length) {
+      int length = instructions.length;
+      while (threadId >= length) {
+        length *= 2;
+      }
+      instructions = Arrays.copyOf(instructions, length);
+      lastExecutedInstructions = instructions;
+      lastExecutedInstructionsShared = false;
+    }
+    instructions[threadId] = executedInstruction;
+  }
 
+  /**
+   * Forgets the last executed instructions of all threads. Used when they are not known for a restored state.
+   */
+  public void forgetLastExecutedInstructions() {
+    if (lastExecutedInstructionsShared) {
+      lastExecutedInstructions = new Instruction[lastExecutedInstructions.length];
+      lastExecutedInstructionsShared = false;
+    } else {
+      Arrays.fill(lastExecutedInstructions, null);
+    }
+  }
+
+  /**
+   * Remembers the last executed instructions for the state at the given search depth, so that they can be restored
+   * when JPF backtracks to that state. Called when a state is reached.
+   *
+   * @param depth Search depth of the state that was just reached.
+   */
+  public void saveLastExecutedInstructions(int depth) {
+    if (depth < 0) {
+      return;
+    }
+    while (lastExecutedHistory.size() <= depth) {
+      lastExecutedHistory.add(null);
+    }
+    lastExecutedHistory.set(depth, lastExecutedInstructions);
+    lastExecutedInstructionsShared = true;
+  }
+
+  /**
+   * Returns the last executed instructions to what they were when the state at the given search depth was reached.
+   * If that is not known, they are forgotten. Called when JPF backtracks or restores a state.
+   *
+   * @param depth Search depth of the state that was restored.
+   */
+  public void restoreLastExecutedInstructions(int depth) {
+    Instruction[] saved = (depth >= 0 && depth < lastExecutedHistory.size()) ? lastExecutedHistory.get(depth) : null;
+    if (saved == null) {
+      forgetLastExecutedInstructions();
+      return;
+    }
+    lastExecutedInstructions = saved;
+    lastExecutedInstructionsShared = true;
   }
 
   public void stateChanged (Search search, ListenerMethod listenerMethod) {
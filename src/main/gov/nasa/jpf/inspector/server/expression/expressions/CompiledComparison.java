@@ -0,0 +1,436 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.expression.expressions;
+
+import gov.nasa.jpf.inspector.server.expression.ExpressionStateRootNode;
+import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.programstate.StateValueElementInfoField;
+import gov.nasa.jpf.inspector.server.programstate.relop.RelationOperator;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.FieldInfo;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.LocalVarInfo;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.StackFrame;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.Types;
+import gov.nasa.jpf.vm.VM;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Specialized evaluator for the most common shape of {@link ExpressionBreakpointCompare}: a primitive local variable
+ * or field of the current stack frame (such as "x") compared with a primitive constant or another such variable.
+ *
+ * Variable names are resolved to stack slot indices or {@link FieldInfo} objects once per instruction and values
+ * are compared as primitives, without creating hierarchy-2 state nodes. Comparisons of two constants are folded
+ * when the expression is compiled.
+ *
+ * Whenever the compiled evaluator cannot decide (a name that is not a primitive local or field, operands of
+ * incompatible types, ...), it returns {@link #UNKNOWN} and the comparison is evaluated by the interpreter,
+ * which also produces the appropriate error messages. Results therefore never differ from the interpreter.
+ *
+ * Note: Evaluated by the JPF thread only.
+ */
+final class CompiledComparison {
+
+  static final int FALSE = 0;
+  static final int TRUE = 1;
+  static final int UNKNOWN = 2;
+
+  /**
+   * The categories in which the relation operators compare values (see RelOpComparableBase).
+   * Values of different categories are incompatible.
+   */
+  private enum ValueKind {
+    /** byte, short, int and long, compared as long */
+    INTEGRAL,
+    /** float and double, compared as double */
+    FLOATING,
+    CHAR,
+    BOOLEAN
+  }
+
+  private enum Operator {
+    EQ, NE, LT, LE, GT, GE
+  }
+
+  private final Operand left;
+  private final Operand right;
+  private final Operator operator;
+  /**
+   * Whether any operand is a variable and thus the current stack frame is needed.
+   */
+  private final boolean needsStackFrame;
+  /**
+   * If both operands are constants, holds the result of the comparison, otherwise {@link #UNKNOWN}.
+   */
+  private final int foldedResult;
+
+  private CompiledComparison (Operand left, Operator operator, Operand right) {
+    this.left = left;
+    this.right = right;
+    this.operator = operator;
+    this.needsStackFrame = (left instanceof VariableOperand) || (right instanceof VariableOperand);
+
+    if (left instanceof ConstantAccessor && right instanceof ConstantAccessor) {
+      foldedResult = compare((ConstantAccessor) left, (ConstantAccessor) right, null, null);
+    } else {
+      foldedResult = UNKNOWN;
+    }
+  }
+
+  /**
+   * Lowers a comparison into a compiled evaluator, if it has a supported shape.
+   *
+   * @return The compiled evaluator, or null if the comparison must always be interpreted.
+   */
+  static CompiledComparison tryCompile (ExpressionStateRootNode leftOp, RelationOperator relOper, ExpressionStateRootNode rightOp) {
+    Operator operator = getOperator(relOper);
+    Operand left = compileOperand(leftOp);
+    Operand right = compileOperand(rightOp);
+    if (operator == null || left == null || right == null) {
+      return null;
+    }
+    return new CompiledComparison(left, operator, right);
+  }
+
+  private static Operator getOperator (RelationOperator relOper) {
+    switch (relOper.getNormalizedText()) {
+      case "==":
+        return Operator.EQ;
+      case "!=":
+        return Operator.NE;
+      case "<":
+        return Operator.LT;
+      case "<=":
+        return Operator.LE;
+      case ">":
+        return Operator.GT;
+      case ">=":
+        return Operator.GE;
+      default:
+        return null;
+    }
+  }
+
+  private static Operand compileOperand (ExpressionStateRootNode operand) {
+    if (operand instanceof ExpressionStateValueConst) {
+      Object value = ((ExpressionStateValueConst) operand).getConstantValue();
+      if (value instanceof Integer || value instanceof Long) {
+        return new ConstantAccessor(ValueKind.INTEGRAL, ((Number) value).longValue(), 0);
+      } else if (value instanceof Float || value instanceof Double) {
+        return new ConstantAccessor(ValueKind.FLOATING, 0, ((Number) value).doubleValue());
+      } else if (value instanceof Character) {
+        return new ConstantAccessor(ValueKind.CHAR, (Character) value, 0);
+      } else if (value instanceof Boolean) {
+        return new ConstantAccessor(ValueKind.BOOLEAN, (Boolean) value ? 1 : 0, 0);
+      }
+      return null;
+    }
+    if (operand instanceof ExpressionStateThread) {
+      String varName = ((ExpressionStateThread) operand).getSimpleVariableName();
+      if (varName != null) {
+        return new VariableOperand(varName);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Evaluates the comparison in the current state.
+   *
+   * @return {@link #TRUE}, {@link #FALSE}, or {@link #UNKNOWN} if the interpreter must be used.
+   */
+  int evaluate (InspectorState state) {
+    if (!needsStackFrame) {
+      return foldedResult;
+    }
+
+    VM vm = state.getVM();
+    ThreadInfo ti = vm.getCurrentThread();
+    if (ti == null) {
+      return UNKNOWN;
+    }
+    StackFrame frame = ti.getTopFrame();
+    if (frame == null || frame.getPC() == null) {
+      return UNKNOWN;
+    }
+
+    Accessor leftAccessor = left.resolve(frame);
+    Accessor rightAccessor = right.resolve(frame);
+    if (leftAccessor == null || rightAccessor == null) {
+      return UNKNOWN;
+    }
+    return compare(leftAccessor, rightAccessor, frame, vm);
+  }
+
+  private int compare (Accessor leftAccessor, Accessor rightAccessor, StackFrame frame, VM vm) {
+    ValueKind kind = leftAccessor.kind;
+    if (kind != rightAccessor.kind) {
+      return UNKNOWN; // Incompatible types, the interpreter reports the error.
+    }
+
+    if (kind == ValueKind.FLOATING) {
+      double l = leftAccessor.readDouble(frame, vm);
+      double r = rightAccessor.readDouble(frame, vm);
+      switch (operator) {
+        case EQ: return toResult(l == r);
+        case NE: return toResult(l != r);
+        case LT: return toResult(l < r);
+        case LE: return toResult(l <= r);
+        case GT: return toResult(l > r);
+        case GE: return toResult(l >= r);
+      }
+    } else {
+      if (kind == ValueKind.BOOLEAN && operator != Operator.EQ && operator != Operator.NE) {
+        return UNKNOWN; // Booleans cannot be ordered, the interpreter reports the error.
+      }
+      long l = leftAccessor.readLong(frame, vm);
+      long r = rightAccessor.readLong(frame, vm);
+      switch (operator) {
+        case EQ: return toResult(l == r);
+        case NE: return toResult(l != r);
+        case LT: return toResult(l < r);
+        case LE: return toResult(l <= r);
+        case GT: return toResult(l > r);
+        case GE: return toResult(l >= r);
+      }
+    }
+    throw new RuntimeException("Internal error - Unknown operator " + operator);
+  }
+
+  private static int toResult (boolean value) {
+    return value ? TRUE : FALSE;
+  }
+
+  private static ValueKind getValueKind (String signature) {
+    if (signature == null || signature.isEmpty()) {
+      return null;
+    }
+    switch (signature.charAt(0)) {
+      case 'B':
+      case 'S':
+      case 'I':
+      case 'J':
+        return ValueKind.INTEGRAL;
+      case 'F':
+      case 'D':
+        return ValueKind.FLOATING;
+      case 'C':
+        return ValueKind.CHAR;
+      case 'Z':
+        return ValueKind.BOOLEAN;
+      default:
+        return null; // References, arrays
+    }
+  }
+
+  /**
+   * One side of the comparison.
+   */
+  private interface Operand {
+    /**
+     * Gets the accessor that reads this operand in the given stack frame, or null if the operand must be interpreted.
+     */
+    Accessor resolve (StackFrame frame);
+  }
+
+  /**
+   * Reads a primitive value of a known {@link ValueKind}. Values of kind {@link ValueKind#FLOATING} are read by
+   * {@link #readDouble(StackFrame, VM)}, all others by {@link #readLong(StackFrame, VM)}.
+   */
+  private abstract static class Accessor implements Operand {
+    final ValueKind kind;
+
+    Accessor (ValueKind kind) {
+      this.kind = kind;
+    }
+
+    @Override
+    public Accessor resolve (StackFrame frame) {
+      return this;
+    }
+
+    abstract long readLong (StackFrame frame, VM vm);
+
+    abstract double readDouble (StackFrame frame, VM vm);
+  }
+
+  private static final class ConstantAccessor extends Accessor {
+    private final long longValue;
+    private final double doubleValue;
+
+    ConstantAccessor (ValueKind kind, long longValue, double doubleValue) {
+      super(kind);
+      this.longValue = longValue;
+      this.doubleValue = doubleValue;
+    }
+
+    @Override
+    long readLong (StackFrame frame, VM vm) {
+      return longValue;
+    }
+
+    @Override
+    double readDouble (StackFrame frame, VM vm) {
+      return doubleValue;
+    }
+  }
+
+  /**
+   * A local variable or parameter in the current stack frame.
+   */
+  private static final class LocalVariableAccessor extends Accessor {
+    private final int slotIndex;
+    private final char type;
+
+    LocalVariableAccessor (ValueKind kind, int slotIndex, char type) {
+      super(kind);
+      this.slotIndex = slotIndex;
+      this.type = type;
+    }
+
+    @Override
+    long readLong (StackFrame frame, VM vm) {
+      if (type == 'J') {
+        return frame.getLongLocalVariable(slotIndex);
+      }
+      if (type == 'Z') {
+        return frame.getLocalVariable(slotIndex) != 0 ? 1 : 0;
+      }
+      return frame.getLocalVariable(slotIndex);
+    }
+
+    @Override
+    double readDouble (StackFrame frame, VM vm) {
+      if (type == 'D') {
+        return Types.longToDouble(frame.getLongLocalVariable(slotIndex));
+      }
+      return Float.intBitsToFloat(frame.getLocalVariable(slotIndex));
+    }
+  }
+
+  /**
+   * An instance field of "this" or a static field.
+   */
+  private static final class FieldAccessor extends Accessor {
+    private final FieldInfo fi;
+
+    FieldAccessor (ValueKind kind, FieldInfo fi) {
+      super(kind);
+      this.fi = fi;
+    }
+
+    private ElementInfo getElementInfo (StackFrame frame, VM vm) {
+      ElementInfo ei;
+      if (fi.isStatic()) {
+        ei = fi.getClassInfo().getStaticElementInfo();
+      } else {
+        ei = vm.getHeap().get(frame.getThis());
+      }
+      assert ei != null;
+      return ei;
+    }
+
+    @Override
+    long readLong (StackFrame frame, VM vm) {
+      ElementInfo ei = getElementInfo(frame, vm);
+      switch (fi.getSignature().charAt(0)) {
+        case 'B': return ei.getByteField(fi);
+        case 'S': return ei.getShortField(fi);
+        case 'I': return ei.getIntField(fi);
+        case 'J': return ei.getLongField(fi);
+        case 'C': return ei.getCharField(fi);
+        case 'Z': return ei.getBooleanField(fi) ? 1 : 0;
+        default:
+          throw new RuntimeException("Internal error - Field " + fi.getName() + " is not an integral field.");
+      }
+    }
+
+    @Override
+    double readDouble (StackFrame frame, VM vm) {
+      ElementInfo ei = getElementInfo(frame, vm);
+      if (fi.getSignature().charAt(0) == 'D') {
+        return ei.getDoubleField(fi);
+      }
+      return ei.getFloatField(fi);
+    }
+  }
+
+  /**
+   * A name, resolved the same way as {@link ExpressionStateValueName#getExpressionFromStackFrame} resolves it.
+   * Because the visibility of local variables depends on the program counter, resolutions are cached per instruction.
+   */
+  private static final class VariableOperand implements Operand {
+    /**
+     * Marks instructions where the name cannot be read by the compiled evaluator.
+     */
+    private static final Accessor DYNAMIC = new ConstantAccessor(null, 0, 0);
+
+    private final String varName;
+    private final Map<Instruction, Accessor> resolved = new IdentityHashMap<>();
+
+    VariableOperand (String varName) {
+      this.varName = varName;
+    }
+
+    @Override
+    public Accessor resolve (StackFrame frame) {
+      Instruction pc = frame.getPC();
+      Accessor accessor = resolved.get(pc);
+      if (accessor == null) {
+        accessor = resolveUncached(frame);
+        resolved.put(pc, accessor);
+      }
+      return accessor == DYNAMIC ? null : accessor;
+    }
+
+    private Accessor resolveUncached (StackFrame frame) {
+      MethodInfo mi = frame.getMethodInfo();
+      if (mi == null) {
+        return DYNAMIC;
+      }
+
+      // Local variable or parameter
+      LocalVarInfo lvi = mi.getLocalVar(varName, frame.getPC().getPosition());
+      if (lvi != null) {
+        ValueKind kind = getValueKind(lvi.getSignature());
+        return kind == null ? DYNAMIC : new LocalVariableAccessor(kind, lvi.getSlotIndex(), lvi.getSignature().charAt(0));
+      }
+
+      // Field or static field
+      ClassInfo ci = mi.getClassInfo();
+      if (ci == null) {
+        return DYNAMIC;
+      }
+      FieldInfo fi;
+      if (mi.isStatic()) {
+        fi = ci.getStaticField(varName);
+      } else {
+        fi = StateValueElementInfoField.fieldNameJavaBasedLookup(ci, varName);
+      }
+      if (fi == null) {
+        return DYNAMIC; // Class names and other special names
+      }
+      ValueKind kind = getValueKind(fi.getSignature());
+      return kind == null ? DYNAMIC : new FieldAccessor(kind, fi);
+    }
+  }
+}
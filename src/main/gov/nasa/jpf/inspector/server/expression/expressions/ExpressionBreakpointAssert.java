@@ -21,6 +21,9 @@ import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
 import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanBinaryOperator;
 import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanInterface;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
+
+import java.util.Set;
 
 /**
  * Represents the pseudo-breakpoint that is created when the user uses the "assert" command.
@@ -31,6 +34,8 @@ public class ExpressionBreakpointAssert extends ExpressionBooleanBinaryOperator
 
   public ExpressionBreakpointAssert (ExpressionBooleanInterface position, ExpressionBooleanInterface condition) {
     super(position, condition);
+    // A failure of the condition makes the assertion not hit, while "false" would make it hit.
+    condition.setFailureSensitive();
   }
 
   @Override
@@ -91,6 +96,16 @@ public class ExpressionBreakpointAssert extends ExpressionBooleanBinaryOperator
     return children.get(1).getNormalizedExpression();
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * An assertion can only fail at its position, so this is the position's set.
+   */
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return children.get(0).getListenerMethods();
+  }
+
   @Override
   public String getNormalizedExpression () {
     String sb = TOKEN_ASSERT +
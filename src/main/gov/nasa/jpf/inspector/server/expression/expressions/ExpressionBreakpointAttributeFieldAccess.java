@@ -25,6 +25,9 @@ import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
 import gov.nasa.jpf.inspector.utils.expressions.FieldName;
 import gov.nasa.jpf.vm.Instruction;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represent the family of local variable access hit conditions that hit when the local variable is about to be referenced.
  * This family contains the hit conditions "local_access", "local_read" and "local_write".
@@ -65,6 +68,11 @@ public class ExpressionBreakpointAttributeFieldAccess extends ExpressionBooleanL
     throw new RuntimeException("Internal error - Unsupported access mode (" + accessMode + ").");
   }
 
+  @Override
+  public Set<InspectorState.ListenerMethod> getListenerMethods() {
+    return EnumSet.of(InspectorState.ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression() {
     StringBuilder result = new StringBuilder();
@@ -24,6 +24,9 @@ import gov.nasa.jpf.inspector.server.expression.InspectorState;
 import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
 import gov.nasa.jpf.vm.Instruction;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represent the family of local variable access hit conditions that hit when the local variable is about to be referenced.
  * This family contains the hit conditions "local_access", "local_read" and "local_write".
@@ -64,6 +67,11 @@ public class ExpressionBreakpointAttributeLocalAccess extends ExpressionBooleanL
     throw new RuntimeException("Internal error - Unsupported access mode (" + accessMode + ").");
   }
 
+  @Override
+  public Set<InspectorState.ListenerMethod> getListenerMethods() {
+    return EnumSet.of(InspectorState.ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression() {
     StringBuilder result = new StringBuilder();
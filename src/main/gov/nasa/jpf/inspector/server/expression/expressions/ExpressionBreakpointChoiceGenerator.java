@@ -24,6 +24,9 @@ import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 import gov.nasa.jpf.vm.ChoiceGenerator;
 import gov.nasa.jpf.vm.ThreadInfo;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents the "cg = [choice generator type]" hit condition that hits when a choice is requested from
  * a choice generator of the given type.
@@ -65,6 +68,11 @@ public class ExpressionBreakpointChoiceGenerator extends ExpressionBooleanLeaf {
     }
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods() {
+    return EnumSet.of(ListenerMethod.LM_CHOICE_GENERATOR_ADVANCED);
+  }
+
   @Override
   public String getNormalizedExpression() {
     StringBuilder sb = new StringBuilder(20);
@@ -24,6 +24,9 @@ import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.MethodInfo;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents the "class = [classname]" hit condition that hits before each instruction in the specified class.
  */
@@ -56,6 +59,11 @@ public class ExpressionBreakpointClassName extends ExpressionBooleanLeaf {
     return className.isSameClass(actualClassInfo);
   }
 
+  @Override
+  public Set<InspectorState.ListenerMethod> getListenerMethods() {
+    return EnumSet.of(InspectorState.ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression() {
     return "class = " + className.getClassName();
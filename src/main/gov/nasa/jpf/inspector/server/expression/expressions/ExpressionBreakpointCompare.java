@@ -37,6 +37,10 @@ public class ExpressionBreakpointCompare extends ExpressionBooleanLeaf {
 
   private final JPFInspector inspector;
   private final RelationOperator relOper;
+  /**
+   * Specialized evaluator for simple comparisons such as "x > 5", or null if this comparison is always interpreted.
+   */
+  private final CompiledComparison compiled;
 
   private String detail = "";
 
@@ -45,11 +49,20 @@ public class ExpressionBreakpointCompare extends ExpressionBooleanLeaf {
     this.rightOp = rightOp;
     this.relOper = relOper;
     this.inspector = inspector;
+    this.compiled = CompiledComparison.tryCompile(leftOp, relOper, rightOp);
   }
 
   /* @see gov.nasa.jpf.inspector.server.expression.ExpressionBooleanInterface#evaluateExpression(gov.nasa.jpf.inspector.server.expression.InspectorState) */
   @Override
   public boolean evaluateExpression (InspectorState state) throws JPFInspectorException {
+    if (compiled != null) {
+      int result = compiled.evaluate(state);
+      if (result != CompiledComparison.UNKNOWN) {
+        detail = "";
+        return result == CompiledComparison.TRUE;
+      }
+    }
+
     try {
       detail = "";
 
@@ -81,6 +94,11 @@ public class ExpressionBreakpointCompare extends ExpressionBooleanLeaf {
     return '(' + leftOp.getNormalizedExpression() + ' ' + relOper.getNormalizedText() + ' ' + rightOp.getNormalizedExpression() + ')';
   }
 
+  @Override
+  public boolean mayFail () {
+    return true;
+  }
+
   @Override
   public String getDetails (InspectorState state) {
     return detail;
@@ -73,6 +73,16 @@ public class ExpressionBreakpointCustomHitCondition extends ExpressionBooleanLea
         }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * Custom hit conditions are user code, so we have to assume that they do have side effects.
+   */
+  @Override
+  public boolean hasSideEffects () {
+    return true;
+  }
+
   @Override
   public String getNormalizedExpression () {
     String string = name + "(" + parameters.toString() + ")";
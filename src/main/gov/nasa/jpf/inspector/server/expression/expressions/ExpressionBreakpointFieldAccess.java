@@ -26,10 +26,17 @@ import gov.nasa.jpf.jvm.bytecode.GETFIELD;
 import gov.nasa.jpf.jvm.bytecode.GETSTATIC;
 import gov.nasa.jpf.jvm.bytecode.PUTFIELD;
 import gov.nasa.jpf.jvm.bytecode.PUTSTATIC;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.FieldInfo;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.bytecode.FieldInstruction;
 
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Represent the family of field access hit conditions that hit when the field is about to be referenced.
  * This family contains the hit conditions "field_access", "field_read" and "field_write".
@@ -39,6 +46,12 @@ public class ExpressionBreakpointFieldAccess extends ExpressionBooleanLeaf {
   private AccessMode accessMode;
   private FieldName fn;
 
+  /**
+   * For each field already compared with {@link #fn}, holds whether it matches. Filled by {@link #classLoaded(ClassInfo)}
+   * and lazily for classes loaded before this expression was created. Accessed only by the JPF thread.
+   */
+  private final Map<FieldInfo, Boolean> fieldMatches = new IdentityHashMap<>();
+
   public ExpressionBreakpointFieldAccess(AccessMode accessMode, FieldName fn) {
     assert fn != null;
     this.fn = fn;
@@ -62,16 +75,46 @@ public class ExpressionBreakpointFieldAccess extends ExpressionBooleanLeaf {
 
     FieldInstruction fiInst = (FieldInstruction) inst;
     if (accessMode == AccessMode.ANY_ACCESS) {
-      return fn.isSameField(fiInst.getFieldInfo());
+      return isSameField(fiInst.getFieldInfo());
     } else if (accessMode == AccessMode.READ) {
-      return (fiInst instanceof GETFIELD) || (fiInst instanceof GETSTATIC) && fn.isSameField(fiInst.getFieldInfo());
+      return ((fiInst instanceof GETFIELD) || (fiInst instanceof GETSTATIC)) && isSameField(fiInst.getFieldInfo());
     } else if (accessMode == AccessMode.WRITE) {
-      return (fiInst instanceof PUTFIELD) || (fiInst instanceof PUTSTATIC) && fn.isSameField(fiInst.getFieldInfo());
+      return ((fiInst instanceof PUTFIELD) || (fiInst instanceof PUTSTATIC)) && isSameField(fiInst.getFieldInfo());
     }
 
     return false;
   }
 
+  /**
+   * Returns whether the field matches {@link #fn}, using the cached result if the field was already seen.
+   */
+  private boolean isSameField(FieldInfo fi) {
+    if (fi == null) {
+      return false;
+    }
+    Boolean matches = fieldMatches.get(fi);
+    if (matches == null) {
+      matches = fn.isSameField(fi);
+      fieldMatches.put(fi, matches);
+    }
+    return matches;
+  }
+
+  @Override
+  public void classLoaded(ClassInfo loadedClass) {
+    for (FieldInfo fi : loadedClass.getDeclaredInstanceFields()) {
+      fieldMatches.put(fi, fn.isSameField(fi));
+    }
+    for (FieldInfo fi : loadedClass.getDeclaredStaticFields()) {
+      fieldMatches.put(fi, fn.isSameField(fi));
+    }
+  }
+
+  @Override
+  public Set<ListenerMethod> getListenerMethods() {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression() {
     StringBuilder result = new StringBuilder();
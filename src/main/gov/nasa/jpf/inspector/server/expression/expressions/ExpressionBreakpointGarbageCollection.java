@@ -22,6 +22,9 @@ import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanLeaf;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
 import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents the "garbage_collection = [begin/end/both]" hit condition that hits when garbage collection starts
  * or ends.
@@ -54,6 +57,18 @@ public class ExpressionBreakpointGarbageCollection extends ExpressionBooleanLeaf
     return false;
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods() {
+    EnumSet<ListenerMethod> result = EnumSet.noneOf(ListenerMethod.class);
+    if ((bpMode == BreakPointModes.BP_MODE_GC_BEGIN) || (bpMode == BreakPointModes.BP_MODE_GC_BOTH)) {
+      result.add(ListenerMethod.LM_GC_BEGIN);
+    }
+    if ((bpMode == BreakPointModes.BP_MODE_GC_END) || (bpMode == BreakPointModes.BP_MODE_GC_BOTH)) {
+      result.add(ListenerMethod.LM_GC_END);
+    }
+    return result;
+  }
+
   @Override
   public String getNormalizedExpression() {
     StringBuilder sb = new StringBuilder(20);
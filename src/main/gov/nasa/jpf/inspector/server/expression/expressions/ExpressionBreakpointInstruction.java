@@ -29,7 +29,9 @@ import gov.nasa.jpf.inspector.utils.expressions.MethodName;
 import gov.nasa.jpf.vm.*;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents the undocumented "specific_instruction" hit condition that hits when the specific instruction is about to be executed.
@@ -171,6 +173,21 @@ public class ExpressionBreakpointInstruction extends ExpressionBooleanLeaf {
     return null;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * This hit condition counts instructions, so it must be evaluated exactly as often as it was before.
+   */
+  @Override
+  public boolean hasSideEffects () {
+    return true;
+  }
+
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression () {
     StringBuilder sb = new StringBuilder();
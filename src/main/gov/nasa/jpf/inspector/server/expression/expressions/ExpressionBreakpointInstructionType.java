@@ -31,6 +31,9 @@ import gov.nasa.jpf.jvm.bytecode.LockInstruction;
 import gov.nasa.jpf.jvm.bytecode.PUTFIELD;
 import gov.nasa.jpf.jvm.bytecode.PUTSTATIC;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents the "instruction_type" hit condition. This hit condition is also used internally for creating breakpoints
  * for single-stepping.
@@ -96,6 +99,11 @@ public class ExpressionBreakpointInstructionType extends ExpressionBooleanLeaf {
     return "";
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression () {
     StringBuilder sb = new StringBuilder(30);
@@ -25,6 +25,9 @@ import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.bytecode.StoreInstruction;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represent the family of local variable access hit conditions that hit when the local variable is about to be referenced.
  * This family contains the hit conditions "local_access", "local_read" and "local_write".
@@ -70,6 +73,11 @@ public class ExpressionBreakpointLocalAccess extends ExpressionBooleanLeaf {
     throw new RuntimeException("Internal error - Unsupported access mode (" + accessMode + ")");
   }
 
+  @Override
+  public Set<InspectorState.ListenerMethod> getListenerMethods() {
+    return EnumSet.of(InspectorState.ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression() {
     StringBuilder result = new StringBuilder();
@@ -22,10 +22,17 @@ import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanLeaf;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
 import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 import gov.nasa.jpf.inspector.utils.expressions.MethodName;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.MethodInfo;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.bytecode.InvokeInstruction;
 
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Represents the "method_invoke = [methodname]" hit condition that hits when a method is about to be invoked.
  */
@@ -33,6 +40,12 @@ public class ExpressionBreakpointMethodInvoke extends ExpressionBooleanLeaf {
 
   private MethodName mn;
 
+  /**
+   * For each method already compared with {@link #mn}, holds whether it matches. Filled by {@link #classLoaded(ClassInfo)}
+   * and lazily for classes loaded before this expression was created. Accessed only by the JPF thread.
+   */
+  private final Map<MethodInfo, Boolean> methodMatches = new IdentityHashMap<>();
+
   public ExpressionBreakpointMethodInvoke(BreakPointModes bpMode, MethodName mn) {
     assert bpMode == BreakPointModes.BP_MODE_METHOD_INVOKE;
 
@@ -59,8 +72,28 @@ public class ExpressionBreakpointMethodInvoke extends ExpressionBooleanLeaf {
     }
 
     InvokeInstruction iiInst = (InvokeInstruction) inst;
-    return mn.isSameMethod(iiInst.getInvokedMethod());
+    MethodInfo invokedMethod = iiInst.getInvokedMethod();
+    if (invokedMethod == null) {
+      return false;
+    }
+    Boolean matches = methodMatches.get(invokedMethod);
+    if (matches == null) {
+      matches = mn.isSameMethod(invokedMethod);
+      methodMatches.put(invokedMethod, matches);
+    }
+    return matches;
+  }
 
+  @Override
+  public void classLoaded(ClassInfo loadedClass) {
+    for (MethodInfo methodInfo : loadedClass.getDeclaredMethodInfos()) {
+      methodMatches.put(methodInfo, mn.isSameMethod(methodInfo));
+    }
+  }
+
+  @Override
+  public Set<ListenerMethod> getListenerMethods() {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
   }
 
   @Override
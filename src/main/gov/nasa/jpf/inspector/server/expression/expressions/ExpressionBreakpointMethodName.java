@@ -23,7 +23,9 @@ import gov.nasa.jpf.inspector.utils.expressions.MethodName;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.MethodInfo;
 
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents the "method = (methodname) and "method = (classname):(methodname)" hit conditions that hit before
@@ -54,6 +56,11 @@ public class ExpressionBreakpointMethodName extends ExpressionBooleanLeaf {
     return methodName.isSameMethod(methodInfo);
   }
 
+  @Override
+  public Set<InspectorState.ListenerMethod> getListenerMethods() {
+    return EnumSet.of(InspectorState.ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression() {
     return "method = " + (!Objects.equals(methodName.getClassName(), "*") ? methodName.getClassName() + ":" : "") + methodName.getMethodName();
@@ -19,25 +19,23 @@ package gov.nasa.jpf.inspector.server.expression.expressions;
 
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
 import gov.nasa.jpf.inspector.server.expression.ExpressionBoolean;
-import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanBinaryOperator;
+import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanShortCircuitOperator;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Represents the breakpoint expression "(hit condition 1) and (hit condition 2)".
+ *
+ * The operands may be evaluated in the reverse order if it is measured to be cheaper,
+ * see {@link ExpressionBooleanShortCircuitOperator}.
  */
-public class ExpressionBreakpointOperatorAnd extends ExpressionBooleanBinaryOperator {
+public class ExpressionBreakpointOperatorAnd extends ExpressionBooleanShortCircuitOperator {
 
   public ExpressionBreakpointOperatorAnd (ExpressionBoolean left, ExpressionBoolean right) {
-    super(left, right);
-  }
-
-  @Override
-  public boolean evaluateExpression (InspectorState state) throws JPFInspectorException {
-    assert children != null;
-    assert children.size() == 2;
-    assert children.get(0) != null && children.get(1) != null;
-
-    return children.get(0).evaluateExpression(state) && children.get(1).evaluateExpression(state);
+    super(left, right, false);
   }
 
   @Override
@@ -67,6 +65,19 @@ public class ExpressionBreakpointOperatorAnd extends ExpressionBooleanBinaryOper
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * Both operands must hold at the same time, so this is the intersection of the operands' sets.
+   */
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    EnumSet<ListenerMethod> result = EnumSet.noneOf(ListenerMethod.class);
+    result.addAll(children.get(0).getListenerMethods());
+    result.retainAll(children.get(1).getListenerMethods());
+    return result;
+  }
+
   @Override
   public String getNormalizedExpression () {
     String sb = "( " +
@@ -19,6 +19,7 @@ package gov.nasa.jpf.inspector.server.expression.expressions;
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
 import gov.nasa.jpf.inspector.server.expression.ExpressionBoolean;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.vm.ClassInfo;
 
 import java.util.Objects;
 
@@ -31,6 +32,7 @@ public class ExpressionBreakpointOperatorNot extends ExpressionBoolean {
 
   public ExpressionBreakpointOperatorNot(ExpressionBoolean inner) {
      innerHitCondition = inner;
+     innerHitCondition.setFailureSensitive();
   }
 
   @Override
@@ -55,6 +57,31 @@ public class ExpressionBreakpointOperatorNot extends ExpressionBoolean {
     }
   }
 
+  @Override
+  public void classLoaded (ClassInfo loadedClass) {
+    innerHitCondition.classLoaded(loadedClass);
+  }
+
+  @Override
+  public boolean hasSideEffects () {
+    return innerHitCondition.hasSideEffects();
+  }
+
+  @Override
+  public boolean mayFail () {
+    return innerHitCondition.mayFail();
+  }
+
+  @Override
+  public void setFailureSensitive () {
+    // The inner hit condition was already marked by the constructor.
+  }
+
+  @Override
+  public String getEvaluationStatistics () {
+    return innerHitCondition.getEvaluationStatistics();
+  }
+
   @Override
   public String getNormalizedExpression () {
     return "not " + innerHitCondition.getNormalizedExpression();
@@ -18,36 +18,26 @@ package gov.nasa.jpf.inspector.server.expression.expressions;
 
 import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
 import gov.nasa.jpf.inspector.server.expression.ExpressionBoolean;
-import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanBinaryOperator;
+import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanShortCircuitOperator;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Represents the "or" hit condition.
+ *
+ * If the left operand fails, the result is the value of the right operand. The operands may be evaluated
+ * in the reverse order if it is measured to be cheaper, see {@link ExpressionBooleanShortCircuitOperator}.
  */
-public class ExpressionBreakpointOperatorOr extends ExpressionBooleanBinaryOperator {
+public class ExpressionBreakpointOperatorOr extends ExpressionBooleanShortCircuitOperator {
 
   public ExpressionBreakpointOperatorOr (ExpressionBoolean left, ExpressionBoolean right) {
-    super(left, right);
-  }
-
-  @Override
-  public boolean evaluateExpression (InspectorState state) throws JPFInspectorException {
-    assert children != null;
-    assert children.size() == 2;
-    assert children.get(0) != null && children.get(1) != null;
-    try {
-      if (children.get(0).evaluateExpression(state)) {
-        return true;
-      }
-    } catch (JPFInspectorException e_left) {
-      try {
-        // Try if right parameter can be fullfilled
-        return children.get(1).evaluateExpression(state);
-      } catch (JPFInspectorException e_right) {
-        throw e_left; // Throw first exception
-      }
-    }
-    return children.get(1).evaluateExpression(state);
+    super(left, right, true);
+    // A failure of an operand is not the same as "false" here.
+    left.setFailureSensitive();
+    right.setFailureSensitive();
   }
 
   @Override
@@ -77,6 +67,19 @@ public class ExpressionBreakpointOperatorOr extends ExpressionBooleanBinaryOpera
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * Either operand is sufficient, so this is the union of the operands' sets.
+   */
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    EnumSet<ListenerMethod> result = EnumSet.noneOf(ListenerMethod.class);
+    result.addAll(children.get(0).getListenerMethods());
+    result.addAll(children.get(1).getListenerMethods());
+    return result;
+  }
+
   @Override
   public String getNormalizedExpression () {
     String string = "( " +
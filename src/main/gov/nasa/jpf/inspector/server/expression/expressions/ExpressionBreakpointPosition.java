@@ -22,9 +22,17 @@ import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanLeaf;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
 import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
+import gov.nasa.jpf.inspector.utils.expressions.FileName;
+import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MethodInfo;
 import gov.nasa.jpf.vm.VM;
 
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Represents the "position = [filename]:[linenumber]" hit condition that hits just before the first instruction on the specified line.
  */
@@ -42,6 +50,20 @@ public class ExpressionBreakpointPosition extends ExpressionBooleanLeaf {
    */
   private final InstructionPosition targetLocation;
 
+  /**
+   * The file of {@link #targetLocation}, used to skip loaded classes from other files.
+   */
+  private final FileName targetFile;
+
+  /**
+   * For each method that was already examined, holds the first instruction on the target line in that method, or null
+   * if the method has no instruction on the target line (or is in a different file).
+   *
+   * Filled by {@link #classLoaded(ClassInfo)} for classes from the target file loaded after this expression was created,
+   * and lazily for the methods that are executed. Accessed only by the JPF thread.
+   */
+  private final Map<MethodInfo, Instruction> targetInstructions = new IdentityHashMap<>();
+
   public ExpressionBreakpointPosition (JPFInspector inspector, InstructionPosition pos) {
     assert pos != null;
     assert inspector != null;
@@ -53,6 +75,7 @@ public class ExpressionBreakpointPosition extends ExpressionBooleanLeaf {
     }
 
     this.targetLocation = pos;
+    this.targetFile = new FileName(pos.getFileName());
   }
 
   @Override
@@ -69,16 +92,49 @@ public class ExpressionBreakpointPosition extends ExpressionBooleanLeaf {
     assert vm != null;
 
     final Instruction thisInstruction = vm.getInstruction();
-
-    // This represents whether we are the same file and line, but we still need to ensure that we are the FIRST
-    // instruction on this line. By "first instruction", we mean "the first instruction on this line in the current method".
-    if (!targetLocation.hitPosition(thisInstruction)) {
+    final MethodInfo methodInfo = thisInstruction.getMethodInfo();
+    if (methodInfo == null) {
       return false;
     }
 
-    int targetLine = targetLocation.getLineNumber();
-    Instruction firstInstructionOnThisLine = thisInstruction.getMethodInfo().getInstructionsForLine(targetLine)[0];
-    return thisInstruction.equals(firstInstructionOnThisLine);
+    // The target is "the first instruction on this line in the current method". This is resolved once per method,
+    // so for all other instructions this is only an identity lookup.
+    Instruction target = targetInstructions.get(methodInfo);
+    if (target == null && !targetInstructions.containsKey(methodInfo)) {
+      target = resolveMethod(methodInfo);
+    }
+    return thisInstruction == target;
+  }
+
+  @Override
+  public void classLoaded (ClassInfo loadedClass) {
+    // Only classes from the target file can contain the target line. Methods of the other classes are resolved when
+    // (and if) they are executed.
+    String sourceFileName = loadedClass.getSourceFileName();
+    if (sourceFileName == null || !targetFile.isSameFile(sourceFileName)) {
+      return;
+    }
+    for (MethodInfo methodInfo : loadedClass.getDeclaredMethodInfos()) {
+      if (!targetInstructions.containsKey(methodInfo)) {
+        resolveMethod(methodInfo);
+      }
+    }
+  }
+
+  /**
+   * Finds the instruction in the given method that this hit condition stops at, and remembers it.
+   *
+   * @param methodInfo The method to examine.
+   * @return The first instruction on the target line in the method, or null if there is none.
+   */
+  private Instruction resolveMethod (MethodInfo methodInfo) {
+    Instruction target = null;
+    Instruction[] instructionsOnLine = methodInfo.getInstructionsForLine(targetLocation.getLineNumber());
+    if (instructionsOnLine != null && instructionsOnLine.length > 0 && targetLocation.hitPosition(instructionsOnLine[0])) {
+      target = instructionsOnLine[0];
+    }
+    targetInstructions.put(methodInfo, target);
+    return target;
   }
 
   @Override
@@ -89,6 +145,11 @@ public class ExpressionBreakpointPosition extends ExpressionBooleanLeaf {
     return "";
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression () {
     String string = "position=" +
@@ -21,6 +21,9 @@ import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanLeaf;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
 import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents the hit condition "property_violated".
  */
@@ -32,6 +35,11 @@ public class ExpressionBreakpointPropertyViolated extends ExpressionBooleanLeaf
     return (state.getListenerMethod() == ListenerMethod.LM_PROPERTY_VIOLATED);
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_PROPERTY_VIOLATED);
+  }
+
   @Override
   public String getNormalizedExpression () {
     return "property_violated";
@@ -0,0 +1,104 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.expression.expressions;
+
+import gov.nasa.jpf.inspector.server.expression.ExpressionBoolean;
+import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanLeaf;
+import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.VM;
+
+import java.util.Set;
+
+/**
+ * Represents the hidden hit condition of a forward stepping command with a count, such as "step_over 500".
+ *
+ * The condition of a single step is created at the position where the stepping starts. Each time it hits, the
+ * condition of the next step is created at the position where the previous one hit, so the condition as a whole hits
+ * only where the last step would stop, and JPF stops only once.
+ */
+public final class ExpressionBreakpointRepeatedStep extends ExpressionBooleanLeaf {
+
+  /**
+   * Creates the hit condition of a single step at the current position of the virtual machine.
+   */
+  public interface StepFactory {
+    ExpressionBoolean createStep(VM vm);
+  }
+
+  private final StepFactory stepFactory;
+  private final Set<ListenerMethod> listenerMethods;
+  /**
+   * Hit condition of the step that is being executed.
+   */
+  private ExpressionBoolean currentStep;
+  /**
+   * Number of steps that remain, including the current one.
+   */
+  private int remainingSteps;
+
+  /**
+   * @param stepFactory Creates the hit condition of each step.
+   * @param vm The virtual machine at the position where the stepping starts.
+   * @param count Number of steps. Must be at least 1.
+   */
+  public ExpressionBreakpointRepeatedStep(StepFactory stepFactory, VM vm, int count) {
+    assert stepFactory != null;
+    assert count >= 1;
+    this.stepFactory = stepFactory;
+    this.currentStep = stepFactory.createStep(vm);
+    this.listenerMethods = currentStep.getListenerMethods();
+    this.remainingSteps = count;
+  }
+
+  @Override
+  public boolean evaluateExpression(InspectorState state) {
+    if (!currentStep.evaluateExpression(state)) {
+      return false;
+    }
+    remainingSteps--;
+    if (remainingSteps == 0) {
+      return true;
+    }
+    currentStep = stepFactory.createStep(state.getVM());
+    return false;
+  }
+
+  /**
+   * Evaluation advances to the next step, so the condition must be evaluated every time and must not be parked.
+   */
+  @Override
+  public boolean hasSideEffects () {
+    return true;
+  }
+
+  @Override
+  public Set<ListenerMethod> getListenerMethods() {
+    return listenerMethods;
+  }
+
+  @Override
+  public void classLoaded(ClassInfo loadedClass) {
+    currentStep.classLoaded(loadedClass);
+  }
+
+  @Override
+  public String getNormalizedExpression() {
+    return currentStep.getNormalizedExpression();
+  }
+}
@@ -29,6 +29,9 @@ import gov.nasa.jpf.vm.Transition;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.bytecode.InvokeInstruction;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents the "step_in" and "step_over" hit conditions. These are supposed to be internal and are undocumented.
  * They are, however, used internally by the single-stepping command.
@@ -200,6 +203,11 @@ public class ExpressionBreakpointSingleStep extends ExpressionBooleanLeaf {
     return false;
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression () {
     if (steppingKind == LocationTypes.LT_POSITION_LEAVED_STEP_IN) {
@@ -25,6 +25,9 @@ import gov.nasa.jpf.vm.ClassInfo;
 import gov.nasa.jpf.vm.ElementInfo;
 import gov.nasa.jpf.vm.VM;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents hit conditions that hit whenever an object of the specified class is created, released by the garbage
  * collector, or when an exception of the specified class is thrown.
@@ -71,6 +74,17 @@ public class ExpressionBreakpointSpecificClass extends ExpressionBooleanLeaf {
     return cn.isSameClass(ci);
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods() {
+    if (mode == Mode.SC_MODE_CREATED) {
+      return EnumSet.of(ListenerMethod.LM_OBJECT_CREATED);
+    } else if (mode == Mode.SC_MODE_RELEASED) {
+      return EnumSet.of(ListenerMethod.LM_OBJECT_RELEASED);
+    } else {
+      return EnumSet.of(ListenerMethod.LM_EXCEPTION_THROWN);
+    }
+  }
+
   @Override
   public String getNormalizedExpression() {
     StringBuilder sb = new StringBuilder(64);
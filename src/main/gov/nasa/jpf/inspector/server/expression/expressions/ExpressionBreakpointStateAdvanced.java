@@ -23,6 +23,9 @@ import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.search.SearchListener;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Hits when new new transition is started.
  * ({@link SearchListener#stateAdvanced(gov.nasa.jpf.search.Search)} is calles)
@@ -46,6 +49,11 @@ public class ExpressionBreakpointStateAdvanced extends ExpressionBooleanLeaf {
         + ", vm.currentThread= " + state.getVM().getCurrentThread().getId() + " lastInstr=" + instr + ", position=" + instr.getFilePos() + ")";
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_STATE_ADVANCED);
+  }
+
   @Override
   public String getNormalizedExpression () {
     return "state_advanced";
@@ -24,6 +24,9 @@ import gov.nasa.jpf.vm.StackFrame;
 import gov.nasa.jpf.vm.ThreadInfo;
 import gov.nasa.jpf.vm.VM;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents a hidden breakpoint condition used to implement the "step_out" command.
  * 
@@ -105,6 +108,11 @@ public final class ExpressionBreakpointStepOut extends ExpressionBooleanLeaf {
     return false;
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
   @Override
   public String getNormalizedExpression () {
     String string = "step_out" +
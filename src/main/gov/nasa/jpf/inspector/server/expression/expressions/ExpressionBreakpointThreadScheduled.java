@@ -25,6 +25,9 @@ import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.vm.ThreadInfo;
 import gov.nasa.jpf.vm.Transition;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Represents the "thread_scheduled = [in/out/both] : [index]" hit condition that hits when the specified thread is
  * scheduled in or out.
@@ -83,6 +86,11 @@ public class ExpressionBreakpointThreadScheduled extends ExpressionBooleanLeaf {
     return false;
   }
 
+  @Override
+  public Set<ListenerMethod> getListenerMethods () {
+    return EnumSet.of(ListenerMethod.LM_THREAD_SCHEDULED);
+  }
+
   @Override
   public String getNormalizedExpression () {
     StringBuilder sb = new StringBuilder(64);
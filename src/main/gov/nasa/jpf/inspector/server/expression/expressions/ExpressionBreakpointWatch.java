@@ -0,0 +1,233 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.expression.expressions;
+
+import gov.nasa.jpf.inspector.server.expression.ExpressionBooleanLeaf;
+import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.expression.InspectorState.ListenerMethod;
+import gov.nasa.jpf.inspector.utils.expressions.FieldName;
+import gov.nasa.jpf.jvm.bytecode.AASTORE;
+import gov.nasa.jpf.jvm.bytecode.ArrayStoreInstruction;
+import gov.nasa.jpf.jvm.bytecode.BASTORE;
+import gov.nasa.jpf.jvm.bytecode.CASTORE;
+import gov.nasa.jpf.jvm.bytecode.DASTORE;
+import gov.nasa.jpf.jvm.bytecode.FASTORE;
+import gov.nasa.jpf.jvm.bytecode.LASTORE;
+import gov.nasa.jpf.jvm.bytecode.PUTFIELD;
+import gov.nasa.jpf.jvm.bytecode.PUTSTATIC;
+import gov.nasa.jpf.jvm.bytecode.SASTORE;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.ClassLoaderInfo;
+import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.FieldInfo;
+import gov.nasa.jpf.vm.Fields;
+import gov.nasa.jpf.vm.Heap;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MJIEnv;
+import gov.nasa.jpf.vm.StackFrame;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.VM;
+import gov.nasa.jpf.vm.bytecode.FieldInstruction;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Represents the "watch" hit condition that hits when an instruction is about to change the value of a field.
+ * Unlike "field_write", writes that store the value the field already holds do not hit.
+ *
+ * If the watched field holds an array and its owner is known (the field is static or an object reference is given),
+ * writes to elements of the array are watched as well.
+ *
+ * If an object reference is given, only the field of that object is watched.
+ */
+public class ExpressionBreakpointWatch extends ExpressionBooleanLeaf {
+
+  private final FieldName fn;
+  private final Integer objectRef;
+
+  /**
+   * Fields that match {@link #fn}. Filled by {@link #classLoaded(ClassInfo)} and, for classes loaded before this
+   * expression was created, at the first evaluation. Accessed only by the JPF thread.
+   */
+  private FieldInfo[] watchedFields = new FieldInfo[0];
+  private boolean loadedClassesScanned = false;
+
+  public ExpressionBreakpointWatch(FieldName fn, Integer objectRef) {
+    assert fn != null;
+    this.fn = fn;
+    this.objectRef = objectRef;
+  }
+
+  @Override
+  public boolean evaluateExpression(InspectorState state) {
+    assert state != null;
+
+    if (state.getListenerMethod() != ListenerMethod.LM_EXECUTE_INSTRUCTION) {
+      return false;
+    }
+
+    VM vm = state.getVM();
+    Instruction inst = vm.getInstruction();
+    if (!(inst instanceof PUTFIELD) && !(inst instanceof PUTSTATIC) && !(inst instanceof ArrayStoreInstruction)) {
+      return false;
+    }
+
+    if (!loadedClassesScanned) {
+      scanLoadedClasses(vm);
+    }
+    if (watchedFields.length == 0) {
+      return false;
+    }
+
+    ThreadInfo ti = vm.getCurrentThread();
+    if (inst instanceof ArrayStoreInstruction) {
+      return changesWatchedArray((ArrayStoreInstruction) inst, ti, vm.getHeap());
+    }
+    return changesWatchedField((FieldInstruction) inst, ti);
+  }
+
+  private boolean changesWatchedField(FieldInstruction fiInst, ThreadInfo ti) {
+    FieldInfo fi = fiInst.getFieldInfo();
+    if (fi == null || !isWatched(fi)) {
+      return false;
+    }
+    ElementInfo owner = fiInst.peekElementInfo(ti);
+    if (owner == null) {
+      return false; // Either a null object reference or a class that is not initialized yet
+    }
+    if (objectRef != null && owner.getObjectRef() != objectRef) {
+      return false;
+    }
+
+    Fields fields = owner.getFields();
+    StackFrame frame = ti.getTopFrame();
+    if (fi.getStorageSize() == 2) {
+      return fields.getLongValue(fi.getStorageOffset()) != frame.peekLong();
+    } else {
+      return fields.getIntValue(fi.getStorageOffset()) != frame.peek();
+    }
+  }
+
+  private boolean changesWatchedArray(ArrayStoreInstruction storeInst, ThreadInfo ti, Heap heap) {
+    int arrayRef = storeInst.peekArrayRef(ti);
+    if (arrayRef == MJIEnv.NULL || !isWatchedArray(arrayRef, heap)) {
+      return false;
+    }
+    ElementInfo array = heap.get(arrayRef);
+    int index = storeInst.peekIndex(ti);
+    if (array == null || index < 0 || index >= array.arrayLength()) {
+      return false; // The instruction throws an exception instead of writing
+    }
+
+    StackFrame frame = ti.getTopFrame();
+    if (storeInst instanceof LASTORE) {
+      return array.getLongElement(index) != frame.peekLong();
+    } else if (storeInst instanceof DASTORE) {
+      return Double.doubleToRawLongBits(array.getDoubleElement(index)) != frame.peekLong();
+    } else if (storeInst instanceof FASTORE) {
+      return Float.floatToRawIntBits(array.getFloatElement(index)) != frame.peek();
+    } else if (storeInst instanceof AASTORE) {
+      return array.getReferenceElement(index) != frame.peek();
+    } else if (storeInst instanceof CASTORE) {
+      return array.getCharElement(index) != (char) frame.peek();
+    } else if (storeInst instanceof SASTORE) {
+      return array.getShortElement(index) != (short) frame.peek();
+    } else if (storeInst instanceof BASTORE) {
+      if (array.getClassInfo().getName().equals("[Z")) {
+        return array.getBooleanElement(index) != (frame.peek() != 0);
+      }
+      return array.getByteElement(index) != (byte) frame.peek();
+    } else {
+      return array.getIntElement(index) != frame.peek();
+    }
+  }
+
+  private boolean isWatched(FieldInfo fi) {
+    for (FieldInfo watched : watchedFields) {
+      if (watched == fi) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether the array is the current value of a watched field with a known owner.
+   */
+  private boolean isWatchedArray(int arrayRef, Heap heap) {
+    for (FieldInfo fi : watchedFields) {
+      if (!fi.isReference()) {
+        continue;
+      }
+      ElementInfo owner;
+      if (fi.isStatic()) {
+        owner = objectRef == null ? fi.getClassInfo().getStaticElementInfo() : null;
+      } else if (objectRef != null) {
+        owner = heap.get(objectRef);
+        if (owner != null && !owner.getClassInfo().isInstanceOf(fi.getClassInfo())) {
+          owner = null;
+        }
+      } else {
+        owner = null; // Any object may own the array, we cannot tell cheaply
+      }
+      if (owner != null && owner.getReferenceField(fi) == arrayRef) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void scanLoadedClasses(VM vm) {
+    loadedClassesScanned = true;
+    for (ClassLoaderInfo classLoader : vm.getKernelState().classLoaders) {
+      for (ClassInfo ci : classLoader) {
+        classLoaded(ci);
+      }
+    }
+  }
+
+  @Override
+  public void classLoaded(ClassInfo loadedClass) {
+    addMatchingFields(loadedClass.getDeclaredInstanceFields());
+    addMatchingFields(loadedClass.getDeclaredStaticFields());
+  }
+
+  private void addMatchingFields(FieldInfo[] fields) {
+    for (FieldInfo fi : fields) {
+      if (fn.isSameField(fi) && !isWatched(fi)) {
+        watchedFields = Arrays.copyOf(watchedFields, watchedFields.length + 1);
+        watchedFields[watchedFields.length - 1] = fi;
+      }
+    }
+  }
+
+  @Override
+  public Set<ListenerMethod> getListenerMethods() {
+    return EnumSet.of(ListenerMethod.LM_EXECUTE_INSTRUCTION);
+  }
+
+  @Override
+  public String getNormalizedExpression() {
+    if (objectRef != null) {
+      return "watch=" + fn + '@' + objectRef;
+    }
+    return "watch=" + fn;
+  }
+
+}
@@ -86,6 +86,16 @@ public final class ExpressionStateStackFrame extends ExpressionStateUnaryOperato
     }
   }
 
+  /**
+   * If this expression is only a name in the top stack frame, returns the name. Otherwise returns null.
+   */
+  String getSimpleVariableName () {
+    if ((stackFrameNum != null && stackFrameNum != 0) || !(getChild() instanceof ExpressionStateValueName)) {
+      return null;
+    }
+    return ((ExpressionStateValueName) getChild()).getSimpleVariableName();
+  }
+
   @Override
   public String getNormalizedExpression () {
 
@@ -65,6 +65,17 @@ public class ExpressionStateThread extends ExpressionStateUnaryOperator<Expressi
     }
   }
 
+  /**
+   * If this expression is only a name in the top stack frame of the current thread (such as "x"), returns the name.
+   *
+   * @return The name, or null if the expression is anything more complex.
+   */
+  String getSimpleVariableName () {
+    if (threadNum != null || getChild() == null) {
+      return null;
+    }
+    return getChild().getSimpleVariableName();
+  }
 
   @Override
   public String getNormalizedExpression () {
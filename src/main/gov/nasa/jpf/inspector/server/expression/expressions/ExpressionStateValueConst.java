@@ -39,4 +39,14 @@ public abstract class ExpressionStateValueConst extends ExpressionStateValue imp
             "The toHierarchy2() method must not be called on constants because they have no parents.");
   }
 
+  /**
+   * Gets the represented primitive value (as a wrapper object) so that comparisons with this constant can be compiled
+   * by {@link CompiledComparison}.
+   *
+   * @return The value, or null if this is not a primitive constant.
+   */
+  Object getConstantValue () {
+    return null;
+  }
+
 }
@@ -43,6 +43,11 @@ public class ExpressionStateValueConstBoolean extends ExpressionStateValueConst
     return new StateReadableConstValue(inspector, ClassLoaderInfo.getCurrentResolvedClassInfo("boolean"), value);
   }
 
+  @Override
+  Object getConstantValue () {
+    return value;
+  }
+
   @Override
   public String getNormalizedExpression () {
     return value ? TOKEN_TRUE : TOKEN_FALSE;
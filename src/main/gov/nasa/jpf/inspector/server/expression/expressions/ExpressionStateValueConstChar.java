@@ -296,6 +296,11 @@ public class ExpressionStateValueConstChar extends ExpressionStateValueConst {
   }
 
   /* @see gov.nasa.jpf.inspector.server.expression.ExpressionNodeInterface#getNormalizedExpression() */
+  @Override
+  Object getConstantValue () {
+    return c;
+  }
+
   @Override
   public String getNormalizedExpression () {
     return '\'' + unparseChar(c) + '\'';
@@ -45,6 +45,11 @@ public class ExpressionStateValueConstDouble extends ExpressionStateValueConst {
     return new StateReadableConstValue(inspector, ClassLoaderInfo.getCurrentResolvedClassInfo("double"), value);
   }
 
+  @Override
+  Object getConstantValue () {
+    return value;
+  }
+
   @Override
   public String getNormalizedExpression () {
     if (value == Double.POSITIVE_INFINITY) {
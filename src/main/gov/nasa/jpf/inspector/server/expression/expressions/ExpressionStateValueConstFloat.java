@@ -46,6 +46,11 @@ public class ExpressionStateValueConstFloat extends ExpressionStateValueConst {
   }
 
   /* @see gov.nasa.jpf.inspector.server.expression.ExpressionNodeInterface#getNormalizedExpression() */
+  @Override
+  Object getConstantValue () {
+    return value;
+  }
+
   @Override
   public String getNormalizedExpression () {
     if (value == Float.POSITIVE_INFINITY) {
@@ -144,6 +144,11 @@ public class ExpressionStateValueConstInteger extends ExpressionStateValueConst
   }
 
   /* @see gov.nasa.jpf.inspector.server.expression.ExpressionNodeInterface#getNormalizedExpression() */
+  @Override
+  Object getConstantValue () {
+    return value;
+  }
+
   @Override
   public String getNormalizedExpression () {
     return Integer.toString(value);
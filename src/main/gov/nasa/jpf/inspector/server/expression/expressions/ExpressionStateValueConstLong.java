@@ -108,6 +108,11 @@ public class ExpressionStateValueConstLong extends ExpressionStateValueConst {
   }
 
   /* @see gov.nasa.jpf.inspector.server.expression.ExpressionNodeInterface#getNormalizedExpression() */
+  @Override
+  Object getConstantValue () {
+    return value;
+  }
+
   @Override
   public String getNormalizedExpression () {
     return Long.toString(value) + "l";
@@ -230,6 +230,13 @@ public class ExpressionStateValueName extends ExpressionStateValue {
     }
   }
 
+  /**
+   * Returns the name if this is a single name with no member access after it, otherwise returns null.
+   */
+  String getSimpleVariableName () {
+    return getChild() == null ? varName : null;
+  }
+
   @Override
   public String getNormalizedExpression () {
     return '.' + varName + (getChild() != null ? getChild().getNormalizedExpression() : "");
@@ -0,0 +1,146 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.jpf;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of checkpoints (restorable states) taken at the states of the current path, keyed by search depth.
+ *
+ * Checkpoints are added at the tip of the path. When the cache is full, the checkpoint whose removal creates the
+ * smallest gap relative to its distance from the tip is evicted. Checkpoints are therefore dense near the tip and
+ * become sparser further back, with gaps that grow roughly in proportion to the distance from the tip.
+ *
+ * Note: Accessed only by the JPF thread.
+ *
+ * @param <T> Type of the checkpoint.
+ */
+public class CheckpointCache<T> {
+
+  private final int capacity;
+  private int size = 0;
+  /**
+   * Depths of the checkpoints in ascending order, the first {@link #size} elements are valid.
+   */
+  private final int[] depths;
+  private final Object[] checkpoints;
+
+  /**
+   * @param capacity Maximum number of checkpoints that are kept. Must be at least 1.
+   */
+  public CheckpointCache(int capacity) {
+    assert capacity > 0;
+    this.capacity = capacity;
+    // One extra slot so that a checkpoint can be added before another one is evicted
+    this.depths = new int[capacity + 1];
+    this.checkpoints = new Object[capacity + 1];
+  }
+
+  /**
+   * Adds the checkpoint of the state at the tip of the path. Checkpoints at the same or greater depth are discarded
+   * first, because they belong to a different path.
+   *
+   * @param depth Search depth of the state.
+   * @param checkpoint The checkpoint of the state.
+   */
+  public void add(int depth, T checkpoint) {
+    discardDeeperThan(depth - 1);
+    depths[size] = depth;
+    checkpoints[size] = checkpoint;
+    size++;
+    if (size > capacity) {
+      removeAt(findEvictionCandidate());
+    }
+  }
+
+  /**
+   * Discards checkpoints of states deeper than the given depth. Called when the search backtracks.
+   */
+  public void discardDeeperThan(int depth) {
+    while (size > 0 && depths[size - 1] > depth) {
+      size--;
+      checkpoints[size] = null;
+    }
+  }
+
+  /**
+   * Discards all checkpoints. Called when the path is replaced by another one.
+   */
+  public void clear() {
+    Arrays.fill(checkpoints, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * Finds the shallowest checkpoint that is at the given depth or deeper, i.e. the checkpoint from which the fewest
+   * states remain to be backtracked to reach the given depth.
+   *
+   * @param depth The depth we want to backtrack to.
+   * @return Depth of the found checkpoint or -1 if there is no checkpoint at or below the given depth.
+   */
+  public int findNearestAtOrDeeper(int depth) {
+    int index = Arrays.binarySearch(depths, 0, size, depth);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return index < size ? depths[index] : -1;
+  }
+
+  /**
+   * Gets the checkpoint at the given depth.
+   *
+   * @return The checkpoint or null if there is no checkpoint at that depth.
+   */
+  @SuppressWarnings("unchecked")
+  public T get(int depth) {
+    int index = Arrays.binarySearch(depths, 0, size, depth);
+    return index < 0 ? null : (T) checkpoints[index];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Finds the checkpoint whose removal creates the smallest gap relative to its distance from the tip. The tip itself
+   * is never evicted.
+   */
+  private int findEvictionCandidate() {
+    int tip = depths[size - 1];
+    int candidate = 0;
+    long candidateGap = 0;
+    long candidateDistance = 1;
+    for (int i = 0; i < size - 1; i++) {
+      long gap = depths[i + 1] - (i == 0 ? 0 : depths[i - 1]);
+      long distance = tip - depths[i];
+      // gap / distance < candidateGap / candidateDistance
+      if (i == 0 || gap * candidateDistance < candidateGap * distance) {
+        candidate = i;
+        candidateGap = gap;
+        candidateDistance = distance;
+      }
+    }
+    return candidate;
+  }
+
+  private void removeAt(int index) {
+    System.arraycopy(depths, index + 1, depths, index, size - index - 1);
+    System.arraycopy(checkpoints, index + 1, checkpoints, index, size - index - 1);
+    size--;
+    checkpoints[size] = null;
+  }
+}
@@ -18,20 +18,22 @@
 package gov.nasa.jpf.inspector.server.jpf;
 
 import gov.nasa.jpf.Config;
+import gov.nasa.jpf.vm.RestorableVMState;
 import gov.nasa.jpf.vm.VM;
 import gov.nasa.jpf.search.DFSearch;
 
 /**
  * The DFSearchInspector is a subclass of DFSearch and has the same functionality, except that it also
  * implements the {@link SearchInspectorExtension} interface which is neccessary in order for the Search class
- * to work with the Inspector.
+ * to work with the Inspector. It also implements {@link SearchCheckpointExtension} so that backward steps can jump
+ * to checkpoints.
  *
  * This is the default search class when using the Inspector.
  *
  * You may use this class as a reference implementation for your own search classes if you don't want to use
  * the {@link SearchWrapper} search class which handles interfacing with the Inspector for you.
  */
-public class DFSearchInspector extends DFSearch implements SearchInspectorExtension {
+public class DFSearchInspector extends DFSearch implements SearchInspectorExtension, SearchCheckpointExtension {
   private JPFInspector inspector = null;
 
   public DFSearchInspector (Config config, VM vm) {
@@ -43,6 +45,14 @@ public class DFSearchInspector extends DFSearch implements SearchInspectorExtens
     this.inspector = inspector;
   }
 
+  @Override
+  public void restoreCheckpoint (RestorableVMState checkpoint, int depth) {
+    assert depth <= this.depth : "Only states of the current path may be restored.";
+    // The restorable state includes the backtrack stack, so the search can continue backtracking from there.
+    vm.restoreState(checkpoint);
+    this.depth = depth;
+  }
+
   @Override
   public void terminate () {
     super.terminate();
@@ -22,11 +22,17 @@ import gov.nasa.jpf.inspector.server.breakpoints.BreakpointHandler;
 import gov.nasa.jpf.inspector.server.breakpoints.CommandsManager;
 import gov.nasa.jpf.inspector.server.breakpoints.DefaultForwardTraceManager;
 import gov.nasa.jpf.inspector.server.choicegenerators.ChoiceGeneratorNotifications;
+import gov.nasa.jpf.inspector.server.expression.InspectorStateImpl;
+import gov.nasa.jpf.inspector.server.pathanalysis.FieldWriteIndex;
+import gov.nasa.jpf.inspector.server.pathanalysis.PathStepIndex;
+import gov.nasa.jpf.inspector.server.pathanalysis.PathTraceFile;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
 import gov.nasa.jpf.jvm.ClassFile;
 import gov.nasa.jpf.vm.*;
 import gov.nasa.jpf.report.Publisher;
 import gov.nasa.jpf.search.Search;
 
+import java.io.IOException;
 import java.util.Stack;
 
 /**
@@ -42,6 +48,11 @@ import java.util.Stack;
  *  {@link InspectorListenerModeNotifications} - Default mode when whole Inspector is notified about all interesting events 
  *  {@link InspectorListenerModeSilent} - Silent mode used in backward steps, when only command listener is notified.
  *
+ * When no breakpoint, stepping command or scheduled break needs to know about individual instructions, the listener
+ * runs in "free run": instruction events are not forwarded at all and whether they are needed again is only
+ * recomputed at transition boundaries. Anything that needs them sooner calls {@link #requireInstructionEvents()}.
+ * The last executed instructions of threads are kept up to date across free run from the steps of the transitions.
+ *
  * This listener is added automatically on JPF Inspector startup, without using configuration. It is essential.
  */
 public class InspectorListener extends ListenerAdapter {
@@ -53,11 +64,70 @@ public class InspectorListener extends ListenerAdapter {
 
   private boolean finished = false; // Holds true if searchFinished was called
 
+  /**
+   * Program state shared by all modes, so that the state tracked by one mode is not lost when another mode is active.
+   */
+  private final InspectorStateImpl inspectorState = new InspectorStateImpl();
+  /**
+   * Checkpoints of the states on the current path, used by backward steps. Null if disabled.
+   */
+  private final CheckpointCache<RestorableVMState> checkpoints;
+  /**
+   * Journal of the instructions of the current transition, used by "back_step_instruction". Null if disabled.
+   */
+  private final UndoJournal undoJournal;
+  /**
+   * Index of the steps of the current path, used by backward steps. Null if disabled.
+   */
+  private final PathStepIndex stepIndex;
+  /**
+   * History of the field writes on the current path, used by "back_field_access". Null if disabled.
+   */
+  private final FieldWriteIndex fieldWrites;
+  /**
+   * Hashes of the states on the current path, used to check replays. Null if disabled.
+   */
+  private final StateHashTrace stateHashes;
+  /**
+   * Record of the transitions of the current path in a file. Null if disabled or if the file cannot be written.
+   */
+  private PathTraceFile pathTrace;
+  private final InspectorListenerModeNotifications notificationsMode;
+  private final CommandsManager commandsManager;
+  private final BreakpointHandler breakpointHandler;
+  /**
+   * Whether the free run is allowed by the configuration.
+   */
+  private final boolean freeRunAllowed;
+  /**
+   * Whether instruction events are forwarded to the current mode. If false, the listener is in free run.
+   * Cleared only by the JPF thread, set by any thread.
+   */
+  private volatile boolean instructionEventsEnabled = true;
+  /**
+   * Whether the current transition started in free run, so some of its instructions may not have been observed.
+   * Accessed only by the JPF thread.
+   */
+  private boolean transitionStartedInFreeRun = false;
+
   public InspectorListener (JPFInspector inspector, CommandsManager cmdMgr, BreakpointHandler bpMgr,
                             ChoiceGeneratorNotifications cgNotify,
                             DefaultForwardTraceManager dftMgr, boolean searchMultipleError) {
     this.inspector = inspector;
-    mode = new InspectorListenerModeNotifications(inspector, cmdMgr, bpMgr, cgNotify, dftMgr, searchMultipleError);
+    this.commandsManager = cmdMgr;
+    this.breakpointHandler = bpMgr;
+    this.freeRunAllowed = InspectorConfiguration.getInstance().isFreeRunAllowed();
+    int checkpointCapacity = InspectorConfiguration.getInstance().getCheckpointCapacity();
+    this.checkpoints = checkpointCapacity > 0 ? new CheckpointCache<RestorableVMState>(checkpointCapacity) : null;
+    long undoJournalBytes = InspectorConfiguration.getInstance().getUndoJournalBytes();
+    this.undoJournal = undoJournalBytes > 0 ? new UndoJournal(undoJournalBytes) : null;
+    this.stepIndex = InspectorConfiguration.getInstance().isStepIndexEnabled() ? new PathStepIndex() : null;
+    this.stateHashes = dftMgr.getStateHashes();
+    this.fieldWrites = InspectorConfiguration.getInstance().isFieldWriteIndexEnabled() ? new FieldWriteIndex() : null;
+    this.pathTrace = openPathTrace();
+    notificationsMode = new InspectorListenerModeNotifications(inspector, cmdMgr, bpMgr, cgNotify, dftMgr,
+                                                              inspectorState, undoJournal, searchMultipleError);
+    mode = notificationsMode;
   }
 
   /**
@@ -67,15 +137,248 @@ public class InspectorListener extends ListenerAdapter {
     return finished;
   }
 
+  /**
+   * @return Gets the program state maintained by the modes of this listener.
+   */
+  public InspectorStateImpl getInspectorState () {
+    return inspectorState;
+  }
+
+  /**
+   * @return Gets the checkpoints of the states on the current path, or null if checkpoints are disabled.
+   */
+  public CheckpointCache<RestorableVMState> getCheckpoints () {
+    return checkpoints;
+  }
+
+  /**
+   * @return Gets the journal of the instructions of the current transition, or null if it is disabled.
+   */
+  public UndoJournal getUndoJournal () {
+    return undoJournal;
+  }
+
+  /**
+   * @return Gets the index of the steps of the current path, or null if it is disabled.
+   */
+  public PathStepIndex getStepIndex () {
+    return stepIndex;
+  }
+
+  /**
+   * @return Gets the history of the field writes on the current path, or null if it is disabled.
+   */
+  public FieldWriteIndex getFieldWrites () {
+    return fieldWrites;
+  }
+
+  /**
+   * @return Gets the record of the transitions of the current path, or null if it is disabled.
+   */
+  public PathTraceFile getPathTrace () {
+    return pathTrace;
+  }
+
   public void pushMode (ListenerAdapter newMode) {
     assert newMode != null : "Internal error - bad usage";
+    clearUndoJournal(UndoJournal.REASON_REPLAYED); // Other modes do not keep the journal up to date
 
     modeStack.push(mode);
     mode = newMode;
+    instructionEventsEnabled = true;
   }
 
   public void popMode () {
     mode = modeStack.pop();
+    instructionEventsEnabled = true;
+  }
+
+  /**
+   * Leaves free run, if active, so that the next instruction event is forwarded to the current mode.
+   *
+   * May be called from any thread.
+   */
+  public void requireInstructionEvents () {
+    instructionEventsEnabled = true;
+  }
+
+  /**
+   * @return Gets true if instruction events are not forwarded at the moment.
+   */
+  public boolean isInFreeRun () {
+    return !instructionEventsEnabled;
+  }
+
+  /**
+   * Enters free run if nothing needs instruction events, or leaves it otherwise. Called at transition boundaries.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private void updateInstructionEvents (Search search) {
+    transitionStartedInFreeRun = false;
+    if (!freeRunAllowed || mode != notificationsMode) {
+      return;
+    }
+    boolean wasEnabled = instructionEventsEnabled;
+    // Cleared before the check, so that a concurrent requireInstructionEvents() is never lost.
+    instructionEventsEnabled = false;
+    if (breakpointHandler.needsInstructionEvents() || commandsManager.isTerminationRequested()) {
+      instructionEventsEnabled = true;
+      return;
+    }
+    transitionStartedInFreeRun = true;
+    clearUndoJournal(UndoJournal.REASON_FREE_RUN);
+    if (wasEnabled && fieldWrites != null) {
+      fieldWrites.instructionEventsMissed(search.getVM().getPath().size());
+    }
+  }
+
+  /**
+   * Sets the last executed instruction of the thread that executed the transition that just completed, if the
+   * transition started in free run. It is the last step of the transition. The other threads did not execute anything.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private void updateLastExecutedInstruction (Search search) {
+    if (!transitionStartedInFreeRun) {
+      return;
+    }
+    Transition transition = search.getVM().getPath().getLast();
+    if (transition == null) {
+      return;
+    }
+    Step lastStep = transition.getLastStep();
+    // Without recorded steps, the instruction is unknown, which is still better than an outdated one
+    inspectorState.setLastExecutedInstruction(transition.getThreadIndex(),
+                                              lastStep == null ? null : lastStep.getInstruction());
+  }
+
+  private void clearUndoJournal (String reason) {
+    if (undoJournal != null) {
+      undoJournal.clear(reason);
+    }
+  }
+
+  /**
+   * Keeps the checkpoints in line with the current path.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private void updateCheckpoints (Search search, boolean advanced) {
+    if (checkpoints == null || !(search instanceof SearchCheckpointExtension)) {
+      return;
+    }
+    if (advanced) {
+      checkpoints.add(search.getDepth(), search.getVM().getRestorableState());
+    } else {
+      checkpoints.discardDeeperThan(search.getDepth());
+    }
+  }
+
+  /**
+   * Keeps the step index in line with the current path. New steps are indexed as transitions complete, so that
+   * backward steps only index the steps of the current transition.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private void updateStepIndex (Search search, boolean advanced) {
+    if (stepIndex == null) {
+      return;
+    }
+    Path path = search.getVM().getPath();
+    if (advanced) {
+      stepIndex.synchronize(path);
+    } else {
+      stepIndex.truncate(path.size());
+    }
+  }
+
+  /**
+   * Keeps the state hashes in line with the current path. The hash of a new state is recorded before the mode is
+   * notified, so that the mode can compare it with the hash expected by a replay.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private void updateStateHashes (Search search, boolean advanced) {
+    if (stateHashes == null) {
+      return;
+    }
+    if (advanced) {
+      stateHashes.record(search.getDepth(), search.getVM());
+    } else {
+      stateHashes.discardDeeperThan(search.getDepth());
+    }
+  }
+
+  private PathTraceFile openPathTrace () {
+    String fileName = InspectorConfiguration.getInstance().getPathTraceFile();
+    if (fileName == null) {
+      return null;
+    }
+    try {
+      return new PathTraceFile(fileName);
+    } catch (IOException e) {
+      inspector.getServerCallbacks().genericError("The path is not recorded, because the path trace file '" + fileName +
+                                                          "' could not be created (" + e.getMessage() + ").");
+      return null;
+    }
+  }
+
+  /**
+   * Keeps the path trace in line with the current path. If the file cannot be written, recording stops.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  private void updatePathTrace (Search search, boolean advanced) {
+    if (pathTrace == null) {
+      return;
+    }
+    Path path = search.getVM().getPath();
+    if (!advanced) {
+      pathTrace.truncate(path.size());
+      return;
+    }
+    try {
+      pathTrace.transitionCompleted(path);
+    } catch (IOException e) {
+      inspector.getServerCallbacks().genericError("Recording of the path stopped, because writing to the path trace " +
+                                                          "file '" + pathTrace.getFileName() + "' failed (" +
+                                                          e.getMessage() + ").");
+      closePathTrace();
+    }
+  }
+
+  /**
+   * Takes over the breakpoint hits in the part of the current transition replayed by a backward step, because
+   * breakpoints are not evaluated during the replay.
+   *
+   * Note: Executed by the JPF thread when the backward step completes.
+   */
+  public void backwardStepCompleted (VM vm) {
+    if (pathTrace == null) {
+      return;
+    }
+    Transition current = vm.getCurrentTransition();
+    if (current == null) {
+      return;
+    }
+    Path path = vm.getPath();
+    int transitionIndex = path.getLast() == current ? path.size() - 1 : path.size();
+    try {
+      pathTrace.transitionReplayed(transitionIndex, current.getStepCount());
+    } catch (IOException e) {
+      inspector.getServerCallbacks().genericError("Recording of the path stopped, because reading the path trace " +
+                                                          "file '" + pathTrace.getFileName() + "' failed (" +
+                                                          e.getMessage() + ").");
+      closePathTrace();
+    }
+  }
+
+  private void closePathTrace () {
+    if (pathTrace != null) {
+      pathTrace.close();
+      pathTrace = null;
+    }
   }
 
   public ListenerAdapter getCurrentMode () {
@@ -86,6 +389,7 @@ public class InspectorListener extends ListenerAdapter {
   @Override
   public void searchFinished (Search search) {
     finished = true;
+    closePathTrace();
     inspector.notifyJPFFinished();
     mode.searchFinished(search);
   }
@@ -95,12 +399,25 @@ public class InspectorListener extends ListenerAdapter {
 
   @Override
   public void stateAdvanced (Search search) {
+    updateCheckpoints(search, true);
+    updateStepIndex(search, true);
+    updateStateHashes(search, true);
+    updatePathTrace(search, true);
+    updateLastExecutedInstruction(search);
+    clearUndoJournal(UndoJournal.REASON_EARLIER_TRANSITION);
     mode.stateAdvanced(search);
+    updateInstructionEvents(search);
   }
 
   @Override
   public void instructionExecuted(VM vm, ThreadInfo currentThread, Instruction nextInstruction, Instruction executedInstruction) {
-    mode.instructionExecuted(vm, currentThread, nextInstruction, executedInstruction);
+    if (instructionEventsEnabled) {
+      mode.instructionExecuted(vm, currentThread, nextInstruction, executedInstruction);
+      if (fieldWrites != null) {
+        fieldWrites.instructionExecuted(vm, currentThread, executedInstruction, nextInstruction,
+                                        undoJournal == null ? 0 : undoJournal.getUndoneInstructionCount());
+      }
+    }
   }
 
   
@@ -108,6 +425,7 @@ public class InspectorListener extends ListenerAdapter {
 
   @Override
   public void gcBegin (VM vm) {
+    clearUndoJournal(UndoJournal.REASON_GARBAGE_COLLECTION); // Undoing could restore references to collected objects
     mode.gcBegin(vm);
   }
 
@@ -128,6 +446,15 @@ public class InspectorListener extends ListenerAdapter {
   @Override
   public void stateBacktracked (Search search) {
     mode.stateBacktracked(search);
+    updateCheckpoints(search, false);
+    updateStepIndex(search, false);
+    updateStateHashes(search, false);
+    updatePathTrace(search, false);
+    if (fieldWrites != null) {
+      fieldWrites.truncate(search.getVM().getPath().size());
+    }
+    clearUndoJournal(UndoJournal.REASON_EARLIER_TRANSITION);
+    updateInstructionEvents(search);
   }
 
   @Override
@@ -142,7 +469,24 @@ public class InspectorListener extends ListenerAdapter {
 
   @Override
   public void stateRestored (Search search) {
+    if (checkpoints != null) {
+      checkpoints.clear(); // The restored state may be on a different path
+    }
+    if (stepIndex != null) {
+      stepIndex.clear();
+    }
+    if (stateHashes != null) {
+      stateHashes.clear();
+    }
+    if (fieldWrites != null) {
+      fieldWrites.clear(search.getVM().getPath().size());
+    }
+    if (pathTrace != null) {
+      pathTrace.clear(search.getVM().getPath().size());
+    }
+    clearUndoJournal(UndoJournal.REASON_EARLIER_TRANSITION);
     mode.stateRestored(search);
+    updateInstructionEvents(search);
   }
 
   @Override
@@ -153,6 +497,7 @@ public class InspectorListener extends ListenerAdapter {
   @Override
   public void searchStarted (Search search) {
     mode.searchStarted(search);
+    updateInstructionEvents(search);
   }
 
   @Override
@@ -196,7 +541,13 @@ public class InspectorListener extends ListenerAdapter {
 
   @Override
   public void executeInstruction(VM vm, ThreadInfo currentThread, Instruction instructionToExecute) {
-    mode.executeInstruction(vm, currentThread, instructionToExecute);
+    if (instructionEventsEnabled) {
+      mode.executeInstruction(vm, currentThread, instructionToExecute);
+      if (fieldWrites != null) {
+        // Only now, because the user may have changed the state or undone instructions while JPF was stopped
+        fieldWrites.executeInstruction(currentThread, instructionToExecute);
+      }
+    }
   }
 
   @Override
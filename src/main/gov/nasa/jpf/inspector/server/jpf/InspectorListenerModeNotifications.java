@@ -40,7 +40,11 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
   private final ChoiceGeneratorNotifications choiceGeneratorsInterceptor;
   private final DefaultForwardTraceManager defaultForwardTraceManager;
 
-  private final InspectorStateImpl inspectorState = new InspectorStateImpl();
+  private final InspectorStateImpl inspectorState;
+  /**
+   * Journal of the instructions of the current transition. Null if disabled.
+   */
+  private final UndoJournal undoJournal;
 
   /**
    * Whether continue or not after a property is violated
@@ -51,12 +55,16 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
                                              BreakpointHandler breakpointHandler,
                                              ChoiceGeneratorNotifications choiceGeneratorsInterceptor,
                                              DefaultForwardTraceManager defaultForwardTraceManager,
+                                             InspectorStateImpl inspectorState,
+                                             UndoJournal undoJournal,
                                              boolean searchMultipleError) {
     this.inspector = inspector;
     this.commandsManager = commandsManager;
     this.breakpointHandler = breakpointHandler;
     this.choiceGeneratorsInterceptor = choiceGeneratorsInterceptor;
     this.defaultForwardTraceManager = defaultForwardTraceManager;
+    this.inspectorState = inspectorState;
+    this.undoJournal = undoJournal;
     this.searchMultipleError = searchMultipleError;
 
   }
@@ -67,6 +75,7 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".stateAdvanced()");
     }
     inspectorState.stateChanged(search, ListenerMethod.LM_STATE_ADVANCED);
+    inspectorState.saveLastExecutedInstructions(search.getDepth());
     breakpointHandler.forwardJPFStep();
     breakpointHandler.checkBreakpoints(inspectorState);
     defaultForwardTraceManager.forwardStep(search);
@@ -88,11 +97,20 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".stateBacktracked()");
     }
     inspectorState.stateChanged(search, ListenerMethod.LM_STATE_BACKTRACKED);
+    inspectorState.restoreLastExecutedInstructions(search.getDepth());
     breakpointHandler.backwardJPFStep(inspectorState);
     // defaultForwardTraceManager.extendTrace(search.getTransition());
     commandsManager.tryStop(inspectorState);
   }
 
+  @Override
+  public void stateRestored (Search search) {
+    if (DEBUG) {
+      inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".stateRestored()");
+    }
+    inspectorState.restoreLastExecutedInstructions(search.getDepth());
+  }
+
   @Override
   public void searchStarted (Search search) {
     if (DEBUG) {
@@ -126,6 +144,11 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
     inspectorState.notifyListenerMethodCall(ListenerMethod.LM_EXECUTE_INSTRUCTION, vm);
     breakpointHandler.checkBreakpoints(inspectorState);
     breakpointHandler.breakIfBreakScheduled(inspectorState);
+    if (undoJournal != null) {
+      // Recorded only now, because the user may have changed the state while JPF was stopped
+      undoJournal.executeInstruction(currentThread, instructionToExecute,
+                                     inspectorState.getLastExecutedInstruction(currentThread.getId()));
+    }
   }
 
 
@@ -138,6 +161,9 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
           this.getClass().getSimpleName() + ".instructionExecuted(" + executedInstruction + ", loc=" + executedInstruction.getFileLocation()
               + ")");
     }
+    if (undoJournal != null && !undoJournal.instructionExecuted(currentThread, executedInstruction)) {
+      return; // The instruction was skipped, because the instruction before it was undone
+    }
     inspectorState.instructionExecuted(currentThread.getId(), executedInstruction, vm);
     breakpointHandler.checkBreakpoints(inspectorState);
     commandsManager.tryTerminate(vm.getSearch());
@@ -148,6 +174,7 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".classLoaded()");
     }
+    breakpointHandler.classLoaded(loadedClass);
   }
 
   @Override
@@ -173,6 +200,9 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".objectCreated()");
     }
+    if (undoJournal != null) {
+      undoJournal.unrecordableEffect();
+    }
     inspectorState.notifyListenerElementInfoMethodCall(vm, ListenerMethod.LM_OBJECT_CREATED, newObject);
     breakpointHandler.checkBreakpoints(inspectorState);
   }
@@ -182,6 +212,9 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".objectReleased()");
     }
+    if (undoJournal != null) {
+      undoJournal.unrecordableEffect();
+    }
     inspectorState.notifyListenerElementInfoMethodCall(vm, ListenerMethod.LM_OBJECT_RELEASED, releasedObject);
     breakpointHandler.checkBreakpoints(inspectorState);
   }
@@ -192,6 +225,9 @@ public class InspectorListenerModeNotifications extends ListenerAdapter {
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".exceptionThrown()");
     }
+    if (undoJournal != null) {
+      undoJournal.unrecordableEffect();
+    }
     inspectorState.notifyListenerElementInfoMethodCall(vm, ListenerMethod.LM_EXCEPTION_THROWN, thrownException);
     breakpointHandler.checkBreakpoints(inspectorState);
   }
@@ -45,7 +45,11 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
   private final int targetBreakpointId;
   private int remainingTransitionsToBacktrack;
 
-  private final InspectorStateImpl inspectorState = new InspectorStateImpl();
+  private final InspectorStateImpl inspectorState;
+  /**
+   * Checkpoints of the states on the current path. Null if disabled.
+   */
+  private final CheckpointCache<RestorableVMState> checkpoints;
 
   /**
    * Represents the state of this listener.
@@ -108,11 +112,15 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
    * @param targetBreakpointId ID of the breakpoint created by the backwards-step-creator.
    * @param defaultForwardTraceManager The default forward trace manager.
    * @param stopHolder The stop holder.
+   * @param inspectorState The program state shared with the other modes of the {@link InspectorListener}.
+   * @param checkpoints Checkpoints of the states on the current path, or null if checkpoints are disabled.
    */
   public InspectorListenerModeSilent (JPFInspector inspector, CommandsManager commandsManager,
                                       BreakpointHandler breakpointHandler, int transitionsToBacktrack,
                                       int targetBreakpointId,
-                                      DefaultForwardTraceManager defaultForwardTraceManager, StopHolder stopHolder) {
+                                      DefaultForwardTraceManager defaultForwardTraceManager, StopHolder stopHolder,
+                                      InspectorStateImpl inspectorState,
+                                      CheckpointCache<RestorableVMState> checkpoints) {
     assert transitionsToBacktrack > 0 : "No transitions are to be backtracked.";
     assert targetBreakpointId != BreakpointCreationInformation.BP_ID_NOT_DEFINED : "No breakpoint ID is set.";
 
@@ -121,6 +129,8 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
     this.inspector = inspector;
     this.defaultForwardTraceManager = defaultForwardTraceManager;
     this.stopHolder = stopHolder;
+    this.inspectorState = inspectorState;
+    this.checkpoints = checkpoints;
 
     this.targetBreakpointId = targetBreakpointId;
     this.remainingTransitionsToBacktrack = transitionsToBacktrack;
@@ -132,7 +142,10 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
       inspector.getDebugPrintStream().println("Backtracking: State advanced. Extending forward trace.");
     }
     if (state == InternalState.FORWARD_STEPS) {
-      reportError("The target instruction was not found in the target transition. Perhaps the backtracker did not make the right choice at the choice generator or something not part of a state changed the course of the transition. THE SYSTEM IS NOW IN AN INCONSISTENT STATE. Please execute 'terminate' or restart the Inspector.");
+      String divergence = defaultForwardTraceManager.findStateDivergence(search);
+      reportError("The target instruction was not found in the target transition. Perhaps the backtracker did not make the right choice at the choice generator or something not part of a state changed the course of the transition. " +
+                  (divergence != null ? divergence + " " : "") +
+                  "THE SYSTEM IS NOW IN AN INCONSISTENT STATE. Please execute 'terminate' or restart the Inspector.");
       return;
     }
     if (state != InternalState.TRANSITION_END) {
@@ -142,7 +155,8 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
 
     setState(InternalState.BACKTRACKING);
     inspectorState.stateChanged(search, ListenerMethod.LM_STATE_ADVANCED);
-    defaultForwardTraceManager.extendTrace(search.getTransition());
+    inspectorState.saveLastExecutedInstructions(search.getDepth());
+    defaultForwardTraceManager.extendTrace(search.getTransition(), search.getDepth());
     commandsManager.tryStop(inspectorState);
   }
 
@@ -170,10 +184,14 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
       reportError("State cannot be backtracked while processing or in the final phase.");
       return;
     }
-    inspectorState.stateChanged(search, ListenerMethod.LM_STATE_BACKTRACKED);
     remainingTransitionsToBacktrack--;
     if (remainingTransitionsToBacktrack > 0) {
-      defaultForwardTraceManager.extendTrace(search.getTransition());
+      jumpToCheckpoint(search);
+    }
+    inspectorState.stateChanged(search, ListenerMethod.LM_STATE_BACKTRACKED);
+    inspectorState.restoreLastExecutedInstructions(search.getDepth());
+    if (remainingTransitionsToBacktrack > 0) {
+      defaultForwardTraceManager.extendTrace(search.getTransition(), search.getDepth());
 
       VM vm = search.getVM();
       // SystemState ss = vm.getSystemState();
@@ -182,8 +200,9 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
       search.requestBacktrack();
 
       // Disable forward steps - mark all choices from CGs as processed
+      // (after a jump to a checkpoint, the CG of the next transition is not yet the current one)
       SystemState ss = vm.getSystemState();
-      ChoiceGenerator<?> cg = ss.getChoiceGenerator();
+      ChoiceGenerator<?> cg = ss.getNextChoiceGenerator() != null ? ss.getNextChoiceGenerator() : ss.getChoiceGenerator();
       while (cg != null) {
         int choices = cg.getTotalNumberOfChoices();
         int processedChoices = cg.getProcessedNumberOfChoices();
@@ -197,6 +216,14 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
       return;
     }
     if (remainingTransitionsToBacktrack == 0) {
+      String divergence = findRestoredStateDivergence(search);
+      if (divergence != null) {
+        // Replaying the target transition from a different state would not reach the target instruction
+        reportError(divergence);
+        stopHolder.stopExecution(inspectorState);
+        return;
+      }
+
       // Backtracking terminated, use the same choices before
       VM vm = search.getVM();
       SystemState ss = vm.getSystemState();
@@ -232,6 +259,61 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
     reportError("This should never be reached: There are less than 0 remaining transitions.");
   }
 
+  /**
+   * If there is a checkpoint between the current state and the state we backtrack to, restores the checkpoint nearest
+   * to the target state, so that only the transitions below the checkpoint are backtracked one by one.
+   *
+   * At least the last transition is always backtracked normally, because the final phase needs the choice generators
+   * of the target state in the same condition as after a regular backtrack.
+   *
+   * The transitions that are skipped this way are added to the default forward trace, exactly as if they were
+   * backtracked.
+   */
+  private void jumpToCheckpoint (Search search) {
+    if (checkpoints == null || !(search instanceof SearchCheckpointExtension)) {
+      return;
+    }
+    int depth = search.getDepth();
+    int checkpointDepth = checkpoints.findNearestAtOrDeeper(depth - remainingTransitionsToBacktrack + 1);
+    if (checkpointDepth < 0 || checkpointDepth >= depth) {
+      return;
+    }
+    if (DEBUG) {
+      inspector.getDebugPrintStream().println("Backtracking: Jumping from depth " + depth + " to the checkpoint at depth " + checkpointDepth + ".");
+    }
+
+    // The transition at index i of the path leads to the state at depth i + 1
+    Path path = search.getVM().getPath();
+    for (int i = depth - 1; i >= checkpointDepth; i--) {
+      defaultForwardTraceManager.extendTrace(path.get(i), i + 1);
+    }
+    ((SearchCheckpointExtension) search).restoreCheckpoint(checkpoints.get(checkpointDepth), checkpointDepth);
+    checkpoints.discardDeeperThan(checkpointDepth);
+    remainingTransitionsToBacktrack -= depth - checkpointDepth;
+  }
+
+  /**
+   * Compares the state the search backtracked to with the state recorded at the same depth when it was first reached.
+   * The replay of the target transition starts from this state, so if it differs (for example because a checkpoint
+   * did not restore everything), the replay cannot be trusted.
+   *
+   * @return Description of the divergence, or null if the states are the same or cannot be compared.
+   */
+  private String findRestoredStateDivergence (Search search) {
+    StateHashTrace stateHashes = defaultForwardTraceManager.getStateHashes();
+    int depth = search.getDepth();
+    if (stateHashes == null || !stateHashes.isRecorded(depth)) {
+      return null;
+    }
+    Long actualHash = StateHashTrace.computeHash(search.getVM());
+    if (actualHash == null || actualHash == stateHashes.get(depth)) {
+      return null;
+    }
+    return "The state restored at depth " + depth + " has hash " + StateHashTrace.format(actualHash) +
+           ", but the state reached at that depth before had hash " + StateHashTrace.format(stateHashes.get(depth)) +
+           ". The target transition was not replayed.";
+  }
+
   @Override
   public void executeInstruction(VM vm, ThreadInfo currentThread, Instruction instructionToExecute) {
     if (DEBUG) {
@@ -249,6 +331,7 @@ public class InspectorListenerModeSilent extends ListenerAdapter {
     }
     inspectorState.notifyListenerMethodCall(ListenerMethod.LM_EXECUTE_INSTRUCTION, vm);
     if (breakpointHandler.checkBreakpoint(inspectorState, targetBreakpointId)) {
+      inspector.getInspectorListener().backwardStepCompleted(vm);
       // Notify Command manager that backward step is done
       commandsManager.notifyBackwardStepCompleted(true, "Successfully backstepped.");
       stopHolder.stopExecution(inspectorState);
@@ -24,6 +24,7 @@ import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
 import gov.nasa.jpf.inspector.interfaces.InspectorStatusChange;
 import gov.nasa.jpf.inspector.interfaces.JPFInspectorBackEndInterface;
 import gov.nasa.jpf.inspector.server.attributes.AttributesManager;
+import gov.nasa.jpf.inspector.server.breakpoints.BackstepTargetCache;
 import gov.nasa.jpf.inspector.server.breakpoints.BreakpointHandler;
 import gov.nasa.jpf.inspector.server.breakpoints.CommandsManager;
 import gov.nasa.jpf.inspector.server.breakpoints.DefaultForwardTraceManager;
@@ -37,6 +38,7 @@ import gov.nasa.jpf.vm.VM;
 
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Represents the server part of JPF Inspector.
@@ -80,6 +82,10 @@ public abstract class JPFInspector implements JPFInspectorBackEndInterface {
    * The breakpoint handler component.
    */
   protected final BreakpointHandler breakpointHandler;
+  /**
+   * Finds and precomputes the targets of backward steps.
+   */
+  private final BackstepTargetCache backstepTargets;
   /**
    * The state manager component. This component is responsible for handling user commands related to printing and modifying
    * current program state.
@@ -145,8 +151,9 @@ public abstract class JPFInspector implements JPFInspectorBackEndInterface {
     this.attributesManager = new AttributesManager(this);
     this.defaultForwardTraceManager = new DefaultForwardTraceManager(this);
     this.breakpointHandler = new BreakpointHandler(this, serverCallbacks, stopHolder);
+    this.backstepTargets = new BackstepTargetCache(this, stopHolder, breakpointHandler);
     this.commandsManager = new CommandsManager(this, stopHolder, breakpointHandler, serverCallbacks,
-                                               defaultForwardTraceManager);
+                                               defaultForwardTraceManager, backstepTargets);
     this.stateManager = new ProgramStateManager(this, stopHolder, this.attributesManager);
     this.choiceGeneratorsManager = new ChoiceGeneratorsManager(this, serverCallbacks, stopHolder,
                                                                defaultForwardTraceManager);
@@ -202,6 +209,10 @@ public abstract class JPFInspector implements JPFInspectorBackEndInterface {
   /**
    * @return Class where JPF thread waits if breakpoint is reached (when execution is stopped)
    */
+  public BackstepTargetCache getBackstepTargets () {
+    return backstepTargets;
+  }
+
   public StopHolder getStopHolder () {
     if (DEBUG) {
       getDebugPrintStream().println("  " + JPFInspector.class.getSimpleName() + ".getStopHolder()");
@@ -293,6 +304,7 @@ public abstract class JPFInspector implements JPFInspectorBackEndInterface {
   }
 
   public synchronized void notifyJPFFinished () {
+    breakpointHandler.jpfFinished();
     jpf = null;
     listener = null;
     stopHolder.notifyClientTerminating();
@@ -322,4 +334,9 @@ public abstract class JPFInspector implements JPFInspectorBackEndInterface {
   public void permitJpfToResumeAgain() {
     stopHolder.permitJpfToResumeAgain();
   }
+
+  @Override
+  public Lock getVMLock() {
+    return stopHolder.getVMLock();
+  }
 }
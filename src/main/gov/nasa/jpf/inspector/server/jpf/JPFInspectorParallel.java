@@ -30,6 +30,7 @@ import gov.nasa.jpf.vm.StackFrame;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents the concrete server part of the Inspector.
@@ -97,18 +98,23 @@ public class JPFInspectorParallel extends JPFInspector {
   }
 
   @Override
-  public void backstep(StepType type) throws JPFInspectorException {
-    commandsManager.backstep(type);
+  public void backstep(StepType type, int count) throws JPFInspectorException {
+    commandsManager.backstep(type, count);
   }
 
   @Override
-  public void backFieldAccessStep(String fieldNameExpression) throws JPFInspectorGenericErrorException {
-    commandsManager.backFieldAccessStep(fieldNameExpression);
+  public boolean isBackstepPossible(StepType type) {
+    return commandsManager.isBackstepPossible(type);
   }
 
   @Override
-  public void forwardStep (StepType type) throws JPFInspectorException {
-    commandsManager.forwardStep(type);
+  public void backFieldAccessStep(String fieldNameExpression, int objectRef) throws JPFInspectorGenericErrorException {
+    commandsManager.backFieldAccessStep(fieldNameExpression, objectRef);
+  }
+
+  @Override
+  public void forwardStep (StepType type, int count) throws JPFInspectorException {
+    commandsManager.forwardStep(type, count);
 
   }
 
@@ -122,21 +128,41 @@ public class JPFInspectorParallel extends JPFInspector {
     return choiceGeneratorsManager.getUsedChoiceGenerators();
   }
 
+  @Override
+  public CompletableFuture<List<ChoiceGeneratorWrapper>> getUsedChoiceGeneratorsAsync() {
+    return choiceGeneratorsManager.getUsedChoiceGeneratorsAsync();
+  }
+
   @Override
   public Map<Integer, PSEThread> getThreads (Integer threadNum) throws JPFInspectorException {
     return stateManager.getThreads(threadNum);
   }
 
+  @Override
+  public CompletableFuture<Map<Integer, PSEThread>> getThreadsAsync (Integer threadNum) {
+    return stateManager.getThreadsAsync(threadNum);
+  }
+
   @Override
   public Map<Integer, InstructionPosition> getThreadsPC (Integer threadNum) throws JPFInspectorException {
     return stateManager.getThreadsPC(threadNum);
   }
 
+  @Override
+  public CompletableFuture<Map<Integer, InstructionPosition>> getThreadsPCAsync (Integer threadNum) {
+    return stateManager.getThreadsPCAsync(threadNum);
+  }
+
   @Override
   public ProgramStateEntry evaluateStateExpression (String expr) throws JPFInspectorException {
     return stateManager.evaluateStateExpression(expr);
   }
 
+  @Override
+  public CompletableFuture<ProgramStateEntry> evaluateStateExpressionAsync (String expr) {
+    return stateManager.evaluateStateExpressionAsync(expr);
+  }
+
   @Override
   public ThreadEnablingResult changeThreadSuppressionStatus(int threadId, ThreadSuppressionStatus newStatus) {
     return choiceGeneratorsManager.changeThreadSuppressionStatus(threadId, newStatus);
@@ -0,0 +1,41 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.jpf;
+
+import gov.nasa.jpf.vm.RestorableVMState;
+
+/**
+ * Search classes MAY implement this interface in addition to {@link SearchInspectorExtension}. If they do,
+ * the Inspector keeps checkpoints of the states on the current path and backward steps that cross many transitions
+ * jump to the nearest checkpoint instead of backtracking the transitions one by one.
+ *
+ * See {@link DFSearchInspector} for a reference implementation.
+ */
+public interface SearchCheckpointExtension {
+
+  /**
+   * Restores a state of the current path that is not deeper than the current state, as if the search backtracked
+   * to it. Listeners are not notified; the caller is responsible for updating its own view of the state.
+   *
+   * Note: Executed by the JPF thread, between transitions.
+   *
+   * @param checkpoint The state, obtained from {@link gov.nasa.jpf.vm.VM#getRestorableState()} when the search
+   *                   advanced to it.
+   * @param depth The search depth of the state.
+   */
+  void restoreCheckpoint(RestorableVMState checkpoint, int depth);
+}
@@ -0,0 +1,123 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.jpf;
+
+import gov.nasa.jpf.vm.StateSerializer;
+import gov.nasa.jpf.vm.VM;
+
+import java.util.Arrays;
+
+/**
+ * Hashes of the states at the ends of the transitions of the current path, keyed by search depth.
+ *
+ * The hashes are computed from the output of the state serializer configured in JPF, so two states have the same hash
+ * if JPF would consider them the same state. Replays of backtracked transitions compare the states they reach with
+ * these hashes, so that a replay that went a different way is detected at the first transition where it happens.
+ *
+ * Note: Accessed only by the JPF thread.
+ */
+public class StateHashTrace {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * Hashes of the states, the first {@link #size} elements are valid if the matching element of {@link #recorded} is set.
+   */
+  private long[] hashes = new long[INITIAL_CAPACITY];
+  private boolean[] recorded = new boolean[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /**
+   * Computes the hash of the current state of the virtual machine.
+   *
+   * @return The hash, or null if the virtual machine has no state serializer.
+   */
+  public static Long computeHash (VM vm) {
+    StateSerializer serializer = vm.getSerializer();
+    if (serializer == null) {
+      return null;
+    }
+    int[] data = serializer.serialize();
+    long hash = data.length;
+    for (int value : data) {
+      hash = Long.rotateLeft(hash ^ (value & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L, 27) * 0xBF58476D1CE4E5B9L;
+    }
+    // Finalizer of the SplitMix64 generator, spreads the last values over the whole hash
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+
+  /**
+   * Records the hash of the state at the tip of the path. Hashes of deeper states are discarded, because they belong
+   * to a different path.
+   *
+   * @param depth Search depth of the state.
+   * @param vm The virtual machine in that state.
+   */
+  public void record (int depth, VM vm) {
+    assert depth >= 0;
+    Long hash = computeHash(vm);
+    discardDeeperThan(depth - 1);
+    if (depth >= hashes.length) {
+      int capacity = Math.max(depth + 1, hashes.length * 2);
+      hashes = Arrays.copyOf(hashes, capacity);
+      recorded = Arrays.copyOf(recorded, capacity);
+    }
+    // States between the previous tip and this one were not recorded (e.g. the listener was attached late)
+    Arrays.fill(recorded, size, depth, false);
+    hashes[depth] = hash != null ? hash : 0;
+    recorded[depth] = hash != null;
+    size = depth + 1;
+  }
+
+  /**
+   * Discards hashes of states deeper than the given depth. Called when the search backtracks.
+   */
+  public void discardDeeperThan (int depth) {
+    size = Math.max(0, Math.min(size, depth + 1));
+  }
+
+  /**
+   * Discards all hashes. Called when the path is replaced by another one.
+   */
+  public void clear () {
+    size = 0;
+  }
+
+  /**
+   * @return Gets true if the hash of the state at the given depth of the current path is known.
+   */
+  public boolean isRecorded (int depth) {
+    return depth >= 0 && depth < size && recorded[depth];
+  }
+
+  /**
+   * Gets the hash of the state at the given depth. Only valid if {@link #isRecorded(int)} returns true.
+   */
+  public long get (int depth) {
+    assert isRecorded(depth);
+    return hashes[depth];
+  }
+
+  /**
+   * Formats a hash for divergence reports.
+   */
+  public static String format (long hash) {
+    return String.format("%016x", hash);
+  }
+}
@@ -19,13 +19,17 @@ package gov.nasa.jpf.inspector.server.jpf;
 
 import gov.nasa.jpf.JPF;
 import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.inspector.exceptions.JPFInspectorGenericErrorException;
 import gov.nasa.jpf.inspector.interfaces.InspectorStatusChange;
 import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
 import gov.nasa.jpf.inspector.interfaces.JPFInspectorBackEndInterface;
 import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
 import gov.nasa.jpf.vm.Instruction;
 import gov.nasa.jpf.vm.VM;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -34,10 +38,23 @@ import java.util.concurrent.locks.ReentrantLock;
  * 
  * This class also holds current state of the SuT (JVM).
  *
+ * Stopping and resuming is a direct handoff between the JPF thread and the thread executing commands: the JPF thread
+ * waits only for a resume, commands wait only for a stop, and each side wakes only the other one. Before blocking,
+ * both sides spin for a short while (see {@link InspectorConfiguration#getStopHandoffSpins()}), because when commands
+ * come from a script, the next step is usually requested within microseconds and JPF usually stops soon after.
+ *
+ * Queries of the program state may also be run by the JPF thread itself while it is stopped, so that the thread
+ * asking does not block, see {@link #queryWhileStopped(String, Callable)}. Whichever thread reads or writes the stopped
+ * VM holds the VM lock, see {@link #getVMLock()}.
+ *
  * Implementors: When modifying this class, make sure to think about thread safety and synchronization.
  */
 public class StopHolder {
   private static final boolean DEBUG = false;
+  /**
+   * Number of spins after which a spinning thread yields the processor in each further spin.
+   */
+  private static final int SPINS_BEFORE_YIELD = 64;
 
   /**
    * State of the stopped JVM.
@@ -55,8 +72,18 @@ public class StopHolder {
   private boolean terminating = false;
 
   private boolean terminatingClientNotified = false;
-  private boolean stopped = false;
+  /**
+   * Modified under the access lock, but read without it.
+   */
+  private volatile boolean stopped = false;
+  /**
+   * Set when a command resumes JPF, cleared when JPF stops. Modified under the access lock, but read without it by the
+   * JPF thread while it spins.
+   */
+  private volatile boolean resumeRequested = false;
   private boolean condTerminateAfterResume = false;
+  private final int handoffSpins;
+  private final StoppedQueryQueue stoppedQueries = new StoppedQueryQueue();
 
   /**
    * The access lock is used to synchronize modifications to this StopHolder object.
@@ -64,8 +91,21 @@ public class StopHolder {
    * use it to ensure that only a single method modifies a StopHolder's property at a time.
    */
   private final ReentrantLock accessLock = new ReentrantLock();
-  private final Condition accessLockConditionVariable = accessLock.newCondition();
+  /**
+   * Threads waiting for JPF to stop wait on this condition. The JPF thread signals it when it stops.
+   */
+  private final Condition jpfStoppedConditionVariable = accessLock.newCondition();
+  /**
+   * The JPF thread waits on this condition while stopped. It is signalled by {@link #resumeExecution()} and when a
+   * query is submitted.
+   */
+  private final Condition jpfResumeConditionVariable = accessLock.newCondition();
   private final Condition jpfResumePreventionConditionVariable = accessLock.newCondition();
+  /**
+   * Held while the stopped VM is read or written, see {@link #getVMLock()}. Never acquired while holding the access
+   * lock.
+   */
+  private final ReentrantLock vmLock = new ReentrantLock();
 
   private int hostageHolders = 0;
   /**
@@ -128,6 +168,7 @@ public class StopHolder {
   public StopHolder (JPFInspector inspector, InspectorCallbacks serverCallbacks) {
     this.inspector = inspector;
     this.serverCallbacks = serverCallbacks;
+    this.handoffSpins = InspectorConfiguration.getInstance().getStopHandoffSpins();
   }
 
   /**
@@ -152,19 +193,46 @@ public class StopHolder {
       try {
         if (!terminate) {
           this.inspState = inspState;
-          stopped = true;
-
+          resumeRequested = false;
+          // Queued before the stop is visible, because threads that see it without the lock may wait for the callback
           serverCallbacks.notifyStateChange(InspectorStatusChange.JPF_STOPPED, getLocationDetails(inspState));
           //hasJpfStoppedAtLeastOnce = true;
 
-          accessLockConditionVariable.signalAll(); // Notify all threads waiting for JPF to be stopped (they are woken up after the wait)
-          accessLockConditionVariable.await();
+          stopped = true;
+          inspector.getBackstepTargets().jpfStopped(inspState);
+
+          jpfStoppedConditionVariable.signalAll(); // Notify all threads waiting for JPF to be stopped (they are woken up after the wait)
+
+          if (handoffSpins > 0) {
+            accessLock.unlock();
+            try {
+              for (int spin = 0; spin < handoffSpins && !resumeRequested && stoppedQueries.isEmpty(); spin++) {
+                spinWait(spin);
+              }
+            } finally {
+              accessLock.lock();
+            }
+          }
+          // Queries submitted before the resume are answered from this stop
+          while (!resumeRequested || !stoppedQueries.isEmpty()) {
+            if (stoppedQueries.isEmpty()) {
+              jpfResumeConditionVariable.await();
+            } else {
+              accessLock.unlock();
+              try {
+                runStoppedQueries();
+              } finally {
+                accessLock.lock();
+              }
+            }
+          }
 
           while (hostageHolders > 0) {
             jpfResumePreventionConditionVariable.await();
           }
 
           stopped = false;
+          inspector.getBackstepTargets().jpfResumed();
 
           //lockJpfHasResumed.lock();
 
@@ -239,42 +307,42 @@ public class StopHolder {
   /**
    * Gets a value that indicates whether JPF thread is currently waiting inside the method {@link #stopExecution(InspectorState)}.
    *
-   * Synchronized by the acess lock.
+   * Unsynchronized.
    */
   public boolean isStopped () {
-    accessLock.lock();
-    try {
-      return stopped;
-    } finally {
-      accessLock.unlock();
-    }
+    return stopped;
   }
 
   /**   *
    * Blocks until the JPF (SuT) becomes stopped. If JPF is already stopped, then returns immediately.
    *
-   * Synchronized on the access lock.
+   * Spins for a while first, then waits on the access lock.
    */
   public void waitUntilStopped () {
-    accessLock.lock();
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".waitUntilStopped()");
     }
-    try {
-      while (!isStopped()) {
-        accessLockConditionVariable.await();
+    for (int spin = 0; spin < handoffSpins && !stopped; spin++) {
+      spinWait(spin);
+    }
+    if (!stopped) {
+      accessLock.lock();
+      try {
+        while (!stopped) {
+          jpfStoppedConditionVariable.await();
+        }
+      } catch (InterruptedException ignored) {
+      } finally {
+        accessLock.unlock();
       }
-    } catch (InterruptedException ignored) {
     }
     if (DEBUG) {
       inspector.getDebugPrintStream().println(this.getClass().getSimpleName() + ".waitUntilStopped() - exit");
     }
-    accessLock.unlock();
   }
   /**
-   * Sets the field {@link #stopped} to false and wakes up any threads waiting on the access lock.
-   *
-   * The only blocked thread should be the JPF thread in the {@link #stopExecution(InspectorState)} method
+   * Sets the field {@link #stopped} to false and wakes up the JPF thread waiting in
+   * {@link #stopExecution(InspectorState)}.
    *
    * Threads which calls {@link #waitUntilStopped()}
    * a) before {@link #stopExecution(InspectorState)} are notified in {@link #stopExecution(InspectorState)}
@@ -282,16 +350,83 @@ public class StopHolder {
    */
   public void resumeExecution () {
     accessLock.lock();
-    assert (isStopped()); // Illegal usage
+    try {
+      assert (stopped); // Illegal usage
 
+      this.stopped = false;
+      this.resumeRequested = true;
+      // Only the JPF thread waits for a resume. Threads waiting for a stop keep waiting for the next one.
+      jpfResumeConditionVariable.signal();
+    } finally {
+      accessLock.unlock();
+    }
+  }
 
-    this.stopped = false;
-    accessLockConditionVariable.signalAll();
-    // This used to be notify() only. However, we are only using a small, constant number of threads,
-    // notify() always risks acting as notifyAll() anyway because of spurious wakeups, and the performance gains are minimal.
-    // Also, I don't fully understand it and don't want to debug multithreading right now, and it may work better with notifyAll.
+  /**
+   * Queues a query of the program state to be run by the JPF thread while it is stopped, so that the caller does not
+   * block. If JPF is stopped, the query runs right away, otherwise at the next stop. If a query with the same key is
+   * already waiting, its future is returned instead, so concurrent identical queries are run only once.
+   *
+   * The future is completed exceptionally if the query throws, or if JPF terminates before the query runs.
+   *
+   * @param key Identifies the query, together with its arguments.
+   * @param query Reads the program state. Executed by the JPF thread.
+   * @return Future completed with the result of the query. Note that it is completed by the JPF thread, so dependent
+   * actions should not take long or should be run asynchronously.
+   */
+  public <T> CompletableFuture<T> queryWhileStopped(String key, Callable<T> query) {
+    CompletableFuture<T> future = stoppedQueries.submit(key, query);
+    accessLock.lock();
+    try {
+      if (terminatingClientNotified && stopped && inspState == null) {
+        // JPF has terminated and will not stop again
+        stoppedQueries.failAll(new JPFInspectorGenericErrorException("JPF is not running."));
+      } else {
+        jpfResumeConditionVariable.signal();
+      }
+    } finally {
+      accessLock.unlock();
+    }
+    return future;
+  }
 
-    accessLock.unlock();
+  /**
+   * Gets the lock that serializes all reads and writes of the VM while JPF is stopped. It is held by the thread
+   * executing commands when it reads or changes the program state or analyses the path, by the JPF thread when it runs
+   * the queries from {@link #queryWhileStopped(String, Callable)}, and by the worker that precomputes the targets of
+   * backward steps. Among others, {@link VM#updatePath()} must never run in two threads at once.
+   *
+   * Note: Do not acquire it while holding the access lock of this object.
+   */
+  public ReentrantLock getVMLock() {
+    return vmLock;
+  }
+
+  /**
+   * Runs the waiting queries once the targets of backward steps are computed, so that they see the state the targets
+   * are computed from.
+   *
+   * Note: Executed by the JPF thread while it is stopped, without holding the access lock.
+   */
+  private void runStoppedQueries() {
+    inspector.getBackstepTargets().waitUntilPrecomputed();
+    vmLock.lock();
+    try {
+      stoppedQueries.runAll();
+    } finally {
+      vmLock.unlock();
+    }
+  }
+
+  /**
+   * Busy-waits for a moment. Yields the processor once the thread has spun for a while without success.
+   *
+   * @param spin Number of the spins done so far.
+   */
+  private static void spinWait(int spin) {
+    if (spin >= SPINS_BEFORE_YIELD) {
+      Thread.yield();
+    }
   }
 
   private static String getLocationDetails(InspectorState inspState) {
@@ -335,8 +470,9 @@ public class StopHolder {
       terminatingClientNotified = true;
       accessLock.lock();
         stopped = true;
-        accessLockConditionVariable.signalAll(); // Added to unblock commands waiting for JPF to be stopped or terminated.
+        jpfStoppedConditionVariable.signalAll(); // Added to unblock commands waiting for JPF to be stopped or terminated.
       accessLock.unlock();
+      stoppedQueries.failAll(new JPFInspectorGenericErrorException("JPF terminated before the query could be answered."));
     }
   }
 
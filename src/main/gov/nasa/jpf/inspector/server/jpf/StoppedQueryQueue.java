@@ -0,0 +1,119 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.jpf;
+
+import gov.nasa.jpf.inspector.server.expression.InspectorState;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Queries of the program state that wait to be run by the JPF thread while it is stopped in
+ * {@link StopHolder#stopExecution(InspectorState)}.
+ *
+ * Queries are identified by a key. A query submitted while another query with the same key waits to be run is not
+ * queued, it gets the future of the waiting query instead.
+ */
+final class StoppedQueryQueue {
+
+  private static final class Query<T> {
+    private final Callable<T> callable;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
+
+    private Query(Callable<T> callable) {
+      this.callable = callable;
+    }
+
+    private void run() {
+      try {
+        future.complete(callable.call());
+      } catch (Exception | AssertionError e) {
+        future.completeExceptionally(e);
+      }
+    }
+  }
+
+  // Guarded by this.
+  private final Map<String, Query<?>> waiting = new LinkedHashMap<>();
+  /**
+   * Number of waiting queries, so that the JPF thread can check for them without locking.
+   */
+  private volatile int size = 0;
+
+  /**
+   * Adds a query to the queue, unless a query with the same key is already waiting.
+   *
+   * @return Future completed with the result of the query once it runs.
+   */
+  @SuppressWarnings("unchecked") // Queries with the same key have the same result type
+  synchronized <T> CompletableFuture<T> submit(String key, Callable<T> callable) {
+    Query<?> existing = waiting.get(key);
+    if (existing != null) {
+      return (CompletableFuture<T>) existing.future;
+    }
+    Query<T> query = new Query<>(callable);
+    waiting.put(key, query);
+    size = waiting.size();
+    return query.future;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Runs the waiting queries in the order they were submitted, including those submitted while running them.
+   *
+   * Note: Executed by the JPF thread while it is stopped.
+   */
+  void runAll() {
+    while (true) {
+      Query<?> query = takeFirst();
+      if (query == null) {
+        return;
+      }
+      query.run();
+    }
+  }
+
+  /**
+   * Completes all waiting queries with the exception, without running them.
+   */
+  void failAll(Throwable reason) {
+    while (true) {
+      Query<?> query = takeFirst();
+      if (query == null) {
+        return;
+      }
+      query.future.completeExceptionally(reason);
+    }
+  }
+
+  private synchronized Query<?> takeFirst() {
+    Iterator<Query<?>> iterator = waiting.values().iterator();
+    if (!iterator.hasNext()) {
+      return null;
+    }
+    Query<?> query = iterator.next();
+    iterator.remove();
+    size = waiting.size();
+    return query;
+  }
+}
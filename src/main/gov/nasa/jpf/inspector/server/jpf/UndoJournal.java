@@ -0,0 +1,549 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.jpf;
+
+import gov.nasa.jpf.inspector.server.expression.InspectorStateImpl;
+import gov.nasa.jpf.inspector.utils.Debugging;
+import gov.nasa.jpf.jvm.bytecode.AASTORE;
+import gov.nasa.jpf.jvm.bytecode.ArrayStoreInstruction;
+import gov.nasa.jpf.jvm.bytecode.BASTORE;
+import gov.nasa.jpf.jvm.bytecode.CASTORE;
+import gov.nasa.jpf.jvm.bytecode.DASTORE;
+import gov.nasa.jpf.jvm.bytecode.FASTORE;
+import gov.nasa.jpf.jvm.bytecode.LASTORE;
+import gov.nasa.jpf.jvm.bytecode.LockInstruction;
+import gov.nasa.jpf.jvm.bytecode.PUTFIELD;
+import gov.nasa.jpf.jvm.bytecode.PUTSTATIC;
+import gov.nasa.jpf.jvm.bytecode.SASTORE;
+import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.FieldInfo;
+import gov.nasa.jpf.vm.Heap;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MJIEnv;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.StackFrame;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.bytecode.FieldInstruction;
+import gov.nasa.jpf.vm.bytecode.InvokeInstruction;
+import gov.nasa.jpf.vm.bytecode.ReturnInstruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Journal of the instructions executed in the current transition that allows "back_step_instruction" to undo them
+ * directly, without backtracking the transition and replaying it up to the previous instruction.
+ *
+ * For each executed instruction, the journal holds a copy of the top stack frame (with the program counter) before
+ * the instruction and, if the instruction stores into a field or an array element, the previous value. Only
+ * instructions whose effects are fully described by that are journaled. Invocations, returns, lock instructions and
+ * instructions that create objects, throw exceptions or change the stack depth are not; the journal forgets
+ * everything before them, because they cannot be undone. Backward steps that the journal cannot serve fall back to
+ * the replay.
+ *
+ * The journal is cleared at every transition boundary and nothing is recorded while instruction events are not
+ * followed (in free run). If it grows over its memory limit, the oldest entries are dropped. The journal remembers why
+ * it cannot reach further back, see {@link #whyCannotUndo(ThreadInfo)}.
+ *
+ * An undone instruction is still recorded as a step of the transition. When it is executed again, it is not recorded
+ * a second time, so that the recorded steps keep matching the execution and replay-based backward steps still work.
+ *
+ * Note: Hit counts of breakpoints and changes made by the user while JPF was stopped are not undone.
+ *
+ * Note: Recording is executed by the JPF thread. Undoing is executed by the server thread while the JPF thread is
+ * stopped before an instruction.
+ */
+public class UndoJournal {
+
+  private static final byte KIND_FRAME_ONLY = 0;
+  private static final byte KIND_INSTANCE_FIELD = 1;
+  private static final byte KIND_STATIC_FIELD = 2;
+  private static final byte KIND_ARRAY_ELEMENT = 3;
+
+  /**
+   * Reasons why the instruction before the oldest entry cannot be undone, completing the sentence "It cannot be
+   * undone, because ...".
+   */
+  public static final String REASON_EARLIER_TRANSITION = "it was executed in an earlier transition";
+  public static final String REASON_FREE_RUN = "it was executed in free run, without instruction events";
+  public static final String REASON_GARBAGE_COLLECTION = "it was executed before the garbage collector ran";
+  public static final String REASON_REPLAYED = "it was executed before a backward step replayed the transition";
+  public static final String REASON_NOT_OBSERVED = "its execution was not fully observed";
+  public static final String REASON_NOT_UNDOABLE = "it has effects the journal does not capture (such as an " +
+          "invocation, a return, a lock or a new object)";
+  public static final String REASON_MEMORY_LIMIT = "it was dropped to keep the journal within its memory limit";
+
+  /**
+   * Estimated size of an entry without the copy of the stack frame, in bytes.
+   */
+  private static final int ENTRY_BYTES = 96;
+
+  private final long maxBytes;
+  private long usedBytes = 0;
+  /**
+   * Why the instruction before the oldest entry cannot be undone. One of the REASON_ constants.
+   */
+  private String limitReason = REASON_EARLIER_TRANSITION;
+
+  // Entries are stored at the indices from "first" (the oldest entry) to "end" (exclusive).
+  private int first = 0;
+  private int end = 0;
+  private byte[] kinds = new byte[16];
+  private char[] elementTypes = new char[16];
+  private int[] threadIds = new int[16];
+  private int[] stackDepths = new int[16];
+  private int[] refs = new int[16];
+  private int[] indices = new int[16];
+  private long[] oldValues = new long[16];
+  private int[] sizes = new int[16];
+  /** Copies of the top stack frame before the instruction. */
+  private Object[] frames = new Object[16];
+  private Object[] instructions = new Object[16];
+  private Object[] fields = new Object[16];
+  /** The instruction that was the last executed instruction of the thread before the entry's instruction. */
+  private Object[] previousInstructions = new Object[16];
+
+  // The entry of the instruction that is being executed, completed once the instruction is executed.
+  private boolean open = false;
+  private boolean openUndoable;
+  private byte openKind;
+  private char openElementType;
+  private int openThreadId;
+  private int openStackDepth;
+  private MethodInfo openMethod;
+  private int openRef;
+  private int openIndex;
+  private long openOldValue;
+  private StackFrame openFrame;
+  private Instruction openInstruction;
+  private FieldInfo openField;
+  private Instruction openPreviousInstruction;
+
+  /**
+   * Instructions that were undone but are still recorded as steps of the transition, the most recently undone last.
+   */
+  private final List<Instruction> undoneInstructions = new ArrayList<>();
+  /**
+   * The instruction that the JPF thread is about to skip, because it was stopped before it when the previous
+   * instruction was undone.
+   */
+  private Instruction skippedInstruction = null;
+  /**
+   * Whether the JPF thread already resumed in the notification about {@link #skippedInstruction}. JPF may or may not
+   * report the skipped instruction as executed afterwards.
+   */
+  private boolean skippedInstructionReached = false;
+
+  /**
+   * @param maxBytes Estimated memory the journal may use, in bytes.
+   */
+  public UndoJournal(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Records the state before the instruction is executed.
+   *
+   * @param ti The thread that executes the instruction.
+   * @param inst The instruction to be executed.
+   * @param previousInstruction The last instruction executed by the thread.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  public void executeInstruction(ThreadInfo ti, Instruction inst, Instruction previousInstruction) {
+    if (skippedInstruction != null) {
+      if (!skippedInstructionReached && inst == skippedInstruction) {
+        skippedInstructionReached = true;
+        return;
+      }
+      skippedInstruction = null;
+    }
+    checkRedo(ti, inst);
+
+    open = true;
+    openInstruction = inst;
+    openThreadId = ti.getId();
+    openStackDepth = ti.getStackDepth();
+    openPreviousInstruction = previousInstruction;
+    openField = null;
+    openKind = KIND_FRAME_ONLY;
+    openUndoable = !(inst instanceof InvokeInstruction) && !(inst instanceof ReturnInstruction) &&
+                   !(inst instanceof LockInstruction);
+    if (!openUndoable) {
+      return;
+    }
+
+    StackFrame frame = ti.getTopFrame();
+    openMethod = frame.getMethodInfo();
+    openFrame = frame.clone();
+    if (inst instanceof PUTFIELD || inst instanceof PUTSTATIC) {
+      recordField((FieldInstruction) inst, ti);
+    } else if (inst instanceof ArrayStoreInstruction) {
+      recordArrayElement((ArrayStoreInstruction) inst, ti);
+    }
+  }
+
+  /**
+   * If instructions were undone, the instructions executed next should be the same ones, and they are already
+   * recorded as steps of the transition.
+   */
+  private void checkRedo(ThreadInfo ti, Instruction inst) {
+    if (undoneInstructions.isEmpty()) {
+      return;
+    }
+    Instruction expected = undoneInstructions.remove(undoneInstructions.size() - 1);
+    if (expected == inst) {
+      ti.skipInstructionLogging();
+    } else {
+      // The user changed the program state, the recorded steps no longer match the execution.
+      Debugging.getLogger().warning("After an undone instruction, " + inst + " was executed instead of " + expected + ".");
+      undoneInstructions.clear();
+    }
+  }
+
+  private void recordField(FieldInstruction inst, ThreadInfo ti) {
+    FieldInfo fi = inst.getFieldInfo();
+    ElementInfo owner = fi == null ? null : inst.peekElementInfo(ti);
+    if (owner == null) {
+      openUndoable = false; // A null reference, or a class that is not initialized yet
+      return;
+    }
+    openKind = fi.isStatic() ? KIND_STATIC_FIELD : KIND_INSTANCE_FIELD;
+    openField = fi;
+    openRef = owner.getObjectRef();
+    if (fi.getStorageSize() == 2) {
+      openOldValue = owner.getFields().getLongValue(fi.getStorageOffset());
+    } else {
+      openOldValue = owner.getFields().getIntValue(fi.getStorageOffset());
+    }
+  }
+
+  private void recordArrayElement(ArrayStoreInstruction inst, ThreadInfo ti) {
+    int arrayRef = inst.peekArrayRef(ti);
+    ElementInfo array = arrayRef == MJIEnv.NULL ? null : ti.getHeap().get(arrayRef);
+    int index = inst.peekIndex(ti);
+    if (array == null || index < 0 || index >= array.arrayLength()) {
+      openUndoable = false; // The instruction throws an exception
+      return;
+    }
+    openKind = KIND_ARRAY_ELEMENT;
+    openRef = arrayRef;
+    openIndex = index;
+    if (inst instanceof LASTORE) {
+      openElementType = 'J';
+      openOldValue = array.getLongElement(index);
+    } else if (inst instanceof DASTORE) {
+      openElementType = 'D';
+      openOldValue = Double.doubleToRawLongBits(array.getDoubleElement(index));
+    } else if (inst instanceof FASTORE) {
+      openElementType = 'F';
+      openOldValue = Float.floatToRawIntBits(array.getFloatElement(index));
+    } else if (inst instanceof AASTORE) {
+      openElementType = 'L';
+      openOldValue = array.getReferenceElement(index);
+    } else if (inst instanceof CASTORE) {
+      openElementType = 'C';
+      openOldValue = array.getCharElement(index);
+    } else if (inst instanceof SASTORE) {
+      openElementType = 'S';
+      openOldValue = array.getShortElement(index);
+    } else if (inst instanceof BASTORE) {
+      if (array.getClassInfo().getName().equals("[Z")) {
+        openElementType = 'Z';
+        openOldValue = array.getBooleanElement(index) ? 1 : 0;
+      } else {
+        openElementType = 'B';
+        openOldValue = array.getByteElement(index);
+      }
+    } else {
+      openElementType = 'I';
+      openOldValue = array.getIntElement(index);
+    }
+  }
+
+  /**
+   * Completes the entry of the executed instruction.
+   *
+   * Note: Executed by the JPF thread.
+   *
+   * @return False if the instruction was skipped because the previous instruction was undone. The caller should then
+   * ignore the notification.
+   */
+  public boolean instructionExecuted(ThreadInfo ti, Instruction executedInstruction) {
+    if (skippedInstruction != null && skippedInstructionReached && executedInstruction == skippedInstruction) {
+      skippedInstruction = null;
+      return false;
+    }
+    if (!open || executedInstruction != openInstruction || ti.getId() != openThreadId) {
+      clear(REASON_NOT_OBSERVED); // We missed the start of the instruction
+      return true;
+    }
+    open = false;
+    if (!openUndoable || ti.getStackDepth() != openStackDepth || ti.getTopFrame().getMethodInfo() != openMethod) {
+      // Everything before this instruction is unreachable for undo now
+      clearEntries();
+      limitReason = REASON_NOT_UNDOABLE;
+      return true;
+    }
+    append();
+    return true;
+  }
+
+  /**
+   * Notification that the instruction being executed has effects the journal does not capture, such as creating
+   * an object or throwing an exception.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  public void unrecordableEffect() {
+    openUndoable = false;
+  }
+
+  private void append() {
+    if (end == kinds.length) {
+      makeRoom();
+    }
+    int i = end++;
+    kinds[i] = openKind;
+    elementTypes[i] = openElementType;
+    threadIds[i] = openThreadId;
+    stackDepths[i] = openStackDepth;
+    refs[i] = openRef;
+    indices[i] = openIndex;
+    oldValues[i] = openOldValue;
+    frames[i] = openFrame;
+    instructions[i] = openInstruction;
+    fields[i] = openField;
+    previousInstructions[i] = openPreviousInstruction;
+    sizes[i] = ENTRY_BYTES + 8 * openFrame.getSlots().length;
+    usedBytes += sizes[i];
+    openFrame = null;
+    openField = null;
+
+    while (usedBytes > maxBytes && first < end) {
+      removeFirst();
+      limitReason = REASON_MEMORY_LIMIT;
+    }
+  }
+
+  /**
+   * Moves the entries to the start of the arrays if the oldest entries were dropped, or grows the arrays otherwise.
+   */
+  private void makeRoom() {
+    int count = end - first;
+    int length = first > kinds.length / 2 ? kinds.length : kinds.length * 2;
+    kinds = Arrays.copyOf(Arrays.copyOfRange(kinds, first, end), length);
+    elementTypes = Arrays.copyOf(Arrays.copyOfRange(elementTypes, first, end), length);
+    threadIds = Arrays.copyOf(Arrays.copyOfRange(threadIds, first, end), length);
+    stackDepths = Arrays.copyOf(Arrays.copyOfRange(stackDepths, first, end), length);
+    refs = Arrays.copyOf(Arrays.copyOfRange(refs, first, end), length);
+    indices = Arrays.copyOf(Arrays.copyOfRange(indices, first, end), length);
+    oldValues = Arrays.copyOf(Arrays.copyOfRange(oldValues, first, end), length);
+    sizes = Arrays.copyOf(Arrays.copyOfRange(sizes, first, end), length);
+    frames = Arrays.copyOf(Arrays.copyOfRange(frames, first, end), length);
+    instructions = Arrays.copyOf(Arrays.copyOfRange(instructions, first, end), length);
+    fields = Arrays.copyOf(Arrays.copyOfRange(fields, first, end), length);
+    previousInstructions = Arrays.copyOf(Arrays.copyOfRange(previousInstructions, first, end), length);
+    first = 0;
+    end = count;
+  }
+
+  private void removeFirst() {
+    usedBytes -= sizes[first];
+    frames[first] = null;
+    instructions[first] = null;
+    fields[first] = null;
+    previousInstructions[first] = null;
+    first++;
+  }
+
+  private void removeLast() {
+    end--;
+    usedBytes -= sizes[end];
+    frames[end] = null;
+    instructions[end] = null;
+    fields[end] = null;
+    previousInstructions[end] = null;
+  }
+
+  private void clearEntries() {
+    while (first < end) {
+      removeLast();
+    }
+    first = 0;
+    end = 0;
+  }
+
+  /**
+   * Forgets everything. Called at transition boundaries and whenever the journal cannot be kept up to date.
+   *
+   * @param reason Why the instructions executed so far cannot be undone. One of the REASON_ constants.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  public void clear(String reason) {
+    clearEntries();
+    limitReason = reason;
+    open = false;
+    openFrame = null;
+    openField = null;
+    undoneInstructions.clear();
+    skippedInstruction = null;
+  }
+
+  /**
+   * Gets the number of undone instructions that are still recorded as the last steps of the current transition.
+   * Backward steps that look at the steps of the transition must disregard them.
+   */
+  public int getUndoneInstructionCount() {
+    return undoneInstructions.size();
+  }
+
+  /**
+   * Indicates whether the last instruction executed by the thread can be undone.
+   *
+   * @param ti The thread that is stopped before an instruction.
+   */
+  public boolean canUndo(ThreadInfo ti) {
+    if (first == end || skippedInstruction != null) {
+      return false;
+    }
+    return threadIds[end - 1] == ti.getId() && stackDepths[end - 1] == ti.getStackDepth();
+  }
+
+  /**
+   * Explains why the last instruction executed by the thread cannot be undone, so that a backward step that replays
+   * the transition instead can say why. Only meaningful if {@link #canUndo(ThreadInfo)} is false.
+   *
+   * @param ti The thread that is stopped before an instruction. May be null if the journal is empty.
+   * @return A phrase that completes the sentence "The instruction cannot be undone, because ...".
+   */
+  public String whyCannotUndo(ThreadInfo ti) {
+    if (first == end) {
+      return limitReason;
+    }
+    if (skippedInstruction != null) {
+      return "the JPF thread has not resumed since the previous undo yet";
+    }
+    if (threadIds[end - 1] != ti.getId()) {
+      return "another thread executed an instruction since";
+    }
+    return REASON_NOT_UNDOABLE;
+  }
+
+  /**
+   * Undoes the last instruction executed by the thread and makes the thread skip the instruction it is stopped before.
+   * After the JPF thread resumes, the undone instruction is the next one to be executed.
+   *
+   * @param ti The thread that is stopped before an instruction. {@link #canUndo(ThreadInfo)} must be true.
+   * @param inspectorState The state whose last executed instruction of the thread is restored.
+   * @return The undone instruction.
+   *
+   * Note: Executed by the server thread while the JPF thread is stopped.
+   */
+  public Instruction undo(ThreadInfo ti, InspectorStateImpl inspectorState) {
+    assert canUndo(ti);
+    int i = end - 1;
+    Instruction stoppedBefore = ti.getPC();
+
+    switch (kinds[i]) {
+      case KIND_INSTANCE_FIELD:
+        restoreField(ti.getHeap().getModifiable(refs[i]), (FieldInfo) fields[i], oldValues[i]);
+        break;
+      case KIND_STATIC_FIELD:
+        FieldInfo fi = (FieldInfo) fields[i];
+        restoreField(fi.getClassInfo().getModifiableStaticElementInfo(), fi, oldValues[i]);
+        break;
+      case KIND_ARRAY_ELEMENT:
+        restoreArrayElement(ti.getHeap(), refs[i], indices[i], elementTypes[i], oldValues[i]);
+        break;
+      default:
+        break;
+    }
+
+    // The copy of the frame holds the locals, the operand stack and the program counter before the instruction.
+    ti.popFrame();
+    ti.pushFrame((StackFrame) frames[i]);
+
+    Instruction undone = (Instruction) instructions[i];
+    inspectorState.setLastExecutedInstruction(ti.getId(), (Instruction) previousInstructions[i]);
+    removeLast();
+
+    skippedInstruction = stoppedBefore;
+    skippedInstructionReached = false;
+    ti.skipInstruction(undone);
+    ti.skipInstructionLogging();
+    undoneInstructions.add(undone);
+    return undone;
+  }
+
+  private static void restoreField(ElementInfo owner, FieldInfo fi, long value) {
+    if (fi.isReference()) {
+      owner.setReferenceField(fi, (int) value);
+    } else if (fi.isLongField()) {
+      owner.setLongField(fi, value);
+    } else if (fi.isDoubleField()) {
+      owner.setDoubleField(fi, Double.longBitsToDouble(value));
+    } else if (fi.isFloatField()) {
+      owner.setFloatField(fi, Float.intBitsToFloat((int) value));
+    } else if (fi.isBooleanField()) {
+      owner.setBooleanField(fi, value != 0);
+    } else if (fi.isByteField()) {
+      owner.setByteField(fi, (byte) value);
+    } else if (fi.isCharField()) {
+      owner.setCharField(fi, (char) value);
+    } else if (fi.isShortField()) {
+      owner.setShortField(fi, (short) value);
+    } else {
+      owner.setIntField(fi, (int) value);
+    }
+  }
+
+  private static void restoreArrayElement(Heap heap, int arrayRef, int index, char elementType, long value) {
+    ElementInfo array = heap.getModifiable(arrayRef);
+    switch (elementType) {
+      case 'J':
+        array.setLongElement(index, value);
+        break;
+      case 'D':
+        array.setDoubleElement(index, Double.longBitsToDouble(value));
+        break;
+      case 'F':
+        array.setFloatElement(index, Float.intBitsToFloat((int) value));
+        break;
+      case 'L':
+        array.setReferenceElement(index, (int) value);
+        break;
+      case 'C':
+        array.setCharElement(index, (char) value);
+        break;
+      case 'S':
+        array.setShortElement(index, (short) value);
+        break;
+      case 'Z':
+        array.setBooleanElement(index, value != 0);
+        break;
+      case 'B':
+        array.setByteElement(index, (byte) value);
+        break;
+      default:
+        array.setIntElement(index, (int) value);
+        break;
+    }
+  }
+}
@@ -31,15 +31,19 @@ import gov.nasa.jpf.inspector.server.expression.InspectorState;
 import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointInstruction;
 import gov.nasa.jpf.inspector.utils.Debugging;
 import gov.nasa.jpf.inspector.utils.expressions.FieldName;
+import gov.nasa.jpf.jvm.bytecode.PUTFIELD;
+import gov.nasa.jpf.jvm.bytecode.PUTSTATIC;
 import gov.nasa.jpf.vm.*;
 import gov.nasa.jpf.vm.bytecode.FieldInstruction;
 
+import java.io.IOException;
+
 /**
  * An instance of this class is created when a backwards-stepping command is executed. It creates a single breakpoint,
  * determines the number of transitions that must be backtracked, passes the number to the silent InspectorListener
  * and then leaves scope to be garbaged collected.
  *
- * All of this happens inside the {@link CommandsManager#backstep(CommandsInterface.StepType)} method.
+ * All of this happens inside the {@link CommandsManager#backstep(CommandsInterface.StepType, int)} method.
  */
 public final class BackwardBreakpointCreator {
 
@@ -81,6 +85,38 @@ public final class BackwardBreakpointCreator {
     throw new RuntimeException("The transition '" + transition + "' does not contain the step '" + step + "'.");
   }
 
+  /**
+   * Initializes a new instance of the {@link BackwardBreakpointCreator} for a step found in the {@link PathStepIndex}.
+   *
+   * @param transition The transition containing the step we should backtrack to.
+   * @param stepIndex Index of the step in the transition.
+   * @param instruction The instruction of the step.
+   * @param numberOfTransitionsToBacktrack Number of transitions to backtrack, including the current one.
+   */
+  private BackwardBreakpointCreator(Transition transition, int stepIndex, Instruction instruction,
+                                    int numberOfTransitionsToBacktrack) {
+    assert transition != null;
+    assert instruction != null;
+    assert numberOfTransitionsToBacktrack > 0;
+
+    this.breakpointHitCondition = new ExpressionBreakpointInstruction(transition.getThreadIndex(),
+                                                                      instruction,
+                                                                      stepIndex);
+    this.numberOfTransitionsToBacktrack = numberOfTransitionsToBacktrack;
+  }
+
+  /**
+   * Creates a creator for the given step of the {@link PathStepIndex}.
+   */
+  private static BackwardBreakpointCreator atIndexedStep(PathStepIndex stepIndex, PathStepIndex.ThreadSteps steps,
+                                                         int step, Path path) {
+    int transitionIndex = steps.getTransitionIndex(step);
+    return new BackwardBreakpointCreator(stepIndex.getTransition(transitionIndex),
+                                         steps.getStepIndex(step),
+                                         steps.getInstruction(step),
+                                         path.size() - transitionIndex);
+  }
+
   /**
    * Initializes a new instance of the {@link BackwardBreakpointCreator}.
    *
@@ -154,9 +190,15 @@ public final class BackwardBreakpointCreator {
    * Undoes the last instruction. Specifically, backtracks through the JPF transition path and then re-executes transitions until it stops just before the last instruction that was executed.
    *
    * @param inspectorState The current Inspector state used to get the transition path.
+   * @param stepIndex Index of the steps of the path, or null to walk the path step by step. Must not be null if
+   *                  a count greater than 1 or undone steps are given.
+   * @param undoneSteps Number of the last steps of the current transition that were undone by the undo journal.
+   * @param count Number of backward steps to make at once.
    * @return Creator with all target information collected. Returns null on failure.
    */
-  public static BackwardBreakpointCreator getBackwardStepInstruction (InspectorState inspectorState) {
+  public static BackwardBreakpointCreator getBackwardStepInstruction (InspectorState inspectorState,
+                                                                     PathStepIndex stepIndex,
+                                                                     int undoneSteps, int count) {
     Path path = updateAndGetPath(inspectorState);
     Transition currentTransition = path.getLast();
     if (currentTransition == null) {
@@ -164,6 +206,10 @@ public final class BackwardBreakpointCreator {
       assert false; // This should not happen.
       return null;
     }
+    if (stepIndex != null) {
+      return getIndexedBackwardStep(inspectorState, path, stepIndex, CommandsInterface.StepType.ST_INSTRUCTION,
+                                    undoneSteps, count);
+    }
     int currentThread = currentTransition.getThreadIndex();
 
     StepThreadBacktracker stb = new StepThreadBacktracker(new TransitionThreadBacktracker(path, currentThread));
@@ -192,10 +238,20 @@ public final class BackwardBreakpointCreator {
    * on the line of the caller as well.
    *
    * @param inspectorState The current Inspector state used to get the transition path.
+   * @param stepIndex Index of the steps of the path, or null to walk the path step by step. Must not be null if
+   *                  a count greater than 1 or undone steps are given.
+   * @param undoneSteps Number of the last steps of the current transition that were undone by the undo journal.
+   * @param count Number of backward steps to make at once.
    * @return Creator with all target information collected.
    */
-  public static BackwardBreakpointCreator getBackwardStepLine (InspectorState inspectorState) {
+  public static BackwardBreakpointCreator getBackwardStepLine (InspectorState inspectorState,
+                                                              PathStepIndex stepIndex,
+                                                              int undoneSteps, int count) {
     Path path = updateAndGetPath(inspectorState);
+    if (stepIndex != null) {
+      return getIndexedBackwardStep(inspectorState, path, stepIndex, CommandsInterface.StepType.ST_LINE,
+                                    undoneSteps, count);
+    }
     MethodInstructionBacktracker methodInstructionBacktracker = new MethodInstructionBacktracker(path);
 
     Instruction currentInstruction = inspectorState.getVM().getInstruction();
@@ -243,6 +299,36 @@ public final class BackwardBreakpointCreator {
     return new BackwardBreakpointCreator(previousTransition, previousStep, previousTransitionsToBacktrack);
   }
 
+  /**
+   * Finds the target of back_step_over in the step index. Behaves as the walk in
+   * {@link #getBackwardStepLine(InspectorState, PathStepIndex, int, int)}, but jumps over the steps in called methods.
+   *
+   * @param steps Steps of the current thread.
+   * @param position Position to step back from.
+   * @param currentInstruction The instruction at that position.
+   * @return The target step or -1 if there is none.
+   */
+  private static int findBackwardStepLine (PathStepIndex.ThreadSteps steps, int position,
+                                           Instruction currentInstruction) {
+    // Undo instructions on the current line
+    int step = steps.backtrack(position, 0);
+    while (step >= 0 && steps.isOnLineOf(step, currentInstruction)) {
+      step = steps.backtrack(step, 0);
+    }
+    if (step < 0) {
+      return -1; // We have reached the beginning of the thread or the method.
+    }
+
+    // We are on the previous line - stop after the first instruction on given line
+    int lineStep = step;
+    int previousStep = step;
+    while (step >= 0 && steps.isOnSameLine(step, lineStep)) {
+      previousStep = step;
+      step = steps.backtrack(step, 0);
+    }
+    return previousStep;
+  }
+
   /**
    * Returns a creator for back_step_in.
    *
@@ -260,9 +346,15 @@ public final class BackwardBreakpointCreator {
    * and then step forward until we reach the return instruction, just like in all the other back-stepping instructions.
    *
    * @param inspectorState The current Inspector state used to get the transition path.
+   * @param stepIndex Index of the steps of the path, or null to walk the path step by step. Must not be null if
+   *                  a count greater than 1 or undone steps are given.
+   * @param undoneSteps Number of the last steps of the current transition that were undone by the undo journal.
+   * @param count Number of backward steps to make at once.
    * @return Creator with all target information collected.
    */
-  public static BackwardBreakpointCreator getBackwardStepIn (InspectorState inspectorState) {
+  public static BackwardBreakpointCreator getBackwardStepIn (InspectorState inspectorState,
+                                                            PathStepIndex stepIndex,
+                                                            int undoneSteps, int count) {
     Path path = updateAndGetPath(inspectorState);
 
     Transition currentTransition = path.getLast();
@@ -270,6 +362,10 @@ public final class BackwardBreakpointCreator {
       return null;
     }
 
+    if (stepIndex != null) {
+      return getIndexedBackwardStep(inspectorState, path, stepIndex, CommandsInterface.StepType.ST_STEP_IN,
+                                    undoneSteps, count);
+    }
     Instruction currentInstruction = inspectorState.getVM().getInstruction();
     InstructionPosition currentLocation = InstructionPositionImpl.getInstructionPosition(currentInstruction);
 
@@ -278,6 +374,43 @@ public final class BackwardBreakpointCreator {
     return methodInstructionBacktracker.backtrackIn(currentLocation);
   }
 
+  /**
+   * Finds the target of back_step_in in the step index. Behaves as
+   * {@link MethodInstructionBacktracker#backtrackIn(InstructionPosition)}, but jumps over the steps in called methods
+   * on the current line.
+   *
+   * @param steps Steps of the current thread.
+   * @param position Position to step back from.
+   * @param currentInstruction The instruction at that position.
+   * @return The target step or -1 if there is none.
+   */
+  private static int findBackwardStepIn (PathStepIndex.ThreadSteps steps, int position,
+                                         Instruction currentInstruction) {
+    // We must first leave the current line.
+    int step = steps.backtrack(position, 0);
+    while (step >= 0 && steps.isOnLineOf(step, currentInstruction)) {
+      step = steps.backtrack(step, 0);
+    }
+    if (step < 0) {
+      return -1; // Beginning of thread.
+    }
+
+    // Now we're on the previous line, either in the same method or in the caller.
+    int lineStep = step;
+    int previousStep = step;
+    while (step >= 0 && steps.isOnSameLine(step, lineStep)) {
+      previousStep = step;
+      step = steps.previous(step);
+      if (step >= 0 && steps.isReturn(step)) {
+        return step;
+      }
+    }
+    if (step < 0) {
+      return -1;
+    }
+    return previousStep;
+  }
+
   /**
    * Returns a creator for back_step_out.
    *
@@ -286,10 +419,20 @@ public final class BackwardBreakpointCreator {
    *
    *
    * @param inspectorState The current Inspector state used to get the transition path.
+   * @param stepIndex Index of the steps of the path, or null to walk the path step by step. Must not be null if
+   *                  a count greater than 1 or undone steps are given.
+   * @param undoneSteps Number of the last steps of the current transition that were undone by the undo journal.
+   * @param count Number of backward steps to make at once.
    * @return Creator with all target information collected.
    */
-  public static BackwardBreakpointCreator getBackwardStepOut (InspectorState inspectorState) {
+  public static BackwardBreakpointCreator getBackwardStepOut (InspectorState inspectorState,
+                                                             PathStepIndex stepIndex,
+                                                             int undoneSteps, int count) {
     Path path = updateAndGetPath(inspectorState);
+    if (stepIndex != null) {
+      return getIndexedBackwardStep(inspectorState, path, stepIndex, CommandsInterface.StepType.ST_STEP_OUT,
+                                    undoneSteps, count);
+    }
 
     MethodInstructionBacktracker mib = new MethodInstructionBacktracker(path);
     Step callerStep = mib.getCallerOfCurrentMethod();
@@ -303,6 +446,99 @@ public final class BackwardBreakpointCreator {
     return new BackwardBreakpointCreator(currentTransition, callerStep, currentTransition2backstep);
   }
 
+  /**
+   * Finds the target of a number of consecutive backward steps in the step index. Each step starts where the previous
+   * one would stop, so the whole sequence is resolved into a single target and a single backtrack.
+   *
+   * @param type One of the instruction, line, step-in and step-out step types.
+   * @return Creator for the target of the last step, or null if one of the steps has no target.
+   */
+  private static BackwardBreakpointCreator getIndexedBackwardStep (InspectorState inspectorState, Path path,
+                                                                   PathStepIndex stepIndex,
+                                                                   CommandsInterface.StepType type,
+                                                                   int undoneSteps, int count) {
+    assert count >= 1;
+    stepIndex.synchronize(path);
+    PathStepIndex.ThreadSteps steps = stepIndex.getThreadSteps(path.getLast().getThreadIndex());
+
+    // Undone instructions are still recorded as steps but the thread stands before them
+    int target = steps.size() - undoneSteps;
+    assert target >= 0;
+    Instruction instruction = inspectorState.getVM().getInstruction();
+    for (int i = 0; i < count; i++) {
+      switch (type) {
+        case ST_INSTRUCTION:
+          target = steps.previous(target);
+          break;
+        case ST_LINE:
+          target = findBackwardStepLine(steps, target, instruction);
+          break;
+        case ST_STEP_IN:
+          target = findBackwardStepIn(steps, target, instruction);
+          break;
+        case ST_STEP_OUT:
+          target = steps.backtrack(target, 1);
+          break;
+        default:
+          throw new RuntimeException("Unsupported " + type.getClass().getSimpleName() + " entry " + type);
+      }
+      if (target < 0) {
+        return null;
+      }
+      instruction = steps.getInstruction(target);
+    }
+    return atIndexedStep(stepIndex, steps, target, path);
+  }
+
+  /**
+   * Returns a creator for back_breakpoint_hit from the breakpoint hits recorded in the path trace.
+   *
+   * Unlike {@link #getBackBreakpointHit(BreakpointHitLocation, InspectorState)}, this goes back to the last hit before
+   * the current position, which may be an earlier hit on the path than the last one, e.g. when the last hit was
+   * already backtracked through or is where JPF is stopped now.
+   *
+   * @param pathTrace The record of the current path.
+   * @param inspState The Inspector state.
+   * @param undoneSteps Number of the last steps of the current transition that were undone by the undo journal.
+   * @return The creator, or null if there is no hit before the current position in the recorded part of the path.
+   */
+  public static BackwardBreakpointCreator getBackBreakpointHit(PathTraceFile pathTrace, InspectorState inspState,
+                                                               int undoneSteps)
+          throws JPFInspectorGenericErrorException {
+    Path path = updateAndGetPath(inspState);
+    if (path.size() == 0) {
+      return null;
+    }
+    int currentTransition = path.size() - 1;
+    int currentStep = path.get(currentTransition).getStepCount() - undoneSteps;
+    int beforeTransition = currentTransition;
+    int beforeStep = currentStep;
+    try {
+      while (true) {
+        PathTraceFile.BreakpointHit hit = pathTrace.findLastBreakpointHit(beforeTransition, beforeStep);
+        if (hit == null) {
+          return null;
+        }
+        int transitionIndex = hit.getTransitionIndex();
+        int stepIndex = hit.getStepIndex();
+        if (stepIndex >= path.get(transitionIndex).getStepCount()) {
+          // The hit ended the transition, execution broke before the first instruction of the next one
+          transitionIndex++;
+          stepIndex = 0;
+        }
+        if (transitionIndex < currentTransition || (transitionIndex == currentTransition && stepIndex < currentStep)) {
+          Transition transition = path.get(transitionIndex);
+          return new BackwardBreakpointCreator(transition, stepIndex, transition.getStep(stepIndex).getInstruction(),
+                                               path.size() - transitionIndex);
+        }
+        beforeTransition = hit.getTransitionIndex();
+        beforeStep = hit.getStepIndex();
+      }
+    } catch (IOException e) {
+      throw new JPFInspectorGenericErrorException("The path trace file '" + pathTrace.getFileName() +
+                                                          "' could not be read (" + e.getMessage() + ").");
+    }
+  }
 
   /**
    * Returns a creator for back_breakpoint_hit.
@@ -407,48 +643,106 @@ public final class BackwardBreakpointCreator {
   /**
    * Creates a creator for the back_field_access backstepping command.
    *
-   * Undoes all instructions until it reaches the GETFIELD, PUTFIELD, GETSTATIC or PUTSTATIC instruction inside which a choice generator was triggered. Then execution breaks at the instruction that immediately follows the field instruction, using the same choice as before.
+   * Undoes all instructions until it reaches the last PUTFIELD or PUTSTATIC instruction that wrote the field. Execution
+   * breaks just before that instruction, using the same choices as before.
+   *
+   * The write is looked up in the field write history. The parts of the path that the history does not cover, or the
+   * whole path if the history is disabled, are searched step by step. The object of a write is only known from the
+   * history.
    *
    * @param fieldName Only instructions associated with this field are eligible for the backwards breakpoint.
+   * @param objectRef Only writes to the field of this object are eligible, or {@link CommandsInterface#ANY_OBJECT}.
    * @param inspectorState The current Inspector state.
+   * @param fieldWrites History of the field writes, or null if it is disabled.
+   * @param undoneSteps Number of the last steps of the current transition that were undone by the undo journal.
    */
-  public static BackwardBreakpointCreator getBackwardFieldAccess(FieldName fieldName,
-                                                                 InspectorState inspectorState)
+  public static BackwardBreakpointCreator getBackwardFieldAccess(FieldName fieldName, int objectRef,
+                                                                 InspectorState inspectorState,
+                                                                 FieldWriteIndex fieldWrites, int undoneSteps)
           throws JPFInspectorGenericErrorException {
     Path path = updateAndGetPath(inspectorState);
-    Transition targetTransition = null;
-    int descendHowManyTransitions = 0;
-    for (int i = path.size() - 1; i >= 0; i--) {
-      Transition possibleTargetTransition = path.get(i);
+    if (path.size() == 0) {
+      throw new JPFInspectorGenericErrorException("No field matching the argument is written in the transition path.");
+    }
+    int currentTransition = path.size() - 1;
+    int endTransition = currentTransition;
+    int endStep = path.get(currentTransition).getStepCount() - undoneSteps;
+
+    if (fieldWrites == null) {
+      if (objectRef != CommandsInterface.ANY_OBJECT) {
+        throw new JPFInspectorGenericErrorException(
+                "No write to the field of object " + objectRef + " was recorded, and the objects of other writes are not known.");
+      }
+      BackwardBreakpointCreator bbc = findFieldWrite(path, fieldName, 0, 0, endTransition, endStep);
+      if (bbc != null) {
+        return bbc;
+      }
+      throw new JPFInspectorGenericErrorException("No field matching the argument is written in the transition path.");
+    }
 
-      if (possibleTargetTransition.getStepCount() <= 0) {
-        // This usually means that it's the CURRENT transition, i.e. we are just before the bottom half of the instruction
-        // that caused this transition. In that case, we backtrack.
-        continue;
+    while (true) {
+      FieldWriteIndex.Write write = fieldWrites.findLastWrite(fieldName, objectRef, endTransition, endStep);
+      FieldWriteIndex.Gap gap = fieldWrites.findLastGap(endTransition, endStep);
+      if (write != null && (gap == null || gap.isBefore(write))) {
+        Transition transition = path.get(write.getTransitionIndex());
+        return new BackwardBreakpointCreator(transition,
+                                             write.getStepIndex(),
+                                             transition.getStep(write.getStepIndex()).getInstruction(),
+                                             path.size() - write.getTransitionIndex());
       }
-      Instruction firstInstruction = possibleTargetTransition.getStep(0).getInstruction();
-      if (firstInstruction instanceof FieldInstruction) {
-        FieldInfo fieldInfo = ((FieldInstruction)firstInstruction).getFieldInfo();
-        if (fieldName.isSameField(fieldInfo)) {
-          // Bingo!
-          targetTransition = possibleTargetTransition;
-          descendHowManyTransitions = path.size() - i;
-          break;
-        } else {
-          // It's a different field.
-        }
-      } else {
-        // We are only interested in field instructions.
+      if (gap == null) {
+        throw new JPFInspectorGenericErrorException("No field matching the argument is written in the transition path.");
+      }
+      if (objectRef != CommandsInterface.ANY_OBJECT) {
+        throw new JPFInspectorGenericErrorException(
+                "No write to the field of object " + objectRef + " was recorded, and the objects of other writes are not known.");
+      }
+      // The writes in the uncovered range are not recorded, the earlier ones are
+      BackwardBreakpointCreator bbc = findFieldWrite(path, fieldName, gap.getStartTransition(), gap.getStartStep(),
+                                                     gap.getEndTransition(), gap.getEndStep());
+      if (bbc != null) {
+        return bbc;
       }
+      endTransition = gap.getStartTransition();
+      endStep = gap.getStartStep();
     }
-    if (targetTransition == null) {
-      throw new JPFInspectorGenericErrorException(
-              "No field matching the argument is accessed in the transition path.");
+  }
+
+  /**
+   * Searches the steps of the path backwards for the last write of the field.
+   *
+   * @param fieldName Only instructions associated with this field are eligible for the backwards breakpoint.
+   * @param startTransition Index of the transition of the first searched step.
+   * @param startStep Index of the first searched step in its transition.
+   * @param endTransition Index of the transition of the step just after the searched ones.
+   * @param endStep Index of the step just after the searched ones in its transition.
+   * @return The creator for the last write, or null if there is no such write in the searched steps.
+   */
+  private static BackwardBreakpointCreator findFieldWrite(Path path, FieldName fieldName,
+                                                          int startTransition, int startStep,
+                                                          int endTransition, int endStep) {
+    int currentTransition = path.size() - 1;
+    for (int i = Math.min(endTransition, currentTransition); i >= startTransition; i--) {
+      Transition possibleTargetTransition = path.get(i);
+      int stepCount = possibleTargetTransition.getStepCount();
+      int lastStep = i == endTransition ? Math.min(endStep, stepCount) - 1 : stepCount - 1;
+      if (i != currentTransition && lastStep == stepCount - 1) {
+        // The last step of a completed transition is the top half of the instruction that ended it, the field is
+        // written by its bottom half in the next transition.
+        lastStep--;
+      }
+      int firstStep = i == startTransition ? startStep : 0;
+      for (int j = lastStep; j >= firstStep; j--) {
+        Instruction instruction = possibleTargetTransition.getStep(j).getInstruction();
+        if (instruction instanceof PUTFIELD || instruction instanceof PUTSTATIC) {
+          FieldInfo fieldInfo = ((FieldInstruction) instruction).getFieldInfo();
+          if (fieldInfo != null && fieldName.isSameField(fieldInfo)) {
+            // Bingo!
+            return new BackwardBreakpointCreator(possibleTargetTransition, j, instruction, path.size() - i);
+          }
+        }
+      }
     }
-    assert targetTransition.getStepCount() > 0;
-    BackwardBreakpointCreator bbc = new BackwardBreakpointCreator(targetTransition,
-                                                                  targetTransition.getStep(0),
-                                                                  descendHowManyTransitions);
-    return bbc;
+    return null;
   }
 }
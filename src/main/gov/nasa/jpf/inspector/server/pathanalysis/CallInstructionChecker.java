@@ -35,7 +35,7 @@ public class CallInstructionChecker extends JVMInstructionVisitorAdapter {
     return isCallInstruction(step.getInstruction());
   }
 
-  private boolean isCallInstruction(Instruction inst) {
+  boolean isCallInstruction(Instruction inst) {
     assert(inst != null);
     isCallInstr = false;
     assert(inst instanceof JVMInstruction);
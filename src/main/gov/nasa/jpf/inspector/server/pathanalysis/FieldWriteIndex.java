@@ -0,0 +1,521 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.pathanalysis;
+
+import gov.nasa.jpf.inspector.interfaces.CommandsInterface;
+import gov.nasa.jpf.inspector.utils.expressions.FieldName;
+import gov.nasa.jpf.jvm.bytecode.PUTFIELD;
+import gov.nasa.jpf.jvm.bytecode.PUTSTATIC;
+import gov.nasa.jpf.vm.ElementInfo;
+import gov.nasa.jpf.vm.FieldInfo;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.Path;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.Transition;
+import gov.nasa.jpf.vm.VM;
+import gov.nasa.jpf.vm.bytecode.FieldInstruction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * History of the field writes on the current transition path, kept per field, so that `back_field_access` finds the
+ * last write of a field anywhere in the path without walking it.
+ *
+ * A write is recorded when a PUTFIELD or PUTSTATIC instruction completes, i.e. when execution continues with the
+ * instruction that follows it. The top half of an instruction that ends a transition is thus not recorded, only its
+ * bottom half at the start of the next transition. Each write is identified by its position in the path (index of the
+ * transition and of the step in the transition) and by the object whose field was written.
+ *
+ * No writes are recorded while instruction events are not observed (in free run). The parts of the path executed in
+ * free run are kept as uncovered ranges, see {@link #findLastGap(int, int)}, and must be searched in another way. The
+ * writes recorded before and after such a range remain valid.
+ *
+ * Note: Updated by the JPF thread, queried by the thread executing commands while JPF is stopped.
+ */
+public final class FieldWriteIndex {
+
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int INITIAL_OBJECT_CAPACITY = 4;
+
+  /**
+   * A recorded write.
+   */
+  public static final class Write {
+    private final long position;
+    private final int transitionIndex;
+    private final int stepIndex;
+    private final int objectRef;
+
+    private Write(long position, int objectRef) {
+      this.position = position;
+      this.transitionIndex = FieldWriteIndex.getTransitionIndex(position);
+      this.stepIndex = FieldWriteIndex.getStepIndex(position);
+      this.objectRef = objectRef;
+    }
+
+    /**
+     * @return Gets the index of the transition of the write in the path.
+     */
+    public int getTransitionIndex() {
+      return transitionIndex;
+    }
+
+    /**
+     * @return Gets the index of the step of the write in its transition.
+     */
+    public int getStepIndex() {
+      return stepIndex;
+    }
+
+    /**
+     * @return Gets the reference of the object whose field was written (the class object for static fields).
+     */
+    public int getObjectRef() {
+      return objectRef;
+    }
+  }
+
+  /**
+   * A part of the path in which writes may be missing.
+   */
+  public static final class Gap {
+    private final long start;
+    private final long end;
+
+    private Gap(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    /**
+     * @return Gets the index of the transition of the first position of the range.
+     */
+    public int getStartTransition() {
+      return FieldWriteIndex.getTransitionIndex(start);
+    }
+
+    /**
+     * @return Gets the index of the step of the first position of the range in its transition.
+     */
+    public int getStartStep() {
+      return FieldWriteIndex.getStepIndex(start);
+    }
+
+    /**
+     * @return Gets the index of the transition of the position just after the range.
+     */
+    public int getEndTransition() {
+      return FieldWriteIndex.getTransitionIndex(end);
+    }
+
+    /**
+     * @return Gets the index of the step of the position just after the range in its transition.
+     */
+    public int getEndStep() {
+      return FieldWriteIndex.getStepIndex(end);
+    }
+
+    /**
+     * @return Gets true if the write was recorded after this range, i.e. no write in the range can be later.
+     */
+    public boolean isBefore(Write write) {
+      return write.position >= end;
+    }
+  }
+
+  /**
+   * Positions of the writes of a single field of a single object, in ascending order.
+   */
+  private static final class ObjectWrites {
+    private int size = 0;
+    private long[] positions = new long[INITIAL_OBJECT_CAPACITY];
+
+    private void add(long position) {
+      if (size == positions.length) {
+        positions = Arrays.copyOf(positions, size * 2);
+      }
+      positions[size] = position;
+      size++;
+    }
+
+    /**
+     * Discards the writes at positions from the given range.
+     */
+    private void remove(long from, long to) {
+      int first = lowerBound(positions, size, from);
+      int last = lowerBound(positions, size, to);
+      System.arraycopy(positions, last, positions, first, size - last);
+      size -= last - first;
+    }
+  }
+
+  /**
+   * Writes of a single field in the order of their positions, with the positions of the writes of each object kept
+   * apart as well, so that the last write to a given object is found by a binary search too.
+   */
+  private static final class FieldWrites {
+    private int size = 0;
+    private long[] positions = new long[INITIAL_CAPACITY];
+    private int[] objectRefs = new int[INITIAL_CAPACITY];
+    private final Map<Integer, ObjectWrites> objects = new HashMap<>();
+
+    private void add(long position, int objectRef) {
+      // Writes at the same or later positions were undone and are being executed again
+      truncate(position);
+      if (size == positions.length) {
+        positions = Arrays.copyOf(positions, size * 2);
+        objectRefs = Arrays.copyOf(objectRefs, size * 2);
+      }
+      positions[size] = position;
+      objectRefs[size] = objectRef;
+      size++;
+
+      ObjectWrites objectWrites = objects.get(objectRef);
+      if (objectWrites == null) {
+        objectWrites = new ObjectWrites();
+        objects.put(objectRef, objectWrites);
+      }
+      objectWrites.add(position);
+    }
+
+    /**
+     * Discards the writes at the given position or later.
+     */
+    private void truncate(long position) {
+      int first = lowerBound(positions, size, position);
+      removeFromObjects(first, size, position, Long.MAX_VALUE);
+      size = first;
+    }
+
+    /**
+     * Discards the writes at positions from the given range.
+     */
+    private void remove(long from, long to) {
+      int first = lowerBound(positions, size, from);
+      int last = lowerBound(positions, size, to);
+      if (first == last) {
+        return;
+      }
+      removeFromObjects(first, last, from, to);
+      System.arraycopy(positions, last, positions, first, size - last);
+      System.arraycopy(objectRefs, last, objectRefs, first, size - last);
+      size -= last - first;
+    }
+
+    /**
+     * Discards the positions from the given range of the objects of the writes from first (inclusive) to last
+     * (exclusive). Each write is discarded once, so the cost is amortized by the recording of the writes.
+     */
+    private void removeFromObjects(int first, int last, long from, long to) {
+      for (int i = first; i < last; i++) {
+        ObjectWrites objectWrites = objects.get(objectRefs[i]);
+        if (objectWrites == null) {
+          continue; // Already discarded by an earlier write to the same object
+        }
+        objectWrites.remove(from, to);
+        if (objectWrites.size == 0) {
+          objects.remove(objectRefs[i]);
+        }
+      }
+    }
+
+    /**
+     * Finds the last write before the given position.
+     *
+     * @param objectRef Only writes to the fields of this object are considered, or {@link CommandsInterface#ANY_OBJECT}.
+     */
+    private Write findLast(long before, int objectRef) {
+      if (objectRef == CommandsInterface.ANY_OBJECT) {
+        int index = lowerBound(positions, size, before) - 1;
+        return index < 0 ? null : new Write(positions[index], objectRefs[index]);
+      }
+      ObjectWrites objectWrites = objects.get(objectRef);
+      if (objectWrites == null) {
+        return null;
+      }
+      int index = lowerBound(objectWrites.positions, objectWrites.size, before) - 1;
+      return index < 0 ? null : new Write(objectWrites.positions[index], objectRef);
+    }
+  }
+
+  private final Map<FieldInfo, FieldWrites> writes = new HashMap<>();
+  /**
+   * The written fields by their names, so that a field given by name is resolved without testing every written field.
+   */
+  private final Map<String, List<FieldInfo>> fieldsByName = new HashMap<>();
+
+  // Closed uncovered ranges in the order of their positions, each from the start (inclusive) to the end (exclusive).
+  private int gapCount = 0;
+  private long[] gapStarts = new long[INITIAL_CAPACITY];
+  private long[] gapEnds = new long[INITIAL_CAPACITY];
+  /**
+   * Start of the uncovered range that is still open, because no write was recorded since instruction events were
+   * missed, or -1 if all instructions are observed.
+   */
+  private long missedFrom = -1;
+
+  // The write that is being executed, recorded once the instruction completes.
+  private Instruction pendingInstruction = null;
+  private FieldInfo pendingField;
+  private int pendingObjectRef;
+  private int pendingThreadId;
+
+  /**
+   * Remembers the field and the object the instruction is about to write.
+   *
+   * Note: Executed by the JPF thread, before the instruction is executed.
+   */
+  public void executeInstruction(ThreadInfo ti, Instruction instruction) {
+    pendingInstruction = null;
+    if (!(instruction instanceof PUTFIELD) && !(instruction instanceof PUTSTATIC)) {
+      return;
+    }
+    FieldInfo fi = ((FieldInstruction) instruction).getFieldInfo();
+    ElementInfo owner = fi == null ? null : ((FieldInstruction) instruction).peekElementInfo(ti);
+    if (owner == null) {
+      return; // Either a null object reference or a class that is not initialized yet
+    }
+    pendingInstruction = instruction;
+    pendingField = fi;
+    pendingObjectRef = owner.getObjectRef();
+    pendingThreadId = ti.getId();
+  }
+
+  /**
+   * Records the write if the instruction completed.
+   *
+   * Note: Executed by the JPF thread, after the instruction is executed.
+   *
+   * @param undoneSteps Number of the last steps of the current transition that were undone and not yet executed again.
+   */
+  public void instructionExecuted(VM vm, ThreadInfo ti, Instruction executedInstruction, Instruction nextInstruction,
+                                  int undoneSteps) {
+    if (pendingInstruction != executedInstruction || pendingThreadId != ti.getId()) {
+      pendingInstruction = null;
+      return;
+    }
+    pendingInstruction = null;
+    if (nextInstruction != executedInstruction.getNext()) {
+      // The instruction ended the transition, threw an exception or initializes a class first.
+      return;
+    }
+
+    Transition current = vm.getCurrentTransition();
+    if (current == null || current.getStepCount() == 0) {
+      return;
+    }
+    Path path = vm.getPath();
+    int transitionIndex = path.getLast() == current ? path.size() - 1 : path.size();
+    // The step of the instruction is already recorded, or it is one of the undone steps that is executed again
+    int stepIndex = current.getStepCount() - 1 - undoneSteps;
+    if (stepIndex < 0) {
+      return;
+    }
+    recordWrite(pendingField, pendingObjectRef, transitionIndex, stepIndex);
+  }
+
+  /**
+   * Records a completed write of the field at the given position. Writes at the same or later positions are discarded.
+   */
+  void recordWrite(FieldInfo fi, int objectRef, int transitionIndex, int stepIndex) {
+    long position = getPosition(transitionIndex, stepIndex);
+    if (missedFrom >= 0) {
+      // The writes executed since the events were missed are not known, the range is closed by this write
+      if (missedFrom < position) {
+        for (FieldWrites fieldWrites : writes.values()) {
+          fieldWrites.remove(missedFrom, position);
+        }
+        addGap(missedFrom, position);
+      }
+      missedFrom = -1;
+    }
+
+    FieldWrites fieldWrites = writes.get(fi);
+    if (fieldWrites == null) {
+      fieldWrites = new FieldWrites();
+      writes.put(fi, fieldWrites);
+      List<FieldInfo> sameName = fieldsByName.get(fi.getName());
+      if (sameName == null) {
+        sameName = new ArrayList<>(1);
+        fieldsByName.put(fi.getName(), sameName);
+      }
+      sameName.add(fi);
+    }
+    fieldWrites.add(position, objectRef);
+  }
+
+  /**
+   * Notifies the index that instructions are executed without being observed. Called at transition boundaries.
+   *
+   * @param pathSize Number of transitions on the path, the next transition is the first one that is not observed.
+   */
+  public void instructionEventsMissed(int pathSize) {
+    long position = getPosition(pathSize, 0);
+    if (missedFrom < 0 || missedFrom > position) {
+      missedFrom = position;
+    }
+    pendingInstruction = null;
+  }
+
+  /**
+   * Discards the writes of transitions that are no longer on the path. Called when the search backtracks.
+   *
+   * @param pathSize Number of transitions that remain on the path.
+   */
+  public void truncate(int pathSize) {
+    long position = getPosition(pathSize, 0);
+    for (FieldWrites fieldWrites : writes.values()) {
+      fieldWrites.truncate(position);
+    }
+    // The transitions that replace the discarded ones are recorded from their start
+    while (gapCount > 0 && gapStarts[gapCount - 1] >= position) {
+      gapCount--;
+    }
+    if (gapCount > 0 && gapEnds[gapCount - 1] > position) {
+      gapEnds[gapCount - 1] = position;
+    }
+    if (missedFrom > position) {
+      missedFrom = position;
+    }
+    pendingInstruction = null;
+  }
+
+  /**
+   * Discards all writes. Called when the path is replaced by another one.
+   *
+   * @param pathSize Number of transitions on the new path, which are not covered by the history.
+   */
+  public void clear(int pathSize) {
+    writes.clear();
+    fieldsByName.clear();
+    gapCount = 0;
+    if (missedFrom >= 0) {
+      missedFrom = 0;
+    } else {
+      addGap(0, getPosition(pathSize, 0));
+    }
+    pendingInstruction = null;
+  }
+
+  private void addGap(long start, long end) {
+    if (start >= end) {
+      return;
+    }
+    if (gapCount > 0 && gapEnds[gapCount - 1] >= start) {
+      gapEnds[gapCount - 1] = Math.max(gapEnds[gapCount - 1], end);
+      return;
+    }
+    if (gapCount == gapStarts.length) {
+      gapStarts = Arrays.copyOf(gapStarts, gapCount * 2);
+      gapEnds = Arrays.copyOf(gapEnds, gapCount * 2);
+    }
+    gapStarts[gapCount] = start;
+    gapEnds[gapCount] = end;
+    gapCount++;
+  }
+
+  /**
+   * Finds the last write of a field before the given position.
+   *
+   * @param fieldName The written field.
+   * @param objectRef Only writes to the fields of this object are considered, or {@link CommandsInterface#ANY_OBJECT}.
+   * @param transitionIndex Index of the transition of the position.
+   * @param stepIndex Index of the step of the position in its transition.
+   * @return The last recorded write, or null if there is no such write. Writes in the uncovered ranges are not known, see
+   * {@link #findLastGap(int, int)}.
+   */
+  public Write findLastWrite(FieldName fieldName, int objectRef, int transitionIndex, int stepIndex) {
+    List<FieldInfo> sameName = fieldsByName.get(fieldName.getFieldName());
+    if (sameName == null) {
+      return null;
+    }
+    Write last = null;
+    // Usually a single field, more only if the class name contains a wildcard or fields are hidden in subclasses
+    for (FieldInfo fi : sameName) {
+      if (!fieldName.isSameField(fi)) {
+        continue;
+      }
+      Write write = findLastResolvedWrite(fi, objectRef, transitionIndex, stepIndex);
+      if (write != null && (last == null || write.position > last.position)) {
+        last = write;
+      }
+    }
+    return last;
+  }
+
+  /**
+   * Finds the last write of a field already resolved to its {@link FieldInfo} before the given position.
+   *
+   * @param fi The written field.
+   * @param objectRef Only writes to the field of this object are considered, or {@link CommandsInterface#ANY_OBJECT}.
+   * @param transitionIndex Index of the transition of the position.
+   * @param stepIndex Index of the step of the position in its transition.
+   * @return The last recorded write, or null if there is no such write. Writes in the uncovered ranges are not known, see
+   * {@link #findLastGap(int, int)}.
+   */
+  public Write findLastResolvedWrite(FieldInfo fi, int objectRef, int transitionIndex, int stepIndex) {
+    FieldWrites fieldWrites = writes.get(fi);
+    if (fieldWrites == null) {
+      return null;
+    }
+    return fieldWrites.findLast(getPosition(transitionIndex, stepIndex), objectRef);
+  }
+
+  /**
+   * Finds the last part of the path before the given position in which writes may be missing.
+   *
+   * @param transitionIndex Index of the transition of the position.
+   * @param stepIndex Index of the step of the position in its transition.
+   * @return The last uncovered range that starts before the position, cut off at the position, or null if all writes
+   * before the position are recorded.
+   */
+  public Gap findLastGap(int transitionIndex, int stepIndex) {
+    long before = getPosition(transitionIndex, stepIndex);
+    if (missedFrom >= 0 && missedFrom < before) {
+      return new Gap(missedFrom, before);
+    }
+    int index = lowerBound(gapStarts, gapCount, before) - 1;
+    if (index < 0) {
+      return null;
+    }
+    return new Gap(gapStarts[index], Math.min(gapEnds[index], before));
+  }
+
+  /**
+   * @return Index of the first of the sorted positions that is equal to the given position or later.
+   */
+  private static int lowerBound(long[] positions, int size, long position) {
+    int index = Arrays.binarySearch(positions, 0, size, position);
+    return index < 0 ? -index - 1 : index;
+  }
+
+  private static long getPosition(int transitionIndex, int stepIndex) {
+    return ((long) transitionIndex << 32) | stepIndex;
+  }
+
+  private static int getTransitionIndex(long position) {
+    return (int) (position >>> 32);
+  }
+
+  private static int getStepIndex(long position) {
+    return (int) position;
+  }
+}
@@ -0,0 +1,458 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.pathanalysis;
+
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.Path;
+import gov.nasa.jpf.vm.Step;
+import gov.nasa.jpf.vm.Transition;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Index of the steps of the current transition path, kept per thread, so that the targets of `back_step_over`,
+ * `back_step_in` and `back_step_out` are found without walking the path step by step.
+ *
+ * For each thread, the index holds the steps executed by the thread in a compact form: the index of the transition in
+ * the path, the index of the step in the transition, the call level (number of calls minus number of returns executed
+ * by the thread before the step) and the source line. Each step also points to the closest previous step with a lower
+ * call level, so the step that leaves a method or the previous step in the same method is found in a few jumps.
+ *
+ * The index sees the same steps as {@link StepThreadBacktracker}: the last step of a transition that is executed again
+ * as the first step of the thread's next transition (top and bottom half of the same instruction) is hidden. Calls,
+ * returns and throws are recognized by the same checkers that {@link MethodInstructionBacktracker} uses.
+ *
+ * The index is brought up to date with {@link #synchronize(Path)}, which only indexes the steps added since the last
+ * call, and truncated with {@link #truncate(int)} when the search backtracks.
+ *
+ * Note: Accessed by the JPF thread and, while JPF is stopped, by the thread executing commands.
+ */
+public final class PathStepIndex {
+
+  private static final byte KIND_CALL = 1;
+  private static final byte KIND_RETURN = 2;
+  private static final byte KIND_THROW = 4;
+  private static final byte KIND_HIDDEN = 8;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final CallInstructionChecker callChecker = new CallInstructionChecker();
+  private final ReturnInstructionChecker returnChecker = new ReturnInstructionChecker();
+  private final ThrowInstructionChecker throwChecker = new ThrowInstructionChecker();
+
+  /**
+   * Identifiers of source file names, so that source lines are compared as two integers.
+   */
+  private final Map<String, Integer> fileIds = new HashMap<>();
+
+  // Indexed transitions, the first transitionCount elements are valid.
+  private int transitionCount = 0;
+  private Transition[] transitions = new Transition[INITIAL_CAPACITY];
+  /**
+   * Number of steps of the transition that are indexed. Only the last transition may get more steps.
+   */
+  private int[] indexedSteps = new int[INITIAL_CAPACITY];
+  /**
+   * The last indexed step of the transition, indexing continues with its successor.
+   */
+  private Step[] lastIndexedSteps = new Step[INITIAL_CAPACITY];
+  // State of the transition's thread before the first step of the transition was indexed, used to truncate.
+  private int[] entriesBefore = new int[INITIAL_CAPACITY];
+  private int[] levelBefore = new int[INITIAL_CAPACITY];
+  private int[] throwsBefore = new int[INITIAL_CAPACITY];
+  /**
+   * Entry of the transition's thread that was hidden by the first step of the transition, or -1.
+   */
+  private int[] hiddenEntries = new int[INITIAL_CAPACITY];
+
+  /**
+   * Steps of the individual threads, indexed by thread index.
+   */
+  private ThreadSteps[] threads = new ThreadSteps[0];
+
+  /**
+   * Indexes the steps and transitions of the path that are not indexed yet and drops the indexed transitions that are
+   * no longer in the path.
+   *
+   * @param path The current transition path, possibly including the current transition.
+   */
+  public void synchronize(Path path) {
+    assert path != null;
+    int pathSize = path.size();
+
+    // Walk from the end of the path to the newest transition that is already indexed
+    Transition[] newTransitions = new Transition[0];
+    int newCount = 0;
+    int commonCount = pathSize;
+    Iterator<Transition> iterator = path.descendingIterator();
+    while (iterator.hasNext()) {
+      Transition transition = iterator.next();
+      if (commonCount <= transitionCount && transitions[commonCount - 1] == transition) {
+        break;
+      }
+      if (newCount == newTransitions.length) {
+        newTransitions = Arrays.copyOf(newTransitions, Math.max(newCount * 2, 4));
+      }
+      newTransitions[newCount++] = transition;
+      commonCount--;
+    }
+
+    truncate(commonCount);
+    if (transitionCount > 0) {
+      indexNewSteps(transitionCount - 1);
+    }
+    for (int i = newCount - 1; i >= 0; i--) {
+      addTransition(newTransitions[i]);
+      indexNewSteps(transitionCount - 1);
+    }
+  }
+
+  /**
+   * Drops the transitions that are at the given position in the path or later. Called when the search backtracks.
+   *
+   * @param pathSize Number of transitions that remain in the path.
+   */
+  public void truncate(int pathSize) {
+    while (transitionCount > pathSize) {
+      transitionCount--;
+      int t = transitionCount;
+      if (indexedSteps[t] > 0) {
+        ThreadSteps steps = threads[transitions[t].getThreadIndex()];
+        steps.size = entriesBefore[t];
+        steps.level = levelBefore[t];
+        steps.throwCount = throwsBefore[t];
+        if (hiddenEntries[t] >= 0) {
+          steps.kinds[hiddenEntries[t]] &= ~KIND_HIDDEN;
+        }
+      }
+      transitions[t] = null;
+      lastIndexedSteps[t] = null;
+    }
+  }
+
+  /**
+   * Drops all transitions. Called when the path is replaced by another one.
+   */
+  public void clear() {
+    truncate(0);
+  }
+
+  /**
+   * Gets the steps of a thread.
+   *
+   * @param threadIndex Index of the thread.
+   * @return The steps. If the thread has not executed any step yet, the returned object has no steps.
+   */
+  public ThreadSteps getThreadSteps(int threadIndex) {
+    ensureThread(threadIndex);
+    return threads[threadIndex];
+  }
+
+  /**
+   * Gets the indexed transition at the given position in the path.
+   */
+  public Transition getTransition(int transitionIndex) {
+    assert transitionIndex < transitionCount;
+    return transitions[transitionIndex];
+  }
+
+  public int getTransitionCount() {
+    return transitionCount;
+  }
+
+  private void addTransition(Transition transition) {
+    if (transitionCount == transitions.length) {
+      int capacity = transitionCount * 2;
+      transitions = Arrays.copyOf(transitions, capacity);
+      indexedSteps = Arrays.copyOf(indexedSteps, capacity);
+      lastIndexedSteps = Arrays.copyOf(lastIndexedSteps, capacity);
+      entriesBefore = Arrays.copyOf(entriesBefore, capacity);
+      levelBefore = Arrays.copyOf(levelBefore, capacity);
+      throwsBefore = Arrays.copyOf(throwsBefore, capacity);
+      hiddenEntries = Arrays.copyOf(hiddenEntries, capacity);
+    }
+    int t = transitionCount++;
+    transitions[t] = transition;
+    indexedSteps[t] = 0;
+    lastIndexedSteps[t] = null;
+    hiddenEntries[t] = -1;
+    ensureThread(transition.getThreadIndex());
+  }
+
+  private void ensureThread(int threadIndex) {
+    if (threadIndex >= threads.length) {
+      int oldLength = threads.length;
+      threads = Arrays.copyOf(threads, threadIndex + 1);
+      for (int i = oldLength; i < threads.length; i++) {
+        threads[i] = new ThreadSteps();
+      }
+    }
+  }
+
+  /**
+   * Indexes the steps of the transition that were added since the transition was last indexed.
+   */
+  private void indexNewSteps(int t) {
+    Transition transition = transitions[t];
+    if (transition.getStepCount() <= indexedSteps[t]) {
+      return;
+    }
+    ThreadSteps steps = threads[transition.getThreadIndex()];
+    Step step = lastIndexedSteps[t] == null ? transition.getStep(0) : lastIndexedSteps[t].getNext();
+    while (step != null) {
+      Instruction instruction = step.getInstruction();
+      if (indexedSteps[t] == 0) {
+        entriesBefore[t] = steps.size;
+        levelBefore[t] = steps.level;
+        throwsBefore[t] = steps.throwCount;
+        // The thread's previous step may be the top half of this instruction
+        int previous = steps.size - 1;
+        if (previous >= 0 && steps.instructions[previous].equals(instruction)) {
+          steps.hide(previous);
+          hiddenEntries[t] = previous;
+        }
+      }
+      steps.add(t, indexedSteps[t], instruction, kindOf(instruction), fileIdOf(instruction));
+      indexedSteps[t]++;
+      lastIndexedSteps[t] = step;
+      step = step.getNext();
+    }
+  }
+
+  private byte kindOf(Instruction instruction) {
+    if (returnChecker.isReturnInstruction(instruction)) {
+      return KIND_RETURN;
+    } else if (throwChecker.isThrowInstruction(instruction)) {
+      return KIND_THROW;
+    } else if (callChecker.isCallInstruction(instruction)) {
+      return KIND_CALL;
+    }
+    return 0;
+  }
+
+  private int fileIdOf(Instruction instruction) {
+    MethodInfo methodInfo = instruction.getMethodInfo();
+    String fileName = methodInfo == null ? null : methodInfo.getSourceFileName();
+    if (fileName == null) {
+      return -1;
+    }
+    Integer id = fileIds.get(fileName);
+    if (id == null) {
+      id = fileIds.size();
+      fileIds.put(fileName, id);
+    }
+    return id;
+  }
+
+  /**
+   * Steps executed by a single thread, in the order of execution.
+   *
+   * Positions passed to and returned from the methods of this class are indexes of the steps. The position equal to
+   * {@link #size()} stands for the current position of the thread, just after its last step.
+   */
+  public static final class ThreadSteps {
+    private int size = 0;
+    /**
+     * Call level after the last visible step.
+     */
+    private int level = 0;
+    /**
+     * Number of visible throw steps.
+     */
+    private int throwCount = 0;
+
+    private int[] transitionIndexes = new int[INITIAL_CAPACITY];
+    private int[] stepIndexes = new int[INITIAL_CAPACITY];
+    private Instruction[] instructions = new Instruction[INITIAL_CAPACITY];
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] files = new int[INITIAL_CAPACITY];
+    /**
+     * Call level before the step.
+     */
+    private int[] levels = new int[INITIAL_CAPACITY];
+    /**
+     * The closest previous step whose level is lower than the level of the step, or -1.
+     */
+    private int[] lowerLevelSteps = new int[INITIAL_CAPACITY];
+    /**
+     * Number of visible throw steps before the step.
+     */
+    private int[] throwsBeforeStep = new int[INITIAL_CAPACITY];
+
+    private void add(int transitionIndex, int stepIndex, Instruction instruction, byte kind, int file) {
+      if (size == kinds.length) {
+        int capacity = size * 2;
+        transitionIndexes = Arrays.copyOf(transitionIndexes, capacity);
+        stepIndexes = Arrays.copyOf(stepIndexes, capacity);
+        instructions = Arrays.copyOf(instructions, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        files = Arrays.copyOf(files, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        lowerLevelSteps = Arrays.copyOf(lowerLevelSteps, capacity);
+        throwsBeforeStep = Arrays.copyOf(throwsBeforeStep, capacity);
+      }
+      int i = size++;
+      transitionIndexes[i] = transitionIndex;
+      stepIndexes[i] = stepIndex;
+      instructions[i] = instruction;
+      kinds[i] = kind;
+      lines[i] = instruction.getLineNumber();
+      files[i] = file;
+      levels[i] = level;
+      throwsBeforeStep[i] = throwCount;
+
+      // The level changes by at most one between consecutive steps, so this takes at most two jumps
+      int lower = i - 1;
+      while (lower >= 0 && levels[lower] >= level) {
+        lower = lowerLevelSteps[lower];
+      }
+      lowerLevelSteps[i] = lower;
+
+      level += levelChange(kind);
+      if (kind == KIND_THROW) {
+        throwCount++;
+      }
+    }
+
+    /**
+     * Hides the last step, because it is executed again by the next step.
+     */
+    private void hide(int i) {
+      assert i == size - 1;
+      kinds[i] |= KIND_HIDDEN;
+      level = levels[i];
+      throwCount = throwsBeforeStep[i];
+    }
+
+    private static int levelChange(byte kind) {
+      if (kind == KIND_CALL) {
+        return 1;
+      } else if (kind == KIND_RETURN) {
+        return -1;
+      }
+      return 0;
+    }
+
+    private boolean isHidden(int i) {
+      return (kinds[i] & KIND_HIDDEN) != 0;
+    }
+
+    /**
+     * Gets the number of steps, including hidden steps.
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Finds the closest visible step before the given position. This is a single backward step.
+     *
+     * @return The step or -1 if there is no such step.
+     */
+    public int previous(int position) {
+      int i = position - 1;
+      while (i >= 0 && isHidden(i)) {
+        i--;
+      }
+      return i;
+    }
+
+    /**
+     * Finds the first step we encounter when backtracking from the given position, after we exit the given number of
+     * methods. This gives the same result as {@link MethodInstructionBacktracker}, without visiting the steps in
+     * called methods.
+     *
+     * @param position Position to backtrack from.
+     * @param howManyMethodsToLeave Use "0" to find the previous step in the current method (or the caller step, if
+     *                              there is none) and "1" to find the caller step.
+     * @return The step or -1 if there is no such step.
+     * @throws UnsupportedOperationException If a throw step would have to be backtracked through.
+     */
+    public int backtrack(int position, int howManyMethodsToLeave) {
+      int targetLevel = levelAt(position) - howManyMethodsToLeave;
+      int i = position - 1;
+      while (i >= 0 && (isHidden(i) || levels[i] > targetLevel)) {
+        i = isHidden(i) ? i - 1 : lowerLevelSteps[i];
+      }
+      int throwsPassed = throwsAt(position) - (i >= 0 ? throwsBeforeStep[i] : 0);
+      if (throwsPassed > 0) {
+        throw new UnsupportedOperationException(
+                "For implementation reasons of the Inspector, it is not possible to backtrack through the throwing of an exception.");
+      }
+      return i;
+    }
+
+    private int levelAt(int position) {
+      return position == size ? level : levels[position];
+    }
+
+    private int throwsAt(int position) {
+      return position == size ? throwCount : throwsBeforeStep[position];
+    }
+
+    public boolean isReturn(int i) {
+      return (kinds[i] & ~KIND_HIDDEN) == KIND_RETURN;
+    }
+
+    /**
+     * Returns whether the instruction of the step is on the given source line.
+     *
+     * @param i The step.
+     * @param other Step whose source line we compare with.
+     */
+    public boolean isOnSameLine(int i, int other) {
+      return files[i] >= 0 && files[i] == files[other] && lines[i] == lines[other];
+    }
+
+    /**
+     * Returns whether the instruction of the step is on the same source line as the given instruction.
+     */
+    public boolean isOnLineOf(int i, Instruction instruction) {
+      MethodInfo methodInfo = instruction.getMethodInfo();
+      if (files[i] < 0 || methodInfo == null || lines[i] != instruction.getLineNumber()) {
+        return false;
+      }
+      MethodInfo stepMethodInfo = instructions[i].getMethodInfo();
+      String fileName = methodInfo.getSourceFileName();
+      return stepMethodInfo == methodInfo || (fileName != null && fileName.equals(stepMethodInfo.getSourceFileName()));
+    }
+
+    /**
+     * Gets the position of the transition containing the step in the transition path.
+     */
+    public int getTransitionIndex(int i) {
+      return transitionIndexes[i];
+    }
+
+    /**
+     * Gets the index of the step in its transition.
+     */
+    public int getStepIndex(int i) {
+      return stepIndexes[i];
+    }
+
+    public Instruction getInstruction(int i) {
+      return instructions[i];
+    }
+  }
+}
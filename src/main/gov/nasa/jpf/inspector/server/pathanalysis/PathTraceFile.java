@@ -0,0 +1,549 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.server.pathanalysis;
+
+import gov.nasa.jpf.vm.ChoiceGenerator;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.Path;
+import gov.nasa.jpf.vm.Step;
+import gov.nasa.jpf.vm.Transition;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only file with a compact record of each transition of the current path, so that the history of the path
+ * can be queried without the {@link Transition} and {@link Step} objects of JPF.
+ *
+ * Each record holds the thread of the transition, the choice made by its choice generator, the instructions of its
+ * steps (as the global ID of the method and the index of the instruction in the method) and the breakpoints that
+ * were hit in it. A record is written when its transition completes. The records are written through a memory
+ * mapped window of the file, so the JPF thread only copies a few integers per step and the heap does not grow with
+ * the length of the path. In memory, only the offset of each record is kept.
+ *
+ * When the search backtracks, the file is truncated by moving the end offset back, the records of the next
+ * transitions overwrite the discarded ones. The file itself is cut to the end offset when it is closed, because
+ * a mapped file cannot be shortened on all platforms.
+ *
+ * Breakpoint hits are reported by the {@link gov.nasa.jpf.inspector.server.breakpoints.BreakpointHandler} as they
+ * happen and are kept in memory until the transition is written. The indices of the transitions with hits are kept in
+ * memory as well, so that "back_breakpoint_hit" reads only the records with hits, see
+ * {@link #findLastBreakpointHit(int, int)}. Breakpoints are not evaluated while a backward step replays the target
+ * transition, so the hits in the replayed part are taken over from the discarded record of the transition, see
+ * {@link #transitionReplayed(int, int)}.
+ *
+ * Note: Updated by the JPF thread, queried by the thread executing commands while JPF is stopped.
+ */
+public final class PathTraceFile {
+
+  /**
+   * Value of fields that are not known, e.g. the choice of a transition without a choice generator.
+   */
+  public static final int NONE = -1;
+
+  private static final int HEADER_BYTES = 6 * 4;
+  private static final int MAPPING_BYTES = 16 * 1024 * 1024;
+  private static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * A transition of the path, as read from the file.
+   */
+  public static final class TracedTransition {
+    private final int threadIndex;
+    private final String choiceGeneratorId;
+    private final int choiceIndex;
+    private final int choiceCount;
+    private final int[] steps;
+    private final int[] breakpointHits;
+
+    private TracedTransition(int threadIndex, String choiceGeneratorId, int choiceIndex, int choiceCount,
+                             int[] steps, int[] breakpointHits) {
+      this.threadIndex = threadIndex;
+      this.choiceGeneratorId = choiceGeneratorId;
+      this.choiceIndex = choiceIndex;
+      this.choiceCount = choiceCount;
+      this.steps = steps;
+      this.breakpointHits = breakpointHits;
+    }
+
+    /**
+     * @return Gets the index of the thread that executed the transition.
+     */
+    public int getThreadIndex() {
+      return threadIndex;
+    }
+
+    /**
+     * @return Gets the ID of the choice generator of the transition, or null if it has none.
+     */
+    public String getChoiceGeneratorId() {
+      return choiceGeneratorId;
+    }
+
+    /**
+     * @return Gets the index of the choice made at the start of the transition, or {@link #NONE}.
+     */
+    public int getChoiceIndex() {
+      return choiceIndex;
+    }
+
+    /**
+     * @return Gets the number of choices of the choice generator of the transition, or {@link #NONE}.
+     */
+    public int getChoiceCount() {
+      return choiceCount;
+    }
+
+    public int getStepCount() {
+      return steps.length / 2;
+    }
+
+    /**
+     * Gets the instruction of a step of the transition.
+     *
+     * @return The instruction, or null if its method is no longer known to JPF.
+     */
+    public Instruction getInstruction(int stepIndex) {
+      MethodInfo method = MethodInfo.getMethodInfo(steps[2 * stepIndex]);
+      if (method == null) {
+        return null;
+      }
+      return method.getInstruction(steps[2 * stepIndex + 1]);
+    }
+
+    public int getBreakpointHitCount() {
+      return breakpointHits.length / 2;
+    }
+
+    /**
+     * @return Gets the number of steps of the transition executed before the breakpoint hit.
+     */
+    public int getBreakpointHitStep(int hitIndex) {
+      return breakpointHits[2 * hitIndex];
+    }
+
+    public int getBreakpointHitId(int hitIndex) {
+      return breakpointHits[2 * hitIndex + 1];
+    }
+  }
+
+  /**
+   * A breakpoint hit on the current path.
+   */
+  public static final class BreakpointHit {
+    private final int transitionIndex;
+    private final int stepIndex;
+    private final int breakpointId;
+
+    private BreakpointHit(int transitionIndex, int stepIndex, int breakpointId) {
+      this.transitionIndex = transitionIndex;
+      this.stepIndex = stepIndex;
+      this.breakpointId = breakpointId;
+    }
+
+    /**
+     * @return Gets the index of the transition of the hit in the path.
+     */
+    public int getTransitionIndex() {
+      return transitionIndex;
+    }
+
+    /**
+     * @return Gets the number of steps of the transition executed before the hit.
+     */
+    public int getStepIndex() {
+      return stepIndex;
+    }
+
+    public int getBreakpointId() {
+      return breakpointId;
+    }
+  }
+
+  private final String fileName;
+  private FileChannel channel = null;
+  private MappedByteBuffer window = null;
+  private long windowStart = 0;
+
+  /**
+   * Index of the transition of the first record in the file. Transitions before it are not recorded.
+   */
+  private int firstTransition = 0;
+  /**
+   * Number of records in the file.
+   */
+  private int count = 0;
+  /**
+   * Offsets of the records in the file. The element after the last record is the end offset.
+   */
+  private long[] offsets = new long[INITIAL_CAPACITY + 1];
+  /**
+   * Indices of the recorded transitions with at least one breakpoint hit, in ascending order.
+   */
+  private int[] hitTransitions = new int[INITIAL_CAPACITY];
+  private int hitTransitionCount = 0;
+  /**
+   * Index of the transition that was backtracked last, as long as its breakpoint hits are still known, otherwise
+   * {@link #NONE}.
+   */
+  private int discardedTransition = NONE;
+  /**
+   * Breakpoint hits of the backtracked transition if it was not recorded yet, in the same format as the pending hits.
+   * If the transition was recorded, its record is still in the file just after the recorded part and
+   * {@link #discardedHitCount} is {@link #NONE}.
+   */
+  private int[] discardedHits = new int[3 * 4];
+  private int discardedHitCount = NONE;
+
+  /**
+   * IDs of choice generators, which are stored in the records as indices to this list.
+   */
+  private final List<String> choiceGeneratorIds = new ArrayList<>();
+  private final Map<String, Integer> choiceGeneratorIdIndices = new HashMap<>();
+
+  /**
+   * Breakpoint hits in the current transition, as triples of the transition index, the step and the breakpoint ID.
+   */
+  private int[] pendingHits = new int[3 * 4];
+  private int pendingHitCount = 0;
+
+  /**
+   * Creates the trace file. The file is overwritten.
+   *
+   * @param fileName Path to the file.
+   */
+  public PathTraceFile(String fileName) throws IOException {
+    this.fileName = fileName;
+    this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * Remembers a breakpoint hit, it is written along with its transition.
+   *
+   * Note: Executed by the JPF thread.
+   *
+   * @param transitionIndex Index of the transition in the path.
+   * @param stepIndex Number of the steps of the transition executed before the hit.
+   * @param breakpointId ID of the breakpoint.
+   */
+  public void breakpointHit(int transitionIndex, int stepIndex, int breakpointId) {
+    // Hits at the same or later positions were undone and are being hit again
+    while (pendingHitCount > 0 && pendingHits[3 * (pendingHitCount - 1)] == transitionIndex &&
+           pendingHits[3 * (pendingHitCount - 1) + 1] >= stepIndex) {
+      pendingHitCount--;
+    }
+    if (3 * pendingHitCount == pendingHits.length) {
+      pendingHits = Arrays.copyOf(pendingHits, pendingHits.length * 2);
+    }
+    pendingHits[3 * pendingHitCount] = transitionIndex;
+    pendingHits[3 * pendingHitCount + 1] = stepIndex;
+    pendingHits[3 * pendingHitCount + 2] = breakpointId;
+    pendingHitCount++;
+  }
+
+  /**
+   * Appends the record of the last transition of the path. Called when the search advances.
+   *
+   * Note: Executed by the JPF thread.
+   */
+  public void transitionCompleted(Path path) throws IOException {
+    Transition transition = path.getLast();
+    int transitionIndex = path.size() - 1;
+    if (transition == null || channel == null) {
+      return;
+    }
+    discardedTransition = NONE; // Overwritten by this record
+    if (transitionIndex != firstTransition + count) {
+      // Transitions before this one were not observed (e.g. the state was restored), the trace starts anew
+      firstTransition = transitionIndex;
+      count = 0;
+      hitTransitionCount = 0;
+    }
+
+    int hits = 0;
+    for (int i = 0; i < pendingHitCount; i++) {
+      if (pendingHits[3 * i] == transitionIndex) {
+        hits++;
+      }
+    }
+    int stepCount = transition.getStepCount();
+    int length = HEADER_BYTES + 8 * stepCount + 8 * hits;
+    long offset = offsets[count];
+    ByteBuffer buffer = mapForWriting(offset, length);
+
+    ChoiceGenerator<?> cg = transition.getChoiceGenerator();
+    buffer.putInt(transition.getThreadIndex());
+    buffer.putInt(cg == null || cg.getId() == null ? NONE : getChoiceGeneratorIdIndex(cg.getId()));
+    buffer.putInt(cg == null ? NONE : cg.getProcessedNumberOfChoices() - 1);
+    buffer.putInt(cg == null ? NONE : cg.getTotalNumberOfChoices());
+    buffer.putInt(stepCount);
+    buffer.putInt(hits);
+    for (Step step : transition) {
+      Instruction instruction = step.getInstruction();
+      buffer.putInt(instruction.getMethodInfo().getGlobalId());
+      buffer.putInt(instruction.getInstructionIndex());
+    }
+    for (int i = 0; i < pendingHitCount; i++) {
+      if (pendingHits[3 * i] == transitionIndex) {
+        buffer.putInt(pendingHits[3 * i + 1]);
+        buffer.putInt(pendingHits[3 * i + 2]);
+      }
+    }
+    pendingHitCount = 0;
+
+    if (count + 1 == offsets.length - 1) {
+      offsets = Arrays.copyOf(offsets, offsets.length * 2);
+    }
+    count++;
+    offsets[count] = offset + length;
+    if (hits > 0) {
+      if (hitTransitionCount == hitTransitions.length) {
+        hitTransitions = Arrays.copyOf(hitTransitions, hitTransitionCount * 2);
+      }
+      hitTransitions[hitTransitionCount] = transitionIndex;
+      hitTransitionCount++;
+    }
+  }
+
+  /**
+   * Discards the records of transitions that are no longer on the path. Called when the search backtracks.
+   *
+   * @param pathSize Number of transitions that remain on the path.
+   */
+  public void truncate(int pathSize) {
+    // The record of the transition at this index stays in the file until the next record overwrites it
+    boolean discardsRecord = pathSize >= firstTransition && pathSize < getEndTransition();
+    boolean discardsPendingHits = pendingHitCount > 0 && pendingHits[3 * (pendingHitCount - 1)] == pathSize;
+    if (pathSize < firstTransition) {
+      firstTransition = pathSize;
+      count = 0;
+    } else {
+      count = Math.min(count, pathSize - firstTransition);
+    }
+    if (discardsRecord) {
+      discardedTransition = pathSize;
+      discardedHitCount = NONE;
+    } else if (discardsPendingHits) {
+      // The transition was not completed, so the hits are not in the file
+      if (discardedHits.length < 3 * pendingHitCount) {
+        discardedHits = new int[pendingHits.length];
+      }
+      System.arraycopy(pendingHits, 0, discardedHits, 0, 3 * pendingHitCount);
+      discardedTransition = pathSize;
+      discardedHitCount = pendingHitCount;
+    } else if (pathSize != discardedTransition) {
+      discardedTransition = NONE;
+    }
+    while (hitTransitionCount > 0 && hitTransitions[hitTransitionCount - 1] >= pathSize) {
+      hitTransitionCount--;
+    }
+    pendingHitCount = 0;
+  }
+
+  /**
+   * Takes over the breakpoint hits in the replayed part of the transition from before it was backtracked. Called when
+   * a backward step completes, after it replayed the start of the transition without evaluating breakpoints.
+   *
+   * Note: Executed by the JPF thread.
+   *
+   * @param transitionIndex Index of the replayed transition in the path.
+   * @param stepCount Number of the steps of the transition executed by the replay.
+   */
+  public void transitionReplayed(int transitionIndex, int stepCount) throws IOException {
+    if (transitionIndex != discardedTransition || transitionIndex != getEndTransition() || channel == null) {
+      return; // Not backtracked, or a transition with another choice was recorded in the meantime
+    }
+    discardedTransition = NONE;
+    if (discardedHitCount != NONE) {
+      for (int i = 0; i < discardedHitCount && discardedHits[3 * i + 1] <= stepCount; i++) {
+        breakpointHit(transitionIndex, discardedHits[3 * i + 1], discardedHits[3 * i + 2]);
+      }
+      return;
+    }
+    TracedTransition discarded = readRecord(count);
+    for (int i = 0; i < discarded.getBreakpointHitCount(); i++) {
+      if (discarded.getBreakpointHitStep(i) <= stepCount) {
+        breakpointHit(transitionIndex, discarded.getBreakpointHitStep(i), discarded.getBreakpointHitId(i));
+      }
+    }
+  }
+
+  /**
+   * Discards all records. Called when the path is replaced by another one.
+   *
+   * @param pathSize Number of transitions on the new path, which are not recorded.
+   */
+  public void clear(int pathSize) {
+    firstTransition = pathSize;
+    count = 0;
+    hitTransitionCount = 0;
+    discardedTransition = NONE;
+    pendingHitCount = 0;
+  }
+
+  /**
+   * @return Gets the index of the first transition of the path that is recorded.
+   */
+  public int getFirstTransition() {
+    return firstTransition;
+  }
+
+  /**
+   * @return Gets the index of the transition after the last recorded one.
+   */
+  public int getEndTransition() {
+    return firstTransition + count;
+  }
+
+  /**
+   * @return Gets the size of the recorded part of the path in the file, in bytes.
+   */
+  public long getByteSize() {
+    return offsets[count];
+  }
+
+  /**
+   * Reads the record of a transition.
+   *
+   * @param transitionIndex Index of the transition in the path.
+   * @return The transition, or null if it is not recorded.
+   */
+  public TracedTransition read(int transitionIndex) throws IOException {
+    int record = transitionIndex - firstTransition;
+    if (record < 0 || record >= count || channel == null) {
+      return null;
+    }
+    return readRecord(record);
+  }
+
+  /**
+   * Reads a record, which may also be the discarded one just after the recorded part.
+   */
+  private TracedTransition readRecord(int record) throws IOException {
+    long offset = offsets[record];
+    ByteBuffer buffer = ByteBuffer.allocate((int) (offsets[record + 1] - offset));
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of the path trace file '" + fileName + "'.");
+      }
+    }
+    buffer.flip();
+
+    int threadIndex = buffer.getInt();
+    int cgIdIndex = buffer.getInt();
+    int choiceIndex = buffer.getInt();
+    int choiceCount = buffer.getInt();
+    int[] steps = new int[2 * buffer.getInt()];
+    int[] hits = new int[2 * buffer.getInt()];
+    buffer.asIntBuffer().get(steps);
+    buffer.position(buffer.position() + 4 * steps.length);
+    buffer.asIntBuffer().get(hits);
+    return new TracedTransition(threadIndex, cgIdIndex == NONE ? null : choiceGeneratorIds.get(cgIdIndex),
+                                choiceIndex, choiceCount, steps, hits);
+  }
+
+  /**
+   * Finds the last breakpoint hit before the given position, either in the transition that is not completed yet or
+   * in the recorded part of the path.
+   *
+   * @param beforeTransition Index of the transition of the position.
+   * @param beforeStep Number of the steps of the transition executed before the position.
+   * @return The last hit, or null if there is none.
+   */
+  public BreakpointHit findLastBreakpointHit(int beforeTransition, int beforeStep) throws IOException {
+    for (int i = pendingHitCount - 1; i >= 0; i--) {
+      if (isBefore(pendingHits[3 * i], pendingHits[3 * i + 1], beforeTransition, beforeStep)) {
+        return new BreakpointHit(pendingHits[3 * i], pendingHits[3 * i + 1], pendingHits[3 * i + 2]);
+      }
+    }
+    // Only the records of the transitions with hits are read
+    int index = Arrays.binarySearch(hitTransitions, 0, hitTransitionCount, beforeTransition);
+    index = index < 0 ? -index - 2 : index;
+    for (; index >= 0; index--) {
+      int transitionIndex = hitTransitions[index];
+      TracedTransition transition = read(transitionIndex);
+      for (int i = transition.getBreakpointHitCount() - 1; i >= 0; i--) {
+        int stepIndex = transition.getBreakpointHitStep(i);
+        if (isBefore(transitionIndex, stepIndex, beforeTransition, beforeStep)) {
+          return new BreakpointHit(transitionIndex, stepIndex, transition.getBreakpointHitId(i));
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean isBefore(int transitionIndex, int stepIndex, int beforeTransition, int beforeStep) {
+    return transitionIndex < beforeTransition || (transitionIndex == beforeTransition && stepIndex < beforeStep);
+  }
+
+  /**
+   * Cuts the file to the recorded part of the path and closes it.
+   */
+  public void close() {
+    if (channel == null) {
+      return;
+    }
+    window = null;
+    try {
+      channel.truncate(offsets[count]);
+    } catch (IOException ignored) {
+      // Still mapped on some platforms, the rest of the file is just unused
+    }
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+    }
+    channel = null;
+  }
+
+  /**
+   * Gets a buffer positioned at the given offset of the file with space for a record of the given length.
+   */
+  private ByteBuffer mapForWriting(long offset, int length) throws IOException {
+    if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+      window = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(MAPPING_BYTES, length));
+      windowStart = offset;
+    }
+    window.position((int) (offset - windowStart));
+    return window;
+  }
+
+  private int getChoiceGeneratorIdIndex(String id) {
+    Integer index = choiceGeneratorIdIndices.get(id);
+    if (index == null) {
+      index = choiceGeneratorIds.size();
+      choiceGeneratorIds.add(id);
+      choiceGeneratorIdIndices.put(id, index);
+    }
+    return index;
+  }
+}
@@ -35,7 +35,7 @@ class ReturnInstructionChecker extends JVMInstructionVisitorAdapter {
     return isReturnInstruction(step.getInstruction());
   }
 
-  private boolean isReturnInstruction(Instruction inst) {
+  boolean isReturnInstruction(Instruction inst) {
     assert(inst != null);
     isReturnInstruction = false;
     assert (inst instanceof JVMInstruction);
@@ -37,7 +37,7 @@ public class ThrowInstructionChecker extends JVMInstructionVisitorAdapter {
     return isThrowInstruction(step.getInstruction());
   }
 
-  private boolean isThrowInstruction(Instruction inst) {
+  boolean isThrowInstruction(Instruction inst) {
     assert(inst != null);
     isThrowInstruction = false;
     assert (inst instanceof JVMInstruction);
@@ -38,6 +38,8 @@ import gov.nasa.jpf.vm.Instruction;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles commands that can be used to inspect program state, e.g. the "print" and "thread" commands.
@@ -62,7 +64,25 @@ public class ProgramStateManager implements ProgramStateInterface {
   @Override
   public Map<Integer, PSEThread> getThreads (Integer threadNum) throws JPFInspectorException {
     stopHolder.waitUntilStopped();
+    stopHolder.getVMLock().lock();
+    try {
+      return getThreadsWhileStopped(threadNum);
+    } finally {
+      stopHolder.getVMLock().unlock();
+    }
+  }
+
+  @Override
+  public CompletableFuture<Map<Integer, PSEThread>> getThreadsAsync (final Integer threadNum) {
+    return stopHolder.queryWhileStopped("thread " + threadNum, new Callable<Map<Integer, PSEThread>>() {
+      @Override
+      public Map<Integer, PSEThread> call() throws JPFInspectorException {
+        return getThreadsWhileStopped(threadNum);
+      }
+    });
+  }
 
+  private Map<Integer, PSEThread> getThreadsWhileStopped (Integer threadNum) throws JPFInspectorException {
     Map<Integer, PSEThread> result;
 
     VM vm = getJVM();
@@ -91,7 +111,26 @@ public class ProgramStateManager implements ProgramStateInterface {
   @Override
   public Map<Integer, InstructionPosition> getThreadsPC (Integer threadNum) throws JPFInspectorGenericErrorException {
     stopHolder.waitUntilStopped();
+    stopHolder.getVMLock().lock();
+    try {
+      return getThreadsPCWhileStopped(threadNum);
+    } finally {
+      stopHolder.getVMLock().unlock();
+    }
+  }
 
+  @Override
+  public CompletableFuture<Map<Integer, InstructionPosition>> getThreadsPCAsync (final Integer threadNum) {
+    return stopHolder.queryWhileStopped("thread_pc " + threadNum, new Callable<Map<Integer, InstructionPosition>>() {
+      @Override
+      public Map<Integer, InstructionPosition> call() throws JPFInspectorGenericErrorException {
+        return getThreadsPCWhileStopped(threadNum);
+      }
+    });
+  }
+
+  private Map<Integer, InstructionPosition> getThreadsPCWhileStopped (Integer threadNum)
+          throws JPFInspectorGenericErrorException {
     VM vm = getJVM();
     if (vm == null) {
       return null;
@@ -123,7 +162,25 @@ public class ProgramStateManager implements ProgramStateInterface {
   @Override
   public ProgramStateEntry evaluateStateExpression (String expr) throws JPFInspectorException {
     stopHolder.waitUntilStopped();
+    stopHolder.getVMLock().lock();
+    try {
+      return evaluateStateExpressionWhileStopped(expr);
+    } finally {
+      stopHolder.getVMLock().unlock();
+    }
+  }
 
+  @Override
+  public CompletableFuture<ProgramStateEntry> evaluateStateExpressionAsync (final String expr) {
+    return stopHolder.queryWhileStopped("print " + expr, new Callable<ProgramStateEntry>() {
+      @Override
+      public ProgramStateEntry call() throws JPFInspectorException {
+        return evaluateStateExpressionWhileStopped(expr);
+      }
+    });
+  }
+
+  private ProgramStateEntry evaluateStateExpressionWhileStopped (String expr) throws JPFInspectorException {
     // Create a parse tree (hierarchy 1)
     ExpressionStateRootNode parsedExpr = parser.getExpressionStateInterface(expr);
     if (parsedExpr == null) {
@@ -162,9 +219,14 @@ public class ProgramStateManager implements ProgramStateInterface {
 
     assert (esa != null);
 
-    StateReadableValue rVal = esa.getRValue(inspector, stopHolder.getInspectorState());
-    StateWritableValue lVal = esa.getLValue(inspector, stopHolder.getInspectorState());
+    stopHolder.getVMLock().lock();
+    try {
+      StateReadableValue rVal = esa.getRValue(inspector, stopHolder.getInspectorState());
+      StateWritableValue lVal = esa.getLValue(inspector, stopHolder.getInspectorState());
 
-    lVal.assignValue(rVal);
+      lVal.assignValue(rVal);
+    } finally {
+      stopHolder.getVMLock().unlock();
+    }
   }
 }
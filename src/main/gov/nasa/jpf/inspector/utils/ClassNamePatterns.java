@@ -0,0 +1,97 @@
+//
+// Copyright (C) 2016 Petr Hudeček
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+//
+
+package gov.nasa.jpf.inspector.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A set of class name patterns such as "java.*" or "my.package.SomeClass", where '*' matches any sequence of
+ * characters and the pattern must match the whole class name.
+ *
+ * Patterns without '*' and patterns whose only '*' is at the end are compiled into a prefix trie, so that a class name
+ * is matched in a single pass regardless of the number of patterns. Other patterns are compiled into regular
+ * expressions.
+ */
+public final class ClassNamePatterns {
+
+  private final TrieNode root = new TrieNode();
+  private final List<Pattern> otherPatterns = new ArrayList<>();
+
+  public ClassNamePatterns(String[] patterns) {
+    for (String pattern : patterns) {
+      int firstStar = pattern.indexOf('*');
+      if (firstStar < 0) {
+        insert(pattern).matchesExactly = true;
+      } else if (firstStar == pattern.length() - 1) {
+        insert(pattern.substring(0, firstStar)).matchesAnySuffix = true;
+      } else {
+        otherPatterns.add(Pattern.compile("^" + pattern.replace(".", "\\.").replace("*", ".*")));
+      }
+    }
+  }
+
+  private TrieNode insert(String prefix) {
+    TrieNode node = root;
+    for (int i = 0; i < prefix.length(); i++) {
+      char c = prefix.charAt(i);
+      TrieNode child = node.children.get(c);
+      if (child == null) {
+        child = new TrieNode();
+        node.children.put(c, child);
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  /**
+   * @param className Fully qualified name of a Java class.
+   * @return True if any of the patterns matches the whole class name.
+   */
+  public boolean matches(String className) {
+    TrieNode node = root;
+    for (int i = 0; node != null; i++) {
+      if (node.matchesAnySuffix) {
+        return true;
+      }
+      if (i == className.length()) {
+        if (node.matchesExactly) {
+          return true;
+        }
+        break;
+      }
+      node = node.children.get(className.charAt(i));
+    }
+
+    for (Pattern pattern : otherPatterns) {
+      if (pattern.matcher(className).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class TrieNode {
+    private final Map<Character, TrieNode> children = new HashMap<>(4);
+    private boolean matchesExactly = false;
+    private boolean matchesAnySuffix = false;
+  }
+}
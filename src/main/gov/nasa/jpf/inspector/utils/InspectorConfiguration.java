@@ -24,7 +24,9 @@ import gov.nasa.jpf.inspector.interfaces.CustomCommand;
 import gov.nasa.jpf.inspector.interfaces.CustomHitCondition;
 import gov.nasa.jpf.inspector.interfaces.attributes.*;
 import gov.nasa.jpf.inspector.server.breakpoints.InternalBreakpointHolder;
+import gov.nasa.jpf.inspector.server.callbacks.CallbackOverflowPolicy;
 import gov.nasa.jpf.shell.ShellManager;
+import gov.nasa.jpf.vm.ClassInfo;
 
 import java.io.PrintStream;
 import java.util.*;
@@ -56,12 +58,8 @@ public final class InspectorConfiguration {
 
     // Set ignored classes
     ignoreClassesFeature = config.getBoolean("jpf-inspector.ignore_breakpoints_in_ignored_classes", true);
-    ignoredClasses = config.getStringArray("jpf-inspector.ignored_classes", new String[] { "java.*", "javax.*" });
-    for(int i = 0; i < ignoredClasses.length; i++) {
-      ignoredClasses[i] = ignoredClasses[i].replace(".", "\\.");
-      ignoredClasses[i] = ignoredClasses[i].replace("*", ".*");
-      ignoredClasses[i] = "^" + ignoredClasses[i];
-    }
+    ignoredClasses = new ClassNamePatterns(config.getStringArray("jpf-inspector.ignored_classes",
+                                                                 new String[] { "java.*", "javax.*" }));
 
     loadCustomHitConditions(config);
 
@@ -199,7 +197,16 @@ public final class InspectorConfiguration {
   }
 
   private final boolean ignoreClassesFeature;
-  private final String[] ignoredClasses;
+  private final ClassNamePatterns ignoredClasses;
+  /**
+   * Attributes that cache the result of {@link #isClassIgnored(ClassInfo)} in a ClassInfo. They belong to this
+   * configuration, so that a cached result is not used if the configuration is loaded anew.
+   */
+  private final IgnoredClassFlag ignoredFlag = new IgnoredClassFlag();
+  private final IgnoredClassFlag notIgnoredFlag = new IgnoredClassFlag();
+
+  private static final class IgnoredClassFlag {
+  }
 
   /**
    * Returns true if breakpoints that happen while the topmost stack frame is of a method in the given class should be ignored.
@@ -212,15 +219,39 @@ public final class InspectorConfiguration {
       return false; // If false, then we ignore nothing.
     }
 
-    for (String ignoredClass : ignoredClasses) {
-      if (logger.isLoggable(Level.FINE)) {
-        logger.fine("Checking ignoring against " + ignoredClass);
-      }
-      if (className.matches(ignoredClass)) {
-        return true;
-      }
+    boolean ignored = ignoredClasses.matches(className);
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Class " + className + (ignored ? " is ignored." : " is not ignored."));
+    }
+    return ignored;
+  }
+
+  /**
+   * Same as {@link #isClassIgnored(String)}, but the result is computed only once for each class and then kept
+   * as an attribute of the ClassInfo.
+   *
+   * Note: Executed by the JPF thread.
+   *
+   * @param classInfo Class to check.
+   */
+  public boolean isClassIgnored(ClassInfo classInfo) {
+    if (!ignoreClassesFeature) {
+      return false;
+    }
+
+    IgnoredClassFlag flag = classInfo.getAttr(IgnoredClassFlag.class);
+    if (flag == ignoredFlag) {
+      return true;
     }
-    return false;
+    if (flag == notIgnoredFlag) {
+      return false;
+    }
+    if (flag != null) {
+      classInfo.removeAttr(flag); // Left by an earlier configuration
+    }
+    boolean ignored = isClassIgnored(classInfo.getName());
+    classInfo.addAttr(ignored ? ignoredFlag : notIgnoredFlag);
+    return ignored;
   }
 
   /**
@@ -259,6 +290,141 @@ public final class InspectorConfiguration {
     return config.getBoolean("jpf-inspector.wait_after_run", false);
   }
 
+  /**
+   * Indicates whether breakpoints that cannot trigger on the current path (disabled breakpoints and breakpoints
+   * over their upper hit count bound) should not be evaluated at all. Their hit counts are then not updated,
+   * so this is off by default.
+   */
+  public boolean shouldParkDeadBreakpoints() {
+    return config.getBoolean("jpf-inspector.park_dead_breakpoints", false);
+  }
+
+  /**
+   * Indicates whether the Inspector may stop listening to instruction events while no breakpoint or command needs them.
+   */
+  public boolean isFreeRunAllowed() {
+    return config.getBoolean("jpf-inspector.free_run", true);
+  }
+
+  /**
+   * Gets how many checkpoints of the states on the current path are kept for backward steps. Zero disables them.
+   */
+  public int getCheckpointCapacity() {
+    return Math.max(config.getInt("jpf-inspector.checkpoints", 0), 0);
+  }
+
+  /**
+   * Indicates whether the steps of the current path are indexed, so that backward steps over, into and out of methods
+   * do not have to walk the path step by step.
+   */
+  public boolean isStepIndexEnabled() {
+    return config.getBoolean("jpf-inspector.step_index", true);
+  }
+
+  /**
+   * Determines whether the targets of backward steps are computed in the background as soon as JPF stops.
+   */
+  public boolean shouldPrecomputeBackstepTargets() {
+    return config.getBoolean("jpf-inspector.precompute_backsteps", false);
+  }
+
+  /**
+   * Determines whether the field writes on the current path are recorded, so that "back_field_access" finds the last
+   * write of a field without walking the path and can tell apart the objects whose field was written.
+   */
+  public boolean isFieldWriteIndexEnabled() {
+    return config.getBoolean("jpf-inspector.field_write_index", true);
+  }
+
+  /**
+   * Determines whether the hashes of the states on the current path are recorded, so that replays of backtracked
+   * transitions are checked against them and stop at the first transition that ends in a different state.
+   */
+  public boolean isReplayCheckEnabled() {
+    return config.getBoolean("jpf-inspector.replay_check", false);
+  }
+
+  /**
+   * Gets how much memory the journal that lets "back_step_instruction" undo instructions without replaying the
+   * transition may use, in bytes. Zero if the journal is disabled.
+   */
+  public long getUndoJournalBytes() {
+    if (!config.getBoolean("jpf-inspector.undo_journal", false)) {
+      return 0;
+    }
+    return Math.max(config.getLong("jpf-inspector.undo_journal.max_kb", 16384), 1) * 1024;
+  }
+
+  /**
+   * Gets the file where the transitions of the current path are recorded, or null if they are not recorded.
+   */
+  public String getPathTraceFile() {
+    if (!config.getBoolean("jpf-inspector.path_trace", false)) {
+      return null;
+    }
+    return config.getString("jpf-inspector.path_trace.file", "jpf-inspector-path.bin");
+  }
+
+  /**
+   * Gets the file where hits of tracing breakpoints are written and which is read by the "trace print" command.
+   */
+  public String getTracepointFile() {
+    return config.getString("jpf-inspector.trace_file", "jpf-inspector-trace.bin");
+  }
+
+  /**
+   * Gets how many hits of tracing breakpoints may wait in memory before they are written to the trace file.
+   */
+  public int getTracepointBufferRecords() {
+    int records = config.getInt("jpf-inspector.trace_buffer_records", 65536);
+    return Math.min(Math.max(records, 16), 1 << 22);
+  }
+
+  /**
+   * Gets how many times the JPF thread and the thread executing commands spin, waiting for each other, before they block.
+   */
+  public int getStopHandoffSpins() {
+    return Math.max(config.getInt("jpf-inspector.stop_handoff_spins", 2000), 0);
+  }
+
+  /**
+   * Gets how many callbacks may wait in the queue to be sent to the client.
+   */
+  public int getCallbackQueueCapacity() {
+    int capacity = config.getInt("jpf-inspector.callback_queue.capacity", 4096);
+    return Math.min(Math.max(capacity, 16), 1 << 20);
+  }
+
+  /**
+   * Gets what happens to a new callback when the callback queue is full.
+   */
+  public CallbackOverflowPolicy getCallbackOverflowPolicy() {
+    String policy = config.getString("jpf-inspector.callback_queue.overflow", "block").trim();
+    for (CallbackOverflowPolicy value : CallbackOverflowPolicy.values()) {
+      if (value.name().equalsIgnoreCase(policy)) {
+        return value;
+      }
+    }
+    logger.warning("Unknown value '" + policy + "' of jpf-inspector.callback_queue.overflow. The 'block' policy is used.");
+    return CallbackOverflowPolicy.BLOCK;
+  }
+
+  /**
+   * Gets n such that every n-th droppable callback is sent when the callback queue is at least half full and the
+   * "sample" overflow policy is used.
+   */
+  public int getCallbackSampleRate() {
+    return Math.max(config.getInt("jpf-inspector.callback_queue.sample_rate", 10), 1);
+  }
+
+  /**
+   * Determines whether adjacent identical hits of a logging breakpoint that wait in the callback queue are sent as a
+   * single notification. Never in batch mode, because whether hits wait together depends on timing.
+   */
+  public boolean shouldMergeLoggingHits() {
+    return !isBatchModeActive() && config.getBoolean("jpf-inspector.callback_queue.merge_hits", true);
+  }
+
 
   /**
    * Reset the state of the Inspector to a state that is as close as possible to a first launch.
@@ -35,6 +35,10 @@ public class FieldName {
     this.className = className;
   }
   
+  public final String getFieldName() {
+    return fieldName;
+  }
+
   public boolean isSameField(FieldInfo fi) {
     assert fi != null;
     return fieldName.equals(fi.getName()) && className.isSameClass(fi.getClassInfo());
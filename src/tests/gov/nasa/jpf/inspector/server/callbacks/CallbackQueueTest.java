@@ -0,0 +1,167 @@
+package gov.nasa.jpf.inspector.server.callbacks;
+
+import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tests {@link CallbackQueue}.
+ */
+public class CallbackQueueTest {
+
+  /**
+   * Callback that only remembers who produced it and in which order.
+   */
+  private static final class Numbered implements CallbackCommand {
+    private final int producer;
+    private final int number;
+
+    private Numbered(int producer, int number) {
+      this.producer = producer;
+      this.number = number;
+    }
+
+    @Override
+    public void sendCallback(InspectorCallbacks clientCallbacks) {
+    }
+
+    @Override
+    public boolean waitJPF2stop() {
+      return false;
+    }
+  }
+
+  @Test
+  public void testCapacityIsRoundedUpToPowerOfTwo() {
+    Assert.assertEquals(8, new CallbackQueue(5).getCapacity());
+    Assert.assertEquals(8, new CallbackQueue(8).getCapacity());
+    Assert.assertEquals(2, new CallbackQueue(1).getCapacity());
+  }
+
+  @Test
+  public void testWrapAround() {
+    CallbackQueue queue = new CallbackQueue(4);
+    CallbackCommand[] batch = new CallbackCommand[3];
+    int next = 0;
+    int expected = 0;
+    // Many laps around the ring, with the queue never quite empty
+    for (int lap = 0; lap < 100; lap++) {
+      while (queue.offer(new Numbered(0, next))) {
+        next++;
+      }
+      Assert.assertEquals(4, queue.size());
+      int count = queue.drain(batch);
+      Assert.assertEquals(3, count);
+      for (int i = 0; i < count; i++) {
+        Assert.assertEquals(expected++, ((Numbered) batch[i]).number);
+      }
+    }
+    while (true) {
+      int count = queue.drain(batch);
+      if (count == 0) {
+        break;
+      }
+      for (int i = 0; i < count; i++) {
+        Assert.assertEquals(expected++, ((Numbered) batch[i]).number);
+      }
+    }
+    Assert.assertEquals(next, expected);
+    Assert.assertTrue(queue.isEmpty());
+    Assert.assertEquals(queue.getOfferedCount(), queue.getTakenCount());
+  }
+
+  @Test
+  public void testOrderWithSeveralProducers() throws InterruptedException {
+    final int producers = 4;
+    final int perProducer = 20000;
+    final CallbackQueue queue = new CallbackQueue(16);
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      threads[p] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < perProducer; i++) {
+            while (!queue.offer(new Numbered(producer, i))) {
+              Thread.yield();
+            }
+          }
+        }
+      });
+      threads[p].start();
+    }
+
+    int[] nextExpected = new int[producers];
+    CallbackCommand[] batch = new CallbackCommand[8];
+    int received = 0;
+    while (received < producers * perProducer) {
+      int count = queue.drain(batch);
+      if (count == 0) {
+        Thread.yield();
+      }
+      for (int i = 0; i < count; i++) {
+        Numbered callback = (Numbered) batch[i];
+        // The callbacks of each producer arrive in the order they were offered
+        Assert.assertEquals(nextExpected[callback.producer], callback.number);
+        nextExpected[callback.producer]++;
+      }
+      received += count;
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertTrue(queue.isEmpty());
+    for (int p = 0; p < producers; p++) {
+      Assert.assertEquals(perProducer, nextExpected[p]);
+    }
+  }
+
+  @Test
+  public void testDrainStopsAtUnpublishedSlot() throws Exception {
+    CallbackQueue queue = new CallbackQueue(8);
+    Assert.assertTrue(queue.offer(new Numbered(0, 0)));
+    // A producer claims the next position but has not published its callback yet
+    Field tailField = CallbackQueue.class.getDeclaredField("tail");
+    tailField.setAccessible(true);
+    AtomicLong tail = (AtomicLong) tailField.get(queue);
+    long claimed = tail.getAndIncrement();
+    // Later producers publish theirs
+    Assert.assertTrue(queue.offer(new Numbered(0, 2)));
+    Assert.assertTrue(queue.offer(new Numbered(0, 3)));
+
+    CallbackCommand[] batch = new CallbackCommand[8];
+    Assert.assertEquals(1, queue.drain(batch));
+    Assert.assertEquals(0, ((Numbered) batch[0]).number);
+    // Nothing is taken past the unpublished position
+    Assert.assertEquals(0, queue.drain(batch));
+    Assert.assertTrue(queue.isEmpty());
+    Assert.assertEquals(3, queue.size());
+
+    // Once published, the rest follows in order
+    publish(queue, claimed, new Numbered(0, 1));
+    Assert.assertEquals(3, queue.drain(batch));
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(i + 1, ((Numbered) batch[i]).number);
+    }
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  /**
+   * Publishes the callback at the position the way {@link CallbackQueue#offer(CallbackCommand)} does.
+   */
+  @SuppressWarnings("unchecked")
+  private static void publish(CallbackQueue queue, long position, CallbackCommand callback) throws Exception {
+    Field slotsField = CallbackQueue.class.getDeclaredField("slots");
+    slotsField.setAccessible(true);
+    Field sequencesField = CallbackQueue.class.getDeclaredField("sequences");
+    sequencesField.setAccessible(true);
+    int index = (int) (position & (queue.getCapacity() - 1));
+    ((AtomicReferenceArray<CallbackCommand>) slotsField.get(queue)).set(index, callback);
+    ((AtomicLongArray) sequencesField.get(queue)).set(index, position + 1);
+  }
+}
@@ -0,0 +1,211 @@
+package gov.nasa.jpf.inspector.server.callbacks;
+
+import gov.nasa.jpf.inspector.interfaces.BreakpointStatus;
+import gov.nasa.jpf.inspector.interfaces.ChoiceGeneratorsInterface.CGTypes;
+import gov.nasa.jpf.inspector.interfaces.InspectorCallbacks;
+import gov.nasa.jpf.inspector.interfaces.InspectorStatusChange;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests how {@link CallbacksSender} handles a full callback queue under each {@link CallbackOverflowPolicy}.
+ *
+ * The client blocks on the first callback, so that the callbacks that follow fill the queue.
+ */
+public class CallbacksSenderTest {
+
+  private static final int CAPACITY = 4;
+  /**
+   * Number of callbacks sent while the client is blocked.
+   */
+  private static final int FOLLOWING = 10;
+  private static final long TIMEOUT_SECONDS = 10;
+
+  /**
+   * Client that blocks on the first callback until released.
+   */
+  private static final class SlowClient implements InspectorCallbacks {
+    private final CountDownLatch firstReceived = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch dropReported = new CountDownLatch(1);
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong reportedDropped = new AtomicLong();
+
+    @Override
+    public void notifyChoiceGeneratorNewChoice(CGTypes cgType, String cgName, int cgId, String[] choices,
+                                               int nextChoice, int defaultChoice) {
+      if (received.getAndIncrement() == 0) {
+        firstReceived.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    @Override
+    public void notifyCallbacksDropped(long droppedCount, String overflowPolicy) {
+      reportedDropped.addAndGet(droppedCount);
+      dropReported.countDown();
+    }
+
+    @Override
+    public void notifyStateChange(InspectorStatusChange newState, String details) {
+    }
+
+    @Override
+    public void genericError(String msg) {
+    }
+
+    @Override
+    public void genericInfo(String msg) {
+    }
+
+    @Override
+    public void notifyBreakpointHit(BreakpointStatus bp) {
+    }
+
+    @Override
+    public void notifyBreakpointHits(BreakpointStatus bp, int hitCount) {
+    }
+
+    @Override
+    public void specifyChoiceToUse(int maxChoiceIndex) {
+    }
+
+    @Override
+    public void notifyUsedChoice(CGTypes cgType, String cgName, int cgId, int usedChoiceIndex, String usedChoice) {
+    }
+  }
+
+  /**
+   * Sends a notification of a new choice that asks for nothing, so it may be dropped.
+   */
+  private static void printChoice(InspectorServerCallbacks callbacks, int number) {
+    callbacks.printChoiceGeneratorNewChoice(CGTypes.CG_TYPE_DATA, "cg", number, new String[] { "a", "b" }, 0, 0);
+  }
+
+  /**
+   * Sends the first callback and waits until the client blocks on it.
+   */
+  private static void blockClient(InspectorServerCallbacks callbacks, SlowClient client) throws InterruptedException {
+    printChoice(callbacks, 0);
+    Assert.assertTrue(client.firstReceived.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  private static void fillQueue(InspectorServerCallbacks callbacks) {
+    for (int i = 1; i <= FOLLOWING; i++) {
+      printChoice(callbacks, i);
+    }
+  }
+
+  @Test
+  public void testDropOldest() throws InterruptedException {
+    SlowClient client = new SlowClient();
+    CallbacksSender sender = new CallbacksSender(System.out, client, CAPACITY, CallbackOverflowPolicy.DROP_OLDEST, 1,
+                                                 false);
+    try {
+      sender.startSending();
+      InspectorServerCallbacks callbacks = sender.getCallbackSerializer();
+      blockClient(callbacks, client);
+      fillQueue(callbacks);
+
+      CallbackQueueStatistics statistics = callbacks.getQueueStatistics();
+      Assert.assertEquals(CAPACITY, statistics.getDepth());
+      Assert.assertEquals(FOLLOWING - CAPACITY, statistics.getDropped());
+      Assert.assertEquals(0, statistics.getBlocked());
+
+      client.release.countDown();
+      callbacks.waitUntilCallbackQueueIsEmpty();
+      Assert.assertTrue(client.dropReported.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      statistics = callbacks.getQueueStatistics();
+      Assert.assertEquals(1 + CAPACITY, statistics.getSent());
+      Assert.assertEquals(FOLLOWING - CAPACITY, statistics.getDropped());
+      Assert.assertEquals(0, statistics.getBlocked());
+      Assert.assertEquals(1 + CAPACITY, client.received.get());
+      Assert.assertEquals(FOLLOWING - CAPACITY, client.reportedDropped.get());
+    } finally {
+      client.release.countDown();
+      sender.terminate();
+    }
+  }
+
+  @Test
+  public void testSample() throws InterruptedException {
+    SlowClient client = new SlowClient();
+    CallbacksSender sender = new CallbacksSender(System.out, client, CAPACITY, CallbackOverflowPolicy.SAMPLE, 2, false);
+    try {
+      sender.startSending();
+      InspectorServerCallbacks callbacks = sender.getCallbackSerializer();
+      blockClient(callbacks, client);
+      // The first two are queued while the queue is less than half full. Then every second one is kept, until the
+      // queue is full and the rest is dropped.
+      fillQueue(callbacks);
+
+      CallbackQueueStatistics statistics = callbacks.getQueueStatistics();
+      Assert.assertEquals(CAPACITY, statistics.getDepth());
+      Assert.assertEquals(FOLLOWING - CAPACITY, statistics.getDropped());
+      Assert.assertEquals(0, statistics.getBlocked());
+
+      client.release.countDown();
+      callbacks.waitUntilCallbackQueueIsEmpty();
+      Assert.assertTrue(client.dropReported.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      statistics = callbacks.getQueueStatistics();
+      Assert.assertEquals(1 + CAPACITY, statistics.getSent());
+      Assert.assertEquals(FOLLOWING - CAPACITY, statistics.getDropped());
+      Assert.assertEquals(1 + CAPACITY, client.received.get());
+      Assert.assertEquals(FOLLOWING - CAPACITY, client.reportedDropped.get());
+    } finally {
+      client.release.countDown();
+      sender.terminate();
+    }
+  }
+
+  @Test
+  public void testBlock() throws InterruptedException {
+    SlowClient client = new SlowClient();
+    CallbacksSender sender = new CallbacksSender(System.out, client, CAPACITY, CallbackOverflowPolicy.BLOCK, 1, false);
+    try {
+      sender.startSending();
+      final InspectorServerCallbacks callbacks = sender.getCallbackSerializer();
+      blockClient(callbacks, client);
+      Thread producer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          fillQueue(callbacks);
+        }
+      });
+      producer.start();
+
+      // The producer waits for space once the queue is full
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+      while (callbacks.getQueueStatistics().getBlocked() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(1);
+      }
+      CallbackQueueStatistics statistics = callbacks.getQueueStatistics();
+      Assert.assertEquals(1, statistics.getBlocked());
+      Assert.assertEquals(CAPACITY, statistics.getDepth());
+      Assert.assertEquals(0, statistics.getDropped());
+      Assert.assertTrue(producer.isAlive());
+
+      client.release.countDown();
+      producer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+      Assert.assertFalse(producer.isAlive());
+      callbacks.waitUntilCallbackQueueIsEmpty();
+      statistics = callbacks.getQueueStatistics();
+      Assert.assertEquals(1 + FOLLOWING, statistics.getSent());
+      Assert.assertEquals(0, statistics.getDropped());
+      Assert.assertTrue(statistics.getBlocked() >= 1);
+      Assert.assertEquals(1 + FOLLOWING, client.received.get());
+      Assert.assertEquals(0, client.reportedDropped.get());
+    } finally {
+      client.release.countDown();
+      sender.terminate();
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package gov.nasa.jpf.inspector.server.expression;
+
+import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
+import gov.nasa.jpf.inspector.exceptions.JPFInspectorGenericErrorException;
+import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointOperatorAnd;
+import gov.nasa.jpf.inspector.server.expression.expressions.ExpressionBreakpointOperatorOr;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that {@link ExpressionBooleanShortCircuitOperator} reorders its operands when the right one is cheaper,
+ * and that the results and failures stay the same as in the original order.
+ */
+public class ExpressionBooleanShortCircuitOperatorTest {
+
+  /**
+   * Enough evaluations for the order to be reconsidered several times.
+   */
+  private static final int EVALUATIONS = 8192;
+  private static final long EXPENSIVE_NANOS = 20000;
+
+  /**
+   * Hit condition whose result and failure depend only on the current step of the test.
+   * In each period of steps, it is true for the first few steps and fails in one of the steps (if any).
+   */
+  private static final class ScriptedOperand extends ExpressionBooleanLeaf {
+    private final int[] step;
+    private final long costNanos;
+    private final int period;
+    private final int trueSteps;
+    private final int failingStep;
+    private final boolean sideEffects;
+    private int evaluations = 0;
+
+    private ScriptedOperand(int[] step, long costNanos, int period, int trueSteps, int failingStep,
+                            boolean sideEffects) {
+      this.step = step;
+      this.costNanos = costNanos;
+      this.period = period;
+      this.trueSteps = trueSteps;
+      this.failingStep = failingStep;
+      this.sideEffects = sideEffects;
+    }
+
+    boolean holds() {
+      return step[0] % period < trueSteps;
+    }
+
+    boolean fails() {
+      return step[0] % period == failingStep;
+    }
+
+    @Override
+    public boolean evaluateExpression(InspectorState state) throws JPFInspectorException {
+      evaluations++;
+      long end = System.nanoTime() + costNanos;
+      while (System.nanoTime() < end) {
+        // Busy wait, so that the operand is measured as expensive
+      }
+      if (fails()) {
+        throw new JPFInspectorGenericErrorException("operand failed");
+      }
+      return holds();
+    }
+
+    @Override
+    public boolean hasSideEffects() {
+      return sideEffects;
+    }
+
+    @Override
+    public boolean mayFail() {
+      return failingStep >= 0;
+    }
+
+    @Override
+    public String getNormalizedExpression() {
+      return "scripted";
+    }
+  }
+
+  private static ScriptedOperand operand(int[] step, long costNanos, int period, int trueSteps, int failingStep) {
+    return new ScriptedOperand(step, costNanos, period, trueSteps, failingStep, false);
+  }
+
+  /**
+   * The result of "and" in the original order: null stands for a failure.
+   */
+  private static Boolean expectedAnd(ScriptedOperand left, ScriptedOperand right) {
+    if (left.fails()) {
+      return null;
+    }
+    if (!left.holds()) {
+      return false;
+    }
+    return right.fails() ? null : right.holds();
+  }
+
+  /**
+   * The result of "or" in the original order: null stands for a failure.
+   */
+  private static Boolean expectedOr(ScriptedOperand left, ScriptedOperand right) {
+    if (left.fails()) {
+      return right.fails() ? null : right.holds();
+    }
+    if (left.holds()) {
+      return true;
+    }
+    return right.fails() ? null : right.holds();
+  }
+
+  private static Boolean evaluate(ExpressionBooleanInterface expression) {
+    try {
+      return expression.evaluateExpression(null);
+    } catch (JPFInspectorException e) {
+      return null;
+    }
+  }
+
+  private static boolean isRightFirst(ExpressionBooleanInterface expression) {
+    return expression.getEvaluationStatistics().contains("right operand evaluated first");
+  }
+
+  @Test
+  public void testAndIsReorderedWithTheSameResults() {
+    int[] step = new int[1];
+    // The expensive left operand is true in two of three steps, the cheap right one only in one of ten.
+    ScriptedOperand left = operand(step, EXPENSIVE_NANOS, 3, 2, -1);
+    ScriptedOperand right = operand(step, 0, 10, 1, -1);
+    ExpressionBreakpointOperatorAnd and = new ExpressionBreakpointOperatorAnd(left, right);
+
+    for (step[0] = 0; step[0] < EVALUATIONS; step[0]++) {
+      Assert.assertEquals("step " + step[0], expectedAnd(left, right), evaluate(and));
+    }
+    Assert.assertTrue(and.getEvaluationStatistics(), isRightFirst(and));
+  }
+
+  @Test
+  public void testOrIsReorderedWithTheSameResultsAndFailures() {
+    int[] step = new int[1];
+    // Both operands may fail. Each combination of results occurs, because the periods are coprime.
+    ScriptedOperand left = operand(step, EXPENSIVE_NANOS, 3, 1, 2);
+    ScriptedOperand right = operand(step, 0, 7, 5, 6);
+    ExpressionBreakpointOperatorOr or = new ExpressionBreakpointOperatorOr(left, right);
+
+    for (step[0] = 0; step[0] < EVALUATIONS; step[0]++) {
+      Assert.assertEquals("step " + step[0], expectedOr(left, right), evaluate(or));
+    }
+    Assert.assertTrue(or.getEvaluationStatistics(), isRightFirst(or));
+  }
+
+  @Test
+  public void testAndWithFailingRightOperandIsReorderedWithTheSameFailures() {
+    int[] step = new int[1];
+    // Only the right operand may fail. When it fails first, the operands are evaluated again in the original order.
+    ScriptedOperand left = operand(step, EXPENSIVE_NANOS, 3, 2, -1);
+    ScriptedOperand right = operand(step, 0, 7, 1, 6);
+    ExpressionBreakpointOperatorAnd and = new ExpressionBreakpointOperatorAnd(left, right);
+    and.setFailureSensitive();
+
+    for (step[0] = 0; step[0] < EVALUATIONS; step[0]++) {
+      Assert.assertEquals("step " + step[0], expectedAnd(left, right), evaluate(and));
+    }
+    Assert.assertTrue(and.getEvaluationStatistics(), isRightFirst(and));
+  }
+
+  @Test
+  public void testAndWithFailingLeftOperandIsNotReorderedWhenFailuresMatter() {
+    int[] step = new int[1];
+    // Postponing the left operand would skip its failures whenever the right one is false.
+    ScriptedOperand left = operand(step, EXPENSIVE_NANOS, 3, 1, 2);
+    ScriptedOperand right = operand(step, 0, 10, 1, -1);
+    ExpressionBreakpointOperatorAnd and = new ExpressionBreakpointOperatorAnd(left, right);
+    and.setFailureSensitive();
+
+    for (step[0] = 0; step[0] < EVALUATIONS; step[0]++) {
+      Assert.assertEquals("step " + step[0], expectedAnd(left, right), evaluate(and));
+    }
+    Assert.assertFalse(and.getEvaluationStatistics(), isRightFirst(and));
+  }
+
+  @Test
+  public void testAndWithFailingLeftOperandOnlyTurnsFailuresIntoFalse() {
+    int[] step = new int[1];
+    // At the top of a hit condition, a failure means the same as false, so the operands may be reordered.
+    ScriptedOperand left = operand(step, EXPENSIVE_NANOS, 3, 1, 2);
+    ScriptedOperand right = operand(step, 0, 10, 1, -1);
+    ExpressionBreakpointOperatorAnd and = new ExpressionBreakpointOperatorAnd(left, right);
+
+    for (step[0] = 0; step[0] < EVALUATIONS; step[0]++) {
+      Boolean expected = expectedAnd(left, right);
+      Boolean actual = evaluate(and);
+      if (expected == null) {
+        Assert.assertTrue("step " + step[0], actual == null || !actual);
+      } else {
+        Assert.assertEquals("step " + step[0], expected, actual);
+      }
+    }
+    Assert.assertTrue(and.getEvaluationStatistics(), isRightFirst(and));
+  }
+
+  @Test
+  public void testOperandWithSideEffectsIsNeverReordered() {
+    int[] step = new int[1];
+    ScriptedOperand left = operand(step, EXPENSIVE_NANOS, 3, 2, -1);
+    ScriptedOperand right = new ScriptedOperand(step, 0, 10, 1, -1, true);
+    ExpressionBreakpointOperatorAnd and = new ExpressionBreakpointOperatorAnd(left, right);
+
+    int expectedRightEvaluations = 0;
+    for (step[0] = 0; step[0] < EVALUATIONS; step[0]++) {
+      if (left.holds()) {
+        expectedRightEvaluations++;
+      }
+      Assert.assertEquals("step " + step[0], expectedAnd(left, right), evaluate(and));
+    }
+    Assert.assertFalse(and.getEvaluationStatistics(), isRightFirst(and));
+    // The right operand is evaluated exactly when the original order evaluates it
+    Assert.assertEquals(EVALUATIONS, left.evaluations);
+    Assert.assertEquals(expectedRightEvaluations, right.evaluations);
+  }
+}
@@ -0,0 +1,78 @@
+package gov.nasa.jpf.inspector.server.expression;
+
+import gov.nasa.jpf.jvm.bytecode.NOP;
+import gov.nasa.jpf.vm.Instruction;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests how {@link InspectorStateImpl} keeps the last executed instructions of threads along the path, including
+ * transitions executed in free run, where only the last step of the transition is known.
+ */
+public class InspectorStateImplTest {
+
+  private final Instruction first = new NOP();
+  private final Instruction second = new NOP();
+  private final Instruction third = new NOP();
+
+  @Test
+  public void testFreeRunTransitionUpdatesOnlyItsThread() {
+    InspectorStateImpl state = new InspectorStateImpl();
+    state.instructionExecuted(0, first, null);
+    state.instructionExecuted(1, second, null);
+    state.saveLastExecutedInstructions(1);
+
+    // A transition of thread 1 executed in free run
+    state.setLastExecutedInstruction(1, third);
+    state.saveLastExecutedInstructions(2);
+
+    Assert.assertSame(first, state.getLastExecutedInstruction(0));
+    Assert.assertSame(third, state.getLastExecutedInstruction(1));
+  }
+
+  @Test
+  public void testBacktrackAcrossFreeRun() {
+    InspectorStateImpl state = new InspectorStateImpl();
+    state.instructionExecuted(0, first, null);
+    state.saveLastExecutedInstructions(1);
+    // Transitions of thread 0 and then of thread 1 executed in free run
+    state.setLastExecutedInstruction(0, second);
+    state.saveLastExecutedInstructions(2);
+    state.setLastExecutedInstruction(1, third);
+    state.saveLastExecutedInstructions(3);
+
+    state.restoreLastExecutedInstructions(2);
+    Assert.assertSame(second, state.getLastExecutedInstruction(0));
+    Assert.assertNull(state.getLastExecutedInstruction(1));
+
+    state.restoreLastExecutedInstructions(1);
+    Assert.assertSame(first, state.getLastExecutedInstruction(0));
+    Assert.assertNull(state.getLastExecutedInstruction(1));
+  }
+
+  @Test
+  public void testSavedInstructionsAreNotChangedLater() {
+    InspectorStateImpl state = new InspectorStateImpl();
+    state.instructionExecuted(0, first, null);
+    state.saveLastExecutedInstructions(0);
+    state.instructionExecuted(0, second, null);
+    // A thread beyond the initial capacity
+    state.setLastExecutedInstruction(20, third);
+
+    state.restoreLastExecutedInstructions(0);
+    Assert.assertSame(first, state.getLastExecutedInstruction(0));
+    Assert.assertNull(state.getLastExecutedInstruction(20));
+  }
+
+  @Test
+  public void testUnknownStateForgetsInstructions() {
+    InspectorStateImpl state = new InspectorStateImpl();
+    state.instructionExecuted(0, first, null);
+    state.saveLastExecutedInstructions(3);
+
+    state.restoreLastExecutedInstructions(5);
+    Assert.assertNull(state.getLastExecutedInstruction(0));
+    state.restoreLastExecutedInstructions(3);
+    Assert.assertSame(first, state.getLastExecutedInstruction(0));
+  }
+}
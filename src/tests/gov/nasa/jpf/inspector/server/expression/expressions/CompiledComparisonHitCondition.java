@@ -0,0 +1,167 @@
+package gov.nasa.jpf.inspector.server.expression.expressions;
+
+import gov.nasa.jpf.inspector.exceptions.JPFInspectorException;
+import gov.nasa.jpf.inspector.interfaces.CustomHitCondition;
+import gov.nasa.jpf.inspector.interfaces.JPFInspectorBackEndInterface;
+import gov.nasa.jpf.inspector.server.expression.ExpressionParser;
+import gov.nasa.jpf.inspector.server.expression.ExpressionStateRootNode;
+import gov.nasa.jpf.inspector.server.expression.InspectorState;
+import gov.nasa.jpf.inspector.server.jpf.JPFInspector;
+import gov.nasa.jpf.inspector.server.programstate.StateNodeInterface;
+import gov.nasa.jpf.inspector.server.programstate.StateReadableValue;
+import gov.nasa.jpf.inspector.server.programstate.relop.RelationOperator;
+import gov.nasa.jpf.inspector.server.programstate.relop.RelationOperatorFactory;
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MethodInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link CompiledComparison} against {@link RelationOperator#compare} inside a running JPF.
+ *
+ * Hits before the first instruction on the line given as the argument. There, it compares each pair of operands
+ * from {@link #OPERANDS} by each relation operator, once by the compiled evaluator and once by the interpreter, and
+ * the details report whether all results agree. The compiled evaluator must return {@link CompiledComparison#UNKNOWN}
+ * exactly when the interpreter fails (incompatible types, ordering of booleans).
+ *
+ * Used by the acceptance test "hitcondition/compiled" with the system under test PrimitiveValues.
+ */
+public class CompiledComparisonHitCondition implements CustomHitCondition {
+
+  /**
+   * A parameter and a field of each primitive type, and constants of each primitive type.
+   */
+  private static final String[] OPERANDS = {
+          "vByte", "vShort", "vInt", "vLong", "vFloat", "vDouble", "vChar", "vBoolean",
+          "fByte", "fShort", "fInt", "fLong", "fFloat", "fDouble", "fChar", "fBoolean", "fNaN",
+          "5", "-3", "5000000000L", "2.5f", "0.1", "'a'", "true"
+  };
+
+  /**
+   * At most this many disagreements are listed in the details.
+   */
+  private static final int MAX_REPORTED = 10;
+
+  private int line;
+  private String details = "";
+
+  @Override
+  public String[] getNames () {
+    return new String[] { "compiled_comparison" };
+  }
+
+  @Override
+  public void initialize (String[] arguments) {
+    if (arguments.length != 1) {
+      throw new RuntimeException("There must be exactly one argument.");
+    }
+    line = Integer.parseInt(arguments[0]);
+  }
+
+  @Override
+  public boolean isHit (JPFInspectorBackEndInterface inspector, InspectorState state) {
+    if (state.getListenerMethod() != InspectorState.ListenerMethod.LM_EXECUTE_INSTRUCTION) {
+      return false;
+    }
+    Instruction instruction = state.getVM().getInstruction();
+    MethodInfo methodInfo = instruction.getMethodInfo();
+    if (instruction.getLineNumber() != line || methodInfo == null) {
+      return false;
+    }
+    Instruction[] instructionsOnLine = methodInfo.getInstructionsForLine(line);
+    if (instructionsOnLine == null || instructionsOnLine.length == 0 || instructionsOnLine[0] != instruction) {
+      return false;
+    }
+
+    details = compareAll((JPFInspector) inspector, state);
+    return true;
+  }
+
+  private static String compareAll (JPFInspector inspector, InspectorState state) {
+    RelationOperatorFactory factory = new RelationOperatorFactory();
+    RelationOperator[] operators = {
+            factory.getRelOpEqual(), factory.getRelOpNotEqual(),
+            factory.getRelOpLessThan(), factory.getRelOpLessEqual(),
+            factory.getRelOpGreaterThan(), factory.getRelOpGreaterEqual()
+    };
+    ExpressionParser parser = new ExpressionParser(inspector);
+
+    int count = 0;
+    List<String> disagreements = new ArrayList<>();
+    try {
+      for (String leftText : OPERANDS) {
+        for (String rightText : OPERANDS) {
+          for (RelationOperator operator : operators) {
+            // Parsed anew each time, so that no resolution is shared between comparisons
+            ExpressionStateRootNode left = parser.getExpressionStateInterface(leftText);
+            ExpressionStateRootNode right = parser.getExpressionStateInterface(rightText);
+            String comparison = leftText + ' ' + operator.getNormalizedText() + ' ' + rightText;
+            count++;
+
+            CompiledComparison compiled = CompiledComparison.tryCompile(left, operator, right);
+            if (compiled == null) {
+              disagreements.add(comparison + ": not compiled");
+              continue;
+            }
+            int compiledResult = compiled.evaluate(state);
+            int interpretedResult = interpret(inspector, state, left, operator, right);
+            if (compiledResult != interpretedResult) {
+              disagreements.add(comparison + ": compiled " + toString(compiledResult) +
+                                        ", interpreted " + toString(interpretedResult));
+            }
+          }
+        }
+      }
+    } catch (JPFInspectorException e) {
+      return "Parse error: " + e.getMessage();
+    }
+
+    if (disagreements.isEmpty()) {
+      return "All " + count + " comparisons give the same results as the interpreter.";
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(disagreements.size()).append(" of ").append(count).append(" comparisons disagree with the interpreter:");
+    for (int i = 0; i < disagreements.size() && i < MAX_REPORTED; i++) {
+      sb.append("\n\t").append(disagreements.get(i));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Evaluates the comparison the way {@link ExpressionBreakpointCompare} does when it has no compiled evaluator.
+   *
+   * @return {@link CompiledComparison#TRUE} or {@link CompiledComparison#FALSE}, or {@link CompiledComparison#UNKNOWN}
+   * if the interpreter fails.
+   */
+  private static int interpret (JPFInspector inspector, InspectorState state, ExpressionStateRootNode left,
+                                RelationOperator operator, ExpressionStateRootNode right) {
+    try {
+      StateNodeInterface leftValue = left.getResultExpression(inspector, state);
+      StateNodeInterface rightValue = right.getResultExpression(inspector, state);
+      if (!(leftValue instanceof StateReadableValue) || !(rightValue instanceof StateReadableValue)) {
+        return CompiledComparison.UNKNOWN;
+      }
+      boolean result = operator.compare((StateReadableValue) leftValue, (StateReadableValue) rightValue);
+      return result ? CompiledComparison.TRUE : CompiledComparison.FALSE;
+    } catch (JPFInspectorException e) {
+      return CompiledComparison.UNKNOWN;
+    }
+  }
+
+  private static String toString (int result) {
+    switch (result) {
+      case CompiledComparison.TRUE:
+        return "true";
+      case CompiledComparison.FALSE:
+        return "false";
+      default:
+        return "unknown";
+    }
+  }
+
+  @Override
+  public String getDetails (JPFInspectorBackEndInterface inspector, InspectorState state) {
+    return details;
+  }
+}
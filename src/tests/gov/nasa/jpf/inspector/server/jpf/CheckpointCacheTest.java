@@ -0,0 +1,48 @@
+package gov.nasa.jpf.inspector.server.jpf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link CheckpointCache}.
+ */
+public class CheckpointCacheTest {
+
+  @Test
+  public void testDenseNearTipSparseFurtherBack() {
+    CheckpointCache<String> cache = new CheckpointCache<>(16);
+    for (int depth = 1; depth <= 10000; depth++) {
+      cache.add(depth, "state" + depth);
+    }
+    Assert.assertEquals(16, cache.size());
+    Assert.assertEquals("state10000", cache.get(10000));
+    Assert.assertEquals("state9999", cache.get(9999));
+    // Checkpoints far back are sparse, but there still are some
+    Assert.assertTrue(cache.findNearestAtOrDeeper(1) < 5000);
+    // Gaps between checkpoints do not grow towards the tip
+    int previous = cache.findNearestAtOrDeeper(1);
+    int previousGap = Integer.MAX_VALUE;
+    int next;
+    while ((next = cache.findNearestAtOrDeeper(previous + 1)) != -1) {
+      Assert.assertTrue(next - previous <= previousGap);
+      previousGap = next - previous;
+      previous = next;
+    }
+  }
+
+  @Test
+  public void testBacktrackDiscardsDeeperCheckpoints() {
+    CheckpointCache<String> cache = new CheckpointCache<>(4);
+    cache.add(1, "a");
+    cache.add(2, "b");
+    cache.add(3, "c");
+    cache.discardDeeperThan(1);
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(-1, cache.findNearestAtOrDeeper(2));
+    cache.add(2, "b2");
+    Assert.assertEquals("b2", cache.get(2));
+    Assert.assertEquals(1, cache.findNearestAtOrDeeper(0));
+    Assert.assertEquals(2, cache.findNearestAtOrDeeper(2));
+    Assert.assertNull(cache.get(3));
+  }
+}
@@ -0,0 +1,115 @@
+package gov.nasa.jpf.inspector.server.jpf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Tests {@link StoppedQueryQueue}.
+ */
+public class StoppedQueryQueueTest {
+
+  private static Callable<String> query(final List<String> log, final String result) {
+    return new Callable<String>() {
+      @Override
+      public String call() {
+        log.add(result);
+        return result;
+      }
+    };
+  }
+
+  @Test
+  public void testQueriesWithTheSameKeyAreCoalesced() throws Exception {
+    StoppedQueryQueue queue = new StoppedQueryQueue();
+    List<String> log = new ArrayList<>();
+    CompletableFuture<String> first = queue.submit("print x", query(log, "x1"));
+    CompletableFuture<String> second = queue.submit("print y", query(log, "y"));
+    CompletableFuture<String> third = queue.submit("print x", query(log, "x2"));
+    Assert.assertSame(first, third);
+    Assert.assertFalse(queue.isEmpty());
+
+    queue.runAll();
+    Assert.assertTrue(queue.isEmpty());
+    Assert.assertEquals("x1", first.get());
+    Assert.assertEquals("y", second.get());
+    // Run once each, in the order of submission
+    Assert.assertEquals(2, log.size());
+    Assert.assertEquals("x1", log.get(0));
+    Assert.assertEquals("y", log.get(1));
+
+    // Once run, the key can be queued again
+    CompletableFuture<String> fourth = queue.submit("print x", query(log, "x3"));
+    Assert.assertNotSame(first, fourth);
+    queue.runAll();
+    Assert.assertEquals("x3", fourth.get());
+  }
+
+  @Test
+  public void testQueriesSubmittedWhileRunningAreRun() throws Exception {
+    final StoppedQueryQueue queue = new StoppedQueryQueue();
+    final List<String> log = new ArrayList<>();
+    final List<CompletableFuture<String>> nested = new ArrayList<>();
+    queue.submit("outer", new Callable<String>() {
+      @Override
+      public String call() {
+        nested.add(queue.submit("inner", query(log, "inner")));
+        return "outer";
+      }
+    });
+    queue.runAll();
+    Assert.assertTrue(queue.isEmpty());
+    Assert.assertEquals("inner", nested.get(0).get());
+  }
+
+  @Test
+  public void testFailingQueryCompletesExceptionally() {
+    StoppedQueryQueue queue = new StoppedQueryQueue();
+    CompletableFuture<String> future = queue.submit("print null", new Callable<String>() {
+      @Override
+      public String call() {
+        throw new IllegalStateException("no value");
+      }
+    });
+    queue.runAll();
+    try {
+      future.get();
+      Assert.fail();
+    } catch (InterruptedException e) {
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testFailAllOnTermination() {
+    StoppedQueryQueue queue = new StoppedQueryQueue();
+    List<String> log = new ArrayList<>();
+    CompletableFuture<String> first = queue.submit("thread 1", query(log, "a"));
+    CompletableFuture<String> second = queue.submit("thread 2", query(log, "b"));
+    RuntimeException reason = new RuntimeException("JPF terminated");
+    queue.failAll(reason);
+    Assert.assertTrue(queue.isEmpty());
+    for (CompletableFuture<String> future : Arrays.asList(first, second)) {
+      Assert.assertTrue(future.isCompletedExceptionally());
+      try {
+        future.get();
+        Assert.fail();
+      } catch (InterruptedException e) {
+        Assert.fail();
+      } catch (ExecutionException e) {
+        Assert.assertSame(reason, e.getCause());
+      }
+    }
+    // The failed queries are never run
+    queue.runAll();
+    Assert.assertTrue(log.isEmpty());
+  }
+}
@@ -0,0 +1,27 @@
+package gov.nasa.jpf.inspector.server.jpf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link UndoJournal}.
+ */
+public class UndoJournalTest {
+
+  @Test
+  public void testEmptyJournalExplainsWhy() {
+    UndoJournal journal = new UndoJournal(1024);
+    Assert.assertFalse(journal.canUndo(null));
+    Assert.assertEquals(UndoJournal.REASON_EARLIER_TRANSITION, journal.whyCannotUndo(null));
+
+    // A transition that starts in free run
+    journal.clear(UndoJournal.REASON_EARLIER_TRANSITION);
+    journal.clear(UndoJournal.REASON_FREE_RUN);
+    Assert.assertFalse(journal.canUndo(null));
+    Assert.assertEquals(UndoJournal.REASON_FREE_RUN, journal.whyCannotUndo(null));
+
+    // The next transition is observed again
+    journal.clear(UndoJournal.REASON_EARLIER_TRANSITION);
+    Assert.assertEquals(UndoJournal.REASON_EARLIER_TRANSITION, journal.whyCannotUndo(null));
+  }
+}
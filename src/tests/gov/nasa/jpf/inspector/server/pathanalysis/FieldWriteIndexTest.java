@@ -0,0 +1,165 @@
+package gov.nasa.jpf.inspector.server.pathanalysis;
+
+import gov.nasa.jpf.inspector.interfaces.CommandsInterface;
+import gov.nasa.jpf.vm.FieldInfo;
+import gov.nasa.jpf.vm.IntegerFieldInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link FieldWriteIndex}, including the uncovered ranges left by transitions executed in free run.
+ */
+public class FieldWriteIndexTest {
+
+  private static final int OBJECT = 100;
+  private static final int OTHER_OBJECT = 200;
+
+  private final FieldInfo count = new IntegerFieldInfo("count", 0);
+  private final FieldInfo other = new IntegerFieldInfo("other", 0);
+
+  private static void assertWrite(int transitionIndex, int stepIndex, int objectRef, FieldWriteIndex.Write write) {
+    Assert.assertNotNull(write);
+    Assert.assertEquals(transitionIndex, write.getTransitionIndex());
+    Assert.assertEquals(stepIndex, write.getStepIndex());
+    Assert.assertEquals(objectRef, write.getObjectRef());
+  }
+
+  private static void assertGap(int startTransition, int startStep, int endTransition, int endStep,
+                                FieldWriteIndex.Gap gap) {
+    Assert.assertNotNull(gap);
+    Assert.assertEquals(startTransition, gap.getStartTransition());
+    Assert.assertEquals(startStep, gap.getStartStep());
+    Assert.assertEquals(endTransition, gap.getEndTransition());
+    Assert.assertEquals(endStep, gap.getEndStep());
+  }
+
+  @Test
+  public void testLastWriteOfObject() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    index.recordWrite(count, OBJECT, 0, 1);
+    index.recordWrite(count, OTHER_OBJECT, 0, 3);
+    index.recordWrite(other, OBJECT, 0, 4);
+    index.recordWrite(count, OBJECT, 1, 0);
+
+    assertWrite(0, 3, OTHER_OBJECT, index.findLastResolvedWrite(count, CommandsInterface.ANY_OBJECT, 1, 0));
+    assertWrite(0, 1, OBJECT, index.findLastResolvedWrite(count, OBJECT, 1, 0));
+    assertWrite(1, 0, OBJECT, index.findLastResolvedWrite(count, OBJECT, 2, 0));
+    assertWrite(0, 3, OTHER_OBJECT, index.findLastResolvedWrite(count, OTHER_OBJECT, 2, 0));
+    assertWrite(0, 4, OBJECT, index.findLastResolvedWrite(other, CommandsInterface.ANY_OBJECT, 2, 0));
+    Assert.assertNull(index.findLastResolvedWrite(count, OBJECT, 0, 1));
+    Assert.assertNull(index.findLastResolvedWrite(other, OTHER_OBJECT, 2, 0));
+    Assert.assertNull(index.findLastGap(2, 0));
+  }
+
+  @Test
+  public void testUndoneWritesAreReplaced() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    index.recordWrite(count, OBJECT, 0, 1);
+    index.recordWrite(count, OBJECT, 0, 5);
+    index.recordWrite(count, OTHER_OBJECT, 0, 7);
+
+    // The steps from 3 on were undone and a write to another object is executed at step 4 now
+    index.recordWrite(count, OTHER_OBJECT, 0, 4);
+    assertWrite(0, 1, OBJECT, index.findLastResolvedWrite(count, OBJECT, 1, 0));
+    assertWrite(0, 4, OTHER_OBJECT, index.findLastResolvedWrite(count, CommandsInterface.ANY_OBJECT, 1, 0));
+    assertWrite(0, 4, OTHER_OBJECT, index.findLastResolvedWrite(count, OTHER_OBJECT, 1, 0));
+  }
+
+  @Test
+  public void testBacktrackDiscardsLaterWrites() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    index.recordWrite(count, OBJECT, 0, 1);
+    index.recordWrite(count, OTHER_OBJECT, 1, 1);
+    index.recordWrite(count, OBJECT, 2, 1);
+
+    index.truncate(1);
+    Assert.assertNull(index.findLastResolvedWrite(count, OTHER_OBJECT, 5, 0));
+    assertWrite(0, 1, OBJECT, index.findLastResolvedWrite(count, OBJECT, 5, 0));
+
+    // The transition that replaces the discarded one
+    index.recordWrite(count, OTHER_OBJECT, 1, 2);
+    assertWrite(1, 2, OTHER_OBJECT, index.findLastResolvedWrite(count, CommandsInterface.ANY_OBJECT, 5, 0));
+    assertWrite(0, 1, OBJECT, index.findLastResolvedWrite(count, OBJECT, 5, 0));
+  }
+
+  @Test
+  public void testFreeRunLeavesGap() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    index.recordWrite(count, OBJECT, 0, 1);
+    // Transitions 1 and 2 are executed in free run
+    index.instructionEventsMissed(1);
+    assertGap(1, 0, 3, 0, index.findLastGap(3, 0));
+    Assert.assertNull(index.findLastGap(1, 0));
+
+    // The first observed write closes the range
+    index.recordWrite(count, OBJECT, 3, 2);
+    FieldWriteIndex.Gap gap = index.findLastGap(4, 0);
+    assertGap(1, 0, 3, 2, gap);
+    FieldWriteIndex.Write last = index.findLastResolvedWrite(count, OBJECT, 4, 0);
+    assertWrite(3, 2, OBJECT, last);
+    Assert.assertTrue(gap.isBefore(last));
+    // The write before the range is still valid, but the range must be searched first
+    FieldWriteIndex.Write earlier = index.findLastResolvedWrite(count, OBJECT, gap.getStartTransition(),
+                                                                gap.getStartStep());
+    assertWrite(0, 1, OBJECT, earlier);
+    Assert.assertFalse(index.findLastGap(3, 2).isBefore(earlier));
+    assertGap(1, 0, 2, 5, index.findLastGap(2, 5));
+  }
+
+  @Test
+  public void testWritesInGapAreDiscarded() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    index.recordWrite(count, OBJECT, 2, 1);
+    index.instructionEventsMissed(2);
+    index.recordWrite(other, OBJECT, 3, 0);
+
+    Assert.assertNull(index.findLastResolvedWrite(count, OBJECT, 4, 0));
+    Assert.assertNull(index.findLastResolvedWrite(count, CommandsInterface.ANY_OBJECT, 4, 0));
+    assertGap(2, 0, 3, 0, index.findLastGap(4, 0));
+  }
+
+  @Test
+  public void testBacktrackIntoGap() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    index.instructionEventsMissed(1);
+    index.recordWrite(count, OBJECT, 3, 0);
+    index.instructionEventsMissed(5);
+    index.recordWrite(count, OBJECT, 6, 0);
+
+    // Back into the first range, the second one is discarded
+    index.truncate(2);
+    assertGap(1, 0, 2, 0, index.findLastGap(10, 0));
+    Assert.assertNull(index.findLastResolvedWrite(count, OBJECT, 10, 0));
+
+    index.recordWrite(count, OBJECT, 2, 3);
+    assertWrite(2, 3, OBJECT, index.findLastResolvedWrite(count, OBJECT, 10, 0));
+    assertGap(1, 0, 2, 0, index.findLastGap(10, 0));
+  }
+
+  @Test
+  public void testLastOfSeveralGaps() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    for (int i = 0; i < 40; i += 2) {
+      index.instructionEventsMissed(i);
+      index.recordWrite(count, OBJECT, i + 1, 0);
+    }
+    assertGap(20, 0, 21, 0, index.findLastGap(21, 5));
+    assertGap(20, 0, 20, 3, index.findLastGap(20, 3));
+    assertGap(0, 0, 1, 0, index.findLastGap(1, 0));
+    Assert.assertNull(index.findLastGap(0, 0));
+  }
+
+  @Test
+  public void testClearUncoversWholePath() {
+    FieldWriteIndex index = new FieldWriteIndex();
+    index.recordWrite(count, OBJECT, 0, 1);
+    index.clear(3);
+
+    Assert.assertNull(index.findLastResolvedWrite(count, OBJECT, 5, 0));
+    assertGap(0, 0, 3, 0, index.findLastGap(5, 0));
+
+    index.recordWrite(count, OBJECT, 3, 1);
+    assertWrite(3, 1, OBJECT, index.findLastResolvedWrite(count, OBJECT, 5, 0));
+    assertGap(0, 0, 3, 0, index.findLastGap(5, 0));
+  }
+}
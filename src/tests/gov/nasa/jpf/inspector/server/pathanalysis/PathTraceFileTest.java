@@ -0,0 +1,106 @@
+package gov.nasa.jpf.inspector.server.pathanalysis;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests how {@link PathTraceFile} finds the breakpoint hits in the transition that is not completed yet. The records
+ * of completed transitions are written from the transitions of JPF and are covered by the acceptance test
+ * "backstep_trace".
+ */
+public class PathTraceFileTest {
+
+  private File file;
+  private PathTraceFile trace;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("jpf-inspector-path", ".bin");
+    trace = new PathTraceFile(file.getPath());
+  }
+
+  @After
+  public void tearDown() {
+    trace.close();
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  private static void assertHit(int transitionIndex, int stepIndex, int breakpointId, PathTraceFile.BreakpointHit hit) {
+    Assert.assertNotNull(hit);
+    Assert.assertEquals(transitionIndex, hit.getTransitionIndex());
+    Assert.assertEquals(stepIndex, hit.getStepIndex());
+    Assert.assertEquals(breakpointId, hit.getBreakpointId());
+  }
+
+  @Test
+  public void testLastHitBeforePosition() throws IOException {
+    trace.breakpointHit(0, 3, 1);
+    trace.breakpointHit(0, 7, 2);
+
+    assertHit(0, 7, 2, trace.findLastBreakpointHit(0, 8));
+    // The hit where JPF is stopped is not before the position
+    assertHit(0, 3, 1, trace.findLastBreakpointHit(0, 7));
+    assertHit(0, 7, 2, trace.findLastBreakpointHit(1, 0));
+    Assert.assertNull(trace.findLastBreakpointHit(0, 3));
+  }
+
+  @Test
+  public void testUndoneHitIsReplaced() throws IOException {
+    trace.breakpointHit(0, 3, 1);
+    trace.breakpointHit(0, 7, 2);
+    trace.breakpointHit(0, 9, 1);
+
+    // The steps from 5 on were undone and another breakpoint hits at step 6 now
+    trace.breakpointHit(0, 6, 3);
+    assertHit(0, 6, 3, trace.findLastBreakpointHit(1, 0));
+    assertHit(0, 3, 1, trace.findLastBreakpointHit(0, 6));
+  }
+
+  @Test
+  public void testReplayTakesOverHitsOfBacktrackedTransition() throws IOException {
+    trace.breakpointHit(0, 3, 1);
+    trace.breakpointHit(0, 7, 2);
+    trace.truncate(0);
+    Assert.assertNull(trace.findLastBreakpointHit(1, 0));
+
+    // A backward step replayed the first 5 steps
+    trace.transitionReplayed(0, 5);
+    assertHit(0, 3, 1, trace.findLastBreakpointHit(1, 0));
+
+    // The replay stops at the hit
+    trace.truncate(0);
+    trace.transitionReplayed(0, 3);
+    assertHit(0, 3, 1, trace.findLastBreakpointHit(1, 0));
+    Assert.assertNull(trace.findLastBreakpointHit(0, 3));
+  }
+
+  @Test
+  public void testBacktrackDiscardsPendingHits() throws IOException {
+    trace.breakpointHit(0, 3, 1);
+    trace.truncate(0);
+    Assert.assertNull(trace.findLastBreakpointHit(1, 0));
+
+    // The replayed part ends before the hit
+    trace.transitionReplayed(0, 2);
+    Assert.assertNull(trace.findLastBreakpointHit(1, 0));
+
+    // The hits are taken over only by the first replay
+    trace.transitionReplayed(0, 5);
+    Assert.assertNull(trace.findLastBreakpointHit(1, 0));
+  }
+
+  @Test
+  public void testClearDiscardsPendingHits() throws IOException {
+    trace.breakpointHit(2, 3, 1);
+    trace.clear(2);
+    Assert.assertNull(trace.findLastBreakpointHit(3, 0));
+    Assert.assertEquals(2, trace.getFirstTransition());
+    Assert.assertEquals(2, trace.getEndTransition());
+  }
+}
@@ -28,7 +28,8 @@ public class BackBreakpointHitTest extends CorrectOutputAbstractTest {
   public static Iterable<?> data() {
      return Arrays.asList(
           getCase("features/backstep", "bbhit_ok"),
-          getCase("features/backstep", "bbhit_errors")
+          getCase("features/backstep", "bbhit_errors"),
+          getCase("features/backstep_trace", "bbhit_trace")
      );
   }
 }
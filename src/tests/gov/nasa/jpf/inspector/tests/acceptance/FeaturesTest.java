@@ -37,6 +37,8 @@ public class FeaturesTest extends CorrectOutputAbstractTest {
           getCase("features/extensibility", "argument_mismatch"),
           getCase("features/extensibility", "invalid_alias"),
           getCase("hitcondition/custom", "customhitcondition"),
+          getCase("hitcondition/compiled", "compiled"),
+          getCase("hitcondition/watch", "watch"),
           getCase("features/changebp", "changebp"),
           getCase("features/changebp", "changebp2"),
           getCase("features/ignorejava", "ignore"),
@@ -28,7 +28,9 @@ public class SteppingTest extends CorrectOutputAbstractTest {
   public static Iterable<?> data() {
      return Arrays.asList(
           getCase("stepping", "st"),
-          getCase("stepping","verify_bsins")
+          getCase("stepping","verify_bsins"),
+          getCase("features/undo", "undo"),
+          getCase("features/stepcount", "stepcount")
      );
   }
 }
@@ -0,0 +1,22 @@
+package gov.nasa.jpf.inspector.tests.acceptance.features.undo;
+
+/**
+ * Stores into a local variable, a static field and an array element, so that backward steps can undo the stores.
+ */
+@SuppressWarnings("ALL")
+public class UndoTarget {
+  static int field = 1;
+  static int[] array = { 1 };
+
+  public static void main(String[] args) {
+    int local = 1;
+    local = 2;
+    field = 2;
+    array[0] = 2;
+    print(local);
+    local = 3;
+  }
+
+  static void print(int value) {
+  }
+}
@@ -0,0 +1,25 @@
+package gov.nasa.jpf.inspector.tests.acceptance.hitcondition.compiled;
+
+/**
+ * Holds a field and a parameter of each primitive type, to be compared by the "compiled_comparison" hit condition.
+ */
+@SuppressWarnings("ALL")
+public class PrimitiveValues {
+  byte fByte = 2;
+  short fShort = -7;
+  int fInt = 5;
+  long fLong = 5000000000L;
+  float fFloat = 2.5f;
+  double fDouble = -0.5;
+  char fChar = 'b';
+  boolean fBoolean = true;
+  double fNaN = Double.NaN;
+
+  public static void main(String[] args) {
+    new PrimitiveValues().compare((byte) -3, (short) 300, 5, 5L, 2.5f, 0.1, 'a', false);
+  }
+
+  void compare(byte vByte, short vShort, int vInt, long vLong, float vFloat, double vDouble, char vChar, boolean vBoolean) {
+    int done = 0; // compare here
+  }
+}
@@ -0,0 +1,22 @@
+package gov.nasa.jpf.inspector.tests.acceptance.hitcondition.watch;
+
+/**
+ * Writes to static fields, some of which store the value the field already holds, for the "watch" hit condition.
+ */
+@SuppressWarnings("ALL")
+public class WatchedValues {
+  static int value;
+  static int other;
+  static int[] data;
+
+  public static void main(String[] args) {
+    value = 0; // the same value
+    value = 1;
+    value = 1; // the same value
+    other = 2;
+    value = 2;
+    data = new int[3];
+    data[1] = 0; // the same value
+    data[1] = 5;
+  }
+}
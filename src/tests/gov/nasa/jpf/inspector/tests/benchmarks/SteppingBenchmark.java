@@ -0,0 +1,74 @@
+package gov.nasa.jpf.inspector.tests.benchmarks;
+
+import gov.nasa.jpf.JPFShell;
+import gov.nasa.jpf.inspector.frontends.cmd.CommandLineShell;
+import gov.nasa.jpf.inspector.utils.InspectorConfiguration;
+import gov.nasa.jpf.shell.ShellManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures how many forward steps per second a script executes, i.e. the latency of a single step including the
+ * handoff between the command thread and the JPF thread and the delivery of the callbacks.
+ *
+ * The script is run in batch mode twice, once with a few steps and once with many, and the difference is measured, so
+ * that the startup of JPF is not included.
+ *
+ * Usage: SteppingBenchmark [steps] [step command]
+ * The default is 5000 steps of "step_instruction". Run it from the folder that contains jpf-inspector, like the tests.
+ */
+public final class SteppingBenchmark {
+  public static final String BASEFOLDER = "./jpf-inspector/src/tests/gov/nasa/jpf/inspector/tests/benchmarks/";
+  private static final int WARMUP_RUNS = 2;
+
+  private SteppingBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    int steps = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    String stepCommand = args.length > 1 ? args[1] : "step_instruction";
+    int fewSteps = Math.max(steps / 10, 1);
+
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      runScript(fewSteps, stepCommand);
+    }
+    long fewNanos = runScript(fewSteps, stepCommand);
+    long manyNanos = runScript(steps, stepCommand);
+
+    double seconds = (manyNanos - fewNanos) / 1e9;
+    int measuredSteps = steps - fewSteps;
+    System.out.println(String.format("%d x '%s': %.1f steps per second, %.1f us per step", measuredSteps, stepCommand,
+                                     measuredSteps / seconds, seconds * 1e6 / measuredSteps));
+  }
+
+  /**
+   * Runs JPF with the Inspector and executes the given number of steps, each of which waits for JPF to stop.
+   *
+   * @return How long the whole run took, in nanoseconds.
+   */
+  private static long runScript(int steps, String stepCommand) {
+    StringBuilder script = new StringBuilder();
+    script.append("commence\n");
+    for (int i = 0; i < steps; i++) {
+      script.append(stepCommand).append(" && wait\n");
+    }
+    script.append("terminate\n");
+
+    InspectorConfiguration.staticReset();
+    String applicationPropertyFile = BASEFOLDER + "stepping.jpf";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long start = System.nanoTime();
+    try {
+      JPFShell shell = new CommandLineShell(applicationPropertyFile,
+                                            new ByteArrayInputStream(script.toString().getBytes(StandardCharsets.UTF_8)),
+                                            new PrintStream(output));
+      shell.start(new String[]{applicationPropertyFile});
+    } finally {
+      ShellManager.destroy();
+    }
+    return System.nanoTime() - start;
+  }
+}
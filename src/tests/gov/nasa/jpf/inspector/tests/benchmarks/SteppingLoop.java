@@ -0,0 +1,15 @@
+package gov.nasa.jpf.inspector.tests.benchmarks;
+
+/**
+ * System under test of the {@link SteppingBenchmark}. Executes enough instructions without a choice point to be stepped
+ * through many times.
+ */
+public class SteppingLoop {
+  public static void main(String[] args) {
+    int sum = 0;
+    for (int i = 0; i < 10000000; i++) {
+      sum += i % 7;
+    }
+    System.out.println(sum);
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Benchmarks that run JPF and the Inspector. They are not run by the "test" target, use the "benchmark" target.
+ */
+package gov.nasa.jpf.inspector.tests.benchmarks;
@@ -27,7 +27,8 @@ public class NormalizedTextParsingTest  {
           "cr bp name=log state =    log  10<=hit_count<15 this_text_is_not_test_because_it_is_parsed_by_server_part",
           "create bp name=enable99 property_violated",
           "create breakpoint name=enable state=en hc<16 property_violated",
-          "create breakpoint name=hit_count state=dis 3<=hit_count property_violated hit_count áeíóúý+-.",};
+          "create breakpoint name=hit_count state=dis 3<=hit_count property_violated hit_count áeíóúý+-.",
+          "cr bp state=trace pos=Main:10",};
 
   @Test
   public void cmdCreateBP () {
@@ -48,6 +49,25 @@ public class NormalizedTextParsingTest  {
     testCommands(showBPcmds);
   }
 
+  private static final String[] tracePrintCmds = {
+          "trace print",
+          "trace print bp=3 last = 10",
+          "trace print trace.bin thread=1 state=42",};
+
+  @Test
+  public void cmdTracePrint () {
+    testCommands(tracePrintCmds);
+  }
+
+  private static final String[] showCallbacksCmds = {
+          "show callbacks",
+          "sw callbacks",};
+
+  @Test
+  public void cmdShowCallbacks () {
+    testCommands(showCallbacksCmds);
+  }
+
   private static final String[] cgTrackingsCmds = {
           "en ask  sched cg",
           "dis print  all cg",
@@ -0,0 +1,38 @@
+package gov.nasa.jpf.inspector.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests {@link ClassNamePatterns}.
+ */
+public class ClassNamePatternsTest {
+  @Test
+  public void testPrefixPatterns() {
+    ClassNamePatterns patterns = new ClassNamePatterns(new String[] { "java.*", "javax.*" });
+    Assert.assertTrue(patterns.matches("java.lang.String"));
+    Assert.assertTrue(patterns.matches("javax.swing.JPanel"));
+    Assert.assertTrue(patterns.matches("java."));
+    Assert.assertFalse(patterns.matches("java"));
+    Assert.assertFalse(patterns.matches("javafx.scene.Node"));
+    Assert.assertFalse(patterns.matches("my.java.Class"));
+  }
+
+  @Test
+  public void testExactAndOtherPatterns() {
+    ClassNamePatterns patterns = new ClassNamePatterns(new String[] { "my.Class", "*Test", "a.*.Helper" });
+    Assert.assertTrue(patterns.matches("my.Class"));
+    Assert.assertFalse(patterns.matches("my.ClassLoader"));
+    Assert.assertFalse(patterns.matches("my.Clas"));
+    Assert.assertTrue(patterns.matches("some.FooTest"));
+    Assert.assertFalse(patterns.matches("some.FooTests"));
+    Assert.assertTrue(patterns.matches("a.b.c.Helper"));
+    Assert.assertFalse(patterns.matches("b.a.c.Helper"));
+  }
+
+  @Test
+  public void testEverythingAndNothing() {
+    Assert.assertTrue(new ClassNamePatterns(new String[] { "*" }).matches("any.Class"));
+    Assert.assertFalse(new ClassNamePatterns(new String[0]).matches("any.Class"));
+  }
+}